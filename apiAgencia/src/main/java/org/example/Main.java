@@ -3,8 +3,10 @@ package org.example;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // Para los refrescos en segundo plano (ej. restricciones de la agencia)
 public class Main {
     public static void main(String[] args) {
         SpringApplication.run(Main.class, args);
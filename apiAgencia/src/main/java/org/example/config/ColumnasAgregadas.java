@@ -0,0 +1,51 @@
+package org.example.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Columnas que api-agencia agrega a tablas de la base original. SQLite no tiene {@code ADD COLUMN IF NOT EXISTS}, así
+ * que no pueden ir en DDL.sql (que se ejecuta en cada arranque): cada una se agrega acá solo si todavía no existe.
+ * Corre después de que JPA arma su esquema (en los tests lo crea Hibernate) y antes de que las tareas que arrancan
+ * con la aplicación consulten esas tablas.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class ColumnasAgregadas {
+
+    // Tabla, columna y tipo.
+    private static final String[][] COLUMNAS = {
+            {"Pruebas", "DISTANCIA_KM", "REAL"},
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ColumnasAgregadas(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void agregar() {
+        for (String[] columna : COLUMNAS) {
+            if (!existe(columna[0], columna[1])) {
+                jdbcTemplate.execute("ALTER TABLE " + columna[0] + " ADD COLUMN " + columna[1] + " " + columna[2]);
+                System.out.println("ColumnasAgregadas: se agregó la columna " + columna[1] + " a " + columna[0] + ".");
+            }
+        }
+    }
+
+    // Con una consulta en lugar de los metadatos de JDBC, que cada base informa con otras mayúsculas.
+    private boolean existe(String tabla, String columna) {
+        try {
+            jdbcTemplate.queryForList("SELECT " + columna + " FROM " + tabla + " WHERE 1 = 0");
+            return true;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.example.dtos.PosicionDto;
+import org.example.serializacion.PosicionBinariaDeserializer;
+import org.example.service.KafkaProducer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import java.util.Map;
+
+/**
+ * Ingesta de posiciones por Kafka (tópico agencia-posiciones-topic, particionado por id de vehículo).
+ * Solo se arma con agencia.posiciones.kafka.habilitado=true, así la aplicación sigue arrancando sin un broker.
+ */
+@Configuration
+@ConditionalOnProperty(name = "agencia.posiciones.kafka.habilitado", havingValue = "true")
+public class KafkaPosicionesConfig {
+
+    /**
+     * Lotes que no se pudieron guardar después de reintentar hasta reintentos-max-ms; cada posición va a la misma
+     * partición que tenía, para poder reprocesarlas en orden.
+     */
+    public static final String TOPICO_POSICIONES_FALLIDAS = KafkaProducer.TOPICO_POSICIONES + ".DLT";
+
+    /**
+     * Cada partición la consume una sola instancia a la vez: la cantidad de particiones es el máximo de instancias
+     * (y de hilos consumidores) que pueden procesar posiciones en paralelo.
+     */
+    @Bean
+    public NewTopic topicoPosiciones(@Value("${agencia.posiciones.kafka.particiones:6}") int particiones) {
+        return TopicBuilder.name(KafkaProducer.TOPICO_POSICIONES).partitions(particiones).replicas(1).build();
+    }
+
+    @Bean
+    public NewTopic topicoPosicionesFallidas(@Value("${agencia.posiciones.kafka.particiones:6}") int particiones) {
+        return TopicBuilder.name(TOPICO_POSICIONES_FALLIDAS).partitions(particiones).replicas(1).build();
+    }
+
+    /**
+     * Cada poll se procesa con procesarLotePosiciones, que rechaza lotes de más de agencia.posiciones.lote.max-tamanio:
+     * un max-por-lote mayor haría fallar todos los polls llenos, así que no se arranca.
+     */
+    @Bean
+    public ConsumerFactory<String, PosicionDto> posicionesConsumerFactory(KafkaProperties kafkaProperties,
+                                                                          @Value("${agencia.posiciones.kafka.max-por-lote:500}") int maxPorLote,
+                                                                          @Value("${agencia.posiciones.lote.max-tamanio:1000}") int maxTamanioLote) {
+        if (maxPorLote > maxTamanioLote) {
+            throw new IllegalStateException("agencia.posiciones.kafka.max-por-lote (" + maxPorLote
+                    + ") no puede superar agencia.posiciones.lote.max-tamanio (" + maxTamanioLote + ").");
+        }
+        Map<String, Object> propiedades = kafkaProperties.buildConsumerProperties(null);
+        propiedades.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPorLote);
+        propiedades.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        propiedades.putIfAbsent(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Un mensaje que no es una PosicionDto no debe frenar la partición: llega como null y se descarta.
+        return new DefaultKafkaConsumerFactory<>(propiedades, new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new PosicionBinariaDeserializer()));
+    }
+
+    /**
+     * Listeners por lote: cada poll trae hasta max-por-lote posiciones, que se procesan y guardan juntas, y el offset
+     * se confirma a mano (AckMode.MANUAL) cuando el listener terminó. Si el lote falla entero (por ejemplo, sin
+     * restricciones o sin base) se reintenta con espera creciente durante reintentos-max-ms como mucho; después sus
+     * posiciones se publican en {@link #TOPICO_POSICIONES_FALLIDAS} y la partición sigue, en lugar de quedar trabada.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, PosicionDto> posicionesListenerFactory(
+            ConsumerFactory<String, PosicionDto> posicionesConsumerFactory,
+            KafkaTemplate<String, PosicionDto> kafkaTemplate,
+            @Value("${agencia.posiciones.kafka.consumidores:1}") int consumidores,
+            @Value("${agencia.posiciones.kafka.reintentos-max-ms:600000}") long reintentosMaxMs) {
+        ConcurrentKafkaListenerContainerFactory<String, PosicionDto> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(posicionesConsumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(consumidores);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        ExponentialBackOff espera = new ExponentialBackOff(500, 2);
+        espera.setMaxInterval(30000);
+        espera.setMaxElapsedTime(reintentosMaxMs);
+        DeadLetterPublishingRecoverer fallidas = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (registro, e) -> new TopicPartition(TOPICO_POSICIONES_FALLIDAS, registro.partition()));
+        factory.setCommonErrorHandler(new DefaultErrorHandler(fallidas, espera));
+        return factory;
+    }
+}
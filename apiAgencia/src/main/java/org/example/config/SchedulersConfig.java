@@ -0,0 +1,22 @@
+package org.example.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class SchedulersConfig {
+
+    /**
+     * Hilos para el trabajo bloqueante (JPA/JDBC) de los flujos reactivos. Es acotado a propósito:
+     * la cantidad de hilos limita cuántas operaciones contra SQLite corren a la vez, y lo que no entra
+     * espera en la cola del scheduler en lugar de ocupar los hilos que entregan las respuestas de WebClient.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler schedulerBaseDeDatos(@Value("${agencia.db.scheduler.hilos:10}") int hilos,
+                                          @Value("${agencia.db.scheduler.cola:100000}") int cola) {
+        return Schedulers.newBoundedElastic(hilos, cola, "agencia-db");
+    }
+}
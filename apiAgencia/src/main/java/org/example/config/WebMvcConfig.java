@@ -0,0 +1,21 @@
+package org.example.config;
+
+import org.example.serializacion.PosicionBinariaHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    /**
+     * Al final de la lista: con {@code Accept: *}{@code /*} gana Jackson y las respuestas siguen en JSON;
+     * el binario solo se usa cuando el pedido lo indica en Content-Type o Accept.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new PosicionBinariaHttpMessageConverter());
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.config;
+
+import org.example.controller.PosicionesWebSocketHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final PosicionesWebSocketHandler posicionesWebSocketHandler;
+
+    public WebSocketConfig(PosicionesWebSocketHandler posicionesWebSocketHandler) {
+        this.posicionesWebSocketHandler = posicionesWebSocketHandler;
+    }
+
+    /**
+     * Los vehículos no son navegadores y muchas veces no mandan Origin; la autenticación la hace el gateway
+     * al abrir la conexión, así que no se restringe el origen acá.
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(posicionesWebSocketHandler, "/api/vehiculos/posiciones/stream")
+                .setAllowedOriginPatterns("*");
+    }
+}
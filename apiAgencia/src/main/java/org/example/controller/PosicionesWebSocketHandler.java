@@ -0,0 +1,171 @@
+package org.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dtos.ConfirmacionPosicionDto;
+import org.example.dtos.MensajePosicionDto;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.service.MetricasEtapas;
+import org.example.service.VehiculoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Canal WebSocket de posiciones (/api/vehiculos/posiciones/stream): el vehículo se autentica una sola vez en el
+ * gateway al abrir la conexión y después manda una {@link MensajePosicionDto} por mensaje, sin pagar un pedido HTTP
+ * (ni la validación del JWT) por cada posición. Cada posición se procesa igual que POST /posicion/new y se confirma
+ * con una {@link ConfirmacionPosicionDto} que trae el mismo veredicto.
+ *
+ * Si al abrir la conexión se indica {@code ?idVehiculo=}, la conexión queda atada a ese vehículo: las posiciones
+ * pueden omitir el vehículo y se rechazan las de otro.
+ *
+ * Las posiciones de una conexión se procesan de a una, en el orden en que llegaron (así se guardan y se confirman en
+ * ese orden), y a lo sumo {@code max-en-curso} pueden estar esperando su turno. Con la cola llena la posición no se
+ * procesa y se confirma enseguida con el error "ocupado" para que el vehículo la reintente: el hilo de Tomcat que lee
+ * la conexión nunca espera lugar. Las confirmaciones se envían con un límite de tiempo y de buffer: un vehículo que no
+ * las lee pierde la conexión.
+ */
+@Component
+public class PosicionesWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String ATRIBUTO_CONEXION = "conexionPosiciones";
+    static final String OCUPADO = "Ocupado: hay demasiadas posiciones de esta conexión sin procesar, reintente en unos instantes.";
+
+    private final VehiculoService vehiculoService;
+    private final MetricasEtapas metricasEtapas;
+    private final ObjectMapper objectMapper;
+
+    // Posiciones de una conexión que pueden esperar su turno mientras se procesa la anterior.
+    @Value("${agencia.posiciones.stream.max-en-curso:32}")
+    private int maxEnCurso = 32;
+
+    @Value("${agencia.posiciones.stream.limite-envio-ms:10000}")
+    private int limiteEnvioMs = 10000;
+
+    @Value("${agencia.posiciones.stream.limite-buffer-bytes:524288}")
+    private int limiteBufferBytes = 524288;
+
+    @Autowired
+    public PosicionesWebSocketHandler(VehiculoService vehiculoService, MetricasEtapas metricasEtapas, ObjectMapper objectMapper) {
+        this.vehiculoService = vehiculoService;
+        this.metricasEtapas = metricasEtapas;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        String parametro = session.getUri() == null ? null
+                : UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("idVehiculo");
+        Integer idVehiculo;
+        try {
+            idVehiculo = parametro != null ? Integer.valueOf(parametro) : null;
+        } catch (NumberFormatException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("idVehiculo inválido."));
+            return;
+        }
+        ConcurrentWebSocketSessionDecorator sesion = new ConcurrentWebSocketSessionDecorator(session, limiteEnvioMs, limiteBufferBytes);
+        Sinks.Many<Pendiente> pendientes = Sinks.many().unicast().onBackpressureBuffer(Queues.<Pendiente>get(maxEnCurso).get());
+        Conexion conexion = new Conexion(sesion, idVehiculo, pendientes);
+        // concatMap: la siguiente posición de la conexión empieza recién cuando terminó la anterior.
+        Disposable procesamiento = pendientes.asFlux()
+                .concatMap(pendiente -> procesar(conexion, pendiente), 1)
+                .subscribe();
+        session.getAttributes().put(ATRIBUTO_CONEXION, new ConexionAbierta(conexion, procesamiento));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        ConexionAbierta abierta = (ConexionAbierta) session.getAttributes().remove(ATRIBUTO_CONEXION);
+        if (abierta != null) {
+            abierta.procesamiento.dispose();
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        ConexionAbierta abierta = (ConexionAbierta) session.getAttributes().get(ATRIBUTO_CONEXION);
+        if (abierta == null) {
+            return;
+        }
+        Conexion conexion = abierta.conexion;
+        MensajePosicionDto mensaje;
+        try {
+            mensaje = objectMapper.readValue(message.getPayload(), MensajePosicionDto.class);
+        } catch (IOException e) {
+            confirmar(conexion, new ConfirmacionPosicionDto(null, null, "Mensaje inválido: se esperaba una posición en JSON."));
+            return;
+        }
+        PosicionDto posicion = mensaje.getPosicion();
+        String error = validar(conexion, posicion);
+        if (error != null) {
+            confirmar(conexion, new ConfirmacionPosicionDto(mensaje.getSecuencia(), null, error));
+            return;
+        }
+
+        // Tomcat entrega los mensajes de una sesión de a uno, así que no hay dos emisiones a la vez.
+        if (conexion.pendientes.tryEmitNext(new Pendiente(mensaje.getSecuencia(), posicion)).isFailure()) {
+            confirmar(conexion, new ConfirmacionPosicionDto(mensaje.getSecuencia(), null, OCUPADO));
+        }
+    }
+
+    private Mono<Void> procesar(Conexion conexion, Pendiente pendiente) {
+        return metricasEtapas.medir("websocket", vehiculoService.procesarPosicion(pendiente.posicion))
+                .doOnNext(procesada -> confirmar(conexion, new ConfirmacionPosicionDto(pendiente.secuencia, procesada, null)))
+                .then()
+                .onErrorResume(e -> {
+                    confirmar(conexion, new ConfirmacionPosicionDto(pendiente.secuencia, null, e.getMessage()));
+                    return Mono.empty();
+                });
+    }
+
+    // Completa el vehículo de la conexión si la posición no lo trae.
+    private static String validar(Conexion conexion, PosicionDto posicion) {
+        if (posicion == null || posicion.getCoordenadas() == null) {
+            return "La posición no indica sus coordenadas.";
+        }
+        if (conexion.idVehiculo != null) {
+            if (posicion.getVehiculo() == null || posicion.getVehiculo().getId() == null) {
+                posicion.setVehiculo(new VehiculoDto(conexion.idVehiculo, null, null));
+            } else if (!Objects.equals(posicion.getVehiculo().getId(), conexion.idVehiculo)) {
+                return "La conexión es del vehículo " + conexion.idVehiculo + ", no puede enviar posiciones de otro vehículo.";
+            }
+        }
+        if (posicion.getVehiculo() == null || posicion.getVehiculo().getId() == null) {
+            return "La posición no indica el vehículo.";
+        }
+        return null;
+    }
+
+    private void confirmar(Conexion conexion, ConfirmacionPosicionDto confirmacion) {
+        try {
+            conexion.sesion.sendMessage(new TextMessage(objectMapper.writeValueAsString(confirmacion)));
+        } catch (IOException | SessionLimitExceededException e) {
+            System.err.println("No se pudo confirmar la posición " + confirmacion.getSecuencia() + " por WebSocket: " + e.getMessage());
+        }
+    }
+
+    private record Conexion(ConcurrentWebSocketSessionDecorator sesion, Integer idVehiculo, Sinks.Many<Pendiente> pendientes) {
+    }
+
+    private record ConexionAbierta(Conexion conexion, Disposable procesamiento) {
+    }
+
+    private record Pendiente(Long secuencia, PosicionDto posicion) {
+    }
+}
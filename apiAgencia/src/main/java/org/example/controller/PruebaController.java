@@ -1,7 +1,17 @@
 package org.example.controller;
 
+import org.example.dtos.EstadoOdometroDto;
+import org.example.dtos.EstadoRegistroPruebasDto;
+import org.example.dtos.EstadoRetencionDto;
 import org.example.dtos.PruebaDto;
+import org.example.dtos.TrayectoriaDto;
+import org.example.serializacion.TrayectoriaComprimida;
+import org.example.service.OdometroPruebas;
 import org.example.service.PruebaService;
+import org.example.service.RegistroPruebasActivas;
+import org.example.service.RetencionPosiciones;
+import org.example.service.TrayectoriaService;
+import org.example.service.trayectoria.SimplificadorTrayectoria;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,10 +25,19 @@ import java.util.List;
 public class PruebaController {
 
     private final PruebaService pruebaService;
+    private final RegistroPruebasActivas registroPruebasActivas;
+    private final TrayectoriaService trayectoriaService;
+    private final RetencionPosiciones retencionPosiciones;
+    private final OdometroPruebas odometroPruebas;
 
     @Autowired // Opcional si solo tienes un constructor a partir de Spring 4.3
-    public PruebaController(PruebaService pruebaService) {
+    public PruebaController(PruebaService pruebaService, RegistroPruebasActivas registroPruebasActivas, TrayectoriaService trayectoriaService,
+                            RetencionPosiciones retencionPosiciones, OdometroPruebas odometroPruebas) {
         this.pruebaService = pruebaService;
+        this.registroPruebasActivas = registroPruebasActivas;
+        this.trayectoriaService = trayectoriaService;
+        this.retencionPosiciones = retencionPosiciones;
+        this.odometroPruebas = odometroPruebas;
     }
 
     // Obtener todas las pruebas, para el front
@@ -92,6 +111,24 @@ public class PruebaController {
         return ResponseEntity.ok(pruebas);
     }
 
+    // Estado del registro en memoria de pruebas en curso que usa el registro de posiciones.
+    @GetMapping("/en-curso/registro/estado")
+    public ResponseEntity<EstadoRegistroPruebasDto> getEstadoRegistroPruebas() {
+        return ResponseEntity.ok(registroPruebasActivas.getEstado());
+    }
+
+    // Estado de la retención de posiciones de pruebas finalizadas: pruebas submuestreadas, resumidas y posiciones borradas.
+    @GetMapping("/retencion/estado")
+    public ResponseEntity<EstadoRetencionDto> getEstadoRetencion() {
+        return ResponseEntity.ok(retencionPosiciones.getEstado());
+    }
+
+    // Estado del odómetro de las pruebas: distancias guardadas, finalizadas recalculadas y pruebas viejas que faltan completar.
+    @GetMapping("/odometro/estado")
+    public ResponseEntity<EstadoOdometroDto> getEstadoOdometro() {
+        return ResponseEntity.ok(odometroPruebas.getEstado());
+    }
+
     //endpoint para finalizar prueba, c)
     /**
      * Endpoint para finalizar una prueba en curso.
@@ -133,4 +170,53 @@ public class PruebaController {
         }
         return ResponseEntity.ok(pruebas);
     }
+
+    /**
+     * Recorrido de la prueba simplificado (Douglas–Peucker) para dibujarlo en un mapa, sin modificar la base.
+     *
+     * @param tolerancia Opcional. Distancia en metros que se puede alejar el recorrido simplificado del original; 0 devuelve todos los puntos.
+     * @param medida     Opcional. ESPACIAL descarta más puntos; TEMPORAL conserva además las paradas y los cambios de velocidad.
+     */
+    @GetMapping("/{id}/trayectoria")
+    public ResponseEntity<?> getTrayectoria(@PathVariable Integer id,
+                                            @RequestParam(required = false) Double tolerancia,
+                                            @RequestParam(required = false) SimplificadorTrayectoria.Medida medida) {
+        try {
+            return ResponseEntity.ok(trayectoriaService.obtener(id, tolerancia, medida));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * El mismo recorrido en el formato comprimido de {@link TrayectoriaComprimida} (delta de delta, unos pocos bytes por
+     * punto), para quien lo pida con {@code Accept: application/x-agencia-trayectoria}.
+     */
+    @GetMapping(value = "/{id}/trayectoria", produces = TrayectoriaComprimida.MEDIA_TYPE)
+    public ResponseEntity<?> getTrayectoriaComprimida(@PathVariable Integer id,
+                                                      @RequestParam(required = false) Double tolerancia,
+                                                      @RequestParam(required = false) SimplificadorTrayectoria.Medida medida) {
+        try {
+            return ResponseEntity.ok(trayectoriaService.obtenerComprimida(id, tolerancia, medida));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Borra las posiciones de una prueba finalizada que no cambian su recorrido, manteniendo el kilometraje
+     * dentro del error configurado. Devuelve el recorrido que quedó guardado.
+     */
+    @PostMapping("/{id}/trayectoria/compactar")
+    public ResponseEntity<?> compactarTrayectoria(@PathVariable Integer id) {
+        try {
+            TrayectoriaDto trayectoria = trayectoriaService.compactar(id);
+            return ResponseEntity.ok(trayectoria);
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage().contains("no encontrada")) {
+                return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
 }
@@ -1,62 +1,200 @@
 package org.example.controller;
 
+import org.example.dtos.PedidoReporteDto;
+import org.example.dtos.ResumenFlotaDto;
+import org.example.dtos.TotalesFlotaDto;
+import org.example.dtos.TrabajoReporteDto;
 import org.example.service.ReporteService;
+import org.example.service.ResumenesDiarios;
+import org.example.service.TrabajosReporte;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.reporte.PedidoReporte;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/reportes")
 public class ReporteController {
 
     private final ReporteService reporteService;
+    private final ResumenesDiarios resumenesDiarios;
+    private final TrabajosReporte trabajosReporte;
 
     @Autowired
-    public ReporteController(ReporteService reporteService) {
+    public ReporteController(ReporteService reporteService, ResumenesDiarios resumenesDiarios, TrabajosReporte trabajosReporte) {
         this.reporteService = reporteService;
+        this.resumenesDiarios = resumenesDiarios;
+        this.trabajosReporte = trabajosReporte;
     }
 
+    // Los reportes se escriben a medida que se leen (ver ReporteService); ?format= elige text (por defecto), csv o ndjson.
     @GetMapping("/incidentes")
-    public ResponseEntity<String> getReportePruebasConIncidentes() {
-        String reporte = reporteService.generarReporteIncidentes();
-        return ResponseEntity.ok(reporte);
+    public ResponseEntity<StreamingResponseBody> getReportePruebasConIncidentes(@RequestParam(defaultValue = "text") String format) {
+        return reporte(format, reporteService::reporteIncidentes);
     }
 
     @GetMapping("/incidentes/empleado/{legajo}")
-    public ResponseEntity<String> getReporteIncidentesPorEmpleado(@PathVariable Long legajo) {
-        String reporte = reporteService.generarReporteIncidentesPorEmpleado(legajo);
-        if (reporte.contains("no encontrado")) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(reporte);
-        }
-        return ResponseEntity.ok(reporte);
+    public ResponseEntity<StreamingResponseBody> getReporteIncidentesPorEmpleado(@PathVariable Long legajo,
+                                                                                       @RequestParam(defaultValue = "text") String format) {
+        return reporte(format, formato -> reporteService.reporteIncidentesPorEmpleado(legajo, formato));
     }
 
     @GetMapping("/vehiculo/{patente}")
-    public ResponseEntity<String> getReporteDePruebasPorVehiculo(@PathVariable String patente) {
-        String reporte = reporteService.generarReportePruebasPorVehiculo(patente);
-        if (reporte.contains("no encontrado")) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(reporte);
-        }
-        return ResponseEntity.ok(reporte);
+    public ResponseEntity<StreamingResponseBody> getReporteDePruebasPorVehiculo(@PathVariable String patente,
+                                                                                      @RequestParam(defaultValue = "text") String format) {
+        return reporte(format, formato -> reporteService.reportePruebasPorVehiculo(patente, formato));
     }
 
     @GetMapping("/kilometraje/{patente}")
-    public ResponseEntity<String> getReporteKilometraje(
+    public ResponseEntity<StreamingResponseBody> getReporteKilometraje(
             @PathVariable String patente,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date fechaInicio,
-            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date fechaFin) {
-        String reporte = reporteService.generarReporteKilometraje(patente, fechaInicio, fechaFin);
-        if (reporte.contains("no encontrado")) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(reporte);
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date fechaFin,
+            @RequestParam(defaultValue = "text") String format) {
+        return reporte(format, fechaInicio, fechaFin, formato -> reporteService.reporteKilometraje(patente, fechaInicio, fechaFin, formato));
+    }
+
+    // Todos los vehículos del período (ver KilometrajeFlota), de mayor a menor kilometraje y con el total de la flota.
+    @GetMapping("/kilometraje")
+    public ResponseEntity<StreamingResponseBody> getReporteKilometrajeFlota(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date fechaInicio,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date fechaFin,
+            @RequestParam(defaultValue = "text") String format) {
+        return reporte(format, fechaInicio, fechaFin, formato -> reporteService.reporteKilometrajeFlota(fechaInicio, fechaFin, formato));
+    }
+
+    // Igual que en PedidoReporte: un período invertido es un error del pedido, no un reporte vacío.
+    private ResponseEntity<StreamingResponseBody> reporte(String format, Date fechaInicio, Date fechaFin,
+                                                          Function<FormatoReporte, StreamingResponseBody> reporte) {
+        if (fechaInicio.after(fechaFin)) {
+            return error(HttpStatus.BAD_REQUEST, "La fecha de inicio es posterior a la fecha de fin.");
+        }
+        return reporte(format, reporte);
+    }
+
+    // Un formato desconocido es 400; un empleado o vehículo inexistente, 404 antes de empezar a escribir. El mensaje
+    // también va como StreamingResponseBody: Spring solo escribe así un ResponseEntity declarado con ese tipo.
+    private ResponseEntity<StreamingResponseBody> reporte(String format, Function<FormatoReporte, StreamingResponseBody> reporte) {
+        FormatoReporte formato;
+        try {
+            formato = FormatoReporte.desde(format);
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        try {
+            return ResponseEntity.ok().contentType(formato.getMediaType()).body(reporte.apply(formato));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<StreamingResponseBody> error(HttpStatus estado, String mensaje) {
+        return ResponseEntity.status(estado).contentType(FormatoReporte.TEXT.getMediaType())
+                .body(salida -> salida.write(mensaje.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Reportes en segundo plano (ver TrabajosReporte): el POST devuelve el trabajo, que se consulta hasta que su estado
+    // es TERMINADO y entonces se descarga el archivo.
+    @PostMapping("/jobs")
+    public ResponseEntity<?> enviarTrabajo(@RequestBody PedidoReporteDto pedidoDto) {
+        PedidoReporte pedido;
+        try {
+            pedido = PedidoReporte.desde(pedidoDto);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            TrabajoReporteDto trabajo = conDescarga(trabajosReporte.enviar(pedido));
+            return ResponseEntity.accepted().location(URI.create("/api/reportes/jobs/" + trabajo.getId())).body(trabajo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<TrabajoReporteDto> getTrabajo(@PathVariable String id) {
+        return trabajosReporte.consultar(id)
+                .map(trabajo -> ResponseEntity.ok(conDescarga(trabajo)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs/{id}/descarga")
+    public ResponseEntity<?> descargarTrabajo(@PathVariable String id) {
+        try {
+            TrabajosReporte.Archivo archivo = trabajosReporte.archivo(id);
+            return ResponseEntity.ok()
+                    .contentType(archivo.formato().getMediaType())
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                            .filename("reporte-" + archivo.ruta().getFileName()).build().toString())
+                    .body(new FileSystemResource(archivo.ruta()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    private static TrabajoReporteDto conDescarga(TrabajoReporteDto trabajo) {
+        if (TrabajosReporte.Estado.TERMINADO.name().equals(trabajo.getEstado())) {
+            trabajo.setDescarga("/api/reportes/jobs/" + trabajo.getId() + "/descarga");
+        }
+        return trabajo;
+    }
+
+    // Los reportes de la flota leen los resúmenes diarios (ver ResumenesDiarios), no las pruebas.
+    @GetMapping("/flota")
+    public ResponseEntity<ResumenFlotaDto> getResumenFlota(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaInicio,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaFin) {
+        try {
+            return ResponseEntity.ok(resumenesDiarios.resumenFlota(fechaInicio, fechaFin));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/flota/diario")
+    public ResponseEntity<List<TotalesFlotaDto>> getResumenFlotaPorDia(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaInicio,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaFin) {
+        try {
+            return ResponseEntity.ok(resumenesDiarios.resumenPorDia(fechaInicio, fechaFin));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/flota/reconstruir")
+    public ResponseEntity<String> reconstruirResumenesFlota(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaInicio,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate fechaFin) {
+        try {
+            int filas = resumenesDiarios.reconstruir(fechaInicio, fechaFin);
+            return ResponseEntity.ok("Resúmenes reconstruidos del " + fechaInicio + " al " + fechaFin + ": " + filas + " filas.");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
-        return ResponseEntity.ok(reporte);
     }
-}
\ No newline at end of file
+}
@@ -1,36 +1,72 @@
 package org.example.controller;
 
+import org.example.dtos.EstadoAlertasDto;
+import org.example.dtos.EstadoEscrituraPosicionesDto;
+import org.example.dtos.EstadoEtapaDto;
+import org.example.dtos.EstadoRestriccionesDto;
+import org.example.dtos.EventoPosicionDto;
 import org.example.dtos.PosicionDto;
+import org.example.dtos.UltimaPosicionDto;
 import org.example.dtos.externos.RestriccionesDto;
+import org.example.service.AlertasVehiculos;
+import org.example.service.EscritorPosiciones;
+import org.example.service.KafkaProducer;
+import org.example.service.MetricasEtapas;
+import org.example.service.RestriccionesService;
+import org.example.service.TransmisionPosiciones;
+import org.example.service.UltimaPosicion;
+import org.example.service.UltimasPosiciones;
 import org.example.service.VehiculoService;
+import org.example.service.geocerca.VeredictoGeocerca;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/vehiculos") // La URL base para este controlador
 public class VehiculoController {
     private final VehiculoService vehiculoService;
+    private final RestriccionesService restriccionesService;
+    private final EscritorPosiciones escritorPosiciones;
+    private final MetricasEtapas metricasEtapas;
+    private final AlertasVehiculos alertasVehiculos;
+    private final KafkaProducer kafkaProducer;
+    private final UltimasPosiciones ultimasPosiciones;
+    private final TransmisionPosiciones transmisionPosiciones;
 
     @Autowired
-    public VehiculoController(VehiculoService vehiculoService) {
+    public VehiculoController(VehiculoService vehiculoService, RestriccionesService restriccionesService, EscritorPosiciones escritorPosiciones, MetricasEtapas metricasEtapas, AlertasVehiculos alertasVehiculos, KafkaProducer kafkaProducer, UltimasPosiciones ultimasPosiciones, TransmisionPosiciones transmisionPosiciones) {
         this.vehiculoService = vehiculoService;
-
+        this.restriccionesService = restriccionesService;
+        this.escritorPosiciones = escritorPosiciones;
+        this.metricasEtapas = metricasEtapas;
+        this.alertasVehiculos = alertasVehiculos;
+        this.kafkaProducer = kafkaProducer;
+        this.ultimasPosiciones = ultimasPosiciones;
+        this.transmisionPosiciones = transmisionPosiciones;
     }
 
     /**
      * Recibe una nueva posición de vehículo, la procesa de forma reactiva y
      * devuelve el resultado.
      * @param posicionDto El DTO con la información de la posición.
+     * @param durabilidad Opcional. SINCRONA espera a que la posición quede guardada y la devuelve con su id;
+     *                    ASINCRONA responde apenas se conoce el veredicto. Si no se indica se usa la configurada.
      * @return Un Mono que emite la ResponseEntity con el resultado o el error.
      */
     // Nota: Tenías @PostMapping duplicado, he dejado solo uno.
     @PostMapping("/posicion/new")
-    public Mono<ResponseEntity<?>> crearPosicion(@RequestBody PosicionDto posicionDto) {
+    public Mono<ResponseEntity<?>> crearPosicion(@RequestBody PosicionDto posicionDto,
+                                                 @RequestParam(required = false) EscritorPosiciones.Durabilidad durabilidad) {
         // Se llama al servicio, que devuelve una "promesa" de que en el futuro llegará un PosicionDto (Mono<PosicionDto>). El flujo continúa de inmediato sin bloquearse.
-        return vehiculoService.procesarPosicion(posicionDto)
+        return vehiculoService.procesarPosicion(posicionDto, durabilidad != null ? durabilidad : escritorPosiciones.getDurabilidadPorDefecto())
                 .map(posicionProcesada -> {
                     // Al castear posicionProcesada a (Object), ResponseEntity.ok()
                     // creará un ResponseEntity<Object>.
@@ -53,6 +89,35 @@ public class VehiculoController {
                 .map(responseEntity -> (ResponseEntity<?>) responseEntity);
     }
 
+    /**
+     * Recibe un lote de posiciones (de uno o varios vehículos) y las registra todas juntas.
+     * Responde 200 con un resultado por posición, en el mismo orden del lote; las posiciones inválidas
+     * vienen como RECHAZADA sin afectar al resto. Un lote vacío o demasiado grande responde 400.
+     */
+    @PostMapping("/posiciones/batch")
+    public Mono<ResponseEntity<?>> crearPosiciones(@RequestBody List<PosicionDto> posiciones) {
+        return vehiculoService.procesarLotePosiciones(posiciones)
+                .map(resultados -> ResponseEntity.ok((Object) resultados))
+                .onErrorResume(IllegalArgumentException.class, ex -> Mono.just(ResponseEntity.badRequest().body(ex.getMessage())))
+                .onErrorResume(IllegalStateException.class, ex -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage())))
+                .map(responseEntity -> (ResponseEntity<?>) responseEntity);
+    }
+
+    /**
+     * Publica la posición en agencia-posiciones-topic sin procesarla: responde 202 cuando Kafka la confirmó y
+     * la procesa después ConsumidorPosiciones, junto con las demás del mismo poll. No devuelve veredicto.
+     */
+    @PostMapping("/posiciones/publicar")
+    public Mono<ResponseEntity<?>> publicarPosicion(@RequestBody PosicionDto posicionDto) {
+        if (posicionDto.getVehiculo() == null || posicionDto.getVehiculo().getId() == null || posicionDto.getCoordenadas() == null) {
+            return Mono.just(ResponseEntity.badRequest().body("La posición no indica el vehículo o sus coordenadas."));
+        }
+        return kafkaProducer.publicarPosicion(posicionDto)
+                .map(enviado -> ResponseEntity.accepted().<Object>build())
+                .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("No se pudo publicar la posición: " + ex.getMessage())))
+                .map(responseEntity -> (ResponseEntity<?>) responseEntity);
+    }
+
     // Este método escuchará peticiones POST en /api/vehiculos/posiciones
     /**
      * Endpoint de depuración para obtener las restricciones actuales. del serivicio externo.
@@ -61,4 +126,68 @@ public class VehiculoController {
     public Mono<RestriccionesDto> getRestriccionesActuales() {
         return vehiculoService.getRestriccionesActuales();
     }
+
+    /**
+     * Estado de la foto en memoria de las restricciones: antigüedad y contadores de refrescos.
+     */
+    @GetMapping("/restricciones-actuales/estado")
+    public ResponseEntity<EstadoRestriccionesDto> getEstadoRestricciones() {
+        return ResponseEntity.ok(restriccionesService.getEstado());
+    }
+
+    /**
+     * Estado del escritor de posiciones: profundidad de la cola y latencia de los commits por grupo.
+     */
+    @GetMapping("/posiciones/escritura/estado")
+    public ResponseEntity<EstadoEscrituraPosicionesDto> getEstadoEscritura() {
+        return ResponseEntity.ok(escritorPosiciones.getEstado());
+    }
+
+    /**
+     * Latencia por etapa del procesamiento de posiciones (restricciones, persistencia, geocerca, incidente, lote).
+     */
+    @GetMapping("/posiciones/etapas/estado")
+    public ResponseEntity<List<EstadoEtapaDto>> getEstadoEtapas() {
+        return ResponseEntity.ok(metricasEtapas.getEstado());
+    }
+
+    /**
+     * Estado de las alertas por vehículo: cuántos vehículos están en incidente y cuántas alertas se enviaron o se resumieron.
+     */
+    @GetMapping("/alertas/estado")
+    public ResponseEntity<EstadoAlertasDto> getEstadoAlertas() {
+        return ResponseEntity.ok(alertasVehiculos.getEstado());
+    }
+
+    /**
+     * Última posición conocida del vehículo, desde memoria (ver UltimasPosiciones): no consulta la base.
+     * 404 si el vehículo no registró ninguna posición.
+     */
+    @GetMapping("/{id}/ultima-posicion")
+    public ResponseEntity<UltimaPosicionDto> getUltimaPosicion(@PathVariable Integer id) {
+        UltimaPosicion ultima = ultimasPosiciones.buscar(id);
+        return ultima != null ? ResponseEntity.ok(new UltimaPosicionDto(ultima)) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Última posición de cada vehículo con una prueba en curso, también desde memoria.
+     */
+    @GetMapping("/posiciones/actuales")
+    public ResponseEntity<List<UltimaPosicionDto>> getPosicionesActuales() {
+        return ResponseEntity.ok(ultimasPosiciones.deVehiculosEnPrueba().stream().map(UltimaPosicionDto::new).toList());
+    }
+
+    /**
+     * Posiciones aceptadas y su veredicto de geocerca a medida que se procesan (Server-Sent Events), en lugar de
+     * consultar /api/pruebas/en-curso periódicamente. Los filtros son opcionales; con politica=RESUMIR un cliente
+     * lento recibe solo la última posición de cada vehículo, con DESCARTAR (por defecto) pierde las más viejas.
+     */
+    @GetMapping(value = "/posiciones/en-vivo", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<EventoPosicionDto>> getPosicionesEnVivo(@RequestParam(required = false) Integer idVehiculo,
+                                                                       @RequestParam(required = false) Integer idPrueba,
+                                                                       @RequestParam(required = false) VeredictoGeocerca veredicto,
+                                                                       @RequestParam(required = false) TransmisionPosiciones.Politica politica) {
+        return transmisionPosiciones.suscribir(idVehiculo, idPrueba, veredicto,
+                politica != null ? politica : TransmisionPosiciones.Politica.DESCARTAR);
+    }
 }
\ No newline at end of file
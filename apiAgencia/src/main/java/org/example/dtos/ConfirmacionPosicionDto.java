@@ -0,0 +1,20 @@
+package org.example.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Respuesta a cada posición del canal WebSocket: la misma PosicionDto que devuelve POST /posicion/new,
+ * o el motivo del rechazo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConfirmacionPosicionDto {
+    private Long secuencia;
+    private PosicionDto posicion;
+    private String error;
+}
@@ -0,0 +1,17 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class EstadoAlertasDto {
+    private int vehiculosSeguidos;
+    private int vehiculosEnIncidente;
+    private long posicionesEvaluadas;
+    private long entradas;
+    private long salidas;
+    private long latidos;
+    private long alertasSuprimidas;
+    private long enviosFallidos;
+}
@@ -0,0 +1,22 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class EstadoEscrituraPosicionesDto {
+    private int profundidadCola;
+    private int capacidadCola;
+    private String durabilidadPorDefecto;
+    private long encoladas;
+    private long escritas;
+    private long fallidas;
+    private long rechazadas;
+    private long grupos;
+    private long gruposReintentados;
+    private int ultimoGrupo;
+    private double latenciaCommitPromedioMs;
+    private double latenciaCommitMaximaMs;
+    private String ultimoError;
+}
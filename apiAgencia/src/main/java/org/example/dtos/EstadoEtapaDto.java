@@ -0,0 +1,19 @@
+package org.example.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EstadoEtapaDto {
+    private String etapa;
+    private long cantidad;
+    private long errores;
+    private double promedioMs;
+    // Los percentiles son aproximados: se informa el límite superior del rango (potencia de 2 en microsegundos) que los contiene.
+    private double p50Ms;
+    private double p99Ms;
+    private double maximoMs;
+}
@@ -0,0 +1,20 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class EstadoOdometroDto {
+    private long posicionesSumadas;
+    private long distanciasGuardadas;
+    private long finalizadasConOdometro;
+    private long finalizadasRecalculadas;
+    private boolean completando;
+    private long pruebasCompletadas;
+    private long pruebasSinDistancia;
+    private Date ultimaCompletadaEn;
+    private long errores;
+}
@@ -0,0 +1,22 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class EstadoRegistroPruebasDto {
+    private int pruebasActivas;
+    private long consultasResueltasEnMemoria;
+    private long consultasResueltasEnBase;
+    private long consultasResueltasSinPrueba;
+    private int vehiculosSinPrueba;
+    private long reconciliaciones;
+    private Date ultimaReconciliacionEn;
+    private int diferenciasUltimaReconciliacion;
+    private long diferenciasTotales;
+    private long incidentesGuardados;
+    private long incidentesYaMarcados;
+}
@@ -0,0 +1,20 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class EstadoRestriccionesDto {
+    private boolean disponible;
+    private Date obtenidaEn;
+    private Long antiguedadMs;
+    private boolean vencida;
+    private long refrescosExitosos;
+    private long refrescosFallidos;
+    private long fallosConsecutivos;
+    private Date ultimoFalloEn;
+    private String ultimoError;
+}
@@ -0,0 +1,20 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class EstadoRetencionDto {
+    private boolean ejecutando;
+    private long ejecuciones;
+    private Date ultimaEjecucionEn;
+    private long duracionUltimaEjecucionMs;
+    private long resumenesCreados;
+    private long pruebasSubmuestreadas;
+    private long pruebasResumidas;
+    private long posicionesBorradas;
+    private long errores;
+}
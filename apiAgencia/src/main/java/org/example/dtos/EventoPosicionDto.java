@@ -0,0 +1,25 @@
+package org.example.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.service.geocerca.VeredictoGeocerca;
+
+/**
+ * Una posición aceptada con su veredicto de geocerca, tal como se envía por GET /api/vehiculos/posiciones/en-vivo.
+ * El id de la posición viene nulo si se respondió sin esperar el commit (durabilidad ASINCRONA o lote).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoPosicionDto {
+    private Integer idPosicion;
+    private Integer idVehiculo;
+    private String patente;
+    private Integer idPrueba;
+    private Long fechaHora;
+    private Double latitud;
+    private Double longitud;
+    private VeredictoGeocerca veredicto;
+    private String mensaje;
+}
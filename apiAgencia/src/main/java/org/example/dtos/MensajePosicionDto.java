@@ -0,0 +1,19 @@
+package org.example.dtos;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Una posición enviada por el canal WebSocket. La secuencia la elige el vehículo y vuelve en la confirmación,
+ * así puede asociar cada respuesta con su posición aunque las confirmaciones lleguen en otro orden.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MensajePosicionDto {
+    private Long secuencia;
+    private PosicionDto posicion;
+}
@@ -0,0 +1,17 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+public class PedidoReporteDto {
+    private String tipo;
+    private Long legajo;
+    private String patente;
+    private LocalDate fechaInicio;
+    private LocalDate fechaFin;
+    private String format;
+}
@@ -10,6 +10,10 @@ public class PosicionDto {
     private VehiculoDto vehiculo;
     private Coordenadas coordenadas;
     private String mensaje;
+    // Cuándo tomó la posición el vehículo (epoch en milisegundos). Opcional: si no viene, se usa la hora de llegada.
+    // En el formato binario (PosicionBinaria) viaja desde la versión 2; por Kafka, si no viene, se toma del timestamp
+    // del registro.
+    private Long fechaHora;
 
     @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -0,0 +1,27 @@
+package org.example.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de una posición dentro de un lote: en qué lugar del lote venía, de qué vehículo es y qué pasó con ella.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoPosicionDto {
+    private int indice;
+    private Integer idVehiculo;
+    private String patente;
+    private Estado estado;
+    private String mensaje;
+
+    public enum Estado {
+        REGISTRADA,
+        FUERA_DE_RADIO,
+        EN_ZONA_RESTRINGIDA,
+        // No se guardó: datos incompletos, vehículo inexistente o sin prueba en curso.
+        RECHAZADA
+    }
+}
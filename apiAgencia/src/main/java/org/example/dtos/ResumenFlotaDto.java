@@ -0,0 +1,16 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ResumenFlotaDto {
+    private LocalDate fechaInicio;
+    private LocalDate fechaFin;
+    private TotalesFlotaDto totales;
+    private List<TotalesFlotaDto> vehiculos;
+}
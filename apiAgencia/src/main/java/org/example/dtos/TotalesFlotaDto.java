@@ -0,0 +1,26 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Totales de los resúmenes diarios en un período: de un vehículo (con {@code idVehiculo} y {@code patente}), de la flota
+ * en un día (con {@code dia}) o de toda la flota. Las pruebas finalizadas, la duración, los kilómetros y los incidentes
+ * corresponden a las pruebas que terminaron en el período.
+ */
+@Data
+@NoArgsConstructor
+public class TotalesFlotaDto {
+    private Integer idVehiculo;
+    private String patente;
+    private LocalDate dia;
+    private long pruebasIniciadas;
+    private long pruebasFinalizadas;
+    private long duracionSegundos;
+    private double distanciaKm;
+    private long incidentes;
+    private long empleados;
+    private long interesados;
+}
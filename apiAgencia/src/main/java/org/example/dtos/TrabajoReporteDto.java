@@ -0,0 +1,22 @@
+package org.example.dtos;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class TrabajoReporteDto {
+    private String id;
+    private String tipo;
+    private String format;
+    private String estado;
+    private long bytesEscritos;
+    private Date creadoEn;
+    private Date iniciadoEn;
+    private Date terminadoEn;
+    private Date venceEn;
+    private String error;
+    private String descarga;
+}
@@ -0,0 +1,32 @@
+package org.example.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Recorrido de una prueba, simplificado con una tolerancia en metros (ver SimplificadorTrayectoria).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrayectoriaDto {
+    private Integer idPrueba;
+    private Integer idVehiculo;
+    private int puntosOriginales;
+    private double toleranciaMetros;
+    private double distanciaOriginalKm;
+    private double distanciaKm;
+    private List<Punto> puntos;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Punto {
+        private long fechaHora;
+        private double latitud;
+        private double longitud;
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.service.UltimaPosicion;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UltimaPosicionDto {
+    private Integer idVehiculo;
+    private String patente;
+    private Long fechaHora;
+    private Double latitud;
+    private Double longitud;
+
+    public UltimaPosicionDto(UltimaPosicion ultima) {
+        this.idVehiculo = ultima.idVehiculo();
+        this.patente = ultima.patente();
+        this.fechaHora = ultima.fechaHora();
+        this.latitud = ultima.latitud();
+        this.longitud = ultima.longitud();
+    }
+}
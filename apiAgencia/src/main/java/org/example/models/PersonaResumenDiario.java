@@ -0,0 +1,55 @@
+package org.example.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Un empleado o interesado que participó de una prueba de un vehículo en un día. Sirve para contar personas distintas
+ * por vehículo y día (ResumenDiarioVehiculo) y en un período de toda la flota sin volver a leer Pruebas.
+ * La tabla se crea con DDL.sql.
+ */
+@Entity
+@Table(name = "ResumenesDiariosPersonas")
+@IdClass(PersonaResumenDiario.Clave.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PersonaResumenDiario {
+
+    public enum Tipo {
+        EMPLEADO,
+        INTERESADO
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private Integer idVehiculo;
+        private Integer dia;
+        private Tipo tipo;
+        private Long idPersona;
+    }
+
+    @Id
+    @Column(name = "ID_VEHICULO")
+    private Integer idVehiculo;
+
+    @Id
+    @Column(name = "DIA")
+    private Integer dia;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "TIPO")
+    private Tipo tipo;
+
+    // Legajo del empleado o id del interesado.
+    @Id
+    @Column(name = "ID_PERSONA")
+    private Long idPersona;
+}
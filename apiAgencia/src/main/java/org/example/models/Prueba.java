@@ -46,6 +46,10 @@ public class Prueba {
     @Column(name = "INCIDENTE")
     private Boolean incidente = false;
 
+    // Kilómetros recorridos en la prueba (ver OdometroPruebas). Null si todavía no se calcularon.
+    @Column(name = "DISTANCIA_KM")
+    private Double distanciaKm;
+
     public Prueba(Vehiculo vehiculo, Interesado interesado, Empleado empleado, Date fechaHoraInicio) {
         this.vehiculo = vehiculo;
         this.interesado = interesado;
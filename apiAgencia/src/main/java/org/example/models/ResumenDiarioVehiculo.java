@@ -0,0 +1,66 @@
+package org.example.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Totales de un vehículo en un día (ver ResumenesDiarios): las pruebas que empezaron ese día y las que terminaron,
+ * con la duración, los kilómetros y los incidentes de las que terminaron. El día es un entero aaaammdd en la zona
+ * horaria del servidor, la misma con la que se arman los períodos de los reportes.
+ * La tabla se crea con DDL.sql.
+ */
+@Entity
+@Table(name = "ResumenesDiarios")
+@IdClass(ResumenDiarioVehiculo.Clave.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenDiarioVehiculo {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private Integer idVehiculo;
+        private Integer dia;
+    }
+
+    @Id
+    @Column(name = "ID_VEHICULO")
+    private Integer idVehiculo;
+
+    @Id
+    @Column(name = "DIA")
+    private Integer dia;
+
+    @Column(name = "PRUEBAS_INICIADAS", nullable = false)
+    private int pruebasIniciadas;
+
+    @Column(name = "PRUEBAS_FINALIZADAS", nullable = false)
+    private int pruebasFinalizadas;
+
+    @Column(name = "DURACION_SEGUNDOS", nullable = false)
+    private long duracionSegundos;
+
+    @Column(name = "DISTANCIA_KM", nullable = false)
+    private double distanciaKm;
+
+    @Column(name = "INCIDENTES", nullable = false)
+    private int incidentes;
+
+    // Empleados e interesados distintos de las pruebas iniciadas ese día (los ids están en ResumenesDiariosPersonas).
+    @Column(name = "EMPLEADOS", nullable = false)
+    private int empleados;
+
+    @Column(name = "INTERESADOS", nullable = false)
+    private int interesados;
+
+    public ResumenDiarioVehiculo(Integer idVehiculo, Integer dia) {
+        this.idVehiculo = idVehiculo;
+        this.dia = dia;
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Lo que queda de una prueba finalizada cuando la retención de posiciones (RetencionPosiciones) submuestrea o borra
+ * sus posiciones. Se calcula una sola vez, con todas las posiciones, antes de borrar ninguna; así los reportes siguen
+ * usando la distancia real aunque en Posiciones queden pocos puntos o ninguno.
+ * La tabla se crea con DDL.sql.
+ */
+@Entity
+@Table(name = "ResumenesPruebas")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenPrueba {
+
+    public enum Nivel {
+        // Resumen calculado; las posiciones todavía no se tocaron (o se cortó a mitad del submuestreo).
+        COMPLETA,
+        // Queda una posición cada tantos segundos.
+        SUBMUESTREADA,
+        // No quedan posiciones: solo este resumen.
+        RESUMIDA
+    }
+
+    @Id
+    @Column(name = "ID_PRUEBA")
+    private Integer idPrueba;
+
+    @Column(name = "ID_VEHICULO", nullable = false)
+    private Integer idVehiculo;
+
+    @Column(name = "FECHA_HORA_INICIO", nullable = false)
+    private Date fechaHoraInicio;
+
+    @Column(name = "FECHA_HORA_FIN", nullable = false)
+    private Date fechaHoraFin;
+
+    @Column(name = "DISTANCIA_KM", nullable = false)
+    private Double distanciaKm;
+
+    @Column(name = "DURACION_SEGUNDOS", nullable = false)
+    private Long duracionSegundos;
+
+    // Cantidad de posiciones que tenía la prueba al calcular el resumen.
+    @Column(name = "POSICIONES", nullable = false)
+    private Integer posiciones;
+
+    // Rectángulo que contiene el recorrido (null si la prueba no tuvo posiciones).
+    @Column(name = "LATITUD_MIN")
+    private Double latitudMin;
+
+    @Column(name = "LATITUD_MAX")
+    private Double latitudMax;
+
+    @Column(name = "LONGITUD_MIN")
+    private Double longitudMin;
+
+    @Column(name = "LONGITUD_MAX")
+    private Double longitudMax;
+
+    @Column(name = "INCIDENTE", nullable = false)
+    private Boolean incidente = false;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "NIVEL", nullable = false)
+    private Nivel nivel = Nivel.COMPLETA;
+}
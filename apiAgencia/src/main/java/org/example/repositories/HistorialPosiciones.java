@@ -0,0 +1,32 @@
+package org.example.repositories;
+
+import org.example.models.Posicion;
+import org.example.service.trayectoria.Trayectoria;
+
+import java.util.List;
+
+/**
+ * Lectura de recorridos (posiciones de un vehículo en un rango de fechas) para los reportes y las trayectorias,
+ * sin pasar por una entidad {@link Posicion} por fila. Hay dos implementaciones, según
+ * {@code agencia.posiciones.columnar.habilitado}:
+ * <ul>
+ *   <li>{@link HistorialPosicionesJpa} (por defecto): lee la tabla Posiciones con {@link PosicionRepository}.</li>
+ *   <li>{@link org.example.repositories.columnar.AlmacenColumnarPosiciones}: segmentos en disco por vehículo y día,
+ *   leídos con buffers mapeados en memoria.</li>
+ * </ul>
+ * La tabla Posiciones sigue siendo la fuente de verdad (ids, borrados, retención); el almacén columnar es una copia
+ * de solo agregado que se alimenta con {@link #registrar} después de cada commit y se poda por días enteros.
+ */
+public interface HistorialPosiciones {
+
+    /**
+     * Agrega posiciones que ya se guardaron en Posiciones. Las de un mismo vehículo deberían llegar en orden de fecha.
+     * No lanza excepciones: la posición ya está guardada y quien llama sigue con lo que hace después del commit.
+     */
+    void registrar(List<Posicion> posiciones);
+
+    /**
+     * @return las posiciones del vehículo entre las dos fechas (inclusive, en milisegundos), ordenadas por fecha.
+     */
+    Trayectoria buscarTrayectoria(Integer idVehiculo, long desde, long hasta);
+}
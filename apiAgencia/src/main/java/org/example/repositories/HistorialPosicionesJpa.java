@@ -0,0 +1,33 @@
+package org.example.repositories;
+
+import org.example.models.Posicion;
+import org.example.service.trayectoria.Trayectoria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * {@link HistorialPosiciones} sobre la tabla Posiciones: las posiciones ya están ahí, así que registrar no hace nada.
+ */
+@Repository
+@ConditionalOnProperty(name = "agencia.posiciones.columnar.habilitado", havingValue = "false", matchIfMissing = true)
+public class HistorialPosicionesJpa implements HistorialPosiciones {
+
+    private final PosicionRepository posicionRepository;
+
+    @Autowired
+    public HistorialPosicionesJpa(PosicionRepository posicionRepository) {
+        this.posicionRepository = posicionRepository;
+    }
+
+    @Override
+    public void registrar(List<Posicion> posiciones) {
+    }
+
+    @Override
+    public Trayectoria buscarTrayectoria(Integer idVehiculo, long desde, long hasta) {
+        return Trayectoria.de(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(idVehiculo, desde, hasta));
+    }
+}
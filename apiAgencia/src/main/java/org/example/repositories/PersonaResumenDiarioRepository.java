@@ -0,0 +1,41 @@
+package org.example.repositories;
+
+import org.example.models.PersonaResumenDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PersonaResumenDiarioRepository extends JpaRepository<PersonaResumenDiario, PersonaResumenDiario.Clave> {
+
+    /*
+        Empleados e interesados distintos de cada vehiculo entre dos dias: idVehiculo, tipo y cantidad.
+        Una persona que probo el mismo vehiculo varios dias cuenta una sola vez.
+    */
+    @Query("SELECT p.idVehiculo, p.tipo, COUNT(DISTINCT p.idPersona) FROM PersonaResumenDiario p " +
+            "WHERE p.dia BETWEEN :desde AND :hasta GROUP BY p.idVehiculo, p.tipo")
+    List<Object[]> distintasPorVehiculo(@Param("desde") Integer desde, @Param("hasta") Integer hasta);
+
+    /*
+        Empleados e interesados distintos de toda la flota en cada dia: dia, tipo y cantidad.
+    */
+    @Query("SELECT p.dia, p.tipo, COUNT(DISTINCT p.idPersona) FROM PersonaResumenDiario p " +
+            "WHERE p.dia BETWEEN :desde AND :hasta GROUP BY p.dia, p.tipo")
+    List<Object[]> distintasPorDia(@Param("desde") Integer desde, @Param("hasta") Integer hasta);
+
+    /*
+        Empleados e interesados distintos de toda la flota en el periodo: tipo y cantidad.
+    */
+    @Query("SELECT p.tipo, COUNT(DISTINCT p.idPersona) FROM PersonaResumenDiario p " +
+            "WHERE p.dia BETWEEN :desde AND :hasta GROUP BY p.tipo")
+    List<Object[]> distintasEnPeriodo(@Param("desde") Integer desde, @Param("hasta") Integer hasta);
+
+    // Limpia el contexto de persistencia: la reconstruccion escribe de nuevo las mismas claves.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM PersonaResumenDiario p WHERE p.dia = :dia")
+    int eliminarDia(@Param("dia") Integer dia);
+}
@@ -2,12 +2,13 @@ package org.example.repositories;
 
 import org.example.models.Posicion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
-public interface PosicionRepository extends JpaRepository<Posicion, Integer> {
+public interface PosicionRepository extends JpaRepository<Posicion, Integer>, PosicionRepositoryCustom {
     //@Query("SELECT p FROM Posicion p WHERE p.vehiculo.id = :idVehiculo AND p.fechaHora BETWEEN :inicio AND :fin")
     //List<Posicion> findByIdVehiculoAndFechaHoraBetween(@Param("idVehiculo") Integer idVehiculo,
     //                                                   @Param("inicio") Date inicio,
@@ -17,4 +18,13 @@ public interface PosicionRepository extends JpaRepository<Posicion, Integer> {
     //Posicion findFirstByVehiculoIdOrderByFechaHoraDesc(Integer id);
 
     List<Posicion> findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(Integer vehiculoId, Long fechaInicio, Long fechaFin);
+
+    // La última posición de cada vehículo con una prueba en curso: la de mayor fecha y, entre las de la misma fecha,
+    // la de mayor id. El id sólo dice el orden de llegada, y un lote o un reintento puede traer posiciones atrasadas.
+    // La usa UltimasPosiciones al arrancar, encima de su foto.
+    @Query("SELECT p FROM Posicion p WHERE p.id IN (SELECT MAX(p2.id) FROM Posicion p2 WHERE p2.vehiculo.id IN "
+            + "(SELECT pr.vehiculo.id FROM Prueba pr WHERE pr.fechaHoraFin IS NULL) "
+            + "AND p2.fechaHora = (SELECT MAX(p3.fechaHora) FROM Posicion p3 WHERE p3.vehiculo.id = p2.vehiculo.id) "
+            + "GROUP BY p2.vehiculo.id)")
+    List<Posicion> findUltimasDeVehiculosEnPrueba();
 }
@@ -0,0 +1,42 @@
+package org.example.repositories;
+
+import org.example.models.Posicion;
+
+import java.util.List;
+
+/**
+ * Operaciones de {@link PosicionRepository} que no se pueden expresar con Spring Data JPA.
+ */
+public interface PosicionRepositoryCustom {
+
+    /**
+     * Inserta todas las posiciones en una sola transacción usando batches de JDBC.
+     * Con ids IDENTITY Hibernate no puede agrupar los INSERT, por eso se hace con JdbcTemplate.
+     * Las posiciones no se cargan en el contexto de persistencia ni reciben su id.
+     *
+     * @return la cantidad de filas insertadas.
+     */
+    int insertarEnLote(List<Posicion> posiciones);
+
+    /**
+     * Inserta todas las posiciones en una sola transacción (un solo commit) y les asigna el id generado.
+     * Es más lento que {@link #insertarEnLote} porque inserta fila por fila, pero lo que cuesta en SQLite
+     * es el commit, no el INSERT.
+     */
+    void insertarEnGrupo(List<Posicion> posiciones);
+
+    /**
+     * Borra las posiciones indicadas en una sola transacción, con batches de JDBC del mismo tamaño que los INSERT.
+     *
+     * @return la cantidad de filas borradas.
+     */
+    int eliminarEnLote(List<Integer> ids);
+
+    /**
+     * Borra a lo sumo {@code limite} posiciones del vehículo entre las dos fechas (inclusive), en una transacción corta.
+     * Para borrar muchas se llama hasta que devuelva 0, así el lock de escritura de SQLite se suelta entre llamada y llamada.
+     *
+     * @return la cantidad de filas borradas.
+     */
+    int eliminarDeVehiculoEntre(Integer idVehiculo, long desde, long hasta, int limite);
+}
\ No newline at end of file
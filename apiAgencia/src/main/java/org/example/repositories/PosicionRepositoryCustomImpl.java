@@ -0,0 +1,90 @@
+package org.example.repositories;
+
+import org.example.models.Posicion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+public class PosicionRepositoryCustomImpl implements PosicionRepositoryCustom {
+
+    private static final String INSERT_POSICION =
+            "INSERT INTO Posiciones (ID_VEHICULO, FECHA_HORA, LATITUD, LONGITUD) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_POSICION = "DELETE FROM Posiciones WHERE ID = ?";
+    private static final String DELETE_POSICIONES_VEHICULO = "DELETE FROM Posiciones WHERE ID IN "
+            + "(SELECT ID FROM Posiciones WHERE ID_VEHICULO = ? AND FECHA_HORA BETWEEN ? AND ? LIMIT ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int tamanioBatch;
+
+    @Autowired
+    public PosicionRepositoryCustomImpl(JdbcTemplate jdbcTemplate,
+                                        @Value("${agencia.posiciones.lote.jdbc-batch:500}") int tamanioBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tamanioBatch = tamanioBatch;
+    }
+
+    @Override
+    @Transactional
+    public int insertarEnLote(List<Posicion> posiciones) {
+        if (posiciones.isEmpty()) {
+            return 0;
+        }
+        int[][] filas = jdbcTemplate.batchUpdate(INSERT_POSICION, posiciones, tamanioBatch, (ps, posicion) -> {
+            ps.setInt(1, posicion.getVehiculo().getId());
+            ps.setLong(2, posicion.getFechaHora());
+            ps.setDouble(3, posicion.getLatitud());
+            ps.setDouble(4, posicion.getLongitud());
+        });
+        // Algunos drivers informan SUCCESS_NO_INFO (-2) en lugar de la cantidad: en ese caso contamos la fila igual.
+        return Arrays.stream(filas).flatMapToInt(Arrays::stream).map(n -> n < 0 ? 1 : n).sum();
+    }
+
+    @Override
+    @Transactional
+    public void insertarEnGrupo(List<Posicion> posiciones) {
+        if (posiciones.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) conexion -> {
+            try (PreparedStatement ps = conexion.prepareStatement(INSERT_POSICION, Statement.RETURN_GENERATED_KEYS)) {
+                for (Posicion posicion : posiciones) {
+                    ps.setInt(1, posicion.getVehiculo().getId());
+                    ps.setLong(2, posicion.getFechaHora());
+                    ps.setDouble(3, posicion.getLatitud());
+                    ps.setDouble(4, posicion.getLongitud());
+                    ps.executeUpdate();
+                    try (ResultSet claves = ps.getGeneratedKeys()) {
+                        if (claves.next()) {
+                            posicion.setId(claves.getInt(1));
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @Transactional
+    public int eliminarEnLote(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int[][] filas = jdbcTemplate.batchUpdate(DELETE_POSICION, ids, tamanioBatch, (ps, id) -> ps.setInt(1, id));
+        return Arrays.stream(filas).flatMapToInt(Arrays::stream).map(n -> n < 0 ? 1 : n).sum();
+    }
+
+    @Override
+    @Transactional
+    public int eliminarDeVehiculoEntre(Integer idVehiculo, long desde, long hasta, int limite) {
+        return jdbcTemplate.update(DELETE_POSICIONES_VEHICULO, idVehiculo, desde, hasta, limite);
+    }
+}
\ No newline at end of file
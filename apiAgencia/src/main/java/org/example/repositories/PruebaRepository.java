@@ -1,12 +1,22 @@
 package org.example.repositories;
 
+import jakarta.persistence.QueryHint;
 import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface PruebaRepository extends JpaRepository<Prueba, Integer> {
@@ -60,4 +70,86 @@ public interface PruebaRepository extends JpaRepository<Prueba, Integer> {
 
     @Query("SELECT p FROM Prueba p WHERE p.vehiculo.id = :idVehiculo AND p.fechaHoraFin IS NULL")
     Prueba findPruebaActivaByVehiculoId(@Param("idVehiculo") Integer idVehiculo);
+
+    /*
+        Version por lote de findPruebaActivaByVehiculoId: las pruebas en curso de los vehiculos
+        recibidos (una sola consulta para todo el lote).
+    */
+    List<Prueba> findByFechaHoraFinIsNullAndVehiculo_IdIn(Collection<Integer> idsVehiculos);
+
+    /*
+        Marca la prueba con incidente sin cargarla: un UPDATE directo por id.
+        Si ya estaba marcada no cambia nada (devuelve 0).
+    */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Prueba p SET p.incidente = true WHERE p.id = :idPrueba AND (p.incidente IS NULL OR p.incidente = false)")
+    int marcarIncidente(@Param("idPrueba") Integer idPrueba);
+
+    /*
+        Pruebas finalizadas antes de limiteCompleta a las que la retencion de posiciones todavia les debe algo:
+        no tienen resumen, el submuestreo quedo a medias (COMPLETA) o ya paso limiteResumen y siguen teniendo posiciones.
+    */
+    @Query("SELECT p FROM Prueba p WHERE p.fechaHoraFin < :limiteCompleta AND NOT EXISTS (SELECT r FROM ResumenPrueba r " +
+            "WHERE r.idPrueba = p.id AND (r.nivel = :resumida OR (r.nivel = :submuestreada AND p.fechaHoraFin >= :limiteResumen))) " +
+            "ORDER BY p.fechaHoraFin")
+    List<Prueba> findPendientesDeRetencion(@Param("limiteCompleta") Date limiteCompleta,
+                                           @Param("limiteResumen") Date limiteResumen,
+                                           @Param("submuestreada") ResumenPrueba.Nivel submuestreada,
+                                           @Param("resumida") ResumenPrueba.Nivel resumida);
+
+    /*
+        Guarda el odometro de una prueba en curso. Una prueba ya finalizada no se toca: su distancia la fija
+        finalizarPrueba y una escritura periodica atrasada no la tiene que pisar.
+    */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Prueba p SET p.distanciaKm = :distanciaKm WHERE p.id = :idPrueba AND p.fechaHoraFin IS NULL")
+    int actualizarDistanciaEnCurso(@Param("idPrueba") Integer idPrueba, @Param("distanciaKm") Double distanciaKm);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Prueba p SET p.distanciaKm = :distanciaKm WHERE p.id = :idPrueba")
+    int actualizarDistancia(@Param("idPrueba") Integer idPrueba, @Param("distanciaKm") Double distanciaKm);
+
+    /*
+        Pruebas finalizadas sin distancia (de antes del odometro), por id a partir de desdeId, para completarlas de a lotes.
+    */
+    @Query("SELECT p FROM Prueba p WHERE p.fechaHoraFin IS NOT NULL AND p.distanciaKm IS NULL AND p.id > :desdeId ORDER BY p.id")
+    List<Prueba> findFinalizadasSinDistancia(@Param("desdeId") Integer desdeId, Pageable pagina);
+
+    long countByFechaHoraFinIsNotNullAndDistanciaKmIsNull();
+
+    /*
+        Para reconstruir los resumenes diarios: las pruebas que empezaron y las que terminaron en un dia.
+    */
+    List<Prueba> findByFechaHoraInicioBetween(Date desde, Date hasta);
+
+    List<Prueba> findByFechaHoraFinBetween(Date desde, Date hasta);
+
+    /*
+        Consultas de los reportes (ver ReporteService): de a paginas por clave, las pruebas con id mayor a desdeId en
+        orden de id, hasta el tamanio de la pagina. Cada pagina se lee en su propia transaccion corta y el reporte pide
+        la siguiente con el ultimo id que escribio, asi no queda un cursor abierto mientras se escribe al cliente.
+    */
+    @Query("SELECT p FROM Prueba p JOIN FETCH p.vehiculo LEFT JOIN FETCH p.empleado LEFT JOIN FETCH p.interesado " +
+            "WHERE p.incidente = true AND p.id > :desdeId ORDER BY p.id")
+    List<Prueba> findIncidentesDesde(@Param("desdeId") Integer desdeId, Pageable pagina);
+
+    @Query("SELECT p FROM Prueba p JOIN FETCH p.vehiculo " +
+            "WHERE p.incidente = true AND p.empleado.legajo = :legajo AND p.id > :desdeId ORDER BY p.id")
+    List<Prueba> findIncidentesDeEmpleadoDesde(@Param("legajo") Long legajo, @Param("desdeId") Integer desdeId, Pageable pagina);
+
+    @Query("SELECT p FROM Prueba p LEFT JOIN FETCH p.empleado WHERE p.vehiculo.id = :idVehiculo AND p.id > :desdeId ORDER BY p.id")
+    List<Prueba> findPruebasDeVehiculoDesde(@Param("idVehiculo") Integer idVehiculo, @Param("desdeId") Integer desdeId, Pageable pagina);
+
+    /*
+        Pruebas finalizadas de un vehiculo que se superponen con el periodo [desde, hasta], leidas con un cursor de a
+        500 filas. Se consume dentro de una transaccion que solo junta las distancias, sin escribir al cliente.
+    */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT p FROM Prueba p WHERE p.vehiculo.id = :idVehiculo AND p.fechaHoraFin IS NOT NULL " +
+            "AND p.fechaHoraInicio <= :hasta AND p.fechaHoraFin >= :desde ORDER BY p.id")
+    Stream<Prueba> streamFinalizadasDeVehiculo(@Param("idVehiculo") Integer idVehiculo,
+                                               @Param("desde") Date desde, @Param("hasta") Date hasta);
 }
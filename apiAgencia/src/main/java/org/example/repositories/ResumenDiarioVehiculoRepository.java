@@ -0,0 +1,34 @@
+package org.example.repositories;
+
+import org.example.models.ResumenDiarioVehiculo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ResumenDiarioVehiculoRepository extends JpaRepository<ResumenDiarioVehiculo, ResumenDiarioVehiculo.Clave> {
+
+    /*
+        Totales de cada vehiculo entre dos dias (aaaammdd, inclusive): idVehiculo, pruebas iniciadas, finalizadas,
+        duracion en segundos, kilometros e incidentes. Lee una fila por vehiculo y dia, no las pruebas.
+    */
+    @Query("SELECT r.idVehiculo, SUM(r.pruebasIniciadas), SUM(r.pruebasFinalizadas), SUM(r.duracionSegundos), SUM(r.distanciaKm), SUM(r.incidentes) " +
+            "FROM ResumenDiarioVehiculo r WHERE r.dia BETWEEN :desde AND :hasta GROUP BY r.idVehiculo ORDER BY r.idVehiculo")
+    List<Object[]> totalesPorVehiculo(@Param("desde") Integer desde, @Param("hasta") Integer hasta);
+
+    /*
+        Lo mismo que totalesPorVehiculo pero de toda la flota por dia: el primer valor es el dia.
+    */
+    @Query("SELECT r.dia, SUM(r.pruebasIniciadas), SUM(r.pruebasFinalizadas), SUM(r.duracionSegundos), SUM(r.distanciaKm), SUM(r.incidentes) " +
+            "FROM ResumenDiarioVehiculo r WHERE r.dia BETWEEN :desde AND :hasta GROUP BY r.dia ORDER BY r.dia")
+    List<Object[]> totalesPorDia(@Param("desde") Integer desde, @Param("hasta") Integer hasta);
+
+    // Limpia el contexto de persistencia: la reconstruccion escribe de nuevo las mismas claves.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ResumenDiarioVehiculo r WHERE r.dia = :dia")
+    int eliminarDia(@Param("dia") Integer dia);
+}
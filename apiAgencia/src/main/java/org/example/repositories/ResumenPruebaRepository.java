@@ -0,0 +1,23 @@
+package org.example.repositories;
+
+import org.example.models.ResumenPrueba;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ResumenPruebaRepository extends JpaRepository<ResumenPrueba, Integer> {
+
+    long countByNivel(ResumenPrueba.Nivel nivel);
+
+    /*
+        Cambia el nivel sin cargar el resumen: se llama recién cuando terminaron de borrarse las posiciones.
+    */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ResumenPrueba r SET r.nivel = :nivel WHERE r.idPrueba = :idPrueba")
+    int actualizarNivel(@Param("idPrueba") Integer idPrueba, @Param("nivel") ResumenPrueba.Nivel nivel);
+}
@@ -2,11 +2,16 @@ package org.example.repositories;
 
 import org.example.models.Vehiculo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface VehiculoRepository extends JpaRepository<Vehiculo, Integer> {
     Optional<Vehiculo> findByPatente(String patente);
+
+    @Query("SELECT v.id FROM Vehiculo v")
+    List<Integer> findAllIds();
 }
@@ -0,0 +1,80 @@
+package org.example.repositories.columnar;
+
+import org.example.service.trayectoria.Trayectoria;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Junta en arreglos de primitivos los puntos que se leen de varios segmentos y los entrega como {@link Trayectoria}.
+ */
+final class AcumuladorTrayectoria {
+
+    private long[] tiempos;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int cantidad;
+    private boolean ordenado = true;
+
+    AcumuladorTrayectoria(int capacidadInicial) {
+        int capacidad = Math.max(16, capacidadInicial);
+        tiempos = new long[capacidad];
+        latitudes = new double[capacidad];
+        longitudes = new double[capacidad];
+    }
+
+    void agregar(long tiempo, double latitud, double longitud) {
+        reservar(1);
+        ordenado &= cantidad == 0 || tiempo >= tiempos[cantidad - 1];
+        tiempos[cantidad] = tiempo;
+        latitudes[cantidad] = latitud;
+        longitudes[cantidad] = longitud;
+        cantidad++;
+    }
+
+    // Copia en bloque un tramo ordenado de las columnas de un segmento.
+    void agregarColumnas(LongBuffer tiemposOrigen, DoubleBuffer latitudesOrigen, DoubleBuffer longitudesOrigen, int desde, int largo) {
+        if (largo <= 0) {
+            return;
+        }
+        reservar(largo);
+        tiemposOrigen.get(desde, tiempos, cantidad, largo);
+        latitudesOrigen.get(desde, latitudes, cantidad, largo);
+        longitudesOrigen.get(desde, longitudes, cantidad, largo);
+        ordenado &= cantidad == 0 || tiempos[cantidad] >= tiempos[cantidad - 1];
+        cantidad += largo;
+    }
+
+    /**
+     * @return los puntos ordenados por fecha (los que llegaron fuera de orden se reubican; a igual fecha se respeta el orden de llegada).
+     */
+    Trayectoria aTrayectoria() {
+        if (ordenado) {
+            return new Trayectoria(Arrays.copyOf(tiempos, cantidad), Arrays.copyOf(latitudes, cantidad), Arrays.copyOf(longitudes, cantidad));
+        }
+        Integer[] orden = new Integer[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> Long.compare(tiempos[a], tiempos[b]));
+        long[] t = new long[cantidad];
+        double[] lat = new double[cantidad];
+        double[] lon = new double[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            t[i] = tiempos[orden[i]];
+            lat[i] = latitudes[orden[i]];
+            lon[i] = longitudes[orden[i]];
+        }
+        return new Trayectoria(t, lat, lon);
+    }
+
+    private void reservar(int adicionales) {
+        if (cantidad + adicionales > tiempos.length) {
+            int capacidad = Math.max(cantidad + adicionales, tiempos.length * 2);
+            tiempos = Arrays.copyOf(tiempos, capacidad);
+            latitudes = Arrays.copyOf(latitudes, capacidad);
+            longitudes = Arrays.copyOf(longitudes, capacidad);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.example.repositories.columnar;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.models.Posicion;
+import org.example.repositories.HistorialPosiciones;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.VehiculoRepository;
+import org.example.service.trayectoria.Trayectoria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link HistorialPosiciones} en archivos propios, sin una fila ni una entidad por posición. Cada vehículo tiene su
+ * carpeta ({@code v<id>}) con segmentos de tamaño fijo ({@link SegmentoPosiciones}) particionados por día:
+ * {@code <día>-<secuencia>.seg}, donde el día se cuenta desde la época en UTC y la secuencia crece cuando un segmento
+ * se llena dentro del mismo día. Se escribe siempre al final del segmento activo de cada vehículo.
+ *
+ * El índice vive en memoria: por vehículo, sus segmentos con el rango de fechas que contiene cada uno (leído de los
+ * encabezados al arrancar). Una consulta solo mapea los segmentos cuyo rango se cruza con el pedido y, dentro de cada
+ * uno, copia en bloque el tramo ubicado con búsqueda binaria.
+ *
+ * El almacén recibe las posiciones desde que se habilitó: la fecha de ese momento se guarda en el archivo
+ * {@code inicio} y lo anterior se sigue leyendo de la tabla Posiciones. Los segmentos activos se bajan a disco cada
+ * {@code forzar-ms}, al llenarse y al apagar; como la cantidad de cada segmento se escribe después de sus datos, un
+ * corte solo puede perder las últimas posiciones (y las que se guardaron en la tabla pero no llegaron a registrarse).
+ * Esas siguen estando en la base: al arrancar se copian de la tabla las posiciones de cada vehículo posteriores a la
+ * última de sus segmentos.
+ *
+ * La retención de la tabla ({@code RetencionPosiciones}, {@code TrayectoriaService.compactar}) no toca el almacén:
+ * submuestrear o compactar una prueba no achica sus segmentos, que ya ocupan 24 bytes por punto. El almacén tiene su
+ * propio límite, {@code retencion-dias} (por defecto el mismo {@code agencia.retencion.resumen-dias}): cada
+ * {@code agencia.retencion.intervalo-ms} se borran enteros los segmentos cuya última posición es más vieja, que son las
+ * de pruebas que la retención ya dejó solo con su resumen.
+ */
+@Repository
+@ConditionalOnProperty(name = "agencia.posiciones.columnar.habilitado", havingValue = "true")
+public class AlmacenColumnarPosiciones implements HistorialPosiciones {
+
+    private static final long MILLIS_POR_DIA = TimeUnit.DAYS.toMillis(1);
+    private static final int CAPACIDAD_MAXIMA = 1 << 24;
+    private static final String EXTENSION = ".seg";
+    private static final String PREFIJO_VEHICULO = "v";
+    private static final String ARCHIVO_INICIO = "inicio";
+
+    private final PosicionRepository posicionRepository;
+    private final VehiculoRepository vehiculoRepository;
+    private final Path directorio;
+    private final int capacidadSegmento;
+    private final Map<Integer, Columna> porVehiculo = new ConcurrentHashMap<>();
+    private final AtomicLong posicionesPerdidas = new AtomicLong();
+    private final AtomicLong segmentosBorrados = new AtomicLong();
+    private final AtomicLong posicionesRecuperadas = new AtomicLong();
+    // Desde cuándo el almacén tiene todas las posiciones; lo anterior se lee de la base.
+    private volatile long inicioMillis;
+
+    // 0 o negativo: nunca se borran segmentos.
+    @Value("${agencia.posiciones.columnar.retencion-dias:${agencia.retencion.resumen-dias:365}}")
+    private int diasRetencion = 365;
+
+    @Autowired
+    public AlmacenColumnarPosiciones(PosicionRepository posicionRepository, VehiculoRepository vehiculoRepository,
+                                     @Value("${agencia.posiciones.columnar.directorio:posiciones-columnar}") String directorio,
+                                     @Value("${agencia.posiciones.columnar.capacidad-segmento:4096}") int capacidadSegmento) {
+        if (capacidadSegmento < 1 || capacidadSegmento > CAPACIDAD_MAXIMA) {
+            throw new IllegalArgumentException("La capacidad de un segmento de posiciones debe estar entre 1 y " + CAPACIDAD_MAXIMA + ".");
+        }
+        this.posicionRepository = posicionRepository;
+        this.vehiculoRepository = vehiculoRepository;
+        this.directorio = Paths.get(directorio);
+        this.capacidadSegmento = capacidadSegmento;
+    }
+
+    /**
+     * Arma el índice con los encabezados de los segmentos existentes, reabre para escribir el último de cada vehículo
+     * si todavía tiene lugar y recupera de la tabla lo que un corte dejó afuera. Un segmento ilegible se informa y se
+     * saltea.
+     */
+    @PostConstruct
+    public void cargar() {
+        try {
+            Files.createDirectories(directorio);
+            Path inicio = directorio.resolve(ARCHIVO_INICIO);
+            if (Files.exists(inicio)) {
+                inicioMillis = Long.parseLong(Files.readString(inicio, StandardCharsets.US_ASCII).trim());
+            } else {
+                inicioMillis = System.currentTimeMillis();
+                Files.writeString(inicio, Long.toString(inicioMillis), StandardCharsets.US_ASCII);
+            }
+            int segmentos = 0;
+            try (DirectoryStream<Path> vehiculos = Files.newDirectoryStream(directorio, PREFIJO_VEHICULO + "*")) {
+                for (Path carpeta : vehiculos) {
+                    if (!Files.isDirectory(carpeta)) {
+                        continue;
+                    }
+                    Integer idVehiculo = Integer.valueOf(carpeta.getFileName().toString().substring(PREFIJO_VEHICULO.length()));
+                    Columna columna = new Columna(idVehiculo);
+                    columna.cargar(carpeta);
+                    if (!columna.segmentos.isEmpty()) {
+                        porVehiculo.put(idVehiculo, columna);
+                        segmentos += columna.segmentos.size();
+                    }
+                }
+            }
+            System.out.println("AlmacenColumnarPosiciones: " + porVehiculo.size() + " vehículos y " + segmentos + " segmentos en " + directorio.toAbsolutePath() + ".");
+            recuperarDeLaBase();
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("No se pudo abrir el almacén de posiciones en " + directorio.toAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Una consulta por vehículo sobre el índice (ID_VEHICULO, FECHA_HORA), casi siempre vacía: lo posterior a la última
+    // posición de sus segmentos, o todo desde el inicio del almacén si no tiene ninguno. Una posición atrasada que se
+    // perdió con fecha anterior a esa última no se recupera.
+    private void recuperarDeLaBase() {
+        long recuperadas = 0;
+        for (Integer idVehiculo : vehiculoRepository.findAllIds()) {
+            Columna columna = porVehiculo.get(idVehiculo);
+            long desde = inicioMillis;
+            if (columna != null) {
+                for (SegmentoPosiciones segmento : columna.segmentos) {
+                    if (segmento.getCantidad() > 0) {
+                        desde = Math.max(desde, segmento.getTiempoMax() + 1);
+                    }
+                }
+            }
+            List<Posicion> faltantes = posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(idVehiculo, desde, Long.MAX_VALUE);
+            if (!faltantes.isEmpty()) {
+                registrar(faltantes);
+                recuperadas += faltantes.size();
+            }
+        }
+        posicionesRecuperadas.addAndGet(recuperadas);
+        if (recuperadas > 0) {
+            System.out.println("AlmacenColumnarPosiciones: " + recuperadas + " posiciones recuperadas de la tabla Posiciones.");
+        }
+    }
+
+    /**
+     * Se llama después del commit, con las posiciones ya guardadas en la tabla: si una no se puede agregar (disco
+     * lleno, sin permisos) se informa, se cuenta y se sigue con las demás, nunca se le pasa el error a la ingesta.
+     */
+    @Override
+    public void registrar(List<Posicion> posiciones) {
+        for (Posicion posicion : posiciones) {
+            if (posicion.getVehiculo() == null || posicion.getVehiculo().getId() == null || posicion.getFechaHora() == null) {
+                continue;
+            }
+            Columna columna = porVehiculo.computeIfAbsent(posicion.getVehiculo().getId(), Columna::new);
+            synchronized (columna) {
+                try {
+                    columna.agregar(posicion.getFechaHora(), posicion.getLatitud(), posicion.getLongitud());
+                } catch (IOException | RuntimeException e) {
+                    // La primera y después una cada mil, para no llenar el log si el disco sigue lleno.
+                    if (posicionesPerdidas.getAndIncrement() % 1000 == 0) {
+                        System.err.println("AlmacenColumnarPosiciones: no se pudo agregar una posición del vehículo " + columna.idVehiculo
+                                + " (" + posicionesPerdidas.get() + " perdidas en total): " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Trayectoria buscarTrayectoria(Integer idVehiculo, long desde, long hasta) {
+        AcumuladorTrayectoria acumulador = new AcumuladorTrayectoria(256);
+        long inicio = inicioMillis;
+        if (desde < inicio) {
+            for (Posicion posicion : posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(idVehiculo, desde, Math.min(hasta, inicio - 1))) {
+                acumulador.agregar(posicion.getFechaHora(), posicion.getLatitud(), posicion.getLongitud());
+            }
+        }
+        Columna columna = porVehiculo.get(idVehiculo);
+        if (columna != null && hasta >= inicio) {
+            // Bajo el lock solo se toma la foto de los segmentos; mapearlos y copiar no frena a registrar.
+            List<SegmentoPosiciones.Lectura> segmentos = new ArrayList<>();
+            synchronized (columna) {
+                for (SegmentoPosiciones segmento : columna.segmentos) {
+                    segmentos.add(segmento.lectura());
+                }
+            }
+            for (SegmentoPosiciones.Lectura segmento : segmentos) {
+                try {
+                    segmento.leer(Math.max(desde, inicio), hasta, acumulador);
+                } catch (NoSuchFileException e) {
+                    // Lo borró podar() después de la foto: esas posiciones ya estaban fuera de la retención.
+                } catch (IOException e) {
+                    throw new UncheckedIOException("No se pudo leer el almacén columnar de posiciones.", e);
+                }
+            }
+        }
+        return acumulador.aTrayectoria();
+    }
+
+    /**
+     * Borra los segmentos cuya última posición tiene más de {@code retencion-dias}.
+     * @return la cantidad de segmentos borrados.
+     */
+    @Scheduled(fixedDelayString = "${agencia.retencion.intervalo-ms:3600000}",
+            initialDelayString = "${agencia.retencion.intervalo-ms:3600000}")
+    public int podar() {
+        if (diasRetencion <= 0) {
+            return 0;
+        }
+        long limite = System.currentTimeMillis() - diasRetencion * MILLIS_POR_DIA;
+        int borrados = 0;
+        for (Columna columna : porVehiculo.values()) {
+            List<SegmentoPosiciones> vencidos;
+            synchronized (columna) {
+                vencidos = columna.quitarAnterioresA(limite);
+            }
+            for (SegmentoPosiciones segmento : vencidos) {
+                try {
+                    Files.deleteIfExists(segmento.getArchivo());
+                    borrados++;
+                } catch (IOException e) {
+                    System.err.println("AlmacenColumnarPosiciones: no se pudo borrar el segmento " + segmento.getArchivo() + ": " + e.getMessage());
+                }
+            }
+        }
+        segmentosBorrados.addAndGet(borrados);
+        if (borrados > 0) {
+            System.out.println("AlmacenColumnarPosiciones: " + borrados + " segmentos borrados por retención (" + diasRetencion + " días).");
+        }
+        return borrados;
+    }
+
+    @Scheduled(fixedDelayString = "${agencia.posiciones.columnar.forzar-ms:1000}")
+    public void forzar() {
+        for (Columna columna : porVehiculo.values()) {
+            synchronized (columna) {
+                if (columna.activo != null) {
+                    columna.activo.forzar();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        for (Columna columna : porVehiculo.values()) {
+            synchronized (columna) {
+                if (columna.activo != null) {
+                    columna.activo.cerrar();
+                    columna.activo = null;
+                }
+            }
+        }
+    }
+
+    long getInicioMillis() {
+        return inicioMillis;
+    }
+
+    int cantidadSegmentos(Integer idVehiculo) {
+        Columna columna = porVehiculo.get(idVehiculo);
+        return columna == null ? 0 : columna.segmentos.size();
+    }
+
+    long getPosicionesPerdidas() {
+        return posicionesPerdidas.get();
+    }
+
+    long getPosicionesRecuperadas() {
+        return posicionesRecuperadas.get();
+    }
+
+    long getSegmentosBorrados() {
+        return segmentosBorrados.get();
+    }
+
+    // Los segmentos de un vehículo, en el orden en que se crearon. Se usa siempre bajo su propio lock.
+    private final class Columna {
+        private final int idVehiculo;
+        private final List<SegmentoPosiciones> segmentos = new ArrayList<>();
+        private SegmentoPosiciones activo;
+
+        private Columna(int idVehiculo) {
+            this.idVehiculo = idVehiculo;
+        }
+
+        private void cargar(Path carpeta) throws IOException {
+            try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpeta, "*" + EXTENSION)) {
+                for (Path archivo : archivos) {
+                    String nombre = archivo.getFileName().toString();
+                    String[] partes = nombre.substring(0, nombre.length() - EXTENSION.length()).split("-");
+                    try {
+                        segmentos.add(SegmentoPosiciones.leer(archivo, Long.parseLong(partes[0]), Integer.parseInt(partes[1])));
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("AlmacenColumnarPosiciones: se saltea el segmento " + archivo + ": " + e.getMessage());
+                    }
+                }
+            }
+            segmentos.sort(Comparator.comparingLong(SegmentoPosiciones::getDia).thenComparingInt(SegmentoPosiciones::getSecuencia));
+            if (!segmentos.isEmpty()) {
+                SegmentoPosiciones ultimo = segmentos.get(segmentos.size() - 1);
+                if (!ultimo.lleno()) {
+                    ultimo.abrirParaEscribir();
+                    activo = ultimo;
+                }
+            }
+        }
+
+        private void agregar(long tiempo, double latitud, double longitud) throws IOException {
+            long dia = Math.floorDiv(tiempo, MILLIS_POR_DIA);
+            SegmentoPosiciones ultimo = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+            if (activo == null || activo.lleno() || dia > activo.getDia()) {
+                if (activo != null) {
+                    activo.cerrar();
+                    // Si crear el siguiente falla, el próximo intento vuelve a probar en lugar de escribir en uno cerrado.
+                    activo = null;
+                }
+                // Una posición atrasada de un día anterior va al segmento del último día, no reabre una partición vieja.
+                long diaSegmento = ultimo == null ? dia : Math.max(dia, ultimo.getDia());
+                int secuencia = ultimo != null && ultimo.getDia() == diaSegmento ? ultimo.getSecuencia() + 1 : 0;
+                Path carpeta = Files.createDirectories(directorio.resolve(PREFIJO_VEHICULO + idVehiculo));
+                activo = SegmentoPosiciones.crear(carpeta.resolve(diaSegmento + "-" + secuencia + EXTENSION),
+                        idVehiculo, diaSegmento, secuencia, capacidadSegmento);
+                segmentos.add(activo);
+            }
+            activo.agregar(tiempo, latitud, longitud);
+        }
+
+        // Saca del índice los segmentos vencidos (cerrando el activo si es uno de ellos); el llamador borra los archivos.
+        private List<SegmentoPosiciones> quitarAnterioresA(long limite) {
+            List<SegmentoPosiciones> vencidos = new ArrayList<>();
+            segmentos.removeIf(segmento -> {
+                long ultima = segmento.getCantidad() == 0 ? (segmento.getDia() + 1) * MILLIS_POR_DIA - 1 : segmento.getTiempoMax();
+                if (ultima >= limite) {
+                    return false;
+                }
+                if (segmento == activo) {
+                    activo.cerrar();
+                    activo = null;
+                }
+                vencidos.add(segmento);
+                return true;
+            });
+            return vencidos;
+        }
+    }
+}
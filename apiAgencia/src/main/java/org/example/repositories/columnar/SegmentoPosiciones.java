@@ -0,0 +1,248 @@
+package org.example.repositories.columnar;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Un archivo de posiciones de un vehículo, de tamaño fijo y solo de agregado. Tiene un encabezado de 64 bytes y
+ * después tres columnas de {@code capacidad} valores cada una: fechas (long), latitudes (double) y longitudes (double).
+ * <pre>
+ *   0  marca "PCOL"      4  versión        8  id del vehículo   12 capacidad
+ *   16 cantidad          20 ordenado (0/1) 24 fecha mínima      32 fecha máxima
+ *   64 fechas[capacidad] | latitudes[capacidad] | longitudes[capacidad]
+ * </pre>
+ * Se escribe a través de un buffer mapeado en memoria: cada punto son tres escrituras en la página ya mapeada y la
+ * cantidad del encabezado se actualiza después de los datos, así que al reabrir nunca se lee un punto a medio escribir.
+ * Si los puntos llegaron en orden de fecha ({@code ordenado}) un rango se ubica con búsqueda binaria sobre la columna
+ * de fechas; si no, se recorre entera.
+ *
+ * No es thread-safe: {@link AlmacenColumnarPosiciones} sincroniza por vehículo y lee fuera del lock con {@link #lectura}.
+ */
+final class SegmentoPosiciones {
+
+    static final int MARCA = 0x50434F4C; // "PCOL"
+    static final int VERSION = 1;
+    static final int TAMANIO_ENCABEZADO = 64;
+
+    private static final int POS_MARCA = 0;
+    private static final int POS_VERSION = 4;
+    private static final int POS_VEHICULO = 8;
+    private static final int POS_CAPACIDAD = 12;
+    private static final int POS_CANTIDAD = 16;
+    private static final int POS_ORDENADO = 20;
+    private static final int POS_TIEMPO_MIN = 24;
+    private static final int POS_TIEMPO_MAX = 32;
+
+    private final Path archivo;
+    private final int idVehiculo;
+    private final long dia;
+    private final int secuencia;
+    private final int capacidad;
+    private int cantidad;
+    private boolean ordenado;
+    private long tiempoMin;
+    private long tiempoMax;
+    // Solo mientras el segmento recibe posiciones; los segmentos cerrados se mapean de solo lectura al consultarlos.
+    private MappedByteBuffer escritura;
+
+    private SegmentoPosiciones(Path archivo, int idVehiculo, long dia, int secuencia, int capacidad, int cantidad,
+                               boolean ordenado, long tiempoMin, long tiempoMax) {
+        this.archivo = archivo;
+        this.idVehiculo = idVehiculo;
+        this.dia = dia;
+        this.secuencia = secuencia;
+        this.capacidad = capacidad;
+        this.cantidad = cantidad;
+        this.ordenado = ordenado;
+        this.tiempoMin = tiempoMin;
+        this.tiempoMax = tiempoMax;
+    }
+
+    static long tamanioArchivo(int capacidad) {
+        return TAMANIO_ENCABEZADO + 24L * capacidad;
+    }
+
+    /**
+     * Crea el archivo con todo su tamaño y lo deja abierto para escribir.
+     */
+    static SegmentoPosiciones crear(Path archivo, int idVehiculo, long dia, int secuencia, int capacidad) throws IOException {
+        SegmentoPosiciones segmento = new SegmentoPosiciones(archivo, idVehiculo, dia, secuencia, capacidad, 0, true,
+                Long.MAX_VALUE, Long.MIN_VALUE);
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segmento.escritura = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanioArchivo(capacidad));
+        }
+        segmento.escritura.putInt(POS_MARCA, MARCA);
+        segmento.escritura.putInt(POS_VERSION, VERSION);
+        segmento.escritura.putInt(POS_VEHICULO, idVehiculo);
+        segmento.escritura.putInt(POS_CAPACIDAD, capacidad);
+        segmento.escribirEncabezado();
+        return segmento;
+    }
+
+    /**
+     * Lee el encabezado de un segmento existente. Queda cerrado; {@link #abrirParaEscribir} lo reabre si sigue teniendo lugar.
+     * @throws IOException si el archivo no es un segmento o está truncado.
+     */
+    static SegmentoPosiciones leer(Path archivo, long dia, int secuencia) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            if (canal.size() < TAMANIO_ENCABEZADO) {
+                throw new IOException("Segmento truncado: " + archivo);
+            }
+            MappedByteBuffer encabezado = canal.map(FileChannel.MapMode.READ_ONLY, 0, TAMANIO_ENCABEZADO);
+            if (encabezado.getInt(POS_MARCA) != MARCA || encabezado.getInt(POS_VERSION) != VERSION) {
+                throw new IOException("No es un segmento de posiciones: " + archivo);
+            }
+            int capacidad = encabezado.getInt(POS_CAPACIDAD);
+            int cantidad = encabezado.getInt(POS_CANTIDAD);
+            if (canal.size() < tamanioArchivo(capacidad) || cantidad < 0 || cantidad > capacidad) {
+                throw new IOException("Segmento truncado: " + archivo);
+            }
+            return new SegmentoPosiciones(archivo, encabezado.getInt(POS_VEHICULO), dia, secuencia, capacidad, cantidad,
+                    encabezado.getInt(POS_ORDENADO) == 1, encabezado.getLong(POS_TIEMPO_MIN), encabezado.getLong(POS_TIEMPO_MAX));
+        }
+    }
+
+    void abrirParaEscribir() throws IOException {
+        if (escritura == null) {
+            try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                escritura = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanioArchivo(capacidad));
+            }
+        }
+    }
+
+    boolean lleno() {
+        return cantidad == capacidad;
+    }
+
+    void agregar(long tiempo, double latitud, double longitud) {
+        if (escritura == null || lleno()) {
+            throw new IllegalStateException("El segmento " + archivo + " no admite más posiciones.");
+        }
+        int i = cantidad;
+        escritura.putLong(TAMANIO_ENCABEZADO + 8 * i, tiempo);
+        escritura.putDouble(TAMANIO_ENCABEZADO + 8 * (capacidad + i), latitud);
+        escritura.putDouble(TAMANIO_ENCABEZADO + 8 * (2 * capacidad + i), longitud);
+        ordenado &= cantidad == 0 || tiempo >= tiempoMax;
+        tiempoMin = Math.min(tiempoMin, tiempo);
+        tiempoMax = Math.max(tiempoMax, tiempo);
+        cantidad++;
+        escribirEncabezado();
+    }
+
+    /**
+     * Foto de lo escrito hasta ahora, para leerla sin el lock del vehículo: el segmento es solo de agregado, así que los
+     * puntos anteriores a {@code cantidad} ya no cambian aunque se sigan agregando otros.
+     */
+    Lectura lectura() {
+        return new Lectura(archivo, capacidad, cantidad, ordenado, tiempoMin, tiempoMax, escritura);
+    }
+
+    record Lectura(Path archivo, int capacidad, int cantidad, boolean ordenado, long tiempoMin, long tiempoMax,
+                   MappedByteBuffer escritura) {
+
+        /**
+         * Agrega al acumulador los puntos con fecha entre {@code desde} y {@code hasta} (inclusive).
+         * @throws java.nio.file.NoSuchFileException si el segmento se borró por retención después de la foto.
+         */
+        void leer(long desde, long hasta, AcumuladorTrayectoria destino) throws IOException {
+            if (cantidad == 0 || tiempoMax < desde || tiempoMin > hasta) {
+                return;
+            }
+            MappedByteBuffer buffer = escritura;
+            if (buffer == null) {
+                try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+                    buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanioArchivo(capacidad));
+                }
+            }
+            LongBuffer tiempos = buffer.slice(TAMANIO_ENCABEZADO, 8 * capacidad).asLongBuffer();
+            DoubleBuffer latitudes = buffer.slice(TAMANIO_ENCABEZADO + 8 * capacidad, 8 * capacidad).asDoubleBuffer();
+            DoubleBuffer longitudes = buffer.slice(TAMANIO_ENCABEZADO + 16 * capacidad, 8 * capacidad).asDoubleBuffer();
+            if (ordenado) {
+                int inicio = primeroDesde(tiempos, desde);
+                int fin = primeroDesde(tiempos, hasta == Long.MAX_VALUE ? hasta : hasta + 1);
+                destino.agregarColumnas(tiempos, latitudes, longitudes, inicio, fin - inicio);
+            } else {
+                for (int i = 0; i < cantidad; i++) {
+                    long tiempo = tiempos.get(i);
+                    if (tiempo >= desde && tiempo <= hasta) {
+                        destino.agregar(tiempo, latitudes.get(i), longitudes.get(i));
+                    }
+                }
+            }
+        }
+
+        // Primer índice con fecha >= tiempo (cantidad si no hay ninguno). Solo para segmentos ordenados.
+        private int primeroDesde(LongBuffer tiempos, long tiempo) {
+            int bajo = 0;
+            int alto = cantidad;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (tiempos.get(medio) < tiempo) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+    }
+
+    void forzar() {
+        if (escritura != null) {
+            escritura.force();
+        }
+    }
+
+    /**
+     * Baja a disco lo escrito y suelta el buffer de escritura: desde acá el segmento solo se lee.
+     */
+    void cerrar() {
+        forzar();
+        escritura = null;
+    }
+
+    private void escribirEncabezado() {
+        escritura.putInt(POS_ORDENADO, ordenado ? 1 : 0);
+        escritura.putLong(POS_TIEMPO_MIN, tiempoMin);
+        escritura.putLong(POS_TIEMPO_MAX, tiempoMax);
+        // Último: un punto cuenta recién cuando sus tres columnas y los límites están escritos.
+        escritura.putInt(POS_CANTIDAD, cantidad);
+    }
+
+    Path getArchivo() {
+        return archivo;
+    }
+
+    int getIdVehiculo() {
+        return idVehiculo;
+    }
+
+    long getDia() {
+        return dia;
+    }
+
+    int getSecuencia() {
+        return secuencia;
+    }
+
+    int getCantidad() {
+        return cantidad;
+    }
+
+    long getTiempoMin() {
+        return tiempoMin;
+    }
+
+    long getTiempoMax() {
+        return tiempoMax;
+    }
+
+    boolean isOrdenado() {
+        return ordenado;
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.serializacion;
+
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato binario de {@link PosicionDto} (big endian). Mismo contenido que el JSON, sin repetir los nombres de los
+ * campos ni los objetos anidados:
+ *
+ * <pre>
+ * byte    0xA7            marca del formato (un JSON nunca empieza así)
+ * byte    versión         1 o 2
+ * byte    banderas        qué campos siguen (los nulos no ocupan lugar)
+ * int32   id              si ID
+ * int32   vehiculo.id     si VEHICULO_ID
+ * texto   patente         si PATENTE
+ * int64   idModelo        si ID_MODELO
+ * float64 lat, float64 lon si COORDENADAS
+ * texto   mensaje         si MENSAJE
+ * int64   fechaHora       si FECHA_HORA (sólo en la versión 2)
+ * </pre>
+ *
+ * La versión 1 no tiene {@code fechaHora}. Una posición sin ella se sigue escribiendo en la versión 1, igual que antes,
+ * así la leen también los lectores que no conocen la 2; con ella se escribe en la 2. Se leen las dos.
+ * Un texto es su largo en bytes (uint16) seguido del UTF-8. Una posición típica ocupa 40 bytes contra 130 en JSON.
+ * Cada registro se delimita solo, así que un lote es simplemente una posición detrás de otra.
+ * El layout está descripto también en readmeInteresantes/formatoBinarioPosiciones.md, que es la referencia para
+ * notificaciones y para los clientes.
+ */
+public final class PosicionBinaria {
+
+    public static final byte MARCA = (byte) 0xA7;
+    public static final byte VERSION = 2;
+    static final byte VERSION_SIN_FECHA_HORA = 1;
+    public static final String MEDIA_TYPE = "application/x-agencia-posicion";
+
+    static final int ID = 1;
+    static final int VEHICULO = 1 << 1;
+    static final int VEHICULO_ID = 1 << 2;
+    static final int PATENTE = 1 << 3;
+    static final int ID_MODELO = 1 << 4;
+    static final int COORDENADAS = 1 << 5;
+    static final int MENSAJE = 1 << 6;
+    static final int FECHA_HORA = 1 << 7;
+    private static final int BANDERAS_VERSION_1 = FECHA_HORA - 1;
+    private static final int BANDERAS_VERSION_2 = BANDERAS_VERSION_1 | FECHA_HORA;
+
+    private static final int LARGO_MAXIMO_TEXTO = 0xFFFF;
+
+    private PosicionBinaria() {
+    }
+
+    public static boolean esBinaria(byte[] datos) {
+        return datos != null && datos.length > 0 && datos[0] == MARCA;
+    }
+
+    public static byte[] codificar(PosicionDto posicion) {
+        VehiculoDto vehiculo = posicion.getVehiculo();
+        PosicionDto.Coordenadas coordenadas = posicion.getCoordenadas();
+        byte[] patente = vehiculo != null ? utf8(vehiculo.getPatente()) : null;
+        byte[] mensaje = utf8(posicion.getMensaje());
+
+        int banderas = 0;
+        int tamanio = 3;
+        if (posicion.getId() != null) {
+            banderas |= ID;
+            tamanio += 4;
+        }
+        if (vehiculo != null) {
+            banderas |= VEHICULO;
+            if (vehiculo.getId() != null) {
+                banderas |= VEHICULO_ID;
+                tamanio += 4;
+            }
+            if (patente != null) {
+                banderas |= PATENTE;
+                tamanio += 2 + patente.length;
+            }
+            if (vehiculo.getIdModelo() != null) {
+                banderas |= ID_MODELO;
+                tamanio += 8;
+            }
+        }
+        if (coordenadas != null) {
+            banderas |= COORDENADAS;
+            tamanio += 16;
+        }
+        if (mensaje != null) {
+            banderas |= MENSAJE;
+            tamanio += 2 + mensaje.length;
+        }
+        if (posicion.getFechaHora() != null) {
+            banderas |= FECHA_HORA;
+            tamanio += 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(tamanio);
+        buffer.put(MARCA).put((banderas & FECHA_HORA) != 0 ? VERSION : VERSION_SIN_FECHA_HORA).put((byte) banderas);
+        if ((banderas & ID) != 0) {
+            buffer.putInt(posicion.getId());
+        }
+        if ((banderas & VEHICULO_ID) != 0) {
+            buffer.putInt(vehiculo.getId());
+        }
+        if ((banderas & PATENTE) != 0) {
+            buffer.putShort((short) patente.length).put(patente);
+        }
+        if ((banderas & ID_MODELO) != 0) {
+            buffer.putLong(vehiculo.getIdModelo());
+        }
+        if ((banderas & COORDENADAS) != 0) {
+            buffer.putDouble(coordenadas.getLat()).putDouble(coordenadas.getLon());
+        }
+        if ((banderas & MENSAJE) != 0) {
+            buffer.putShort((short) mensaje.length).put(mensaje);
+        }
+        if ((banderas & FECHA_HORA) != 0) {
+            buffer.putLong(posicion.getFechaHora());
+        }
+        return buffer.array();
+    }
+
+    public static PosicionDto decodificar(byte[] datos) {
+        ByteBuffer buffer = ByteBuffer.wrap(datos);
+        PosicionDto posicion = decodificar(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Sobran " + buffer.remaining() + " bytes después de la posición.");
+        }
+        return posicion;
+    }
+
+    /**
+     * Lee una posición desde la posición actual del buffer y lo deja al final de ella, listo para la siguiente.
+     */
+    public static PosicionDto decodificar(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != MARCA) {
+                throw new IllegalArgumentException("Los datos no son una posición en formato binario.");
+            }
+            byte version = buffer.get();
+            if (version != VERSION && version != VERSION_SIN_FECHA_HORA) {
+                throw new IllegalArgumentException("Versión " + version + " del formato binario no soportada.");
+            }
+            int banderas = buffer.get() & 0xFF;
+            if ((banderas & ~(version == VERSION ? BANDERAS_VERSION_2 : BANDERAS_VERSION_1)) != 0) {
+                throw new IllegalArgumentException("Banderas desconocidas en la posición: " + Integer.toBinaryString(banderas));
+            }
+
+            PosicionDto posicion = new PosicionDto();
+            if ((banderas & ID) != 0) {
+                posicion.setId(buffer.getInt());
+            }
+            if ((banderas & VEHICULO) != 0) {
+                VehiculoDto vehiculo = new VehiculoDto();
+                if ((banderas & VEHICULO_ID) != 0) {
+                    vehiculo.setId(buffer.getInt());
+                }
+                if ((banderas & PATENTE) != 0) {
+                    vehiculo.setPatente(texto(buffer));
+                }
+                if ((banderas & ID_MODELO) != 0) {
+                    vehiculo.setIdModelo(buffer.getLong());
+                }
+                posicion.setVehiculo(vehiculo);
+            }
+            if ((banderas & COORDENADAS) != 0) {
+                PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+                coordenadas.setLat(buffer.getDouble());
+                coordenadas.setLon(buffer.getDouble());
+                posicion.setCoordenadas(coordenadas);
+            }
+            if ((banderas & MENSAJE) != 0) {
+                posicion.setMensaje(texto(buffer));
+            }
+            if ((banderas & FECHA_HORA) != 0) {
+                posicion.setFechaHora(buffer.getLong());
+            }
+            return posicion;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("La posición en formato binario está incompleta.", e);
+        }
+    }
+
+    private static byte[] utf8(String texto) {
+        if (texto == null) {
+            return null;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LARGO_MAXIMO_TEXTO) {
+            throw new IllegalArgumentException("Texto de " + bytes.length + " bytes: el formato binario admite hasta " + LARGO_MAXIMO_TEXTO + ".");
+        }
+        return bytes;
+    }
+
+    private static String texto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.serializacion;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.example.dtos.PosicionDto;
+
+import java.io.IOException;
+
+/**
+ * Deserializer de Kafka para {@link PosicionBinaria}. Los mensajes que no traen la marca del formato binario se leen
+ * como JSON: son los que quedaron en los tópicos de antes del cambio, o los de un productor que todavía no se actualizó.
+ */
+public class PosicionBinariaDeserializer implements Deserializer<PosicionDto> {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Override
+    public PosicionDto deserialize(String topic, byte[] datos) {
+        if (datos == null) {
+            return null;
+        }
+        try {
+            if (PosicionBinaria.esBinaria(datos)) {
+                return PosicionBinaria.decodificar(datos);
+            }
+            return objectMapper.readValue(datos, PosicionDto.class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new SerializationException("Mensaje de " + topic + " que no es una posición: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.serializacion;
+
+import org.example.dtos.PosicionDto;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acepta {@link PosicionBinaria} en los endpoints de ingesta cuando el pedido trae
+ * {@code Content-Type: application/x-agencia-posicion}: una posición en POST /posicion/new y /posiciones/publicar,
+ * varias seguidas en POST /posiciones/batch. Con {@code Accept: application/x-agencia-posicion} la PosicionDto
+ * de la respuesta también sale en binario. Se registra después de Jackson (ver WebMvcConfig) para que un cliente
+ * que acepta cualquier cosa siga recibiendo JSON.
+ */
+public class PosicionBinariaHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(PosicionBinaria.MEDIA_TYPE);
+
+    public PosicionBinariaHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PosicionDto.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return (esPosicion(type) || esListaDePosiciones(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return supports(clazz) && canWrite(mediaType);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(inputMessage.getBody().readAllBytes());
+        try {
+            if (!esListaDePosiciones(type)) {
+                PosicionDto posicion = PosicionBinaria.decodificar(buffer);
+                if (buffer.hasRemaining()) {
+                    throw new IllegalArgumentException("Se esperaba una sola posición y sobran " + buffer.remaining() + " bytes.");
+                }
+                return posicion;
+            }
+            List<PosicionDto> posiciones = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                posiciones.add(PosicionBinaria.decodificar(buffer));
+            }
+            return posiciones;
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object posicion, Type type, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(PosicionBinaria.codificar((PosicionDto) posicion));
+    }
+
+    private static boolean esPosicion(Type type) {
+        return PosicionDto.class.isAssignableFrom(ResolvableType.forType(type).toClass());
+    }
+
+    private static boolean esListaDePosiciones(Type type) {
+        ResolvableType resolvable = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolvable.toClass())
+                && PosicionDto.class.isAssignableFrom(resolvable.asCollection().getGeneric(0).toClass());
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.serializacion;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.example.dtos.PosicionDto;
+
+/**
+ * Serializer de Kafka para los tópicos de posiciones y de alertas: escribe cada PosicionDto en {@link PosicionBinaria}.
+ */
+public class PosicionBinariaSerializer implements Serializer<PosicionDto> {
+
+    @Override
+    public byte[] serialize(String topic, PosicionDto posicion) {
+        if (posicion == null) {
+            return null;
+        }
+        try {
+            return PosicionBinaria.codificar(posicion);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("No se pudo serializar la posición para " + topic + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.example.serializacion;
+
+import org.example.service.trayectoria.Trayectoria;
+
+import java.util.Arrays;
+
+/**
+ * Formato comprimido de un recorrido (fechas, latitudes y longitudes de un mismo vehículo), al estilo de Gorilla:
+ * las posiciones consecutivas llegan cada ~5000 ms y se mueven unas decenas de metros, así que en lugar de cada valor
+ * se guarda cuánto cambió su diferencia con el anterior (delta de delta), en la menor cantidad de bits que alcance.
+ *
+ * <pre>
+ * byte    0xA8           marca del formato
+ * byte    versión        1
+ * int32   cantidad       de puntos
+ * bits    punto 0        fecha (64 bits), latitud y longitud en punto fijo (32 bits cada una)
+ * bits    punto 1        diferencia con el punto 0 de cada campo, en cubetas
+ * bits    punto n        delta de delta de cada campo, en cubetas
+ * </pre>
+ *
+ * Las coordenadas se guardan en punto fijo de 1e-7 grados (alrededor de 1 cm): al decodificar cada coordenada difiere
+ * de la original en a lo sumo 5e-8 grados, muy por debajo de la precisión de un GPS. Las fechas se recuperan exactas.
+ *
+ * Cubetas: un valor 0 ocupa un bit ({@code 0}); si no, se pasa a zigzag (el signo en el bit menos significativo) y se
+ * escribe un prefijo de unos que indica el ancho ({@code 10}, {@code 110}, ...) seguido del valor en ese ancho. Si no
+ * entra en la cubeta más ancha se escriben 64 bits. Un recorrido de prueba ocupa entre 1,5 y 5,5 bytes por punto según el
+ * ruido del GPS y la demora de cada envío, contra 24 en columnas de long/double.
+ *
+ * {@link Codificador} y {@link Decodificador} trabajan punto a punto sobre primitivos, sin armar un objeto por posición.
+ * El layout está descripto también en readmeInteresantes/formatoBinarioPosiciones.md.
+ */
+public final class TrayectoriaComprimida {
+
+    public static final byte MARCA = (byte) 0xA8;
+    public static final byte VERSION = 1;
+    public static final String MEDIA_TYPE = "application/x-agencia-trayectoria";
+
+    static final double ESCALA = 1e7;
+    static final int TAMANIO_ENCABEZADO = 6;
+    // Anchos de las cubetas, en bits. Las fechas varían por milisegundos de demora; las coordenadas por metros.
+    static final int[] CUBETAS_TIEMPO = {7, 12, 20, 32};
+    static final int[] CUBETAS_COORDENADA = {6, 10, 14, 20};
+
+    private TrayectoriaComprimida() {
+    }
+
+    public static byte[] codificar(Trayectoria trayectoria) {
+        Codificador codificador = new Codificador(trayectoria.size());
+        for (int i = 0; i < trayectoria.size(); i++) {
+            codificador.agregar(trayectoria.getTiempo(i), trayectoria.getLatitud(i), trayectoria.getLongitud(i));
+        }
+        return codificador.toByteArray();
+    }
+
+    /**
+     * Solo los puntos indicados (por ejemplo, los que conserva SimplificadorTrayectoria), en ese orden.
+     */
+    public static byte[] codificar(Trayectoria trayectoria, int[] indices) {
+        Codificador codificador = new Codificador(indices.length);
+        for (int i : indices) {
+            codificador.agregar(trayectoria.getTiempo(i), trayectoria.getLatitud(i), trayectoria.getLongitud(i));
+        }
+        return codificador.toByteArray();
+    }
+
+    public static Trayectoria decodificar(byte[] datos) {
+        Decodificador decodificador = new Decodificador(datos);
+        int n = decodificador.getCantidad();
+        long[] tiempos = new long[n];
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; decodificador.siguiente(); i++) {
+            tiempos[i] = decodificador.getTiempo();
+            latitudes[i] = decodificador.getLatitud();
+            longitudes[i] = decodificador.getLongitud();
+        }
+        return new Trayectoria(tiempos, latitudes, longitudes);
+    }
+
+    static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    static long desdeZigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    /**
+     * Arma un recorrido comprimido agregando los puntos de a uno. No es thread-safe.
+     */
+    public static final class Codificador {
+
+        private byte[] datos;
+        private int largo = TAMANIO_ENCABEZADO;
+        // Bits escritos que todavía no completan un byte (alineados a la derecha).
+        private int pendiente;
+        private int bitsPendientes;
+        private int cantidad;
+
+        private long tiempoAnterior;
+        private long deltaTiempoAnterior;
+        private long latitudAnterior;
+        private long deltaLatitudAnterior;
+        private long longitudAnterior;
+        private long deltaLongitudAnterior;
+
+        /**
+         * @param puntosEstimados para dimensionar el buffer; si se agregan más, crece solo.
+         */
+        public Codificador(int puntosEstimados) {
+            datos = new byte[TAMANIO_ENCABEZADO + Math.max(16, puntosEstimados * 6)];
+        }
+
+        /**
+         * @throws IllegalArgumentException si la latitud o la longitud están fuera de rango.
+         */
+        public void agregar(long tiempo, double latitud, double longitud) {
+            if (!(Math.abs(latitud) <= 90) || !(Math.abs(longitud) <= 180)) {
+                throw new IllegalArgumentException("Coordenadas fuera de rango: " + latitud + ", " + longitud);
+            }
+            long lat = Math.round(latitud * ESCALA);
+            long lon = Math.round(longitud * ESCALA);
+            if (cantidad == 0) {
+                escribirBits(tiempo, 64);
+                escribirBits(lat, 32);
+                escribirBits(lon, 32);
+            } else {
+                long deltaTiempo = tiempo - tiempoAnterior;
+                long deltaLatitud = lat - latitudAnterior;
+                long deltaLongitud = lon - longitudAnterior;
+                // En el segundo punto la "delta anterior" es 0, así que se escribe la delta misma.
+                escribirValor(deltaTiempo - deltaTiempoAnterior, CUBETAS_TIEMPO);
+                escribirValor(deltaLatitud - deltaLatitudAnterior, CUBETAS_COORDENADA);
+                escribirValor(deltaLongitud - deltaLongitudAnterior, CUBETAS_COORDENADA);
+                deltaTiempoAnterior = deltaTiempo;
+                deltaLatitudAnterior = deltaLatitud;
+                deltaLongitudAnterior = deltaLongitud;
+            }
+            tiempoAnterior = tiempo;
+            latitudAnterior = lat;
+            longitudAnterior = lon;
+            cantidad++;
+        }
+
+        public int getCantidad() {
+            return cantidad;
+        }
+
+        /**
+         * @return el recorrido codificado. Se puede seguir agregando puntos y volver a pedirlo.
+         */
+        public byte[] toByteArray() {
+            byte[] resultado = Arrays.copyOf(datos, largo + (bitsPendientes > 0 ? 1 : 0));
+            if (bitsPendientes > 0) {
+                resultado[largo] = (byte) (pendiente << (8 - bitsPendientes));
+            }
+            resultado[0] = MARCA;
+            resultado[1] = VERSION;
+            resultado[2] = (byte) (cantidad >>> 24);
+            resultado[3] = (byte) (cantidad >>> 16);
+            resultado[4] = (byte) (cantidad >>> 8);
+            resultado[5] = (byte) cantidad;
+            return resultado;
+        }
+
+        private void escribirValor(long valor, int[] cubetas) {
+            if (valor == 0) {
+                escribirBits(0, 1);
+                return;
+            }
+            long z = zigzag(valor);
+            for (int i = 0; i < cubetas.length; i++) {
+                if (z >>> cubetas[i] == 0) {
+                    // i + 1 unos y un cero.
+                    escribirBits((1L << (i + 2)) - 2, i + 2);
+                    escribirBits(z, cubetas[i]);
+                    return;
+                }
+            }
+            escribirBits((1L << (cubetas.length + 1)) - 1, cubetas.length + 1);
+            escribirBits(z, 64);
+        }
+
+        // Los bits menos significativos de valor, del más significativo al menos significativo.
+        private void escribirBits(long valor, int bits) {
+            while (bits > 0) {
+                int n = Math.min(8 - bitsPendientes, bits);
+                int trozo = (int) (valor >>> (bits - n)) & ((1 << n) - 1);
+                pendiente = (pendiente << n) | trozo;
+                bitsPendientes += n;
+                bits -= n;
+                if (bitsPendientes == 8) {
+                    if (largo == datos.length) {
+                        datos = Arrays.copyOf(datos, datos.length * 2);
+                    }
+                    datos[largo++] = (byte) pendiente;
+                    pendiente = 0;
+                    bitsPendientes = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre un recorrido comprimido punto a punto:
+     * <pre>
+     * while (decodificador.siguiente()) { decodificador.getTiempo(); ... }
+     * </pre>
+     * No es thread-safe.
+     */
+    public static final class Decodificador {
+
+        private final byte[] datos;
+        private final int cantidad;
+        private int posicion = TAMANIO_ENCABEZADO;
+        private int actual;
+        private int bitsDisponibles;
+        private int leidos;
+
+        private long tiempo;
+        private long deltaTiempo;
+        private long latitud;
+        private long deltaLatitud;
+        private long longitud;
+        private long deltaLongitud;
+
+        /**
+         * @throws IllegalArgumentException si los datos no son un recorrido comprimido de una versión conocida.
+         */
+        public Decodificador(byte[] datos) {
+            if (datos == null || datos.length < TAMANIO_ENCABEZADO || datos[0] != MARCA) {
+                throw new IllegalArgumentException("Los datos no son una trayectoria comprimida.");
+            }
+            if (datos[1] != VERSION) {
+                throw new IllegalArgumentException("Versión de trayectoria comprimida desconocida: " + datos[1]);
+            }
+            this.datos = datos;
+            this.cantidad = ((datos[2] & 0xFF) << 24) | ((datos[3] & 0xFF) << 16) | ((datos[4] & 0xFF) << 8) | (datos[5] & 0xFF);
+            if (cantidad < 0) {
+                throw new IllegalArgumentException("Cantidad de puntos inválida: " + cantidad);
+            }
+        }
+
+        public int getCantidad() {
+            return cantidad;
+        }
+
+        /**
+         * Avanza al siguiente punto.
+         * @return false si no quedan puntos.
+         * @throws IllegalArgumentException si los datos se terminan antes de completar la cantidad del encabezado.
+         */
+        public boolean siguiente() {
+            if (leidos == cantidad) {
+                return false;
+            }
+            if (leidos == 0) {
+                tiempo = leerBits(64);
+                latitud = (int) leerBits(32);
+                longitud = (int) leerBits(32);
+            } else {
+                deltaTiempo += leerValor(CUBETAS_TIEMPO);
+                deltaLatitud += leerValor(CUBETAS_COORDENADA);
+                deltaLongitud += leerValor(CUBETAS_COORDENADA);
+                tiempo += deltaTiempo;
+                latitud += deltaLatitud;
+                longitud += deltaLongitud;
+            }
+            leidos++;
+            return true;
+        }
+
+        public long getTiempo() {
+            return tiempo;
+        }
+
+        public double getLatitud() {
+            return latitud / ESCALA;
+        }
+
+        public double getLongitud() {
+            return longitud / ESCALA;
+        }
+
+        private long leerValor(int[] cubetas) {
+            int unos = 0;
+            while (unos <= cubetas.length && leerBits(1) == 1) {
+                unos++;
+            }
+            if (unos == 0) {
+                return 0;
+            }
+            int ancho = unos <= cubetas.length ? cubetas[unos - 1] : 64;
+            return desdeZigzag(leerBits(ancho));
+        }
+
+        private long leerBits(int bits) {
+            long valor = 0;
+            while (bits > 0) {
+                if (bitsDisponibles == 0) {
+                    if (posicion == datos.length) {
+                        throw new IllegalArgumentException("Trayectoria comprimida truncada: faltan datos del punto " + leidos + ".");
+                    }
+                    actual = datos[posicion++] & 0xFF;
+                    bitsDisponibles = 8;
+                }
+                int n = Math.min(bitsDisponibles, bits);
+                valor = (valor << n) | ((actual >>> (bitsDisponibles - n)) & ((1 << n) - 1));
+                bitsDisponibles -= n;
+                bits -= n;
+            }
+            return valor;
+        }
+    }
+}
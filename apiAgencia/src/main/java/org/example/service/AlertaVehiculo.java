@@ -0,0 +1,59 @@
+package org.example.service;
+
+import org.example.dtos.PosicionDto;
+import org.example.service.geocerca.VeredictoGeocerca;
+
+/**
+ * Un cambio (o un resumen) en el estado de alerta de un vehículo, calculado por {@link AlertasVehiculos}.
+ */
+public final class AlertaVehiculo {
+
+    public enum Tipo {
+        // El vehículo entró en un estado de incidente (salió del radio o entró en una zona).
+        ENTRADA,
+        // El vehículo dejó el estado de incidente en el que estaba.
+        SALIDA,
+        // Sigue en el mismo estado de incidente: resume las posiciones que llegaron desde la última alerta.
+        LATIDO
+    }
+
+    private final Tipo tipo;
+    private final VeredictoGeocerca estado;
+    private final PosicionDto posicion;
+    private final int repeticiones;
+
+    public AlertaVehiculo(Tipo tipo, VeredictoGeocerca estado, PosicionDto posicion, int repeticiones) {
+        this.tipo = tipo;
+        this.estado = estado;
+        this.posicion = posicion;
+        this.repeticiones = repeticiones;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    /**
+     * El estado al que entró (ENTRADA), del que salió (SALIDA) o en el que sigue (LATIDO).
+     */
+    public VeredictoGeocerca getEstado() {
+        return estado;
+    }
+
+    public PosicionDto getPosicion() {
+        return posicion;
+    }
+
+    /**
+     * Posiciones en el mismo estado que no generaron alerta desde la anterior.
+     */
+    public int getRepeticiones() {
+        return repeticiones;
+    }
+
+    @Override
+    public String toString() {
+        return tipo + " " + estado + " vehiculo " + (posicion.getVehiculo() != null ? posicion.getVehiculo().getId() : null)
+                + " (" + repeticiones + " repeticiones)";
+    }
+}
@@ -0,0 +1,269 @@
+package org.example.service;
+
+import org.example.dtos.EstadoAlertasDto;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+import org.example.service.geocerca.GeoUtils;
+import org.example.service.geocerca.GeocercaCompilada;
+import org.example.service.geocerca.PuntoGeocerca;
+import org.example.service.geocerca.VeredictoGeocerca;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado de alerta de cada vehículo: dentro, fuera del radio de la agencia o dentro de una zona peligrosa.
+ *
+ * Las alertas a notificaciones salen solo cuando el vehículo cambia de estado, no en cada posición: un vehículo
+ * que pasa diez minutos fuera del radio genera una alerta al salir y después un latido periódico que resume
+ * las posiciones repetidas, en lugar de una alerta (con su SMS) cada cinco segundos.
+ *
+ * Para que un vehículo parado justo sobre un borde no genere una alerta por cada posición, dejar un estado de
+ * incidente tiene histéresis: hay que volver {@code histeresis-metros} hacia adentro del radio (o alejarse esa
+ * distancia del borde de la zona), y el nuevo estado tiene que repetirse en {@code confirmaciones} posiciones seguidas.
+ */
+@Service
+public class AlertasVehiculos {
+
+    private final KafkaProducer kafkaProducer;
+    private final Map<Integer, Seguimiento> porVehiculo = new ConcurrentHashMap<>();
+
+    @Value("${agencia.alertas.histeresis-metros:50}")
+    private double histeresisMetros = 50;
+
+    // Posiciones seguidas que tienen que coincidir en el nuevo estado para cambiar.
+    @Value("${agencia.alertas.confirmaciones:1}")
+    private int confirmaciones = 1;
+
+    @Value("${agencia.alertas.latido-ms:60000}")
+    private long latidoMs = 60000;
+
+    // Un vehículo sin posiciones por más de este tiempo se olvida (por ejemplo, porque terminó la prueba).
+    @Value("${agencia.alertas.inactividad-ms:600000}")
+    private long inactividadMs = 600000;
+
+    private final AtomicLong posicionesEvaluadas = new AtomicLong();
+    private final AtomicLong entradas = new AtomicLong();
+    private final AtomicLong salidas = new AtomicLong();
+    private final AtomicLong latidos = new AtomicLong();
+    private final AtomicLong suprimidas = new AtomicLong();
+    private final AtomicLong enviosFallidos = new AtomicLong();
+
+    @Autowired
+    public AlertasVehiculos(KafkaProducer kafkaProducer) {
+        this.kafkaProducer = kafkaProducer;
+    }
+
+    /**
+     * Registra la posición de un vehículo ya evaluada contra la geocerca.
+     * La posición tiene que traer el vehículo con su id (y la patente y el modelo que se envían en la alerta).
+     * @return las alertas que generó el cambio de estado: ninguna si el vehículo sigue igual, una SALIDA y/o una ENTRADA si cambió.
+     */
+    public List<AlertaVehiculo> registrar(PosicionDto posicion, GeocercaCompilada geocerca, VeredictoGeocerca veredicto) {
+        return registrar(posicion, geocerca, veredicto, System.currentTimeMillis());
+    }
+
+    List<AlertaVehiculo> registrar(PosicionDto posicion, GeocercaCompilada geocerca, VeredictoGeocerca veredicto, long ahoraMillis) {
+        posicionesEvaluadas.incrementAndGet();
+        PuntoGeocerca punto = new PuntoGeocerca(posicion.getCoordenadas().getLat(), posicion.getCoordenadas().getLon());
+        ZonaPeligrosaDto zona = veredicto == VeredictoGeocerca.EN_ZONA_RESTRINGIDA ? geocerca.buscarZona(punto) : null;
+        Seguimiento seguimiento = porVehiculo.computeIfAbsent(posicion.getVehiculo().getId(), id -> new Seguimiento());
+
+        List<AlertaVehiculo> alertas = new ArrayList<>(2);
+        synchronized (seguimiento) {
+            seguimiento.ultimaPosicionMillis = ahoraMillis;
+
+            // Histéresis: mientras no se aleje lo suficiente del borde, sigue en el estado de incidente actual.
+            if (sigueEnElEstadoActual(seguimiento, veredicto, geocerca, punto)) {
+                veredicto = seguimiento.estado;
+                zona = seguimiento.zona;
+            }
+
+            if (veredicto == seguimiento.estado && mismaZona(zona, seguimiento.zona)) {
+                seguimiento.candidato = null;
+                seguimiento.ultimaPosicion = posicion;
+                if (seguimiento.estado.esIncidente()) {
+                    seguimiento.repeticiones++;
+                    suprimidas.incrementAndGet();
+                }
+                return alertas;
+            }
+
+            if (veredicto == seguimiento.candidato && mismaZona(zona, seguimiento.zonaCandidata)) {
+                seguimiento.confirmadas++;
+            } else {
+                seguimiento.candidato = veredicto;
+                seguimiento.zonaCandidata = zona;
+                seguimiento.confirmadas = 1;
+            }
+            if (seguimiento.confirmadas < confirmaciones) {
+                return alertas;
+            }
+
+            if (seguimiento.estado.esIncidente()) {
+                alertas.add(new AlertaVehiculo(AlertaVehiculo.Tipo.SALIDA, seguimiento.estado, posicion, seguimiento.repeticiones));
+                salidas.incrementAndGet();
+            }
+            if (veredicto.esIncidente()) {
+                alertas.add(new AlertaVehiculo(AlertaVehiculo.Tipo.ENTRADA, veredicto, posicion, 0));
+                entradas.incrementAndGet();
+            }
+            seguimiento.estado = veredicto;
+            seguimiento.zona = zona;
+            seguimiento.candidato = null;
+            seguimiento.repeticiones = 0;
+            seguimiento.ultimaPosicion = posicion;
+            seguimiento.ultimaAlertaMillis = ahoraMillis;
+        }
+        return alertas;
+    }
+
+    /**
+     * Olvida el estado del vehículo. Se llama al empezar y al terminar cada prueba: el estado es de la prueba, así
+     * que la primera posición fuera del radio de una prueba nueva vuelve a generar una ENTRADA aunque la anterior
+     * haya terminado en incidente hace menos de {@code inactividad-ms}.
+     */
+    public void olvidar(Integer idVehiculo) {
+        porVehiculo.remove(idVehiculo);
+    }
+
+    /**
+     * Envía a notificaciones las entradas y los latidos. Las salidas por ahora solo se informan en el log:
+     * notificaciones no tiene un tópico para ellas.
+     * El Mono termina cuando el broker confirmó todos los envíos; los errores se informan y no se propagan.
+     */
+    public Mono<Void> publicar(List<AlertaVehiculo> alertas) {
+        if (alertas.isEmpty()) {
+            return Mono.empty();
+        }
+        List<Mono<Void>> envios = new ArrayList<>(alertas.size());
+        for (AlertaVehiculo alerta : alertas) {
+            if (alerta.getTipo() == AlertaVehiculo.Tipo.SALIDA) {
+                System.out.println("AlertasVehiculos: " + alerta);
+                continue;
+            }
+            envios.add(Mono.defer(() -> enviar(alerta)));
+        }
+        return Mono.when(envios);
+    }
+
+    /**
+     * Envía un latido por cada vehículo que sigue en un estado de incidente y tuvo posiciones desde su última alerta,
+     * y olvida los vehículos que dejaron de mandar posiciones.
+     */
+    @Scheduled(fixedDelayString = "${agencia.alertas.revision-ms:5000}", initialDelayString = "${agencia.alertas.revision-ms:5000}")
+    // No espera las confirmaciones: el hilo del scheduler de Spring queda libre para las demás tareas periódicas.
+    public void revisar() {
+        publicar(latidos(System.currentTimeMillis())).subscribe(null,
+                e -> System.err.println("AlertasVehiculos: no se pudieron enviar los latidos: " + e.getMessage()));
+    }
+
+    List<AlertaVehiculo> latidos(long ahoraMillis) {
+        List<AlertaVehiculo> alertas = new ArrayList<>();
+        porVehiculo.entrySet().removeIf(entrada -> {
+            Seguimiento seguimiento = entrada.getValue();
+            synchronized (seguimiento) {
+                if (ahoraMillis - seguimiento.ultimaPosicionMillis > inactividadMs) {
+                    return true;
+                }
+                if (seguimiento.estado.esIncidente() && seguimiento.repeticiones > 0
+                        && ahoraMillis - seguimiento.ultimaAlertaMillis >= latidoMs) {
+                    PosicionDto resumen = copiar(seguimiento.ultimaPosicion);
+                    resumen.setMensaje(seguimiento.estado.getMensaje() + " Sigue en ese estado: " + seguimiento.repeticiones
+                            + " posiciones en los ultimos " + (ahoraMillis - seguimiento.ultimaAlertaMillis) / 1000 + " segundos.");
+                    alertas.add(new AlertaVehiculo(AlertaVehiculo.Tipo.LATIDO, seguimiento.estado, resumen, seguimiento.repeticiones));
+                    latidos.incrementAndGet();
+                    seguimiento.repeticiones = 0;
+                    seguimiento.ultimaAlertaMillis = ahoraMillis;
+                }
+                return false;
+            }
+        });
+        return alertas;
+    }
+
+    public EstadoAlertasDto getEstado() {
+        EstadoAlertasDto estado = new EstadoAlertasDto();
+        estado.setVehiculosSeguidos(porVehiculo.size());
+        estado.setVehiculosEnIncidente((int) porVehiculo.values().stream().filter(s -> s.estado.esIncidente()).count());
+        estado.setPosicionesEvaluadas(posicionesEvaluadas.get());
+        estado.setEntradas(entradas.get());
+        estado.setSalidas(salidas.get());
+        estado.setLatidos(latidos.get());
+        estado.setAlertasSuprimidas(suprimidas.get());
+        estado.setEnviosFallidos(enviosFallidos.get());
+        return estado;
+    }
+
+    private Mono<Void> enviar(AlertaVehiculo alerta) {
+        PosicionDto posicion = alerta.getPosicion();
+        return (alerta.getEstado() == VeredictoGeocerca.FUERA_DE_RADIO
+                ? kafkaProducer.enviarMensajeRadioExcedido(posicion)
+                : kafkaProducer.enviarMensajeZonaPeligrosa(posicion))
+                .then()
+                .onErrorResume(e -> {
+                    enviosFallidos.incrementAndGet();
+                    System.err.println("No se pudo enviar la alerta del vehiculo " + posicion.getVehiculo().getId() + " a Kafka: " + e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Si el vehículo está en un estado de incidente y la posición todavía no se alejó histeresis-metros del borde,
+    // la posición no cuenta como cambio. Salir del radio siempre cuenta: es lo primero que revisa la geocerca.
+    private boolean sigueEnElEstadoActual(Seguimiento seguimiento, VeredictoGeocerca veredicto, GeocercaCompilada geocerca, PuntoGeocerca punto) {
+        if (seguimiento.estado == VeredictoGeocerca.FUERA_DE_RADIO) {
+            return veredicto != VeredictoGeocerca.FUERA_DE_RADIO
+                    && geocerca.getRadioAgencia().distanciaMetros(punto) > geocerca.getRadioAgencia().getRadioMetros() - histeresisMetros;
+        }
+        if (seguimiento.estado == VeredictoGeocerca.EN_ZONA_RESTRINGIDA && veredicto != VeredictoGeocerca.FUERA_DE_RADIO) {
+            ZonaPeligrosaDto zona = seguimiento.zona;
+            return GeoUtils.distanciaHaversineMetros(punto.getLatitud(), punto.getLongitud(),
+                    zona.getCoordenadas().getLatitud(), zona.getCoordenadas().getLongitud()) <= zona.getRadioMetros() + histeresisMetros;
+        }
+        return false;
+    }
+
+    // Las restricciones se vuelven a pedir periódicamente, así que la misma zona llega en objetos distintos.
+    private static boolean mismaZona(ZonaPeligrosaDto a, ZonaPeligrosaDto b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getIdZona() != null ? a.getIdZona().equals(b.getIdZona()) : Objects.equals(a, b);
+    }
+
+    private static PosicionDto copiar(PosicionDto origen) {
+        PosicionDto copia = new PosicionDto();
+        copia.setId(origen.getId());
+        if (origen.getVehiculo() != null) {
+            copia.setVehiculo(new VehiculoDto(origen.getVehiculo().getId(), origen.getVehiculo().getPatente(), origen.getVehiculo().getIdModelo()));
+        }
+        copia.setCoordenadas(origen.getCoordenadas());
+        // El latido sale con la hora de la última posición como timestamp del registro, no con la del envío.
+        copia.setFechaHora(origen.getFechaHora());
+        copia.setMensaje(origen.getMensaje());
+        return copia;
+    }
+
+    // Estado de un vehículo. Se modifica con el lock del propio objeto.
+    private static final class Seguimiento {
+        VeredictoGeocerca estado = VeredictoGeocerca.DENTRO;
+        ZonaPeligrosaDto zona;
+        VeredictoGeocerca candidato;
+        ZonaPeligrosaDto zonaCandidata;
+        int confirmadas;
+        int repeticiones;
+        PosicionDto ultimaPosicion;
+        long ultimaAlertaMillis;
+        long ultimaPosicionMillis;
+    }
+}
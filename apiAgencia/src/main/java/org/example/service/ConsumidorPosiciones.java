@@ -0,0 +1,70 @@
+package org.example.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.ResultadoPosicionDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consume las posiciones del tópico agencia-posiciones-topic de a lotes: cada poll pasa por el mismo camino que
+ * POST /posiciones/batch (validación contra las pruebas en curso, geocerca, alertas) y se guarda en una sola transacción.
+ *
+ * Los picos de posiciones quedan en Kafka en lugar de esperar a SQLite, y se pueden sumar instancias hasta la
+ * cantidad de particiones del tópico. Las posiciones rechazadas solo se informan: no hay a quién responderle.
+ *
+ * La fecha de cada posición es el timestamp del registro (la que mandó el vehículo o, si no mandó ninguna, la hora en
+ * que se publicó), no la hora en que se consume: con atraso en el tópico el recorrido queda igual. El offset se
+ * confirma a mano, recién cuando el lote quedó guardado.
+ */
+@Service
+@ConditionalOnProperty(name = "agencia.posiciones.kafka.habilitado", havingValue = "true")
+public class ConsumidorPosiciones {
+
+    private final VehiculoService vehiculoService;
+    private final MetricasEtapas metricasEtapas;
+
+    @Autowired
+    public ConsumidorPosiciones(VehiculoService vehiculoService, MetricasEtapas metricasEtapas) {
+        this.vehiculoService = vehiculoService;
+        this.metricasEtapas = metricasEtapas;
+    }
+
+    @KafkaListener(id = "consumidor-posiciones", topics = KafkaProducer.TOPICO_POSICIONES,
+            groupId = "agencia-posiciones", containerFactory = "posicionesListenerFactory")
+    public void consumir(List<ConsumerRecord<String, PosicionDto>> registros, Acknowledgment confirmacion) {
+        List<PosicionDto> posiciones = new ArrayList<>(registros.size());
+        for (ConsumerRecord<String, PosicionDto> registro : registros) {
+            if (registro.value() == null) {
+                System.err.println("ConsumidorPosiciones: se descarta el mensaje " + registro.partition() + "@" + registro.offset()
+                        + " (clave " + registro.key() + "): no es una posición válida.");
+                continue;
+            }
+            if (registro.value().getFechaHora() == null && registro.timestampType() != TimestampType.NO_TIMESTAMP_TYPE) {
+                registro.value().setFechaHora(registro.timestamp());
+            }
+            posiciones.add(registro.value());
+        }
+        if (posiciones.isEmpty()) {
+            confirmacion.acknowledge();
+            return;
+        }
+        // Este hilo es del consumidor de Kafka y puede esperar: si el lote falla no se confirma y lo reintenta
+        // el manejador de errores del contenedor (ver KafkaPosicionesConfig).
+        List<ResultadoPosicionDto> resultados = metricasEtapas.medir("kafka consumo", vehiculoService.procesarLotePosiciones(posiciones)).block();
+        confirmacion.acknowledge();
+        if (resultados == null) {
+            return;
+        }
+        resultados.stream()
+                .filter(r -> r.getEstado() == ResultadoPosicionDto.Estado.RECHAZADA)
+                .forEach(r -> System.err.println("ConsumidorPosiciones: posición del vehículo " + r.getIdVehiculo() + " rechazada: " + r.getMensaje()));
+    }
+}
@@ -0,0 +1,287 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.dtos.EstadoEscrituraPosicionesDto;
+import org.example.models.Posicion;
+import org.example.repositories.PosicionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritura diferida (write-behind) de las posiciones.
+ *
+ * SQLite hace un fsync por cada commit, así que guardar cada posición en su propia transacción limita
+ * la cantidad de posiciones por segundo. Las posiciones se encolan en una cola acotada y un único hilo
+ * escritor las guarda en grupos: junta hasta {@code max-grupo} posiciones o espera a lo sumo
+ * {@code espera-ms} desde la primera, y las confirma todas en un solo commit.
+ *
+ * Si el commit de un grupo falla (la base ocupada, por ejemplo) se reintenta {@code reintentos} veces con una espera
+ * que se duplica cada vez; si sigue fallando, las posiciones se escriben de a una, así que una fila inválida hace fallar
+ * solo a esa posición. Con durabilidad ASINCRONA al cliente ya se le respondió que la posición se registró: descartar
+ * el grupo entero perdería posiciones confirmadas.
+ *
+ * Al apagar la aplicación se dejan de aceptar posiciones y se escribe todo lo que quedó en la cola.
+ */
+@Service
+public class EscritorPosiciones {
+
+    /**
+     * Qué espera quien encola una posición.
+     */
+    public enum Durabilidad {
+        // Se responde apenas se encola: la posición todavía no tiene id.
+        ASINCRONA,
+        // Se espera al commit del grupo: la posición vuelve con su id.
+        SINCRONA
+    }
+
+    private final PosicionRepository posicionRepository;
+    private final BlockingQueue<Pendiente> cola;
+    private final int capacidad;
+
+    @Value("${agencia.posiciones.escritura.max-grupo:500}")
+    private int maxGrupo = 500;
+
+    @Value("${agencia.posiciones.escritura.espera-ms:5}")
+    private long esperaMs = 5;
+
+    // Cuánto se espera lugar en la cola antes de rechazar la posición.
+    @Value("${agencia.posiciones.escritura.timeout-encolar-ms:1000}")
+    private long timeoutEncolarMs = 1000;
+
+    @Value("${agencia.posiciones.escritura.reintentos:3}")
+    private int reintentos = 3;
+
+    // Espera antes del primer reintento de un grupo; se duplica en cada uno.
+    @Value("${agencia.posiciones.escritura.reintento-espera-ms:50}")
+    private long reintentoEsperaMs = 50;
+
+    @Value("${agencia.posiciones.escritura.durabilidad:ASINCRONA}")
+    private Durabilidad durabilidadPorDefecto = Durabilidad.ASINCRONA;
+
+    private volatile boolean aceptando = true;
+    private volatile boolean detener = false;
+    private Thread escritor;
+
+    private final AtomicLong encoladas = new AtomicLong();
+    private final AtomicLong escritas = new AtomicLong();
+    private final AtomicLong fallidas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong grupos = new AtomicLong();
+    private final AtomicLong gruposReintentados = new AtomicLong();
+    private final AtomicLong nanosCommitTotal = new AtomicLong();
+    private volatile long nanosCommitMaximo;
+    private volatile int ultimoGrupo;
+    private volatile String ultimoError;
+
+    @Autowired
+    public EscritorPosiciones(PosicionRepository posicionRepository,
+                              @Value("${agencia.posiciones.escritura.capacidad:10000}") int capacidad) {
+        this.posicionRepository = posicionRepository;
+        this.capacidad = capacidad;
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        escritor = new Thread(this::bucleEscritura, "escritor-posiciones");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Deja de aceptar posiciones y espera a que el hilo escritor guarde todo lo que queda en la cola.
+     */
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        aceptando = false;
+        detener = true;
+        if (escritor != null) {
+            escritor.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (!cola.isEmpty()) {
+            System.err.println("EscritorPosiciones: quedaron " + cola.size() + " posiciones sin escribir al apagar.");
+            if (escritor == null || !escritor.isAlive()) {
+                // Nadie las va a escribir: quien espera el commit (SINCRONA) recibe el error en lugar de quedar colgado.
+                rechazarPendientes();
+            }
+        }
+    }
+
+    /**
+     * Encola la posición para que la guarde el hilo escritor.
+     * @return un future que se completa con la posición (ya con su id) cuando se confirma el grupo que la contiene.
+     * @throws IllegalStateException si la cola sigue llena después de esperar, o si el escritor se está apagando.
+     */
+    public CompletableFuture<Posicion> encolar(Posicion posicion) {
+        if (!aceptando) {
+            throw new IllegalStateException("El registro de posiciones se está apagando.");
+        }
+        Pendiente pendiente = new Pendiente(posicion);
+        try {
+            if (!cola.offer(pendiente, timeoutEncolarMs, TimeUnit.MILLISECONDS)) {
+                rechazadas.incrementAndGet();
+                throw new IllegalStateException("El registro de posiciones está saturado, reintente en unos instantes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Se interrumpió el registro de la posición.", e);
+        }
+        // Si el escritor empezó a apagarse mientras se encolaba, puede haber terminado sin ver esta posición:
+        // se saca de la cola y se rechaza. Si ya no está, la tomó el escritor y su future se completa igual.
+        if (detener && cola.remove(pendiente)) {
+            throw new IllegalStateException("El registro de posiciones se está apagando.");
+        }
+        encoladas.incrementAndGet();
+        return pendiente.resultado;
+    }
+
+    public Durabilidad getDurabilidadPorDefecto() {
+        return durabilidadPorDefecto;
+    }
+
+    public EstadoEscrituraPosicionesDto getEstado() {
+        EstadoEscrituraPosicionesDto estado = new EstadoEscrituraPosicionesDto();
+        estado.setProfundidadCola(cola.size());
+        estado.setCapacidadCola(capacidad);
+        estado.setDurabilidadPorDefecto(durabilidadPorDefecto.name());
+        estado.setEncoladas(encoladas.get());
+        estado.setEscritas(escritas.get());
+        estado.setFallidas(fallidas.get());
+        estado.setRechazadas(rechazadas.get());
+        long cantidadGrupos = grupos.get();
+        estado.setGrupos(cantidadGrupos);
+        estado.setGruposReintentados(gruposReintentados.get());
+        estado.setUltimoGrupo(ultimoGrupo);
+        estado.setLatenciaCommitPromedioMs(cantidadGrupos == 0 ? 0 : nanosCommitTotal.get() / 1e6 / cantidadGrupos);
+        estado.setLatenciaCommitMaximaMs(nanosCommitMaximo / 1e6);
+        estado.setUltimoError(ultimoError);
+        return estado;
+    }
+
+    private void bucleEscritura() {
+        List<Pendiente> grupo = new ArrayList<>(maxGrupo);
+        while (!detener || !cola.isEmpty()) {
+            try {
+                Pendiente primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                grupo.add(primera);
+                // Se junta lo que llegue hasta completar el grupo o hasta que pase la espera máxima desde la primera.
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+                while (grupo.size() < maxGrupo) {
+                    cola.drainTo(grupo, maxGrupo - grupo.size());
+                    long restante = limite - System.nanoTime();
+                    if (grupo.size() >= maxGrupo || restante <= 0) {
+                        break;
+                    }
+                    Pendiente siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    grupo.add(siguiente);
+                }
+                escribir(grupo);
+            } catch (InterruptedException e) {
+                // Solo se interrumpe al apagar: se sigue hasta vaciar la cola.
+                detener = true;
+            } finally {
+                grupo.clear();
+            }
+        }
+    }
+
+    private void rechazarPendientes() {
+        List<Pendiente> pendientes = new ArrayList<>();
+        cola.drainTo(pendientes);
+        IllegalStateException error = new IllegalStateException("El registro de posiciones se apagó antes de escribir la posición.");
+        pendientes.forEach(p -> p.resultado.completeExceptionally(error));
+        fallidas.addAndGet(pendientes.size());
+    }
+
+    private void escribir(List<Pendiente> grupo) {
+        List<Posicion> posiciones = new ArrayList<>(grupo.size());
+        for (Pendiente pendiente : grupo) {
+            posiciones.add(pendiente.posicion);
+        }
+        long inicio = System.nanoTime();
+        RuntimeException error = insertarConReintentos(posiciones);
+        if (error != null) {
+            ultimoError = error.getMessage();
+            System.err.println("EscritorPosiciones: no se pudo escribir un grupo de " + grupo.size()
+                    + " posiciones, se escriben de a una: " + error.getMessage());
+            escribirDeAUna(grupo);
+            return;
+        }
+        long duracion = System.nanoTime() - inicio;
+        nanosCommitTotal.addAndGet(duracion);
+        nanosCommitMaximo = Math.max(nanosCommitMaximo, duracion);
+        grupos.incrementAndGet();
+        escritas.addAndGet(grupo.size());
+        ultimoGrupo = grupo.size();
+        grupo.forEach(p -> p.resultado.complete(p.posicion));
+    }
+
+    // Devuelve el último error si el grupo no se pudo escribir en ningún intento, o null si se escribió.
+    private RuntimeException insertarConReintentos(List<Posicion> posiciones) {
+        long espera = reintentoEsperaMs;
+        for (int intento = 0; ; intento++) {
+            try {
+                posicionRepository.insertarEnGrupo(posiciones);
+                return null;
+            } catch (RuntimeException e) {
+                if (intento >= reintentos) {
+                    return e;
+                }
+                if (intento == 0) {
+                    gruposReintentados.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException interrumpido) {
+                    // Se está apagando: se pasa directo a escribirlas de a una.
+                    detener = true;
+                    return e;
+                }
+                espera *= 2;
+            }
+        }
+    }
+
+    private void escribirDeAUna(List<Pendiente> grupo) {
+        for (Pendiente pendiente : grupo) {
+            try {
+                posicionRepository.insertarEnGrupo(List.of(pendiente.posicion));
+            } catch (RuntimeException e) {
+                fallidas.incrementAndGet();
+                ultimoError = e.getMessage();
+                System.err.println("EscritorPosiciones: no se pudo escribir la posicion del vehiculo "
+                        + pendiente.posicion.getVehiculo().getId() + ": " + e.getMessage());
+                pendiente.resultado.completeExceptionally(e);
+                continue;
+            }
+            escritas.incrementAndGet();
+            pendiente.resultado.complete(pendiente.posicion);
+        }
+    }
+
+    private static final class Pendiente {
+        private final Posicion posicion;
+        private final CompletableFuture<Posicion> resultado = new CompletableFuture<>();
+
+        private Pendiente(Posicion posicion) {
+            this.posicion = posicion;
+        }
+    }
+}
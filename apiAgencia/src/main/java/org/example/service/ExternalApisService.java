@@ -4,7 +4,6 @@ package org.example.service;
 import org.example.dtos.externos.RestriccionesDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
@@ -27,8 +26,7 @@ public class ExternalApisService {
     }
 
     // AHORA: El método devuelve un Mono<RestriccionesDto>, la "promesa" del objeto.
-    // La anotación @Cacheable sigue funcionando, pero cacheará el Mono.
-    @Cacheable("restrictionsApiCache")
+    // Cada llamada sale al servicio externo: la foto en memoria la mantiene RestriccionesService.
     public Mono<RestriccionesDto> getRestricciones() {
         // Simplemente retornamos el Mono. ¡No más .block()!
         return webClient.get()
@@ -1,22 +1,96 @@
 package org.example.service;
 
+import jakarta.annotation.PreDestroy;
 import org.example.dtos.PosicionDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publica las alertas de posiciones para el servicio de notificaciones y las posiciones que entran por Kafka.
+ *
+ * Cada mensaje lleva como clave el id del vehículo: todos los mensajes de un vehículo caen en la misma partición
+ * y llegan en el orden en que se enviaron. El lote, la espera y la compresión se configuran en application.properties.
+ *
+ * Los envíos devuelven un Mono que termina cuando el broker confirma el mensaje (o falla), y nada se envía hasta
+ * que alguien se suscribe. La cantidad, los errores y la latencia de cada tópico quedan en {@link MetricasEtapas}.
+ *
+ * send() puede bloquear hasta max.block.ms si todavía no tiene la metadata del tópico, así que cada envío se hace en
+ * hilos propios del productor, nunca en el de quien se suscribe: {@code hilos} hilos con una cola acotada de
+ * {@code cola} envíos cada uno (con la cola llena el Mono falla con RejectedExecutionException). Los mensajes de un
+ * vehículo van siempre al mismo hilo, así salen en el orden en que se suscribieron.
+ */
 @Service
 public class KafkaProducer {
+
+    public static final String TOPICO_RADIO_EXCEDIDO = "agencia-radio-excedido-topic";
+    public static final String TOPICO_ZONA_PELIGROSA = "agencia-zona-peligrosa-topic";
+    // Posiciones crudas que manda un vehículo (o un relay) para que las procese ConsumidorPosiciones.
+    public static final String TOPICO_POSICIONES = "agencia-posiciones-topic";
+
     private final KafkaTemplate<String, PosicionDto> kafkaTemplate;
+    private final MetricasEtapas metricasEtapas;
+    private final Scheduler[] hilosEnvio;
 
-    public KafkaProducer(KafkaTemplate<String, PosicionDto> kafkaTemplate) {
+    @Autowired
+    public KafkaProducer(KafkaTemplate<String, PosicionDto> kafkaTemplate, MetricasEtapas metricasEtapas,
+                         @Value("${agencia.kafka.envio.hilos:2}") int hilos,
+                         @Value("${agencia.kafka.envio.cola:10000}") int cola) {
         this.kafkaTemplate = kafkaTemplate;
+        this.metricasEtapas = metricasEtapas;
+        this.hilosEnvio = new Scheduler[hilos];
+        for (int i = 0; i < hilos; i++) {
+            String nombre = "kafka-envio-" + i;
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cola), tarea -> {
+                Thread hilo = new Thread(tarea, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            this.hilosEnvio[i] = Schedulers.fromExecutorService(executor, nombre);
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        for (Scheduler hilo : hilosEnvio) {
+            hilo.dispose();
+        }
+    }
+
+    public Mono<SendResult<String, PosicionDto>> enviarMensajeRadioExcedido(PosicionDto mensaje) {
+        return enviar(TOPICO_RADIO_EXCEDIDO, mensaje);
+    }
+
+    public Mono<SendResult<String, PosicionDto>> enviarMensajeZonaPeligrosa(PosicionDto mensaje) {
+        return enviar(TOPICO_ZONA_PELIGROSA, mensaje);
+    }
+
+    public Mono<SendResult<String, PosicionDto>> publicarPosicion(PosicionDto posicion) {
+        return enviar(TOPICO_POSICIONES, posicion);
     }
 
-    public void enviarMensajeRadioExcedido(PosicionDto mensaje) {
-        kafkaTemplate.send("agencia-radio-excedido-topic", mensaje);
+    // send() corre en el hilo de envío del vehículo: puede bloquear hasta max.block.ms sin ocupar el hilo de quien se suscribe.
+    // La fecha de la posición va como timestamp del registro, porque el formato binario no la lleva.
+    private Mono<SendResult<String, PosicionDto>> enviar(String topico, PosicionDto mensaje) {
+        String clave = clave(mensaje);
+        Scheduler hilo = hilosEnvio[clave == null ? 0 : Math.floorMod(clave.hashCode(), hilosEnvio.length)];
+        return metricasEtapas.medir("kafka " + topico,
+                Mono.fromFuture(() -> mensaje.getFechaHora() == null
+                        ? kafkaTemplate.send(topico, clave, mensaje)
+                        : kafkaTemplate.send(topico, null, mensaje.getFechaHora(), clave, mensaje)).subscribeOn(hilo));
     }
 
-    public void enviarMensajeZonaPeligrosa(PosicionDto mensaje) {
-        kafkaTemplate.send("agencia-zona-peligrosa-topic", mensaje);
+    static String clave(PosicionDto mensaje) {
+        return mensaje.getVehiculo() != null && mensaje.getVehiculo().getId() != null
+                ? mensaje.getVehiculo().getId().toString() : null;
     }
 }
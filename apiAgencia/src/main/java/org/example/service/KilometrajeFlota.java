@@ -0,0 +1,181 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.VehiculoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Kilometraje de todos los vehículos en un período ({@code GET /api/reportes/kilometraje}), calculado en paralelo en un
+ * {@link ForkJoinPool} propio de {@code paralelismo} hilos: una tarea por vehículo, que lee sus pruebas finalizadas con
+ * un cursor (ver {@link PruebaRepository#streamFinalizadasDeVehiculo}) y suma las distancias guardadas, y una subtarea
+ * por cada prueba que todavía no tiene distancia y hay que calcular con el resumen o el recorrido
+ * (ver {@link OdometroPruebas#distanciaDe}).
+ * <p>
+ * Cada lectura de la base toma un permiso de {@code lectores}, así el reporte no ocupa más de esa cantidad de conexiones
+ * aunque haya más hilos; ninguna tarea espera a sus subtareas con un permiso tomado. Tienen que ser menos que las
+ * conexiones del pool, para que un reporte no deje sin conexión a la ingesta.
+ */
+@Service
+public class KilometrajeFlota {
+
+    /**
+     * Kilometraje de un vehículo en el período.
+     */
+    public record Fila(String patente, int pruebas, double kilometraje) {
+    }
+
+    /**
+     * Los vehículos ordenados de mayor a menor kilometraje (y por patente si empatan) y los totales de la flota.
+     */
+    public record Resultado(List<Fila> vehiculos, int pruebas, double kilometraje) {
+    }
+
+    private static final Comparator<Fila> ORDEN = Comparator.comparingDouble(Fila::kilometraje).reversed()
+            .thenComparing(Fila::patente, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final VehiculoRepository vehiculoRepository;
+    private final PruebaRepository pruebaRepository;
+    private final OdometroPruebas odometroPruebas;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaccionLectura;
+    private final ForkJoinPool pool;
+    private final Semaphore lectores;
+
+    @Autowired
+    public KilometrajeFlota(VehiculoRepository vehiculoRepository, PruebaRepository pruebaRepository,
+                            OdometroPruebas odometroPruebas, EntityManager entityManager,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${agencia.reportes.kilometraje.paralelismo:4}") int paralelismo,
+                            @Value("${agencia.reportes.kilometraje.lectores:2}") int lectores) {
+        this.vehiculoRepository = vehiculoRepository;
+        this.pruebaRepository = pruebaRepository;
+        this.odometroPruebas = odometroPruebas;
+        this.entityManager = entityManager;
+        this.transaccionLectura = new TransactionTemplate(transactionManager);
+        this.transaccionLectura.setReadOnly(true);
+        this.pool = new ForkJoinPool(paralelismo);
+        this.lectores = new Semaphore(lectores);
+    }
+
+    @PreDestroy
+    public void detener() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Kilómetros de cada vehículo en las pruebas finalizadas que se superponen con [desde, hasta].
+     */
+    public Resultado calcular(Date desde, Date hasta) {
+        List<Vehiculo> vehiculos = leer(vehiculoRepository::findAll);
+        List<Fila> filas = pool.invoke(new RecursiveTask<List<Fila>>() {
+            @Override
+            protected List<Fila> compute() {
+                List<PorVehiculo> tareas = new ArrayList<>(vehiculos.size());
+                for (Vehiculo vehiculo : vehiculos) {
+                    tareas.add(new PorVehiculo(vehiculo, desde, hasta));
+                }
+                ForkJoinTask.invokeAll(tareas);
+                List<Fila> filas = new ArrayList<>(tareas.size());
+                for (PorVehiculo tarea : tareas) {
+                    filas.add(tarea.join());
+                }
+                return filas;
+            }
+        });
+        filas.sort(ORDEN);
+
+        int pruebas = 0;
+        double kilometraje = 0.0;
+        for (Fila fila : filas) {
+            pruebas += fila.pruebas();
+            kilometraje += fila.kilometraje();
+        }
+        return new Resultado(filas, pruebas, kilometraje);
+    }
+
+    private <T> T leer(Supplier<T> lectura) {
+        try {
+            lectores.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Se interrumpió el reporte de kilometraje de la flota.", e);
+        }
+        try {
+            return lectura.get();
+        } finally {
+            lectores.release();
+        }
+    }
+
+    private final class PorVehiculo extends RecursiveTask<Fila> {
+        private final Vehiculo vehiculo;
+        private final Date desde;
+        private final Date hasta;
+
+        private PorVehiculo(Vehiculo vehiculo, Date desde, Date hasta) {
+            this.vehiculo = vehiculo;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Fila compute() {
+            // Las pruebas con distancia se suman al leerlas; solo se guardan las que falta calcular.
+            double[] kilometraje = {0.0};
+            int[] pruebas = {0};
+            List<PorPrueba> sinDistancia = new ArrayList<>();
+            leer(() -> transaccionLectura.execute(estado -> {
+                try (Stream<Prueba> finalizadas = pruebaRepository.streamFinalizadasDeVehiculo(vehiculo.getId(), desde, hasta)) {
+                    finalizadas.forEach(prueba -> {
+                        pruebas[0]++;
+                        if (prueba.getDistanciaKm() != null) {
+                            kilometraje[0] += prueba.getDistanciaKm();
+                        } else {
+                            sinDistancia.add(new PorPrueba(prueba));
+                        }
+                        entityManager.detach(prueba);
+                    });
+                }
+                return null;
+            }));
+
+            ForkJoinTask.invokeAll(sinDistancia);
+            for (PorPrueba tarea : sinDistancia) {
+                kilometraje[0] += tarea.join();
+            }
+            return new Fila(vehiculo.getPatente(), pruebas[0], kilometraje[0]);
+        }
+    }
+
+    private final class PorPrueba extends RecursiveTask<Double> {
+        private final Prueba prueba;
+
+        private PorPrueba(Prueba prueba) {
+            this.prueba = prueba;
+        }
+
+        @Override
+        protected Double compute() {
+            return leer(() -> odometroPruebas.distanciaDe(prueba));
+        }
+    }
+}
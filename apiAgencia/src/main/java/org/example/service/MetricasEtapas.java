@@ -0,0 +1,94 @@
+package org.example.service;
+
+import org.example.dtos.EstadoEtapaDto;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencia por etapa del procesamiento de posiciones (restricciones, persistencia, incidente, ...).
+ * Cada etapa guarda cantidad, errores, promedio, máximo y un histograma por potencias de 2 para estimar percentiles.
+ */
+@Component
+public class MetricasEtapas {
+
+    private final Map<String, Etapa> etapas = new ConcurrentHashMap<>();
+
+    /**
+     * Mide desde que se suscribe al Mono hasta que termina (con valor, vacío, error o cancelado).
+     */
+    public <T> Mono<T> medir(String etapa, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long inicio = System.nanoTime();
+            return mono.doFinally(senal -> registrar(etapa, System.nanoTime() - inicio, senal == SignalType.ON_ERROR));
+        });
+    }
+
+    public void registrar(String etapa, long nanos, boolean error) {
+        etapas.computeIfAbsent(etapa, k -> new Etapa()).registrar(nanos, error);
+    }
+
+    public List<EstadoEtapaDto> getEstado() {
+        List<EstadoEtapaDto> estado = new ArrayList<>();
+        new ConcurrentSkipListMap<>(etapas).forEach((nombre, etapa) -> estado.add(etapa.resumen(nombre)));
+        return estado;
+    }
+
+    private static final class Etapa {
+        // Rango i: duraciones de hasta 2^i microsegundos.
+        private static final int RANGOS = 40;
+
+        private final LongAdder cantidad = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder nanosTotal = new LongAdder();
+        private final AtomicLong nanosMaximo = new AtomicLong();
+        private final AtomicLongArray histograma = new AtomicLongArray(RANGOS);
+
+        void registrar(long nanos, boolean error) {
+            cantidad.increment();
+            if (error) {
+                errores.increment();
+            }
+            nanosTotal.add(nanos);
+            nanosMaximo.accumulateAndGet(nanos, Math::max);
+            long micros = Math.max(0, nanos / 1000);
+            int rango = micros == 0 ? 0 : Math.min(RANGOS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+            histograma.incrementAndGet(rango);
+        }
+
+        EstadoEtapaDto resumen(String nombre) {
+            long total = cantidad.sum();
+            double promedio = total == 0 ? 0 : nanosTotal.sum() / 1e6 / total;
+            return new EstadoEtapaDto(nombre, total, errores.sum(), promedio,
+                    percentil(0.50), percentil(0.99), nanosMaximo.get() / 1e6);
+        }
+
+        private double percentil(double p) {
+            long total = 0;
+            for (int i = 0; i < RANGOS; i++) {
+                total += histograma.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(total * p);
+            long acumulado = 0;
+            for (int i = 0; i < RANGOS; i++) {
+                acumulado += histograma.get(i);
+                if (acumulado >= objetivo) {
+                    return (1L << i) / 1000.0;
+                }
+            }
+            return (1L << (RANGOS - 1)) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.example.service;
+
+import org.example.dtos.EstadoOdometroDto;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
+import org.example.repositories.HistorialPosiciones;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Distancia recorrida de cada prueba (columna DISTANCIA_KM de Pruebas), para que el reporte de kilometraje sume un
+ * valor por prueba en lugar de leer y recorrer todas sus posiciones.
+ * <ul>
+ *   <li>En curso: cada posición aceptada avanza el odómetro de su {@link PruebaActiva} (Haversine desde la anterior,
+ *   en memoria) y cada {@code guardar-ms} se guardan los que cambiaron.</li>
+ *   <li>Al finalizar: se guarda el odómetro si vio todas las posiciones de la prueba; si no (la prueba empezó antes de
+ *   arrancar el servicio o llegaron posiciones fuera de orden) se recalcula una vez con el recorrido completo.</li>
+ *   <li>Pruebas finalizadas antes de que existiera la columna: un proceso en segundo plano las completa de a
+ *   {@code lote}, con el resumen de la retención si lo tienen o con su recorrido.</li>
+ * </ul>
+ */
+@Service
+public class OdometroPruebas {
+
+    private final RegistroPruebasActivas registroPruebasActivas;
+    private final PruebaRepository pruebaRepository;
+    private final HistorialPosiciones historialPosiciones;
+    private final ResumenPruebaRepository resumenPruebaRepository;
+
+    @Value("${agencia.odometro.completar.habilitado:true}")
+    private boolean completarHabilitado = true;
+
+    @Value("${agencia.odometro.completar.lote:200}")
+    private int tamanioLote = 200;
+
+    @Value("${agencia.odometro.completar.pausa-ms:50}")
+    private long pausaMs = 50;
+
+    private final AtomicLong posicionesSumadas = new AtomicLong();
+    private final AtomicLong distanciasGuardadas = new AtomicLong();
+    private final AtomicLong finalizadasConOdometro = new AtomicLong();
+    private final AtomicLong finalizadasRecalculadas = new AtomicLong();
+    private final AtomicBoolean completando = new AtomicBoolean();
+    private final AtomicLong pruebasCompletadas = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private volatile long ultimaCompletadaMillis;
+    // Se avisa con cada lote de pruebas cuya distancia se completó (ver ResumenesDiarios).
+    private volatile Consumer<List<Prueba>> alCompletar = completadas -> { };
+
+    @Autowired
+    public OdometroPruebas(RegistroPruebasActivas registroPruebasActivas, PruebaRepository pruebaRepository,
+                           HistorialPosiciones historialPosiciones, ResumenPruebaRepository resumenPruebaRepository) {
+        this.registroPruebasActivas = registroPruebasActivas;
+        this.pruebaRepository = pruebaRepository;
+        this.historialPosiciones = historialPosiciones;
+        this.resumenPruebaRepository = resumenPruebaRepository;
+    }
+
+    /**
+     * Avanza el odómetro de la prueba en curso de cada posición ya guardada, en el orden recibido. Solo usa el
+     * registro en memoria: una posición de un vehículo sin prueba registrada se ignora.
+     */
+    public void registrar(List<Posicion> posiciones) {
+        for (Posicion posicion : posiciones) {
+            if (posicion.getVehiculo() == null || posicion.getFechaHora() == null) {
+                continue;
+            }
+            PruebaActiva prueba = registroPruebasActivas.buscarRegistrada(posicion.getVehiculo().getId());
+            if (prueba == null || posicion.getFechaHora() < prueba.getFechaHoraInicio().getTime()) {
+                continue;
+            }
+            prueba.avanzarOdometro(posicion.getFechaHora(), posicion.getLatitud(), posicion.getLongitud());
+            posicionesSumadas.incrementAndGet();
+        }
+    }
+
+    /**
+     * Guarda el odómetro de las pruebas en curso que avanzaron desde la última vez. Un error con una prueba no frena
+     * a las demás; la próxima ejecución lo reintenta.
+     * @return la cantidad de pruebas guardadas.
+     */
+    @Scheduled(fixedDelayString = "${agencia.odometro.guardar-ms:30000}",
+            initialDelayString = "${agencia.odometro.guardar-ms:30000}")
+    public int guardar() {
+        int guardadas = 0;
+        for (PruebaActiva prueba : registroPruebasActivas.getPruebasActivas()) {
+            Double distanciaKm = prueba.distanciaSinGuardar();
+            if (distanciaKm == null) {
+                continue;
+            }
+            try {
+                pruebaRepository.actualizarDistanciaEnCurso(prueba.getIdPrueba(), distanciaKm);
+                prueba.distanciaGuardada(distanciaKm);
+                guardadas++;
+            } catch (RuntimeException e) {
+                errores.incrementAndGet();
+                System.err.println("OdometroPruebas: no se pudo guardar la distancia de la prueba " + prueba.getIdPrueba() + ": " + e.getMessage());
+            }
+        }
+        distanciasGuardadas.addAndGet(guardadas);
+        return guardadas;
+    }
+
+    /**
+     * Distancia de una prueba que se está finalizando: la del odómetro si es completo, si no la de su recorrido
+     * entre el inicio y {@code fin}.
+     */
+    public double distanciaAlFinalizar(Prueba prueba, Date fin) {
+        PruebaActiva activa = registroPruebasActivas.buscarRegistrada(prueba.getVehiculo().getId());
+        if (activa != null && Objects.equals(activa.getIdPrueba(), prueba.getId()) && activa.isOdometroCompleto()) {
+            finalizadasConOdometro.incrementAndGet();
+            return activa.getDistanciaKm();
+        }
+        finalizadasRecalculadas.incrementAndGet();
+        return historialPosiciones.buscarTrayectoria(prueba.getVehiculo().getId(),
+                prueba.getFechaHoraInicio().getTime(), fin.getTime()).distanciaKm();
+    }
+
+    /**
+     * Registra quién se entera de las distancias que completa {@link #completarFinalizadas}: las pruebas llegan con la
+     * distancia ya guardada, después de cada lote.
+     */
+    public void alCompletar(Consumer<List<Prueba>> oyente) {
+        this.alCompletar = oyente;
+    }
+
+    /**
+     * Completa la distancia de las pruebas finalizadas que no la tienen, de a {@code lote} pruebas con una pausa entre
+     * lotes. Si ya hay una ejecución en curso no hace nada; cuando no quedan pendientes cada ejecución es una consulta.
+     * @return la cantidad de pruebas completadas.
+     */
+    @Scheduled(fixedDelayString = "${agencia.odometro.completar.intervalo-ms:3600000}",
+            initialDelayString = "${agencia.odometro.completar.demora-inicial-ms:60000}")
+    public int completarFinalizadas() {
+        if (!completarHabilitado || !completando.compareAndSet(false, true)) {
+            return 0;
+        }
+        int completadas = 0;
+        try {
+            // Por id creciente: una prueba que falla no se vuelve a leer en esta ejecución.
+            Integer desdeId = 0;
+            List<Prueba> lote = pruebaRepository.findFinalizadasSinDistancia(desdeId, PageRequest.of(0, tamanioLote));
+            while (!lote.isEmpty()) {
+                Map<Integer, ResumenPrueba> resumenes = resumenPruebaRepository.findAllById(lote.stream().map(Prueba::getId).toList())
+                        .stream().collect(Collectors.toMap(ResumenPrueba::getIdPrueba, Function.identity()));
+                List<Prueba> completadasDelLote = new ArrayList<>(lote.size());
+                for (Prueba prueba : lote) {
+                    try {
+                        double distancia = distanciaFinalizada(prueba, resumenes.get(prueba.getId()));
+                        pruebaRepository.actualizarDistancia(prueba.getId(), distancia);
+                        prueba.setDistanciaKm(distancia);
+                        completadasDelLote.add(prueba);
+                        completadas++;
+                    } catch (RuntimeException e) {
+                        errores.incrementAndGet();
+                        System.err.println("OdometroPruebas: no se pudo completar la distancia de la prueba " + prueba.getId() + ": " + e.getMessage());
+                    }
+                }
+                avisarCompletadas(completadasDelLote);
+                desdeId = lote.get(lote.size() - 1).getId();
+                if (lote.size() < tamanioLote || !pausar()) {
+                    break;
+                }
+                lote = pruebaRepository.findFinalizadasSinDistancia(desdeId, PageRequest.of(0, tamanioLote));
+            }
+        } finally {
+            pruebasCompletadas.addAndGet(completadas);
+            completando.set(false);
+        }
+        if (completadas > 0) {
+            ultimaCompletadaMillis = System.currentTimeMillis();
+            System.out.println("OdometroPruebas: distancia completada en " + completadas + " pruebas finalizadas.");
+        }
+        return completadas;
+    }
+
+    private void avisarCompletadas(List<Prueba> completadas) {
+        if (completadas.isEmpty()) {
+            return;
+        }
+        try {
+            alCompletar.accept(completadas);
+        } catch (RuntimeException e) {
+            errores.incrementAndGet();
+            System.err.println("OdometroPruebas: no se pudo avisar de " + completadas.size() + " distancias completadas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Distancia de una prueba finalizada: la guardada o, si todavía no la tiene, la del resumen de la retención o la de
+     * su recorrido.
+     */
+    public double distanciaDe(Prueba prueba) {
+        if (prueba.getDistanciaKm() != null) {
+            return prueba.getDistanciaKm();
+        }
+        return distanciaFinalizada(prueba, resumenPruebaRepository.findById(prueba.getId()).orElse(null));
+    }
+
+    // Las pruebas que pasaron por la retención tienen la distancia calculada antes de submuestrear sus posiciones.
+    private double distanciaFinalizada(Prueba prueba, ResumenPrueba resumen) {
+        if (resumen != null) {
+            return resumen.getDistanciaKm();
+        }
+        return historialPosiciones.buscarTrayectoria(prueba.getVehiculo().getId(),
+                prueba.getFechaHoraInicio().getTime(), prueba.getFechaHoraFin().getTime()).distanciaKm();
+    }
+
+    private boolean pausar() {
+        if (pausaMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pausaMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public EstadoOdometroDto getEstado() {
+        EstadoOdometroDto estado = new EstadoOdometroDto();
+        estado.setPosicionesSumadas(posicionesSumadas.get());
+        estado.setDistanciasGuardadas(distanciasGuardadas.get());
+        estado.setFinalizadasConOdometro(finalizadasConOdometro.get());
+        estado.setFinalizadasRecalculadas(finalizadasRecalculadas.get());
+        estado.setCompletando(completando.get());
+        estado.setPruebasCompletadas(pruebasCompletadas.get());
+        estado.setPruebasSinDistancia(pruebaRepository.countByFechaHoraFinIsNotNullAndDistanciaKmIsNull());
+        estado.setUltimaCompletadaEn(ultimaCompletadaMillis == 0 ? null : new Date(ultimaCompletadaMillis));
+        estado.setErrores(errores.get());
+        return estado;
+    }
+}
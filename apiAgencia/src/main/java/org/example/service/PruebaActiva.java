@@ -0,0 +1,142 @@
+package org.example.service;
+
+import org.example.models.Modelo;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.service.geocerca.GeoUtils;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lo que el registro de posiciones necesita saber de una prueba en curso, sin tocar la base:
+ * a qué prueba pertenece el vehículo, su patente y su modelo. Lo que cambia es la marca de incidente y el odómetro.
+ *
+ * El odómetro suma la distancia desde la posición anterior con cada posición aceptada (ver OdometroPruebas). Es
+ * completo solo si la prueba se registró al crearla y las posiciones llegaron en orden; si se cargó de la base con
+ * la prueba ya empezada (por ejemplo, al arrancar) le falta el tramo anterior y al finalizar se recalcula.
+ */
+public final class PruebaActiva {
+
+    private final Integer idPrueba;
+    private final Integer idVehiculo;
+    private final String patente;
+    private final Long idModelo;
+    private final Date fechaHoraInicio;
+    private final AtomicBoolean incidente;
+
+    // Odómetro: se modifica bajo el lock de la instancia.
+    private double distanciaKm;
+    private double distanciaGuardadaKm;
+    private boolean odometroCompleto;
+    private boolean hayPuntoAnterior;
+    private long tiempoAnterior;
+    private double latitudAnterior;
+    private double longitudAnterior;
+
+    public PruebaActiva(Prueba prueba) {
+        this(prueba, false);
+    }
+
+    /**
+     * @param odometroCompleto true si la prueba recién se crea, así el odómetro ve todas sus posiciones.
+     */
+    public PruebaActiva(Prueba prueba, boolean odometroCompleto) {
+        this.idPrueba = prueba.getId();
+        this.idVehiculo = prueba.getVehiculo().getId();
+        this.patente = prueba.getVehiculo().getPatente();
+        this.idModelo = prueba.getVehiculo().getModelo() != null ? prueba.getVehiculo().getModelo().getId() : null;
+        this.fechaHoraInicio = prueba.getFechaHoraInicio();
+        this.incidente = new AtomicBoolean(Boolean.TRUE.equals(prueba.getIncidente()));
+        this.distanciaKm = prueba.getDistanciaKm() != null ? prueba.getDistanciaKm() : 0;
+        this.distanciaGuardadaKm = this.distanciaKm;
+        this.odometroCompleto = odometroCompleto;
+    }
+
+    /**
+     * Suma al odómetro la distancia desde la posición anterior. Una posición más vieja que la anterior se suma igual
+     * pero deja el odómetro incompleto: el recorrido en orden de fecha es otro.
+     */
+    synchronized void avanzarOdometro(long tiempo, double latitud, double longitud) {
+        if (hayPuntoAnterior) {
+            distanciaKm += GeoUtils.distanciaHaversineKm(latitudAnterior, longitudAnterior, latitud, longitud);
+            odometroCompleto &= tiempo >= tiempoAnterior;
+        }
+        hayPuntoAnterior = true;
+        tiempoAnterior = tiempo;
+        latitudAnterior = latitud;
+        longitudAnterior = longitud;
+    }
+
+    synchronized double getDistanciaKm() {
+        return distanciaKm;
+    }
+
+    synchronized boolean isOdometroCompleto() {
+        return odometroCompleto;
+    }
+
+    /**
+     * @return la distancia a guardar, o null si no cambió desde la última vez que se guardó.
+     */
+    synchronized Double distanciaSinGuardar() {
+        return distanciaKm != distanciaGuardadaKm ? distanciaKm : null;
+    }
+
+    synchronized void distanciaGuardada(double km) {
+        distanciaGuardadaKm = km;
+    }
+
+    /**
+     * Marca la prueba con incidente en memoria.
+     * @return true solo la primera vez, para que la base se actualice una única vez por prueba.
+     */
+    public boolean marcarIncidente() {
+        return incidente.compareAndSet(false, true);
+    }
+
+    /**
+     * Deshace la marca en memoria cuando no se pudo guardar en la base, para que el próximo incidente lo reintente.
+     */
+    void desmarcarIncidente() {
+        incidente.set(false);
+    }
+
+    /**
+     * Un Vehiculo con solo id, patente y modelo, suficiente para armar una Posicion y su respuesta
+     * sin cargar la entidad desde la base.
+     */
+    public Vehiculo referenciaVehiculo() {
+        Modelo modelo = new Modelo();
+        modelo.setId(idModelo);
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setPatente(patente);
+        vehiculo.setModelo(modelo);
+        return vehiculo;
+    }
+
+    public Integer getIdPrueba() {
+        return idPrueba;
+    }
+
+    public Integer getIdVehiculo() {
+        return idVehiculo;
+    }
+
+    public String getPatente() {
+        return patente;
+    }
+
+    public Long getIdModelo() {
+        return idModelo;
+    }
+
+    public Date getFechaHoraInicio() {
+        return fechaHoraInicio;
+    }
+
+    public boolean isIncidente() {
+        return incidente.get();
+    }
+}
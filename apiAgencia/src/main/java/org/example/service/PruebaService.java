@@ -22,13 +22,23 @@ public class PruebaService {
     private final EmpleadoRepository empleadoRepository;
     private final VehiculoRepository vehiculoRepository;
     private final InteresadoRepository interesadoRepository;
+    private final RegistroPruebasActivas registroPruebasActivas;
+    private final OdometroPruebas odometroPruebas;
+    private final ResumenesDiarios resumenesDiarios;
+    private final AlertasVehiculos alertasVehiculos;
+    private final VehiculoService vehiculoService;
 
     @Autowired
-    public PruebaService(PruebaRepository pruebaRepository, EmpleadoRepository empleadoRepository, VehiculoRepository vehiculoRepository, InteresadoRepository interesadoRepository) {
+    public PruebaService(PruebaRepository pruebaRepository, EmpleadoRepository empleadoRepository, VehiculoRepository vehiculoRepository, InteresadoRepository interesadoRepository, RegistroPruebasActivas registroPruebasActivas, OdometroPruebas odometroPruebas, ResumenesDiarios resumenesDiarios, AlertasVehiculos alertasVehiculos, VehiculoService vehiculoService) {
         this.pruebaRepository = pruebaRepository;
         this.empleadoRepository = empleadoRepository;
         this.vehiculoRepository = vehiculoRepository;
         this.interesadoRepository = interesadoRepository;
+        this.registroPruebasActivas = registroPruebasActivas;
+        this.odometroPruebas = odometroPruebas;
+        this.resumenesDiarios = resumenesDiarios;
+        this.alertasVehiculos = alertasVehiculos;
+        this.vehiculoService = vehiculoService;
     }
 
     /*
@@ -45,7 +55,13 @@ public class PruebaService {
 
         // 4. Construir la entidad Prueba y guardar la nueva prueba
         Prueba nuevaPrueba = new Prueba(vehiculo, interesado, empleado, new Date());
+        nuevaPrueba.setDistanciaKm(0.0);
         Prueba savedPrueba = pruebaRepository.save(nuevaPrueba);
+        // A partir de acá el vehículo puede registrar posiciones sin consultar la base, y el odómetro las suma todas.
+        registroPruebasActivas.registrarNueva(savedPrueba);
+        resumenesDiarios.registrarInicio(savedPrueba);
+        // Las alertas de la prueba nueva no arrastran el estado de la anterior del vehículo.
+        alertasVehiculos.olvidar(vehiculo.getId());
 
         // 5. Devolver el DTO de la prueba creada
         return new PruebaDto(savedPrueba);
@@ -114,10 +130,24 @@ public class PruebaService {
             throw new IllegalArgumentException("La prueba ya ha sido finalizada.");
         }
 
-        pruebaEnCurso.setFechaHoraFin(new Date());
+        Date fin = new Date();
+        pruebaEnCurso.setFechaHoraFin(fin);
         pruebaEnCurso.setComentarios(comentario);
+        // Las últimas posiciones aceptadas pueden seguir en la cola del escritor. Si no terminan a tiempo la distancia
+        // queda sin calcular y la completa OdometroPruebas.completarFinalizadas con el recorrido ya guardado; entonces
+        // ResumenesDiarios vuelve a calcular el día, que registrarFin sumó con 0 km.
+        if (vehiculoService.esperarPosicionesPendientes(pruebaEnCurso.getVehiculo().getId())) {
+            pruebaEnCurso.setDistanciaKm(odometroPruebas.distanciaAlFinalizar(pruebaEnCurso, fin));
+        } else {
+            System.err.println("PruebaService: la prueba " + id + " se finaliza con posiciones sin guardar; su distancia se calcula más tarde.");
+            pruebaEnCurso.setDistanciaKm(null);
+        }
 
-        return new PruebaDto(pruebaRepository.save(pruebaEnCurso));
+        Prueba finalizada = pruebaRepository.save(pruebaEnCurso);
+        registroPruebasActivas.quitar(finalizada);
+        resumenesDiarios.registrarFin(finalizada);
+        alertasVehiculos.olvidar(finalizada.getVehiculo().getId());
+        return new PruebaDto(finalizada);
     }
 
 
@@ -125,6 +155,9 @@ public class PruebaService {
         Prueba existingPrueba = pruebaRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Prueba no encontrada"));
         pruebaRepository.delete(existingPrueba);
+        registroPruebasActivas.quitar(existingPrueba);
+        resumenesDiarios.quitar(existingPrueba);
+        alertasVehiculos.olvidar(existingPrueba.getVehiculo().getId());
     }
 
 
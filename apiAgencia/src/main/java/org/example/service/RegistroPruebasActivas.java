@@ -0,0 +1,250 @@
+package org.example.service;
+
+import org.example.dtos.EstadoRegistroPruebasDto;
+import org.example.models.Prueba;
+import org.example.repositories.PruebaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro en memoria de las pruebas en curso, por id de vehículo.
+ *
+ * Se carga al arrancar con las pruebas sin fecha de fin y lo mantiene al día PruebaService al crear,
+ * finalizar o borrar pruebas, así el registro de posiciones no consulta la base para saber si un vehículo
+ * está siendo probado. Si un vehículo no está en el registro se consulta la base (por si la prueba se creó
+ * por fuera de PruebaService) y, si tiene una prueba en curso, se agrega. Si no tiene, se recuerda durante
+ * {@code sin-prueba-ttl-ms} para que un vehículo desconocido o sin prueba no vaya a la base con cada posición.
+ *
+ * También lleva la marca de incidente de cada prueba en curso: solo el primer incidente de una prueba
+ * se guarda en la base y los siguientes pings fuera de la geocerca no la tocan.
+ *
+ * Una tarea periódica compara el registro con la base y corrige (y cuenta) las diferencias.
+ */
+@Service
+public class RegistroPruebasActivas {
+
+    private final PruebaRepository pruebaRepository;
+    private final Map<Integer, PruebaActiva> porVehiculo = new ConcurrentHashMap<>();
+    // Vehículos que no tenían prueba en curso en la base, con el momento (epoch ms) hasta el que se les cree.
+    private final Map<Integer, Long> sinPruebaHasta = new ConcurrentHashMap<>();
+
+    @Value("${agencia.pruebas-activas.sin-prueba-ttl-ms:2000}")
+    private long sinPruebaTtlMs = 2000;
+
+    private final AtomicLong resueltasEnMemoria = new AtomicLong();
+    private final AtomicLong resueltasEnBase = new AtomicLong();
+    private final AtomicLong resueltasSinPrueba = new AtomicLong();
+    private final AtomicLong reconciliaciones = new AtomicLong();
+    private final AtomicLong diferenciasTotales = new AtomicLong();
+    private final AtomicLong incidentesGuardados = new AtomicLong();
+    private final AtomicLong incidentesYaMarcados = new AtomicLong();
+    private volatile long ultimaReconciliacionMillis;
+    private volatile int diferenciasUltimaReconciliacion;
+
+    @Autowired
+    public RegistroPruebasActivas(PruebaRepository pruebaRepository) {
+        this.pruebaRepository = pruebaRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        pruebaRepository.findByFechaHoraFinIsNull().forEach(this::registrar);
+        System.out.println("RegistroPruebasActivas: " + porVehiculo.size() + " pruebas en curso cargadas.");
+    }
+
+    /**
+     * @return la prueba en curso del vehículo, o null si no tiene ninguna.
+     */
+    public PruebaActiva buscarPorVehiculo(Integer idVehiculo) {
+        PruebaActiva activa = porVehiculo.get(idVehiculo);
+        if (activa != null) {
+            resueltasEnMemoria.incrementAndGet();
+            return activa;
+        }
+        if (recordadoSinPrueba(idVehiculo)) {
+            resueltasSinPrueba.incrementAndGet();
+            return null;
+        }
+        resueltasEnBase.incrementAndGet();
+        Prueba prueba = pruebaRepository.findPruebaActivaByVehiculoId(idVehiculo);
+        if (prueba == null) {
+            recordarSinPrueba(idVehiculo);
+            return null;
+        }
+        return registrar(prueba);
+    }
+
+    /**
+     * Versión por lote de {@link #buscarPorVehiculo}: los vehículos que no están en memoria se buscan en una sola consulta.
+     * @return las pruebas en curso encontradas, por id de vehículo (los vehículos sin prueba no aparecen).
+     */
+    public Map<Integer, PruebaActiva> buscarPorVehiculos(Collection<Integer> idsVehiculos) {
+        Map<Integer, PruebaActiva> encontradas = new HashMap<>();
+        Set<Integer> faltantes = new HashSet<>();
+        for (Integer idVehiculo : idsVehiculos) {
+            PruebaActiva activa = porVehiculo.get(idVehiculo);
+            if (activa != null) {
+                encontradas.put(idVehiculo, activa);
+            } else if (recordadoSinPrueba(idVehiculo)) {
+                resueltasSinPrueba.incrementAndGet();
+            } else {
+                faltantes.add(idVehiculo);
+            }
+        }
+        resueltasEnMemoria.addAndGet(encontradas.size());
+        if (!faltantes.isEmpty()) {
+            resueltasEnBase.addAndGet(faltantes.size());
+            for (Prueba prueba : pruebaRepository.findByFechaHoraFinIsNullAndVehiculo_IdIn(faltantes)) {
+                PruebaActiva activa = registrar(prueba);
+                encontradas.put(activa.getIdVehiculo(), activa);
+            }
+            faltantes.stream().filter(id -> !encontradas.containsKey(id)).forEach(this::recordarSinPrueba);
+        }
+        return encontradas;
+    }
+
+    /**
+     * @return las pruebas en curso registradas (vista de solo lectura, sin consultar la base).
+     */
+    public Collection<PruebaActiva> getPruebasActivas() {
+        return Collections.unmodifiableCollection(porVehiculo.values());
+    }
+
+    /**
+     * @return la prueba en curso del vehículo si está en el registro, sin consultar la base.
+     */
+    public PruebaActiva buscarRegistrada(Integer idVehiculo) {
+        return porVehiculo.get(idVehiculo);
+    }
+
+    public PruebaActiva registrar(Prueba prueba) {
+        return registrar(new PruebaActiva(prueba));
+    }
+
+    /**
+     * Registra una prueba recién creada: como todavía no tiene posiciones, su odómetro las va a ver todas.
+     */
+    public PruebaActiva registrarNueva(Prueba prueba) {
+        return registrar(new PruebaActiva(prueba, true));
+    }
+
+    private PruebaActiva registrar(PruebaActiva activa) {
+        porVehiculo.put(activa.getIdVehiculo(), activa);
+        sinPruebaHasta.remove(activa.getIdVehiculo());
+        return activa;
+    }
+
+    private boolean recordadoSinPrueba(Integer idVehiculo) {
+        Long hasta = sinPruebaHasta.get(idVehiculo);
+        return hasta != null && hasta > System.currentTimeMillis();
+    }
+
+    private void recordarSinPrueba(Integer idVehiculo) {
+        if (sinPruebaTtlMs > 0) {
+            sinPruebaHasta.put(idVehiculo, System.currentTimeMillis() + sinPruebaTtlMs);
+        }
+    }
+
+    /**
+     * Marca la prueba en curso con incidente. La primera vez se guarda en la base con un UPDATE directo
+     * (sin leer la prueba); las siguientes se resuelven en memoria sin ir a la base.
+     * Si el UPDATE falla se deshace la marca en memoria, así el próximo incidente de la prueba lo reintenta.
+     * @return true si esta llamada fue la que guardó el incidente en la base.
+     */
+    public boolean marcarIncidente(PruebaActiva prueba) {
+        if (!prueba.marcarIncidente()) {
+            incidentesYaMarcados.incrementAndGet();
+            return false;
+        }
+        try {
+            pruebaRepository.marcarIncidente(prueba.getIdPrueba());
+        } catch (RuntimeException e) {
+            prueba.desmarcarIncidente();
+            throw e;
+        }
+        incidentesGuardados.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Quita la prueba del registro (al finalizarla o borrarla). Si el vehículo ya tiene otra prueba registrada no la toca.
+     */
+    public void quitar(Prueba prueba) {
+        porVehiculo.computeIfPresent(prueba.getVehiculo().getId(),
+                (idVehiculo, activa) -> Objects.equals(activa.getIdPrueba(), prueba.getId()) ? null : activa);
+    }
+
+    /**
+     * Compara el registro con las pruebas en curso de la base y la toma como verdad: agrega las que faltan,
+     * quita las que ya no están en curso y reemplaza las que cambiaron de prueba. Un incidente que figura en la
+     * base (por ejemplo, marcado por otra instancia) se copia a memoria.
+     * @return la cantidad de diferencias encontradas.
+     */
+    @Scheduled(fixedDelayString = "${agencia.pruebas-activas.reconciliacion-ms:60000}",
+            initialDelayString = "${agencia.pruebas-activas.reconciliacion-ms:60000}")
+    public int reconciliar() {
+        List<Prueba> enCurso = pruebaRepository.findByFechaHoraFinIsNull();
+        Set<Integer> vehiculosEnCurso = new HashSet<>();
+        int diferencias = 0;
+        for (Prueba prueba : enCurso) {
+            Integer idVehiculo = prueba.getVehiculo().getId();
+            vehiculosEnCurso.add(idVehiculo);
+            PruebaActiva registrada = porVehiculo.get(idVehiculo);
+            if (registrada == null || !Objects.equals(registrada.getIdPrueba(), prueba.getId())) {
+                registrar(prueba);
+                diferencias++;
+            } else if (Boolean.TRUE.equals(prueba.getIncidente()) && registrada.marcarIncidente()) {
+                diferencias++;
+            }
+        }
+        for (Integer idVehiculo : Set.copyOf(porVehiculo.keySet())) {
+            if (!vehiculosEnCurso.contains(idVehiculo)) {
+                porVehiculo.remove(idVehiculo);
+                diferencias++;
+            }
+        }
+        // Los vehículos sin prueba vencidos se olvidan acá, así el mapa no crece con ids que ya no mandan posiciones.
+        long ahora = System.currentTimeMillis();
+        sinPruebaHasta.values().removeIf(hasta -> hasta <= ahora);
+        if (diferencias > 0) {
+            System.err.println("RegistroPruebasActivas: la reconciliación corrigió " + diferencias + " diferencias con la base.");
+        }
+        reconciliaciones.incrementAndGet();
+        diferenciasTotales.addAndGet(diferencias);
+        diferenciasUltimaReconciliacion = diferencias;
+        ultimaReconciliacionMillis = System.currentTimeMillis();
+        return diferencias;
+    }
+
+    public EstadoRegistroPruebasDto getEstado() {
+        EstadoRegistroPruebasDto estado = new EstadoRegistroPruebasDto();
+        estado.setPruebasActivas(porVehiculo.size());
+        estado.setConsultasResueltasEnMemoria(resueltasEnMemoria.get());
+        estado.setConsultasResueltasEnBase(resueltasEnBase.get());
+        estado.setConsultasResueltasSinPrueba(resueltasSinPrueba.get());
+        estado.setVehiculosSinPrueba(sinPruebaHasta.size());
+        estado.setReconciliaciones(reconciliaciones.get());
+        estado.setUltimaReconciliacionEn(ultimaReconciliacionMillis == 0 ? null : new Date(ultimaReconciliacionMillis));
+        estado.setDiferenciasUltimaReconciliacion(diferenciasUltimaReconciliacion);
+        estado.setDiferenciasTotales(diferenciasTotales.get());
+        estado.setIncidentesGuardados(incidentesGuardados.get());
+        estado.setIncidentesYaMarcados(incidentesYaMarcados.get());
+        return estado;
+    }
+}
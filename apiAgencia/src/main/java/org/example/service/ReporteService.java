@@ -1,206 +1,336 @@
 package org.example.service;
 
-import org.example.dtos.PruebaDto;
+import jakarta.persistence.EntityManager;
 import org.example.models.Empleado;
-import org.example.models.Posicion;
+import org.example.models.Interesado;
 import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
 import org.example.models.Vehiculo;
 import org.example.repositories.EmpleadoRepository;
-import org.example.repositories.PosicionRepository;
+import org.example.repositories.HistorialPosiciones;
 import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
 import org.example.repositories.VehiculoRepository;
+import org.example.service.geocerca.EvaluadorGeocerca;
+import org.example.service.reporte.EscritorReporte;
+import org.example.service.reporte.EscritorReporte.Columna;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.trayectoria.Trayectoria;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
+import java.util.Locale;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reportes de pruebas. Cada uno valida lo que pide (el empleado o el vehículo) al llamarlo, así el controlador puede
+ * contestar 404 antes de empezar, y devuelve un {@link StreamingResponseBody} que lee las pruebas de a páginas y
+ * escribe cada fila a medida que llega (ver {@link EscritorReporte}): la memoria no crece con la cantidad de filas y el
+ * cliente recibe el principio del reporte enseguida.
+ * <p>
+ * Las páginas son por clave ({@code id > último ORDER BY id}, de a {@code agencia.reportes.pagina} pruebas) y cada una
+ * se lee en su propia transacción de solo lectura, que termina antes de escribirla. Con SQLite en modo rollback-journal
+ * una transacción de lectura abierta no deja hacer commit a los escritores, así que un cliente lento no frena la ingesta
+ * de posiciones más que lo que tarda en leerse una página. Las pruebas leídas se separan del contexto de persistencia.
+ */
 @Service
 public class ReporteService {
 
-    private final PruebaService pruebaService;
+    private static final List<Columna> COLUMNAS_INCIDENTES = List.of(
+            Columna.de("id", "ID", 5),
+            Columna.de("patente", "Patente", 10),
+            Columna.de("empleado", "Empleado", 20),
+            Columna.de("interesado", "Interesado", 20),
+            Columna.fechaSinFormato("fechaHoraInicio", "Fecha Inicio", 20),
+            Columna.fechaSinFormato("fechaHoraFin", "Fecha Fin", 20),
+            Columna.de("incidente", "Incidente", 10));
+
+    private static final List<Columna> COLUMNAS_INCIDENTES_EMPLEADO = List.of(
+            Columna.de("id", "ID", 5),
+            Columna.de("patente", "Patente", 10),
+            Columna.de("fechaHoraInicio", "Fecha Inicio", 25),
+            Columna.de("comentarios", "Comentarios", 0));
+
+    private static final List<Columna> COLUMNAS_PRUEBAS_VEHICULO = List.of(
+            Columna.de("id", "ID", 5),
+            Columna.de("empleado", "Empleado", 20),
+            Columna.fecha("fechaHoraInicio", "Fecha Inicio", 20, "yyyy-MM-dd HH:mm"),
+            Columna.de("incidente", "Incidente", 10));
+
+    private static final List<Columna> COLUMNAS_KILOMETRAJE = List.of(
+            Columna.de("patente", "Patente", 10),
+            Columna.de("fechaInicio", "Fecha Inicio", 12),
+            Columna.de("fechaFin", "Fecha Fin", 12),
+            Columna.de("pruebas", "Pruebas", 8),
+            Columna.de("kilometraje", "Kilometraje", 0));
+
+    private static final List<Columna> COLUMNAS_KILOMETRAJE_FLOTA = List.of(
+            Columna.de("patente", "Patente", 10),
+            Columna.de("pruebas", "Pruebas", 8),
+            Columna.de("kilometraje", "Kilometraje", 0));
+
     private final EmpleadoRepository empleadoRepository;
     private final VehiculoRepository vehiculoRepository;
     private final PruebaRepository pruebaRepository;
-    private final PosicionRepository posicionRepository;
+    private final HistorialPosiciones historialPosiciones;
+    private final ResumenPruebaRepository resumenPruebaRepository;
+    private final EvaluadorGeocerca evaluadorGeocerca;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaccionLectura;
+    private final KilometrajeFlota kilometrajeFlota;
 
-    private static final double RADIO_TIERRA_KM = 6371.0;
+    @Value("${agencia.reportes.pagina:500}")
+    private int tamanioPagina = 500;
 
     @Autowired
-    public ReporteService(PruebaService pruebaService, EmpleadoRepository empleadoRepository, VehiculoRepository vehiculoRepository, PruebaRepository pruebaRepository, PosicionRepository posicionRepository) {
-        this.pruebaService = pruebaService;
+    public ReporteService(EmpleadoRepository empleadoRepository, VehiculoRepository vehiculoRepository, PruebaRepository pruebaRepository, HistorialPosiciones historialPosiciones, ResumenPruebaRepository resumenPruebaRepository, EvaluadorGeocerca evaluadorGeocerca, EntityManager entityManager, PlatformTransactionManager transactionManager, KilometrajeFlota kilometrajeFlota) {
         this.empleadoRepository = empleadoRepository;
         this.vehiculoRepository = vehiculoRepository;
         this.pruebaRepository = pruebaRepository;
-        this.posicionRepository = posicionRepository;
+        this.historialPosiciones = historialPosiciones;
+        this.resumenPruebaRepository = resumenPruebaRepository;
+        this.evaluadorGeocerca = evaluadorGeocerca;
+        this.entityManager = entityManager;
+        this.transaccionLectura = new TransactionTemplate(transactionManager);
+        this.transaccionLectura.setReadOnly(true);
+        this.kilometrajeFlota = kilometrajeFlota;
     }
 
-    public String generarReporteIncidentes() {
-        List<PruebaDto> pruebas = pruebaService.getPruebasConIncidentes();
-        if (pruebas.isEmpty()) {
-            return "No hay pruebas con incidentes registradas.";
-        }
-        StringBuilder sb = new StringBuilder();
-        sb.append("Reporte de Pruebas con Incidentes\n");
-        sb.append("=====================================\n");
-        sb.append(String.format("%-5s | %-10s | %-20s | %-20s | %-20s | %-20s | %-10s\n",
-                "ID", "Patente", "Empleado", "Interesado", "Fecha Inicio", "Fecha Fin", "Incidente"));
-        sb.append("-----|------------|----------------------|----------------------|----------------------|----------------------|-----------\n");
-        for (PruebaDto prueba : pruebas) {
-            sb.append(String.format("%-5s | %-10s | %-20s | %-20s | %-20s | %-20s | %-10s\n",
+    public StreamingResponseBody reporteIncidentes(FormatoReporte formato) {
+        return salida -> escribir(() -> {
+            EscritorReporte escritor = EscritorReporte.para(formato, salida, COLUMNAS_INCIDENTES);
+            escritor.tituloTabla("Reporte de Pruebas con Incidentes\n" +
+                    "=====================================\n");
+            porPaginas(pruebaRepository::findIncidentesDesde, prueba -> escritor.fila(
                     prueba.getId(),
-                    prueba.getVehiculo() != null ? prueba.getVehiculo().getPatente() : "N/A",
-                    prueba.getEmpleado() != null ? prueba.getEmpleado().getNombre() + " " + prueba.getEmpleado().getApellido() : "N/A",
-                    prueba.getInteresado() != null ? prueba.getInteresado().getNombre() + " " + prueba.getInteresado().getApellido() : "N/A",
-                    prueba.getFechaHoraInicio() != null ? prueba.getFechaHoraInicio().toString() : "N/A",
-                    prueba.getFechaHoraFin() != null ? prueba.getFechaHoraFin().toString() : "N/A",
-                    prueba.getIncidente() != null && prueba.getIncidente() ? "SI" : "NO"
-            ));
-        }
-        return sb.toString();
+                    prueba.getVehiculo() != null ? prueba.getVehiculo().getPatente() : null,
+                    prueba.getEmpleado() != null ? prueba.getEmpleado().getNombre() + " " + prueba.getEmpleado().getApellido() : null,
+                    nombre(prueba.getInteresado()),
+                    prueba.getFechaHoraInicio(),
+                    prueba.getFechaHoraFin(),
+                    Boolean.TRUE.equals(prueba.getIncidente())));
+            escritor.terminar("No hay pruebas con incidentes registradas.");
+        });
     }
 
-    public String generarReporteIncidentesPorEmpleado(Long legajo) {
-        Optional<Empleado> empleadoOpt = empleadoRepository.findById(legajo);
-        if (empleadoOpt.isEmpty()) {
-            return "Empleado con legajo " + legajo + " no encontrado.";
-        }
-        Empleado empleado = empleadoOpt.get();
-
-        List<PruebaDto> pruebas = pruebaService.getIncidentesPorEmpleado(legajo);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("Reporte de Incidentes para el Empleado\n");
-        sb.append("======================================\n");
-        sb.append("Legajo: ").append(empleado.getLegajo()).append("\n");
-        sb.append("Nombre: ").append(empleado.getNombre()).append(" ").append(empleado.getApellido()).append("\n\n");
-
-        if (pruebas.isEmpty()) {
-            sb.append("El empleado no tiene incidentes registrados.\n");
-        } else {
-            sb.append(String.format("%-5s | %-10s | %-25s | %s\n", "ID", "Patente", "Fecha Inicio", "Comentarios"));
-            sb.append("-----|------------|---------------------------|----------------------------------\n");
-
-            for (PruebaDto prueba : pruebas) {
-                sb.append(String.format("%-5d | %-10s | %-25s | %s\n",
-                        prueba.getId(),
-                        prueba.getVehiculo() != null ? prueba.getVehiculo().getPatente() : "N/A",
-                        prueba.getFechaHoraInicio() != null ? new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(prueba.getFechaHoraInicio()) : "N/A",
-                        prueba.getComentarios() != null ? prueba.getComentarios() : ""
-                ));
-            }
-        }
-        return sb.toString();
+    /**
+     * @throws IllegalArgumentException si no existe el empleado.
+     */
+    public StreamingResponseBody reporteIncidentesPorEmpleado(Long legajo, FormatoReporte formato) {
+        Empleado empleado = empleadoRepository.findById(legajo)
+                .orElseThrow(() -> new IllegalArgumentException("Empleado con legajo " + legajo + " no encontrado."));
+
+        return salida -> escribir(() -> {
+            EscritorReporte escritor = EscritorReporte.para(formato, salida, COLUMNAS_INCIDENTES_EMPLEADO);
+            escritor.texto("Reporte de Incidentes para el Empleado\n" +
+                    "======================================\n" +
+                    "Legajo: " + empleado.getLegajo() + "\n" +
+                    "Nombre: " + empleado.getNombre() + " " + empleado.getApellido() + "\n\n");
+            porPaginas((desdeId, pagina) -> pruebaRepository.findIncidentesDeEmpleadoDesde(legajo, desdeId, pagina),
+                    prueba -> escritor.fila(
+                            prueba.getId(),
+                            prueba.getVehiculo() != null ? prueba.getVehiculo().getPatente() : null,
+                            prueba.getFechaHoraInicio(),
+                            prueba.getComentarios() != null ? prueba.getComentarios() : ""));
+            escritor.terminar("El empleado no tiene incidentes registrados.\n");
+        });
     }
 
-    public String generarReportePruebasPorVehiculo(String patente) {
-        Optional<Vehiculo> vehiculoOpt = vehiculoRepository.findByPatente(patente);
-        if (vehiculoOpt.isEmpty()) {
-            return "Vehículo con patente " + patente + " no encontrado.";
-        }
-        Vehiculo vehiculo = vehiculoOpt.get();
-
-        List<Prueba> pruebas = pruebaRepository.findAllByVehiculo_Id(vehiculo.getId());
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("Reporte de Pruebas para el Vehículo: ").append(vehiculo.getPatente()).append("\n");
-        sb.append("=========================================================\n");
-        sb.append("Modelo: ").append(vehiculo.getModelo().getMarca().getNombre()).append(" ").append(vehiculo.getModelo().getDescripcion()).append("\n\n");
-
-        if (pruebas.isEmpty()) {
-            sb.append("El vehículo no tiene pruebas registradas.\n");
-        } else {
-            sb.append(String.format("%-5s | %-20s | %-20s | %-10s\n", "ID", "Empleado", "Fecha Inicio", "Incidente"));
-            sb.append("-----|----------------------|----------------------|-----------\n");
-
-            for (Prueba prueba : pruebas) {
-                String nombreEmpleado = prueba.getEmpleado() != null ? prueba.getEmpleado().getNombre() + " " + prueba.getEmpleado().getApellido() : "N/A";
-                String fechaInicio = prueba.getFechaHoraInicio() != null ? new SimpleDateFormat("yyyy-MM-dd HH:mm").format(prueba.getFechaHoraInicio()) : "N/A";
-                String incidente = prueba.getIncidente() != null && prueba.getIncidente() ? "SI" : "NO";
-
-                sb.append(String.format("%-5s | %-20s | %-20s | %-10s\n",
-                        prueba.getId(),
-                        nombreEmpleado,
-                        fechaInicio,
-                        incidente
-                ));
-            }
-        }
-        return sb.toString();
+    /**
+     * @throws IllegalArgumentException si no existe un vehículo con esa patente.
+     */
+    public StreamingResponseBody reportePruebasPorVehiculo(String patente, FormatoReporte formato) {
+        Vehiculo vehiculo = vehiculoRepository.findByPatente(patente)
+                .orElseThrow(() -> new IllegalArgumentException("Vehículo con patente " + patente + " no encontrado."));
+
+        return salida -> escribir(() -> {
+            EscritorReporte escritor = EscritorReporte.para(formato, salida, COLUMNAS_PRUEBAS_VEHICULO);
+            escritor.texto("Reporte de Pruebas para el Vehículo: " + vehiculo.getPatente() + "\n" +
+                    "=========================================================\n" +
+                    "Modelo: " + vehiculo.getModelo().getMarca().getNombre() + " " + vehiculo.getModelo().getDescripcion() + "\n\n");
+            porPaginas((desdeId, pagina) -> pruebaRepository.findPruebasDeVehiculoDesde(vehiculo.getId(), desdeId, pagina),
+                    prueba -> escritor.fila(
+                            prueba.getId(),
+                            prueba.getEmpleado() != null ? prueba.getEmpleado().getNombre() + " " + prueba.getEmpleado().getApellido() : null,
+                            prueba.getFechaHoraInicio(),
+                            Boolean.TRUE.equals(prueba.getIncidente())));
+            escritor.terminar("El vehículo no tiene pruebas registradas.\n");
+        });
     }
 
-    public String generarReporteKilometraje(String patente, Date fechaInicio, Date fechaFin) {
-        Optional<Vehiculo> vehiculoOpt = vehiculoRepository.findByPatente(patente);
-        if (vehiculoOpt.isEmpty()) {
-            return "Vehículo con patente " + patente + " no encontrado.";
-        }
-        Vehiculo vehiculo = vehiculoOpt.get();
-
-        Calendar c = Calendar.getInstance();
-        c.setTime(fechaFin);
-        c.set(Calendar.HOUR_OF_DAY, 23);
-        c.set(Calendar.MINUTE, 59);
-        c.set(Calendar.SECOND, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        Date fechaFinAjustada = c.getTime();
-
-        List<Prueba> pruebasDelVehiculo = pruebaRepository.findAllByVehiculo_Id(vehiculo.getId());
+    /**
+     * Kilómetros recorridos por un vehículo en las pruebas finalizadas que se superponen con el período (el día de
+     * {@code fechaFin} inclusive). En texto es el resumen de siempre; en CSV y NDJSON, una fila.
+     * @throws IllegalArgumentException si no existe un vehículo con esa patente.
+     */
+    public StreamingResponseBody reporteKilometraje(String patente, Date fechaInicio, Date fechaFin, FormatoReporte formato) {
+        Vehiculo vehiculo = vehiculoRepository.findByPatente(patente)
+                .orElseThrow(() -> new IllegalArgumentException("Vehículo con patente " + patente + " no encontrado."));
+
+        Date fechaFinAjustada = finDelDia(fechaFin);
+
+        return salida -> escribir(() -> {
+            // En la transacción solo se suman las distancias guardadas; las que faltan se calculan y el reporte se
+            // escribe después, sin el cursor abierto.
+            double[] kilometraje = {0.0};
+            int[] pruebas = {0};
+            List<Prueba> sinDistancia = new ArrayList<>();
+            transaccionLectura.executeWithoutResult(estado -> {
+                try (Stream<Prueba> finalizadas = pruebaRepository.streamFinalizadasDeVehiculo(vehiculo.getId(), fechaInicio, fechaFinAjustada)) {
+                    finalizadas.forEach(prueba -> {
+                        pruebas[0]++;
+                        if (prueba.getDistanciaKm() != null) {
+                            kilometraje[0] += prueba.getDistanciaKm();
+                        } else {
+                            sinDistancia.add(prueba);
+                        }
+                        entityManager.detach(prueba);
+                    });
+                }
+            });
+            for (Prueba prueba : sinDistancia) {
+                kilometraje[0] += distanciaKm(vehiculo, prueba);
+            }
+            double kilometrajeTotal = kilometraje[0];
+            int cantidadPruebas = pruebas[0];
+
+            EscritorReporte escritor = EscritorReporte.para(formato, salida, COLUMNAS_KILOMETRAJE);
+            if (formato != FormatoReporte.TEXT) {
+                escritor.fila(patente, fecha(fechaInicio), fecha(fechaFin), cantidadPruebas, kilometrajeTotal);
+            } else if (cantidadPruebas == 0) {
+                escritor.texto("El vehículo no tiene pruebas finalizadas en el período especificado.");
+            } else if (kilometrajeTotal > 0) {
+                escritor.texto(String.format("Reporte de Kilometraje para el Vehículo: %s\n" +
+                                "Período: %s - %s\n\n" +
+                                "Kilometraje total recorrido: %s km",
+                        patente,
+                        new SimpleDateFormat("dd/MM/yyyy").format(fechaInicio),
+                        new SimpleDateFormat("dd/MM/yyyy").format(fechaFin),
+                        String.format(Locale.forLanguageTag("es-ES"), "%.2f", kilometrajeTotal)));
+            } else {
+                escritor.texto(String.format("El vehículo %s no registró posiciones en el período especificado.", patente));
+            }
+            escritor.terminar("");
+        });
+    }
 
-        List<Prueba> pruebasEnPeriodo = pruebasDelVehiculo.stream()
-                .filter(p -> p.getFechaHoraFin() != null && !p.getFechaHoraInicio().after(fechaFinAjustada) && !p.getFechaHoraFin().before(fechaInicio))
-                .collect(Collectors.toList());
+    /**
+     * Kilómetros de cada vehículo de la flota en el período, como {@link #reporteKilometraje} pero para todos a la vez
+     * (ver {@link KilometrajeFlota}): de mayor a menor kilometraje y con una última fila TOTAL. El reporte se escribe
+     * cuando termina el cálculo, porque el orden depende de todos los vehículos.
+     */
+    public StreamingResponseBody reporteKilometrajeFlota(Date fechaInicio, Date fechaFin, FormatoReporte formato) {
+        Date fechaFinAjustada = finDelDia(fechaFin);
+
+        return salida -> {
+            KilometrajeFlota.Resultado resultado = kilometrajeFlota.calcular(fechaInicio, fechaFinAjustada);
+            EscritorReporte escritor = EscritorReporte.para(formato, salida, COLUMNAS_KILOMETRAJE_FLOTA);
+            try {
+                escritor.texto("Reporte de Kilometraje de la Flota\n" +
+                        "Período: " + new SimpleDateFormat("dd/MM/yyyy").format(fechaInicio) + " - " +
+                        new SimpleDateFormat("dd/MM/yyyy").format(fechaFin) + "\n\n");
+                for (KilometrajeFlota.Fila fila : resultado.vehiculos()) {
+                    escritor.fila(fila.patente(), fila.pruebas(), kilometraje(fila.kilometraje(), formato));
+                }
+                if (!resultado.vehiculos().isEmpty()) {
+                    escritor.fila("TOTAL", resultado.pruebas(), kilometraje(resultado.kilometraje(), formato));
+                }
+                escritor.terminar("No hay vehículos registrados.\n");
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
 
-        if (pruebasEnPeriodo.isEmpty()) {
-            return "El vehículo no tiene pruebas finalizadas en el período especificado.";
+    // Cada prueba finalizada guarda su distancia (ver OdometroPruebas). Las de antes del odómetro que todavía no se
+    // completaron se calculan como antes: con el resumen de la retención o recorriendo sus posiciones.
+    private double distanciaKm(Vehiculo vehiculo, Prueba prueba) {
+        if (prueba.getDistanciaKm() != null) {
+            return prueba.getDistanciaKm();
         }
-
-        double kilometrajeTotal = 0.0;
-
-        for (Prueba prueba : pruebasEnPeriodo) {
-            List<Posicion> posiciones = posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(
+        return resumenPruebaRepository.findById(prueba.getId()).map(ResumenPrueba::getDistanciaKm).orElseGet(() -> {
+            Trayectoria recorrido = historialPosiciones.buscarTrayectoria(
                     vehiculo.getId(),
                     prueba.getFechaHoraInicio().getTime(),
                     prueba.getFechaHoraFin().getTime()
             );
-
-            for (int i = 0; i < posiciones.size() - 1; i++) {
-                kilometrajeTotal += calcularDistancia(posiciones.get(i), posiciones.get(i + 1));
+            double distancia = 0.0;
+            for (int i = 0; i < recorrido.size() - 1; i++) {
+                distancia += calcularDistancia(recorrido, i, i + 1);
             }
-        }
+            return distancia;
+        });
+    }
 
-        String kilometrajeFormateado = String.format(java.util.Locale.forLanguageTag("es-ES"), "%.2f", kilometrajeTotal);
+    // Un error de escritura sale como la IOException que espera el llamador.
+    private static void escribir(Runnable reporte) throws IOException {
+        try {
+            reporte.run();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
+    // Lee la consulta de a páginas por id, cada una en su transacción, y pasa cada prueba a fila fuera de ella.
+    private void porPaginas(BiFunction<Integer, Pageable, List<Prueba>> consulta, Consumer<Prueba> fila) {
+        Pageable pagina = PageRequest.of(0, tamanioPagina);
+        Integer desdeId = 0;
+        List<Prueba> pruebas;
+        do {
+            Integer desde = desdeId;
+            pruebas = transaccionLectura.execute(estado -> {
+                List<Prueba> leidas = consulta.apply(desde, pagina);
+                leidas.forEach(entityManager::detach);
+                return leidas;
+            });
+            if (pruebas == null || pruebas.isEmpty()) {
+                return;
+            }
+            pruebas.forEach(fila);
+            desdeId = pruebas.get(pruebas.size() - 1).getId();
+        } while (pruebas.size() == tamanioPagina);
+    }
 
-        if (kilometrajeTotal > 0) {
-            return String.format("Reporte de Kilometraje para el Vehículo: %s\n" +
-                            "Período: %s - %s\n\n" +
-                            "Kilometraje total recorrido: %s km",
-                    patente,
-                    new SimpleDateFormat("dd/MM/yyyy").format(fechaInicio),
-                    new SimpleDateFormat("dd/MM/yyyy").format(fechaFin),
-                    kilometrajeFormateado);
-        } else {
-            return String.format("El vehículo %s no registró posiciones en el período especificado.", patente);
-        }
+    private static Date finDelDia(Date fecha) {
+        Calendar c = Calendar.getInstance();
+        c.setTime(fecha);
+        c.set(Calendar.HOUR_OF_DAY, 23);
+        c.set(Calendar.MINUTE, 59);
+        c.set(Calendar.SECOND, 59);
+        c.set(Calendar.MILLISECOND, 999);
+        return c.getTime();
     }
 
-    private double calcularDistancia(Posicion p1, Posicion p2) {
-        double dLat = Math.toRadians(p2.getLatitud() - p1.getLatitud());
-        double dLon = Math.toRadians(p2.getLongitud() - p1.getLongitud());
+    // En texto, con dos decimales como el reporte de un vehículo; en CSV y NDJSON, el valor sin redondear.
+    private static Object kilometraje(double kilometraje, FormatoReporte formato) {
+        return formato == FormatoReporte.TEXT ? String.format(Locale.forLanguageTag("es-ES"), "%.2f", kilometraje) : kilometraje;
+    }
 
-        double lat1 = Math.toRadians(p1.getLatitud());
-        double lat2 = Math.toRadians(p2.getLatitud());
+    private static String nombre(Interesado interesado) {
+        return interesado != null ? interesado.getNombre() + " " + interesado.getApellido() : null;
+    }
 
-        double a = Math.pow(Math.sin(dLat / 2), 2) +
-                Math.pow(Math.sin(dLon / 2), 2) *
-                        Math.cos(lat1) *
-                        Math.cos(lat2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    private static String fecha(Date fecha) {
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toString();
+    }
 
-        return RADIO_TIERRA_KM * c;
+    private double calcularDistancia(Trayectoria recorrido, int i, int j) {
+        return evaluadorGeocerca.distanciaKm(recorrido.getLatitud(i), recorrido.getLongitud(i), recorrido.getLatitud(j), recorrido.getLongitud(j));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package org.example.service;
+
+import org.example.dtos.EstadoRestriccionesDto;
+import org.example.dtos.externos.RestriccionesDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Mantiene en memoria la última foto de las restricciones de la agencia y la refresca en segundo plano.
+ *
+ * El procesamiento de posiciones lee siempre de la foto en memoria: solo se sale al servicio externo
+ * en el primer pedido (cuando todavía no hay foto). Si la foto está vieja se devuelve igual y se
+ * dispara un refresco en paralelo (stale-while-revalidate), así un servicio externo lento nunca
+ * frena el registro de posiciones.
+ */
+@Service
+public class RestriccionesService {
+
+    private final ExternalApisService externalApisService;
+
+    // La foto actual. Se reemplaza de forma atómica, nunca se modifica.
+    private final AtomicReference<RestriccionesSnapshot> snapshot = new AtomicReference<>();
+    // Refresco en curso (si lo hay). Sirve para que muchos pedidos simultáneos compartan una sola llamada.
+    private final AtomicReference<Mono<RestriccionesSnapshot>> refrescoEnCurso = new AtomicReference<>();
+
+    private final AtomicLong refrescosExitosos = new AtomicLong();
+    private final AtomicLong refrescosFallidos = new AtomicLong();
+    private final AtomicLong fallosConsecutivos = new AtomicLong();
+    private volatile long ultimoFalloMillis;
+    private volatile String ultimoError;
+
+    @Value("${agencia.restricciones.max-antiguedad-ms:60000}")
+    private long maxAntiguedadMs;
+
+    @Value("${agencia.restricciones.timeout-ms:3000}")
+    private long timeoutMs;
+
+    @Autowired
+    public RestriccionesService(ExternalApisService externalApisService) {
+        this.externalApisService = externalApisService;
+    }
+
+    /**
+     * Devuelve la foto vigente de las restricciones. Si está vencida se devuelve igual y se refresca en segundo plano.
+     * @return Un Mono con la foto, o con error si nunca se pudieron obtener las restricciones.
+     */
+    public Mono<RestriccionesSnapshot> obtenerSnapshot() {
+        RestriccionesSnapshot actual = snapshot.get();
+        if (actual == null) {
+            return refrescar();
+        }
+        if (actual.antiguedadMs(System.currentTimeMillis()) > maxAntiguedadMs) {
+            refrescar();
+        }
+        return Mono.just(actual);
+    }
+
+    public Mono<RestriccionesDto> obtenerRestricciones() {
+        return obtenerSnapshot().map(RestriccionesSnapshot::getRestricciones);
+    }
+
+    @Scheduled(fixedDelayString = "${agencia.restricciones.refresco-ms:30000}")
+    public void refrescoProgramado() {
+        refrescar();
+    }
+
+    /**
+     * Pide las restricciones al servicio externo y, si llegan, reemplaza la foto en memoria.
+     * Si ya hay un refresco en curso se reutiliza en vez de hacer otra llamada.
+     * Si el refresco falla y ya había una foto, se sigue sirviendo la anterior.
+     */
+    public Mono<RestriccionesSnapshot> refrescar() {
+        while (true) {
+            Mono<RestriccionesSnapshot> enCurso = refrescoEnCurso.get();
+            if (enCurso != null) {
+                return enCurso;
+            }
+            Mono<RestriccionesSnapshot> nuevo = crearRefresco();
+            if (refrescoEnCurso.compareAndSet(null, nuevo)) {
+                // Lo arrancamos nosotros: así termina (y libera el lugar) aunque quien lo pidió nunca se suscriba.
+                nuevo.subscribe(s -> { }, e -> { });
+                return nuevo;
+            }
+        }
+    }
+
+    private Mono<RestriccionesSnapshot> crearRefresco() {
+        return Mono.defer(externalApisService::getRestricciones)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .map(restricciones -> new RestriccionesSnapshot(restricciones, System.currentTimeMillis()))
+                .doOnNext(nuevo -> {
+                    snapshot.set(nuevo);
+                    refrescosExitosos.incrementAndGet();
+                    fallosConsecutivos.set(0);
+                })
+                .switchIfEmpty(Mono.error(new IllegalStateException("El servicio externo no devolvió restricciones.")))
+                .onErrorResume(error -> {
+                    registrarFallo(error);
+                    RestriccionesSnapshot anterior = snapshot.get();
+                    if (anterior != null) {
+                        return Mono.just(anterior);
+                    }
+                    return Mono.error(new IllegalStateException("No se pudieron obtener las restricciones desde el servicio externo.", error));
+                })
+                .doFinally(signal -> refrescoEnCurso.set(null))
+                .cache();
+    }
+
+    private void registrarFallo(Throwable error) {
+        refrescosFallidos.incrementAndGet();
+        fallosConsecutivos.incrementAndGet();
+        ultimoFalloMillis = System.currentTimeMillis();
+        ultimoError = error.getClass().getSimpleName() + ": " + error.getMessage();
+        System.err.println("Error refrescando las restricciones de la agencia: " + ultimoError);
+    }
+
+    public EstadoRestriccionesDto getEstado() {
+        RestriccionesSnapshot actual = snapshot.get();
+        EstadoRestriccionesDto estado = new EstadoRestriccionesDto();
+        estado.setDisponible(actual != null);
+        if (actual != null) {
+            estado.setObtenidaEn(new Date(actual.getObtenidaEnMillis()));
+            estado.setAntiguedadMs(actual.antiguedadMs(System.currentTimeMillis()));
+            estado.setVencida(estado.getAntiguedadMs() > maxAntiguedadMs);
+        }
+        estado.setRefrescosExitosos(refrescosExitosos.get());
+        estado.setRefrescosFallidos(refrescosFallidos.get());
+        estado.setFallosConsecutivos(fallosConsecutivos.get());
+        estado.setUltimoFalloEn(ultimoFalloMillis == 0 ? null : new Date(ultimoFalloMillis));
+        estado.setUltimoError(ultimoError);
+        return estado;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.service;
+
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.service.geocerca.GeocercaCompilada;
+import org.example.service.geocerca.IndiceZonasPeligrosas;
+
+import java.util.List;
+
+/**
+ * Foto inmutable de las restricciones de la agencia tal como las devolvió el servicio externo
+ * en un momento dado. Se reemplaza entera (nunca se modifica) cada vez que se refresca.
+ * Junto con la foto se arma el índice espacial de las zonas peligrosas y la geocerca compilada,
+ * una sola vez por refresco.
+ */
+public final class RestriccionesSnapshot {
+
+    private final RestriccionesDto restricciones;
+    private final long obtenidaEnMillis;
+    private final IndiceZonasPeligrosas indiceZonas;
+    // Null si el servicio externo no informó la ubicación o el radio de la agencia.
+    private final GeocercaCompilada geocerca;
+
+    public RestriccionesSnapshot(RestriccionesDto origen, long obtenidaEnMillis) {
+        // Copiamos el DTO para que nadie que tenga la referencia original pueda alterar la foto.
+        RestriccionesDto copia = new RestriccionesDto();
+        copia.setUbicacionAgencia(origen.getUbicacionAgencia());
+        copia.setRadioMaximoMetros(origen.getRadioMaximoMetros());
+        copia.setZonasPeligrosas(origen.getZonasPeligrosas() == null ? List.of() : List.copyOf(origen.getZonasPeligrosas()));
+        this.restricciones = copia;
+        this.obtenidaEnMillis = obtenidaEnMillis;
+        this.indiceZonas = new IndiceZonasPeligrosas(copia.getZonasPeligrosas());
+        this.geocerca = tieneUbicacionAgencia(copia) ? GeocercaCompilada.de(copia, indiceZonas) : null;
+    }
+
+    public RestriccionesDto getRestricciones() {
+        return restricciones;
+    }
+
+    public IndiceZonasPeligrosas getIndiceZonas() {
+        return indiceZonas;
+    }
+
+    /**
+     * @throws IllegalStateException si las restricciones no traen la ubicación o el radio de la agencia.
+     */
+    public GeocercaCompilada getGeocerca() {
+        if (geocerca == null) {
+            throw new IllegalStateException("Las restricciones no incluyen la ubicación de la agencia o su radio máximo.");
+        }
+        return geocerca;
+    }
+
+    public long getObtenidaEnMillis() {
+        return obtenidaEnMillis;
+    }
+
+    public long antiguedadMs(long ahoraMillis) {
+        return ahoraMillis - obtenidaEnMillis;
+    }
+
+    private static boolean tieneUbicacionAgencia(RestriccionesDto restricciones) {
+        return restricciones.getUbicacionAgencia() != null && restricciones.getUbicacionAgencia().getLatitud() != null
+                && restricciones.getUbicacionAgencia().getLongitud() != null && restricciones.getRadioMaximoMetros() != null;
+    }
+}
@@ -0,0 +1,373 @@
+package org.example.service;
+
+import org.example.dtos.ResumenFlotaDto;
+import org.example.dtos.TotalesFlotaDto;
+import org.example.models.PersonaResumenDiario;
+import org.example.models.Prueba;
+import org.example.models.ResumenDiarioVehiculo;
+import org.example.models.Vehiculo;
+import org.example.repositories.PersonaResumenDiarioRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenDiarioVehiculoRepository;
+import org.example.repositories.VehiculoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Resúmenes por vehículo y día (ResumenesDiarios y ResumenesDiariosPersonas) para los reportes de la flota, que así
+ * leen una fila por vehículo y día del período en lugar de todas las pruebas y sus posiciones.
+ * <ul>
+ *   <li>Al crear una prueba se suma a las iniciadas del día de inicio, con su empleado y su interesado.</li>
+ *   <li>Al finalizarla se suma a las finalizadas del día de fin, con su duración, sus kilómetros y su incidente. Si la
+ *   distancia se completa más tarde (ver {@link OdometroPruebas#completarFinalizadas}) se vuelve a calcular ese día.</li>
+ *   <li>Al borrarla se vuelven a calcular sus días.</li>
+ *   <li>{@link #reconstruir} vuelve a calcular un rango de días desde Pruebas: para cargar las pruebas anteriores a
+ *   los resúmenes o si una actualización falló.</li>
+ * </ul>
+ * Las actualizaciones son de a una a la vez y cada una en su transacción; un error se informa y se cuenta pero no hace
+ * fallar la operación sobre la prueba. Al reconstruir, las lecturas (incluidos los recorridos de las pruebas sin
+ * distancia) se hacen sin el monitor y fuera de la transacción; sólo el reemplazo de cada día espera a las
+ * actualizaciones, y si alguna cambió ese día mientras tanto se vuelve a leer.
+ */
+@Service
+public class ResumenesDiarios {
+
+    private static final int INTENTOS_RECONSTRUCCION = 3;
+
+    private final ResumenDiarioVehiculoRepository resumenRepository;
+    private final PersonaResumenDiarioRepository personaRepository;
+    private final PruebaRepository pruebaRepository;
+    private final VehiculoRepository vehiculoRepository;
+    private final OdometroPruebas odometroPruebas;
+    private final TransactionTemplate transactionTemplate;
+
+    // Cuántas veces registrarInicio y registrarFin tocaron cada día (aaaammdd): una reconstrucción sólo escribe lo que
+    // leyó si el día no cambió desde que empezó a leerlo.
+    private final ConcurrentMap<Integer, Long> cambiosPorDia = new ConcurrentHashMap<>();
+
+    private final AtomicLong actualizaciones = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    @Autowired
+    public ResumenesDiarios(ResumenDiarioVehiculoRepository resumenRepository, PersonaResumenDiarioRepository personaRepository,
+                            PruebaRepository pruebaRepository, VehiculoRepository vehiculoRepository,
+                            OdometroPruebas odometroPruebas, PlatformTransactionManager transactionManager) {
+        this.resumenRepository = resumenRepository;
+        this.personaRepository = personaRepository;
+        this.pruebaRepository = pruebaRepository;
+        this.vehiculoRepository = vehiculoRepository;
+        this.odometroPruebas = odometroPruebas;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        odometroPruebas.alCompletar(this::reconstruirDiasDeFin);
+    }
+
+    /**
+     * Suma una prueba recién creada al día en que empezó.
+     */
+    public synchronized void registrarInicio(Prueba prueba) {
+        Integer dia = dia(prueba.getFechaHoraInicio());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ResumenDiarioVehiculo resumen = buscar(prueba.getVehiculo().getId(), dia);
+                sumarInicio(resumen, prueba, personaNueva -> {
+                    if (personaRepository.existsById(clave(personaNueva))) {
+                        return false;
+                    }
+                    personaRepository.save(personaNueva);
+                    return true;
+                });
+                resumenRepository.save(resumen);
+            });
+            actualizaciones.incrementAndGet();
+        } catch (RuntimeException e) {
+            errores.incrementAndGet();
+            System.err.println("ResumenesDiarios: no se pudo sumar el inicio de la prueba " + prueba.getId() + ": " + e.getMessage());
+        } finally {
+            cambiosPorDia.merge(dia, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Suma una prueba recién finalizada al día en que terminó. Si todavía no tiene distancia (la espera de sus últimas
+     * posiciones venció) se suma con 0 km y el día se vuelve a calcular cuando OdometroPruebas la completa.
+     */
+    public synchronized void registrarFin(Prueba prueba) {
+        Integer dia = dia(prueba.getFechaHoraFin());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ResumenDiarioVehiculo resumen = buscar(prueba.getVehiculo().getId(), dia);
+                sumarFin(resumen, prueba, prueba.getDistanciaKm() != null ? prueba.getDistanciaKm() : 0.0);
+                resumenRepository.save(resumen);
+            });
+            actualizaciones.incrementAndGet();
+        } catch (RuntimeException e) {
+            errores.incrementAndGet();
+            System.err.println("ResumenesDiarios: no se pudo sumar el fin de la prueba " + prueba.getId() + ": " + e.getMessage());
+        } finally {
+            cambiosPorDia.merge(dia, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Vuelve a calcular los días en que terminaron las pruebas cuya distancia completó
+     * {@link OdometroPruebas#completarFinalizadas}, una vez por día.
+     */
+    void reconstruirDiasDeFin(List<Prueba> pruebas) {
+        Set<LocalDate> dias = new TreeSet<>();
+        pruebas.forEach(prueba -> dias.add(fecha(dia(prueba.getFechaHoraFin()))));
+        for (LocalDate fecha : dias) {
+            try {
+                reconstruir(fecha, fecha);
+                actualizaciones.incrementAndGet();
+            } catch (RuntimeException e) {
+                errores.incrementAndGet();
+                System.err.println("ResumenesDiarios: no se pudo sumar la distancia completada del " + fecha + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Quita una prueba borrada de los resúmenes volviendo a calcular los días en que empezó y terminó.
+     */
+    public void quitar(Prueba prueba) {
+        LocalDate inicio = fecha(dia(prueba.getFechaHoraInicio()));
+        LocalDate fin = prueba.getFechaHoraFin() != null ? fecha(dia(prueba.getFechaHoraFin())) : inicio;
+        try {
+            reconstruir(inicio, fin);
+            actualizaciones.incrementAndGet();
+        } catch (RuntimeException e) {
+            errores.incrementAndGet();
+            System.err.println("ResumenesDiarios: no se pudo quitar la prueba " + prueba.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelve a calcular los resúmenes de cada día entre {@code desde} y {@code hasta} (inclusive) a partir de las
+     * pruebas que empezaron o terminaron ese día. Cada día se lee y se calcula antes de tocar la tabla y después se
+     * borra y se escribe en una transacción corta, así un reporte nunca ve un día a medio reconstruir.
+     * @return la cantidad de filas de vehículo y día escritas.
+     */
+    public int reconstruir(LocalDate desde, LocalDate hasta) {
+        validarPeriodo(desde, hasta);
+        int filas = 0;
+        for (LocalDate fecha = desde; !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+            filas += reconstruirDia(fecha);
+        }
+        System.out.println("ResumenesDiarios: reconstruidos los días del " + desde + " al " + hasta + " (" + filas + " filas).");
+        return filas;
+    }
+
+    private int reconstruirDia(LocalDate fecha) {
+        Integer dia = dia(fecha);
+        for (int intento = 0; intento < INTENTOS_RECONSTRUCCION; intento++) {
+            long cambios = cambiosPorDia.getOrDefault(dia, 0L);
+            DiaCalculado calculado = calcularDia(fecha);
+            synchronized (this) {
+                if (cambiosPorDia.getOrDefault(dia, 0L) == cambios) {
+                    return escribirDia(dia, calculado);
+                }
+            }
+        }
+        // La ingesta no deja de sumar a este día: se lee con el monitor tomado, como antes, para no reintentar sin fin.
+        synchronized (this) {
+            return escribirDia(dia, calcularDia(fecha));
+        }
+    }
+
+    private DiaCalculado calcularDia(LocalDate fecha) {
+        Integer dia = dia(fecha);
+        ZoneId zona = ZoneId.systemDefault();
+        Date inicio = Date.from(fecha.atStartOfDay(zona).toInstant());
+        Date fin = new Date(Date.from(fecha.plusDays(1).atStartOfDay(zona).toInstant()).getTime() - 1);
+
+        Map<Integer, ResumenDiarioVehiculo> resumenes = new HashMap<>();
+        Set<PersonaResumenDiario> personas = new HashSet<>();
+        for (Prueba prueba : pruebaRepository.findByFechaHoraInicioBetween(inicio, fin)) {
+            ResumenDiarioVehiculo resumen = resumenes.computeIfAbsent(prueba.getVehiculo().getId(), id -> new ResumenDiarioVehiculo(id, dia));
+            sumarInicio(resumen, prueba, personas::add);
+        }
+        for (Prueba prueba : pruebaRepository.findByFechaHoraFinBetween(inicio, fin)) {
+            ResumenDiarioVehiculo resumen = resumenes.computeIfAbsent(prueba.getVehiculo().getId(), id -> new ResumenDiarioVehiculo(id, dia));
+            sumarFin(resumen, prueba, odometroPruebas.distanciaDe(prueba));
+        }
+        return new DiaCalculado(resumenes.values(), personas);
+    }
+
+    private int escribirDia(Integer dia, DiaCalculado calculado) {
+        transactionTemplate.executeWithoutResult(status -> {
+            resumenRepository.eliminarDia(dia);
+            personaRepository.eliminarDia(dia);
+            personaRepository.saveAll(calculado.personas());
+            resumenRepository.saveAll(calculado.resumenes());
+        });
+        return calculado.resumenes().size();
+    }
+
+    private record DiaCalculado(Collection<ResumenDiarioVehiculo> resumenes, Set<PersonaResumenDiario> personas) {
+    }
+
+    // agregarPersona devuelve si la persona todavía no estaba en el resumen de ese vehículo y día.
+    private void sumarInicio(ResumenDiarioVehiculo resumen, Prueba prueba, Predicate<PersonaResumenDiario> agregarPersona) {
+        resumen.setPruebasIniciadas(resumen.getPruebasIniciadas() + 1);
+        if (prueba.getEmpleado() != null && agregarPersona.test(persona(resumen, PersonaResumenDiario.Tipo.EMPLEADO, prueba.getEmpleado().getLegajo()))) {
+            resumen.setEmpleados(resumen.getEmpleados() + 1);
+        }
+        if (prueba.getInteresado() != null && agregarPersona.test(persona(resumen, PersonaResumenDiario.Tipo.INTERESADO, prueba.getInteresado().getId()))) {
+            resumen.setInteresados(resumen.getInteresados() + 1);
+        }
+    }
+
+    private void sumarFin(ResumenDiarioVehiculo resumen, Prueba prueba, double distanciaKm) {
+        resumen.setPruebasFinalizadas(resumen.getPruebasFinalizadas() + 1);
+        resumen.setDuracionSegundos(resumen.getDuracionSegundos()
+                + (prueba.getFechaHoraFin().getTime() - prueba.getFechaHoraInicio().getTime()) / 1000);
+        resumen.setDistanciaKm(resumen.getDistanciaKm() + distanciaKm);
+        if (Boolean.TRUE.equals(prueba.getIncidente())) {
+            resumen.setIncidentes(resumen.getIncidentes() + 1);
+        }
+    }
+
+    private ResumenDiarioVehiculo buscar(Integer idVehiculo, Integer dia) {
+        return resumenRepository.findById(new ResumenDiarioVehiculo.Clave(idVehiculo, dia))
+                .orElseGet(() -> new ResumenDiarioVehiculo(idVehiculo, dia));
+    }
+
+    private static PersonaResumenDiario persona(ResumenDiarioVehiculo resumen, PersonaResumenDiario.Tipo tipo, Long idPersona) {
+        return new PersonaResumenDiario(resumen.getIdVehiculo(), resumen.getDia(), tipo, idPersona);
+    }
+
+    private static PersonaResumenDiario.Clave clave(PersonaResumenDiario persona) {
+        return new PersonaResumenDiario.Clave(persona.getIdVehiculo(), persona.getDia(), persona.getTipo(), persona.getIdPersona());
+    }
+
+    /**
+     * Totales de toda la flota y de cada vehículo con pruebas entre {@code desde} y {@code hasta} (inclusive). Las
+     * personas se cuentan una vez en todo el período aunque hayan participado varios días.
+     */
+    public ResumenFlotaDto resumenFlota(LocalDate desde, LocalDate hasta) {
+        validarPeriodo(desde, hasta);
+        Integer diaDesde = dia(desde);
+        Integer diaHasta = dia(hasta);
+
+        Map<Integer, TotalesFlotaDto> porVehiculo = new TreeMap<>();
+        TotalesFlotaDto totales = new TotalesFlotaDto();
+        for (Object[] fila : resumenRepository.totalesPorVehiculo(diaDesde, diaHasta)) {
+            TotalesFlotaDto vehiculo = porVehiculo.computeIfAbsent((Integer) fila[0], this::totalesDeVehiculo);
+            sumarTotales(vehiculo, fila);
+            sumarTotales(totales, fila);
+        }
+        for (Object[] fila : personaRepository.distintasPorVehiculo(diaDesde, diaHasta)) {
+            asignarPersonas(porVehiculo.computeIfAbsent((Integer) fila[0], this::totalesDeVehiculo), fila[1], fila[2]);
+        }
+        for (Object[] fila : personaRepository.distintasEnPeriodo(diaDesde, diaHasta)) {
+            asignarPersonas(totales, fila[0], fila[1]);
+        }
+
+        Map<Integer, String> patentes = vehiculoRepository.findAllById(porVehiculo.keySet()).stream()
+                .collect(Collectors.toMap(Vehiculo::getId, Vehiculo::getPatente));
+        porVehiculo.values().forEach(vehiculo -> vehiculo.setPatente(patentes.get(vehiculo.getIdVehiculo())));
+
+        ResumenFlotaDto resumen = new ResumenFlotaDto();
+        resumen.setFechaInicio(desde);
+        resumen.setFechaFin(hasta);
+        resumen.setTotales(totales);
+        resumen.setVehiculos(new ArrayList<>(porVehiculo.values()));
+        return resumen;
+    }
+
+    /**
+     * Totales de toda la flota en cada día entre {@code desde} y {@code hasta} que tuvo pruebas, ordenados por día.
+     */
+    public List<TotalesFlotaDto> resumenPorDia(LocalDate desde, LocalDate hasta) {
+        validarPeriodo(desde, hasta);
+        Integer diaDesde = dia(desde);
+        Integer diaHasta = dia(hasta);
+
+        Map<Integer, TotalesFlotaDto> porDia = new TreeMap<>();
+        for (Object[] fila : resumenRepository.totalesPorDia(diaDesde, diaHasta)) {
+            sumarTotales(porDia.computeIfAbsent((Integer) fila[0], this::totalesDeDia), fila);
+        }
+        for (Object[] fila : personaRepository.distintasPorDia(diaDesde, diaHasta)) {
+            asignarPersonas(porDia.computeIfAbsent((Integer) fila[0], this::totalesDeDia), fila[1], fila[2]);
+        }
+        return new ArrayList<>(porDia.values());
+    }
+
+    private TotalesFlotaDto totalesDeVehiculo(Integer idVehiculo) {
+        TotalesFlotaDto totales = new TotalesFlotaDto();
+        totales.setIdVehiculo(idVehiculo);
+        return totales;
+    }
+
+    private TotalesFlotaDto totalesDeDia(Integer dia) {
+        TotalesFlotaDto totales = new TotalesFlotaDto();
+        totales.setDia(fecha(dia));
+        return totales;
+    }
+
+    // Columnas de las consultas agregadas de ResumenDiarioVehiculoRepository, después de la de agrupación.
+    private static void sumarTotales(TotalesFlotaDto totales, Object[] fila) {
+        totales.setPruebasIniciadas(totales.getPruebasIniciadas() + ((Number) fila[1]).longValue());
+        totales.setPruebasFinalizadas(totales.getPruebasFinalizadas() + ((Number) fila[2]).longValue());
+        totales.setDuracionSegundos(totales.getDuracionSegundos() + ((Number) fila[3]).longValue());
+        totales.setDistanciaKm(totales.getDistanciaKm() + ((Number) fila[4]).doubleValue());
+        totales.setIncidentes(totales.getIncidentes() + ((Number) fila[5]).longValue());
+    }
+
+    private static void asignarPersonas(TotalesFlotaDto totales, Object tipo, Object cantidad) {
+        if (tipo == PersonaResumenDiario.Tipo.EMPLEADO) {
+            totales.setEmpleados(((Number) cantidad).longValue());
+        } else {
+            totales.setInteresados(((Number) cantidad).longValue());
+        }
+    }
+
+    private static void validarPeriodo(LocalDate desde, LocalDate hasta) {
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("La fecha de inicio es posterior a la fecha de fin.");
+        }
+    }
+
+    /**
+     * Día aaaammdd de una fecha en la zona horaria del servidor.
+     */
+    public static Integer dia(Date fecha) {
+        return dia(fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    }
+
+    public static Integer dia(LocalDate fecha) {
+        return fecha.getYear() * 10000 + fecha.getMonthValue() * 100 + fecha.getDayOfMonth();
+    }
+
+    static LocalDate fecha(Integer dia) {
+        return LocalDate.of(dia / 10000, dia / 100 % 100, dia % 100);
+    }
+
+    public long getActualizaciones() {
+        return actualizaciones.get();
+    }
+
+    public long getErrores() {
+        return errores.get();
+    }
+}
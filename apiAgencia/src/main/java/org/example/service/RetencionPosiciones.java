@@ -0,0 +1,245 @@
+package org.example.service;
+
+import org.example.dtos.EstadoRetencionDto;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
+import org.example.service.trayectoria.Trayectoria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retención de posiciones de pruebas finalizadas. Cada prueba pasa por tres niveles según la antigüedad de su fin:
+ * <ul>
+ *   <li>Hasta {@code resolucion-completa-dias}: todas sus posiciones.</li>
+ *   <li>Hasta {@code resumen-dias}: una posición cada {@code submuestreo-segundos} (la primera de cada intervalo, más
+ *   la última de la prueba).</li>
+ *   <li>Después: ninguna posición, solo su {@link ResumenPrueba} (distancia, duración, rectángulo e incidente).</li>
+ * </ul>
+ * El resumen se calcula con todas las posiciones antes de borrar la primera, y el reporte de kilometraje lo usa en
+ * lugar de recorrer Posiciones, así que el kilometraje no cambia al submuestrear.
+ *
+ * SQLite tiene un solo escritor: mientras un DELETE no hace commit, la ingesta de posiciones espera. Por eso se borra
+ * de a {@code lote} filas por transacción, con una pausa de {@code pausa-ms} entre lotes para que entren las escrituras
+ * pendientes. Si el proceso se corta a mitad de una prueba, la siguiente ejecución la retoma: el submuestreo conserva
+ * siempre los mismos puntos y el resumen ya calculado no se vuelve a calcular.
+ */
+@Service
+public class RetencionPosiciones {
+
+    private static final long MILLIS_POR_DIA = TimeUnit.DAYS.toMillis(1);
+
+    private final PruebaRepository pruebaRepository;
+    private final PosicionRepository posicionRepository;
+    private final ResumenPruebaRepository resumenPruebaRepository;
+
+    @Value("${agencia.retencion.habilitada:true}")
+    private boolean habilitada = true;
+
+    @Value("${agencia.retencion.resolucion-completa-dias:30}")
+    private int diasResolucionCompleta = 30;
+
+    @Value("${agencia.retencion.submuestreo-segundos:60}")
+    private int segundosSubmuestreo = 60;
+
+    // 0 o negativo: nunca se borran todas las posiciones de una prueba.
+    @Value("${agencia.retencion.resumen-dias:365}")
+    private int diasHastaResumen = 365;
+
+    @Value("${agencia.retencion.lote:500}")
+    private int tamanioLote = 500;
+
+    @Value("${agencia.retencion.pausa-ms:50}")
+    private long pausaMs = 50;
+
+    private final AtomicBoolean ejecutando = new AtomicBoolean();
+    private final AtomicLong ejecuciones = new AtomicLong();
+    private final AtomicLong resumenesCreados = new AtomicLong();
+    private final AtomicLong pruebasSubmuestreadas = new AtomicLong();
+    private final AtomicLong pruebasResumidas = new AtomicLong();
+    private final AtomicLong posicionesBorradas = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private volatile long ultimaEjecucionMillis;
+    private volatile long duracionUltimaEjecucionMs;
+
+    @Autowired
+    public RetencionPosiciones(PruebaRepository pruebaRepository, PosicionRepository posicionRepository,
+                               ResumenPruebaRepository resumenPruebaRepository) {
+        this.pruebaRepository = pruebaRepository;
+        this.posicionRepository = posicionRepository;
+        this.resumenPruebaRepository = resumenPruebaRepository;
+    }
+
+    /**
+     * Aplica la política a las pruebas finalizadas que la necesitan. Si ya hay una ejecución en curso no hace nada.
+     * @return la cantidad de pruebas procesadas.
+     */
+    @Scheduled(fixedDelayString = "${agencia.retencion.intervalo-ms:3600000}",
+            initialDelayString = "${agencia.retencion.intervalo-ms:3600000}")
+    public int ejecutar() {
+        if (!habilitada || !ejecutando.compareAndSet(false, true)) {
+            return 0;
+        }
+        long inicio = System.currentTimeMillis();
+        int procesadas = 0;
+        try {
+            Date limiteCompleta = new Date(inicio - diasResolucionCompleta * MILLIS_POR_DIA);
+            Date limiteResumen = diasHastaResumen > 0 ? new Date(inicio - diasHastaResumen * MILLIS_POR_DIA) : new Date(0);
+            List<Prueba> pendientes = pruebaRepository.findPendientesDeRetencion(limiteCompleta, limiteResumen,
+                    ResumenPrueba.Nivel.SUBMUESTREADA, ResumenPrueba.Nivel.RESUMIDA);
+            for (Prueba prueba : pendientes) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                try {
+                    procesar(prueba, prueba.getFechaHoraFin().before(limiteResumen));
+                    procesadas++;
+                } catch (RuntimeException e) {
+                    errores.incrementAndGet();
+                    System.err.println("RetencionPosiciones: no se pudo procesar la prueba " + prueba.getId() + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            ejecuciones.incrementAndGet();
+            ultimaEjecucionMillis = inicio;
+            duracionUltimaEjecucionMs = System.currentTimeMillis() - inicio;
+            ejecutando.set(false);
+        }
+        if (procesadas > 0) {
+            System.out.println("RetencionPosiciones: " + procesadas + " pruebas procesadas en " + duracionUltimaEjecucionMs + " ms.");
+        }
+        return procesadas;
+    }
+
+    private void procesar(Prueba prueba, boolean soloResumen) {
+        ResumenPrueba resumen = resumenPruebaRepository.findById(prueba.getId()).orElse(null);
+        List<Posicion> posiciones = null;
+        if (resumen == null) {
+            posiciones = leerPosiciones(prueba);
+            resumen = resumenPruebaRepository.save(resumir(prueba, posiciones));
+            resumenesCreados.incrementAndGet();
+        }
+        if (soloResumen) {
+            long fin = prueba.getFechaHoraFin().getTime();
+            int borradas;
+            do {
+                borradas = posicionRepository.eliminarDeVehiculoEntre(prueba.getVehiculo().getId(),
+                        prueba.getFechaHoraInicio().getTime(), fin, tamanioLote);
+                posicionesBorradas.addAndGet(borradas);
+                if (borradas == tamanioLote && !pausar()) {
+                    return;
+                }
+            } while (borradas == tamanioLote);
+            resumenPruebaRepository.actualizarNivel(prueba.getId(), ResumenPrueba.Nivel.RESUMIDA);
+            pruebasResumidas.incrementAndGet();
+        } else if (resumen.getNivel() == ResumenPrueba.Nivel.COMPLETA) {
+            if (posiciones == null) {
+                posiciones = leerPosiciones(prueba);
+            }
+            List<Integer> descartadas = descartadasPorSubmuestreo(posiciones, TimeUnit.SECONDS.toMillis(segundosSubmuestreo));
+            for (int desde = 0; desde < descartadas.size(); desde += tamanioLote) {
+                if (desde > 0 && !pausar()) {
+                    return;
+                }
+                List<Integer> lote = descartadas.subList(desde, Math.min(desde + tamanioLote, descartadas.size()));
+                posicionesBorradas.addAndGet(posicionRepository.eliminarEnLote(lote));
+            }
+            resumenPruebaRepository.actualizarNivel(prueba.getId(), ResumenPrueba.Nivel.SUBMUESTREADA);
+            pruebasSubmuestreadas.incrementAndGet();
+        }
+    }
+
+    // Las mismas posiciones que usa el reporte de kilometraje: las del vehículo entre el inicio y el fin de la prueba.
+    private List<Posicion> leerPosiciones(Prueba prueba) {
+        return posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(
+                prueba.getVehiculo().getId(), prueba.getFechaHoraInicio().getTime(), prueba.getFechaHoraFin().getTime());
+    }
+
+    static ResumenPrueba resumir(Prueba prueba, List<Posicion> posiciones) {
+        ResumenPrueba resumen = new ResumenPrueba();
+        resumen.setIdPrueba(prueba.getId());
+        resumen.setIdVehiculo(prueba.getVehiculo().getId());
+        resumen.setFechaHoraInicio(prueba.getFechaHoraInicio());
+        resumen.setFechaHoraFin(prueba.getFechaHoraFin());
+        resumen.setDistanciaKm(Trayectoria.de(posiciones).distanciaKm());
+        resumen.setDuracionSegundos((prueba.getFechaHoraFin().getTime() - prueba.getFechaHoraInicio().getTime()) / 1000);
+        resumen.setPosiciones(posiciones.size());
+        resumen.setIncidente(Boolean.TRUE.equals(prueba.getIncidente()));
+        resumen.setNivel(ResumenPrueba.Nivel.COMPLETA);
+        if (!posiciones.isEmpty()) {
+            double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE, lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+            for (Posicion posicion : posiciones) {
+                latMin = Math.min(latMin, posicion.getLatitud());
+                latMax = Math.max(latMax, posicion.getLatitud());
+                lonMin = Math.min(lonMin, posicion.getLongitud());
+                lonMax = Math.max(lonMax, posicion.getLongitud());
+            }
+            resumen.setLatitudMin(latMin);
+            resumen.setLatitudMax(latMax);
+            resumen.setLongitudMin(lonMin);
+            resumen.setLongitudMax(lonMax);
+        }
+        return resumen;
+    }
+
+    /**
+     * Ids de las posiciones que sobran para dejar una cada {@code intervaloMs}: se conserva la primera de cada intervalo
+     * (contado desde la época, no desde el inicio de la prueba, para que volver a aplicarlo no descarte nada más) y la última.
+     */
+    static List<Integer> descartadasPorSubmuestreo(List<Posicion> posiciones, long intervaloMs) {
+        List<Integer> descartadas = new ArrayList<>();
+        if (intervaloMs <= 0) {
+            return descartadas;
+        }
+        long intervaloAnterior = Long.MIN_VALUE;
+        for (int i = 0; i < posiciones.size(); i++) {
+            Posicion posicion = posiciones.get(i);
+            long intervalo = Math.floorDiv(posicion.getFechaHora(), intervaloMs);
+            if (intervalo == intervaloAnterior && i < posiciones.size() - 1) {
+                descartadas.add(posicion.getId());
+            }
+            intervaloAnterior = intervalo;
+        }
+        return descartadas;
+    }
+
+    // Deja pasar las escrituras que esperaban el lock. Devuelve false si el hilo fue interrumpido (se apaga la aplicación).
+    private boolean pausar() {
+        if (pausaMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pausaMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public EstadoRetencionDto getEstado() {
+        EstadoRetencionDto estado = new EstadoRetencionDto();
+        estado.setEjecutando(ejecutando.get());
+        estado.setEjecuciones(ejecuciones.get());
+        estado.setUltimaEjecucionEn(ultimaEjecucionMillis == 0 ? null : new Date(ultimaEjecucionMillis));
+        estado.setDuracionUltimaEjecucionMs(duracionUltimaEjecucionMs);
+        estado.setResumenesCreados(resumenesCreados.get());
+        estado.setPruebasSubmuestreadas(pruebasSubmuestreadas.get());
+        estado.setPruebasResumidas(pruebasResumidas.get());
+        estado.setPosicionesBorradas(posicionesBorradas.get());
+        estado.setErrores(errores.get());
+        return estado;
+    }
+}
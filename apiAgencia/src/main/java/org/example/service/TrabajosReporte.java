@@ -0,0 +1,340 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.dtos.TrabajoReporteDto;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.reporte.PedidoReporte;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reportes generados en segundo plano ({@code POST /api/reportes/jobs}), para los que tardan más de lo que un cliente o
+ * el gateway esperan una respuesta. Cada pedido se valida al recibirlo y se escribe con el mismo
+ * {@link StreamingResponseBody} de {@link ReporteService} a un archivo en {@code directorio}, que se descarga cuando
+ * termina.
+ * <p>
+ * Corren a lo sumo {@code hilos} reportes a la vez y esperan hasta {@code cola} más; con la cola llena se rechaza el
+ * pedido. Así no hay más de {@code hilos} reportes leyendo de la base a la vez (el de la flota, además, con sus
+ * propios {@code lectores}, ver {@link KilometrajeFlota}). Cada uno lee de a páginas, cada una en una transacción corta
+ * (ver {@link ReporteService}): la conexión y el lock de lectura de SQLite se sueltan entre página y página, no durante
+ * todo el reporte, pero mientras se lee una página los commits de la ingesta esperan. Un pedido igual a otro que
+ * todavía está en cola o en curso devuelve ese mismo trabajo en lugar de generar el reporte dos veces.
+ * <p>
+ * Los trabajos viven en memoria: los terminados se borran, con su archivo, {@code ttl-ms} después de terminar, y al
+ * arrancar se borran los archivos que quedaron de la ejecución anterior.
+ */
+@Service
+public class TrabajosReporte {
+
+    public enum Estado {
+        EN_COLA,
+        EN_CURSO,
+        TERMINADO,
+        FALLIDO
+    }
+
+    /**
+     * El archivo de un reporte terminado y su formato.
+     */
+    public record Archivo(Path ruta, FormatoReporte formato) {
+    }
+
+    private static final String EXTENSION_PARCIAL = ".parcial";
+
+    private final ReporteService reporteService;
+    private final Path directorio;
+    private final ThreadPoolExecutor ejecutor;
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+    // Los trabajos en cola o en curso por pedido, para no repetirlos. Se modifica solo dentro de synchronized.
+    private final Map<PedidoReporte, Trabajo> pendientes = new HashMap<>();
+
+    @Value("${agencia.reportes.trabajos.ttl-ms:3600000}")
+    private long ttlMs = 3600000;
+
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong repetidos = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+
+    @Autowired
+    public TrabajosReporte(ReporteService reporteService,
+                           @Value("${agencia.reportes.trabajos.directorio:reportes-trabajos}") String directorio,
+                           @Value("${agencia.reportes.trabajos.hilos:2}") int hilos,
+                           @Value("${agencia.reportes.trabajos.cola:20}") int cola) {
+        this.reporteService = reporteService;
+        this.directorio = Paths.get(directorio);
+        AtomicInteger numero = new AtomicInteger();
+        this.ejecutor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cola), tarea -> {
+            Thread hilo = new Thread(tarea, "reporte-trabajo-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        Files.createDirectories(directorio);
+        int borrados = 0;
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio)) {
+            for (Path archivo : archivos) {
+                if (Files.isRegularFile(archivo) && esArchivoDeTrabajo(archivo) && Files.deleteIfExists(archivo)) {
+                    borrados++;
+                }
+            }
+        }
+        if (borrados > 0) {
+            System.out.println("TrabajosReporte: se borraron " + borrados + " archivos de reportes de la ejecución anterior.");
+        }
+    }
+
+    // Sólo lo que escribe generar: <id>.parcial y <id>.<extensión de un formato>, con el id un UUID. El directorio
+    // es configurable y puede tener otros archivos que no son de esta api.
+    static boolean esArchivoDeTrabajo(Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        if (nombre.endsWith(EXTENSION_PARCIAL)) {
+            return true;
+        }
+        int punto = nombre.lastIndexOf('.');
+        if (punto < 0) {
+            return false;
+        }
+        String extension = nombre.substring(punto + 1);
+        if (Arrays.stream(FormatoReporte.values()).noneMatch(formato -> formato.getExtension().equals(extension))) {
+            return false;
+        }
+        String id = nombre.substring(0, punto);
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        ejecutor.shutdownNow();
+        ejecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Encola el reporte, o devuelve el trabajo que ya lo está generando si hay uno igual en cola o en curso.
+     * @throws IllegalArgumentException si no existe el empleado o el vehículo del pedido.
+     * @throws IllegalStateException si ya hay {@code cola} reportes esperando.
+     */
+    public TrabajoReporteDto enviar(PedidoReporte pedido) {
+        // Valida antes de encolar, para contestar 404 enseguida y no generar un archivo con el error.
+        StreamingResponseBody reporte = crear(pedido);
+        synchronized (pendientes) {
+            Trabajo existente = pendientes.get(pedido);
+            if (existente != null) {
+                repetidos.incrementAndGet();
+                return existente.dto();
+            }
+            Trabajo trabajo = new Trabajo(UUID.randomUUID().toString(), pedido);
+            try {
+                ejecutor.execute(() -> generar(trabajo, reporte));
+            } catch (RejectedExecutionException e) {
+                rechazados.incrementAndGet();
+                throw new IllegalStateException("Hay demasiados reportes en espera; intentar de nuevo en unos minutos.");
+            }
+            trabajos.put(trabajo.id, trabajo);
+            pendientes.put(pedido, trabajo);
+            enviados.incrementAndGet();
+            return trabajo.dto();
+        }
+    }
+
+    public Optional<TrabajoReporteDto> consultar(String id) {
+        return Optional.ofNullable(trabajos.get(id)).map(Trabajo::dto);
+    }
+
+    /**
+     * El archivo de un reporte terminado.
+     * @throws IllegalArgumentException si no existe el trabajo (o ya venció).
+     * @throws IllegalStateException si el reporte todavía no terminó o falló.
+     */
+    public Archivo archivo(String id) {
+        Trabajo trabajo = trabajos.get(id);
+        if (trabajo == null) {
+            throw new IllegalArgumentException("Trabajo de reporte " + id + " no encontrado.");
+        }
+        if (trabajo.estado != Estado.TERMINADO) {
+            throw new IllegalStateException("El reporte " + id + " no está terminado (" + trabajo.estado + ").");
+        }
+        return new Archivo(trabajo.archivo, trabajo.pedido.formato());
+    }
+
+    /**
+     * Borra los trabajos terminados (y fallidos) hace más de {@code ttl-ms}, con sus archivos.
+     * @return la cantidad de trabajos borrados.
+     */
+    @Scheduled(fixedDelayString = "${agencia.reportes.trabajos.limpieza-ms:60000}",
+            initialDelayString = "${agencia.reportes.trabajos.limpieza-ms:60000}")
+    public int limpiar() {
+        long limite = System.currentTimeMillis() - ttlMs;
+        int borrados = 0;
+        for (Trabajo trabajo : trabajos.values()) {
+            if (trabajo.terminadoMillis != 0 && trabajo.terminadoMillis <= limite && trabajos.remove(trabajo.id, trabajo)) {
+                borrados++;
+                if (trabajo.archivo != null) {
+                    try {
+                        Files.deleteIfExists(trabajo.archivo);
+                    } catch (IOException e) {
+                        System.err.println("TrabajosReporte: no se pudo borrar " + trabajo.archivo + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return borrados;
+    }
+
+    public long getEnviados() {
+        return enviados.get();
+    }
+
+    public long getRepetidos() {
+        return repetidos.get();
+    }
+
+    public long getRechazados() {
+        return rechazados.get();
+    }
+
+    public long getFallidos() {
+        return fallidos.get();
+    }
+
+    private StreamingResponseBody crear(PedidoReporte pedido) {
+        return switch (pedido.tipo()) {
+            case INCIDENTES -> reporteService.reporteIncidentes(pedido.formato());
+            case INCIDENTES_EMPLEADO -> reporteService.reporteIncidentesPorEmpleado(pedido.legajo(), pedido.formato());
+            case PRUEBAS_VEHICULO -> reporteService.reportePruebasPorVehiculo(pedido.patente(), pedido.formato());
+            case KILOMETRAJE -> reporteService.reporteKilometraje(pedido.patente(), fecha(pedido.fechaInicio()),
+                    fecha(pedido.fechaFin()), pedido.formato());
+            case KILOMETRAJE_FLOTA -> reporteService.reporteKilometrajeFlota(fecha(pedido.fechaInicio()),
+                    fecha(pedido.fechaFin()), pedido.formato());
+        };
+    }
+
+    // Se escribe a un archivo .parcial que se renombra al terminar: el archivo final, si existe, está completo.
+    // Este hilo usa una conexión solo mientras el reporte lee una página; escribir el archivo no la retiene.
+    private void generar(Trabajo trabajo, StreamingResponseBody reporte) {
+        trabajo.iniciadoMillis = System.currentTimeMillis();
+        trabajo.estado = Estado.EN_CURSO;
+        Path parcial = directorio.resolve(trabajo.id + EXTENSION_PARCIAL);
+        Path archivo = directorio.resolve(trabajo.id + "." + trabajo.pedido.formato().getExtension());
+        Estado estado;
+        try {
+            try (OutputStream salida = new SalidaContada(Files.newOutputStream(parcial), trabajo)) {
+                reporte.writeTo(salida);
+            }
+            Files.move(parcial, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            trabajo.archivo = archivo;
+            estado = Estado.TERMINADO;
+        } catch (Exception e) {
+            fallidos.incrementAndGet();
+            trabajo.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            estado = Estado.FALLIDO;
+            System.err.println("TrabajosReporte: falló el reporte " + trabajo.id + " (" + trabajo.pedido.tipo() + "): " + trabajo.error);
+            try {
+                Files.deleteIfExists(parcial);
+            } catch (IOException ignorada) {
+                // Lo borra el próximo arranque.
+            }
+        }
+        // Primero la hora de fin: quien ve el estado final ya ve cuándo vence.
+        trabajo.terminadoMillis = System.currentTimeMillis();
+        trabajo.estado = estado;
+        synchronized (pendientes) {
+            pendientes.remove(trabajo.pedido, trabajo);
+        }
+    }
+
+    private static Date fecha(LocalDate dia) {
+        return Date.from(dia.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private final class Trabajo {
+        private final String id;
+        private final PedidoReporte pedido;
+        private final long creadoMillis = System.currentTimeMillis();
+        private volatile Estado estado = Estado.EN_COLA;
+        private volatile long iniciadoMillis;
+        private volatile long terminadoMillis;
+        private volatile long bytesEscritos;
+        private volatile Path archivo;
+        private volatile String error;
+
+        private Trabajo(String id, PedidoReporte pedido) {
+            this.id = id;
+            this.pedido = pedido;
+        }
+
+        private TrabajoReporteDto dto() {
+            TrabajoReporteDto dto = new TrabajoReporteDto();
+            dto.setId(id);
+            dto.setTipo(pedido.tipo().name().toLowerCase(Locale.ROOT));
+            dto.setFormat(pedido.formato().name().toLowerCase(Locale.ROOT));
+            dto.setEstado(estado.name());
+            dto.setBytesEscritos(bytesEscritos);
+            dto.setCreadoEn(new Date(creadoMillis));
+            long terminado = terminadoMillis;
+            dto.setIniciadoEn(iniciadoMillis != 0 ? new Date(iniciadoMillis) : null);
+            dto.setTerminadoEn(terminado != 0 ? new Date(terminado) : null);
+            dto.setVenceEn(terminado != 0 ? new Date(terminado + ttlMs) : null);
+            dto.setError(error);
+            return dto;
+        }
+    }
+
+    // El progreso de un reporte son los bytes que ya llegaron al archivo (el escritor los manda de a 8 KB).
+    private static final class SalidaContada extends FilterOutputStream {
+        private final Trabajo trabajo;
+
+        private SalidaContada(OutputStream salida, Trabajo trabajo) {
+            super(salida);
+            this.trabajo = trabajo;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            trabajo.bytesEscritos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            trabajo.bytesEscritos += len;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.service;
+
+import org.example.dtos.EventoPosicionDto;
+import org.example.models.Posicion;
+import org.example.service.geocerca.VeredictoGeocerca;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transmisión en vivo de las posiciones aceptadas y su veredicto de geocerca, para los tableros que hoy consultan
+ * /api/pruebas/en-curso cada pocos segundos. VehiculoService publica cada posición al terminar de evaluarla y cada
+ * suscriptor (GET /api/vehiculos/posiciones/en-vivo) recibe solo las que pasan su filtro.
+ *
+ * Publicar nunca espera a un suscriptor: cada uno tiene su propio buffer acotado y cuando un cliente lento lo llena
+ * se aplica su {@link Politica}. Si no hay nadie suscripto publicar no arma ningún evento.
+ */
+@Service
+public class TransmisionPosiciones {
+
+    public enum Politica {
+        // Se descartan las posiciones más viejas del buffer.
+        DESCARTAR,
+        // Se guarda solo la última posición pendiente de cada vehículo.
+        RESUMIR
+    }
+
+    private final RegistroPruebasActivas registroPruebasActivas;
+    // directBestEffort: un suscriptor sin demanda pierde el evento en lugar de frenar al resto (los buffers van por suscriptor).
+    private final Sinks.Many<EventoPosicionDto> sink = Sinks.many().multicast().directBestEffort();
+
+    @Value("${agencia.posiciones.en-vivo.buffer:256}")
+    private int capacidadBuffer = 256;
+
+    // Comentario SSE periódico para que los proxies no corten la conexión y se detecten los clientes que se fueron.
+    @Value("${agencia.posiciones.en-vivo.latido-ms:15000}")
+    private long latidoMs = 15000;
+
+    private final AtomicLong descartadas = new AtomicLong();
+
+    @Autowired
+    public TransmisionPosiciones(RegistroPruebasActivas registroPruebasActivas) {
+        this.registroPruebasActivas = registroPruebasActivas;
+    }
+
+    /**
+     * Publica una posición ya evaluada. El vehículo de la posición tiene que traer id y patente.
+     */
+    public void publicar(Posicion posicion, VeredictoGeocerca veredicto) {
+        if (sink.currentSubscriberCount() == 0) {
+            return;
+        }
+        Integer idVehiculo = posicion.getVehiculo().getId();
+        PruebaActiva prueba = registroPruebasActivas.buscarPorVehiculo(idVehiculo);
+        EventoPosicionDto evento = new EventoPosicionDto(posicion.getId(), idVehiculo, posicion.getVehiculo().getPatente(),
+                prueba != null ? prueba.getIdPrueba() : null, posicion.getFechaHora(), posicion.getLatitud(), posicion.getLongitud(),
+                veredicto, veredicto.getMensaje());
+        // El sink no admite emisiones concurrentes; entregar a los buffers de los suscriptores es inmediato.
+        synchronized (sink) {
+            sink.tryEmitNext(evento);
+        }
+    }
+
+    /**
+     * Eventos SSE con las posiciones que cumplen el filtro (los nulos no filtran), más un latido periódico.
+     * El nombre de cada evento es el veredicto.
+     */
+    public Flux<ServerSentEvent<EventoPosicionDto>> suscribir(Integer idVehiculo, Integer idPrueba, VeredictoGeocerca veredicto, Politica politica) {
+        Flux<EventoPosicionDto> filtradas = sink.asFlux().filter(evento ->
+                (idVehiculo == null || idVehiculo.equals(evento.getIdVehiculo()))
+                        && (idPrueba == null || idPrueba.equals(evento.getIdPrueba()))
+                        && (veredicto == null || veredicto == evento.getVeredicto()));
+
+        Flux<EventoPosicionDto> acotadas = politica == Politica.RESUMIR
+                // Por vehículo quedan a lo sumo las posiciones ya en camino al cliente y la última que llegó.
+                ? filtradas.groupBy(EventoPosicionDto::getIdVehiculo)
+                        .flatMap(porVehiculo -> porVehiculo.onBackpressureLatest(), Integer.MAX_VALUE, 1)
+                : filtradas.onBackpressureBuffer(capacidadBuffer, descartada -> descartadas.incrementAndGet(), BufferOverflowStrategy.DROP_OLDEST);
+
+        Flux<ServerSentEvent<EventoPosicionDto>> latidos = Flux.interval(Duration.ofMillis(latidoMs))
+                .onBackpressureDrop()
+                .map(n -> ServerSentEvent.<EventoPosicionDto>builder().comment("latido").build());
+
+        // Prefetch 1: merge no junta su propio lote de posiciones por delante del buffer acotado.
+        return Flux.merge(1, acotadas.map(evento -> ServerSentEvent.builder(evento).event(evento.getVeredicto().name()).build()), latidos);
+    }
+
+    public int getSuscriptores() {
+        return sink.currentSubscriberCount();
+    }
+
+    /**
+     * @return posiciones que no llegaron a algún suscriptor con política DESCARTAR porque su buffer estaba lleno.
+     */
+    public long getDescartadas() {
+        return descartadas.get();
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.service;
+
+import org.example.dtos.TrayectoriaDto;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.repositories.HistorialPosiciones;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.serializacion.TrayectoriaComprimida;
+import org.example.service.trayectoria.Simplificacion;
+import org.example.service.trayectoria.SimplificadorTrayectoria;
+import org.example.service.trayectoria.Trayectoria;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorrido de una prueba simplificado con {@link SimplificadorTrayectoria}, de dos maneras:
+ * <ul>
+ *   <li>Al leer ({@link #obtener}): se devuelven solo los puntos que cambian el dibujo; la base no se toca.</li>
+ *   <li>Compactando una prueba finalizada ({@link #compactar}): se borran de Posiciones los puntos descartados,
+ *   siempre que el kilometraje calculado con los que quedan no cambie más que {@code max-error-distancia}.</li>
+ * </ul>
+ */
+@Service
+public class TrayectoriaService {
+
+    private final PruebaRepository pruebaRepository;
+    private final PosicionRepository posicionRepository;
+    private final HistorialPosiciones historialPosiciones;
+
+    @Value("${agencia.trayectoria.tolerancia-metros:10}")
+    private double toleranciaMetros = 10;
+
+    @Value("${agencia.trayectoria.medida:TEMPORAL}")
+    private SimplificadorTrayectoria.Medida medida = SimplificadorTrayectoria.Medida.TEMPORAL;
+
+    // Diferencia relativa máxima del kilometraje de una prueba compactada (0.01 = 1%).
+    @Value("${agencia.trayectoria.max-error-distancia:0.01}")
+    private double maxErrorDistancia = 0.01;
+
+    @Autowired
+    public TrayectoriaService(PruebaRepository pruebaRepository, PosicionRepository posicionRepository, HistorialPosiciones historialPosiciones) {
+        this.pruebaRepository = pruebaRepository;
+        this.posicionRepository = posicionRepository;
+        this.historialPosiciones = historialPosiciones;
+    }
+
+    /**
+     * @param toleranciaMetros opcional; 0 devuelve todos los puntos. Si no se indica se usa la configurada.
+     * @param medida           opcional; si no se indica se usa la configurada.
+     */
+    public TrayectoriaDto obtener(Integer idPrueba, Double toleranciaMetros, SimplificadorTrayectoria.Medida medida) {
+        Prueba prueba = buscarPrueba(idPrueba);
+        Trayectoria trayectoria = historialPosiciones.buscarTrayectoria(prueba.getVehiculo().getId(),
+                prueba.getFechaHoraInicio().getTime(), finDe(prueba));
+        Simplificacion simplificacion = SimplificadorTrayectoria.simplificacion(trayectoria,
+                toleranciaMetros != null ? toleranciaMetros : this.toleranciaMetros, medida != null ? medida : this.medida);
+        return construirDto(prueba, trayectoria, simplificacion);
+    }
+
+    /**
+     * Lo mismo que {@link #obtener}, codificado con {@link TrayectoriaComprimida}: los puntos pasan de las columnas del
+     * historial al codificador sin armar un DTO por punto.
+     */
+    public byte[] obtenerComprimida(Integer idPrueba, Double toleranciaMetros, SimplificadorTrayectoria.Medida medida) {
+        Prueba prueba = buscarPrueba(idPrueba);
+        Trayectoria trayectoria = historialPosiciones.buscarTrayectoria(prueba.getVehiculo().getId(),
+                prueba.getFechaHoraInicio().getTime(), finDe(prueba));
+        int[] indices = SimplificadorTrayectoria.simplificar(trayectoria,
+                toleranciaMetros != null ? toleranciaMetros : this.toleranciaMetros, medida != null ? medida : this.medida);
+        return TrayectoriaComprimida.codificar(trayectoria, indices);
+    }
+
+    /**
+     * Borra de Posiciones los puntos de la prueba que no cambian su recorrido más que la tolerancia configurada.
+     * Solo para pruebas finalizadas: a una prueba en curso le siguen llegando posiciones.
+     * Trabaja sobre la tabla Posiciones (necesita los ids); el almacén columnar, si está habilitado, no se modifica.
+     * @return el recorrido que quedó guardado.
+     */
+    @Transactional
+    public TrayectoriaDto compactar(Integer idPrueba) {
+        Prueba prueba = buscarPrueba(idPrueba);
+        if (prueba.getFechaHoraFin() == null) {
+            throw new IllegalArgumentException("La prueba " + idPrueba + " está en curso: solo se compactan pruebas finalizadas.");
+        }
+        List<Posicion> posiciones = leerPosiciones(prueba);
+        Trayectoria trayectoria = Trayectoria.de(posiciones);
+        Simplificacion simplificacion = SimplificadorTrayectoria.simplificarConCotaDeDistancia(trayectoria, toleranciaMetros, medida, maxErrorDistancia);
+
+        List<Integer> aBorrar = new ArrayList<>(posiciones.size() - simplificacion.conservados());
+        int[] conservados = simplificacion.indices();
+        int siguiente = 0;
+        for (int i = 0; i < posiciones.size(); i++) {
+            if (siguiente < conservados.length && conservados[siguiente] == i) {
+                siguiente++;
+            } else {
+                aBorrar.add(posiciones.get(i).getId());
+            }
+        }
+        int borradas = posicionRepository.eliminarEnLote(aBorrar);
+        System.out.println("Trayectoria de la prueba " + idPrueba + " compactada: " + posiciones.size() + " -> " + simplificacion.conservados()
+                + " posiciones (" + borradas + " borradas, tolerancia " + simplificacion.toleranciaMetros() + " m, error de distancia "
+                + String.format("%.4f", simplificacion.errorDistancia()) + ").");
+        return construirDto(prueba, trayectoria, simplificacion);
+    }
+
+    private Prueba buscarPrueba(Integer idPrueba) {
+        return pruebaRepository.findById(idPrueba)
+                .orElseThrow(() -> new IllegalArgumentException("Prueba no encontrada"));
+    }
+
+    // Las mismas posiciones que usa el reporte de kilometraje: las del vehículo entre el inicio y el fin de la prueba.
+    private List<Posicion> leerPosiciones(Prueba prueba) {
+        return posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(
+                prueba.getVehiculo().getId(), prueba.getFechaHoraInicio().getTime(), finDe(prueba));
+    }
+
+    private static long finDe(Prueba prueba) {
+        return prueba.getFechaHoraFin() != null ? prueba.getFechaHoraFin().getTime() : System.currentTimeMillis();
+    }
+
+    private static TrayectoriaDto construirDto(Prueba prueba, Trayectoria trayectoria, Simplificacion simplificacion) {
+        List<TrayectoriaDto.Punto> puntos = new ArrayList<>(simplificacion.conservados());
+        for (int i : simplificacion.indices()) {
+            puntos.add(new TrayectoriaDto.Punto(trayectoria.getTiempo(i), trayectoria.getLatitud(i), trayectoria.getLongitud(i)));
+        }
+        return new TrayectoriaDto(prueba.getId(), prueba.getVehiculo().getId(), trayectoria.size(), simplificacion.toleranciaMetros(),
+                simplificacion.distanciaOriginalKm(), simplificacion.distanciaSimplificadaKm(), puntos);
+    }
+}
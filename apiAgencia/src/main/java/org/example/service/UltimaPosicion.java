@@ -0,0 +1,7 @@
+package org.example.service;
+
+/**
+ * La última posición aceptada de un vehículo, tal como la guarda {@link UltimasPosiciones}.
+ */
+public record UltimaPosicion(Integer idVehiculo, String patente, long fechaHora, double latitud, double longitud) {
+}
@@ -0,0 +1,190 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.models.Posicion;
+import org.example.repositories.PosicionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Última posición conocida de cada vehículo, en memoria. La actualiza VehiculoService con cada posición aceptada
+ * (HTTP, WebSocket, lote o Kafka), así que "¿dónde está el vehículo X?" se responde sin recorrer Posiciones.
+ *
+ * Para no perderla al reiniciar se guarda cada {@code foto-ms} (y al apagar) una foto binaria en {@code archivo}:
+ * una marca, la versión, la cantidad y después id, fecha, latitud, longitud y patente de cada vehículo. Al arrancar
+ * se carga esa foto y encima la última posición en la base de cada vehículo con una prueba en curso, en una sola
+ * consulta: la foto puede tener hasta {@code foto-ms} de atraso (o faltar, en el primer arranque o con
+ * {@code archivo} vacío), y las posiciones guardadas después no deben perderse.
+ */
+@Service
+public class UltimasPosiciones {
+
+    private static final int MARCA = 0x55504F53; // "UPOS"
+    private static final byte VERSION = 1;
+
+    private final PosicionRepository posicionRepository;
+    private final RegistroPruebasActivas registroPruebasActivas;
+    private final Map<Integer, UltimaPosicion> porVehiculo = new ConcurrentHashMap<>();
+
+    // Vacío: no se guarda foto y al arrancar siempre se carga desde la base.
+    @Value("${agencia.posiciones.ultimas.archivo:ultimas-posiciones.bin}")
+    private String archivo = "";
+
+    // Si no llegó ninguna posición desde la última foto no hace falta escribir otra.
+    private volatile boolean cambios;
+
+    @Autowired
+    public UltimasPosiciones(PosicionRepository posicionRepository, RegistroPruebasActivas registroPruebasActivas) {
+        this.posicionRepository = posicionRepository;
+        this.registroPruebasActivas = registroPruebasActivas;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        Path foto = archivoFoto();
+        if (foto != null && Files.exists(foto)) {
+            try {
+                leerFoto(foto).forEach(this::actualizar);
+                System.out.println("UltimasPosiciones: " + porVehiculo.size() + " vehículos cargados de " + foto + ".");
+            } catch (IOException e) {
+                System.err.println("UltimasPosiciones: no se pudo leer " + foto + " (" + e.getMessage() + "), se carga desde la base.");
+            }
+        }
+        // Sólo pisa lo de la foto si es más nuevo (ver actualizar).
+        List<Posicion> deLaBase = posicionRepository.findUltimasDeVehiculosEnPrueba();
+        deLaBase.forEach(this::actualizar);
+        System.out.println("UltimasPosiciones: " + deLaBase.size() + " vehículos en prueba leídos de la base.");
+    }
+
+    /**
+     * Registra la posición si es la más reciente del vehículo. Con la misma fecha (posiciones de un mismo lote)
+     * gana la última que llega, que es la última del lote.
+     */
+    public void actualizar(Posicion posicion) {
+        actualizar(new UltimaPosicion(posicion.getVehiculo().getId(), posicion.getVehiculo().getPatente(),
+                posicion.getFechaHora(), posicion.getLatitud(), posicion.getLongitud()));
+    }
+
+    void actualizar(UltimaPosicion nueva) {
+        porVehiculo.merge(nueva.idVehiculo(), nueva, (actual, recibida) -> recibida.fechaHora() >= actual.fechaHora() ? recibida : actual);
+        cambios = true;
+    }
+
+    /**
+     * @return la última posición del vehículo, o null si no se conoce ninguna.
+     */
+    public UltimaPosicion buscar(Integer idVehiculo) {
+        return porVehiculo.get(idVehiculo);
+    }
+
+    /**
+     * @return la última posición de cada vehículo con una prueba en curso (los que todavía no mandaron ninguna no aparecen).
+     */
+    public List<UltimaPosicion> deVehiculosEnPrueba() {
+        List<UltimaPosicion> actuales = new ArrayList<>();
+        for (PruebaActiva prueba : registroPruebasActivas.getPruebasActivas()) {
+            UltimaPosicion ultima = porVehiculo.get(prueba.getIdVehiculo());
+            if (ultima != null) {
+                actuales.add(ultima);
+            }
+        }
+        return actuales;
+    }
+
+    @Scheduled(fixedDelayString = "${agencia.posiciones.ultimas.foto-ms:30000}",
+            initialDelayString = "${agencia.posiciones.ultimas.foto-ms:30000}")
+    public void guardarFoto() {
+        Path foto = archivoFoto();
+        if (foto == null || !cambios) {
+            return;
+        }
+        cambios = false;
+        try {
+            escribirFoto(foto, porVehiculo.values());
+        } catch (IOException e) {
+            cambios = true;
+            System.err.println("UltimasPosiciones: no se pudo guardar la foto en " + foto + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        guardarFoto();
+    }
+
+    private Path archivoFoto() {
+        return archivo == null || archivo.isBlank() ? null : Path.of(archivo);
+    }
+
+    /**
+     * Escribe la foto en un archivo temporal y lo renombra, así un corte a mitad de camino no deja una foto rota.
+     */
+    static void escribirFoto(Path destino, Collection<UltimaPosicion> posiciones) throws IOException {
+        Path directorio = destino.toAbsolutePath().getParent();
+        Path temporal = Files.createTempFile(directorio, destino.getFileName().toString(), ".tmp");
+        try {
+            List<UltimaPosicion> copia = List.copyOf(posiciones);
+            try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+                salida.writeInt(MARCA);
+                salida.writeByte(VERSION);
+                salida.writeInt(copia.size());
+                for (UltimaPosicion posicion : copia) {
+                    salida.writeInt(posicion.idVehiculo());
+                    salida.writeLong(posicion.fechaHora());
+                    salida.writeDouble(posicion.latitud());
+                    salida.writeDouble(posicion.longitud());
+                    salida.writeUTF(posicion.patente() != null ? posicion.patente() : "");
+                }
+            }
+            try {
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    static List<UltimaPosicion> leerFoto(Path origen) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(origen)))) {
+            if (entrada.readInt() != MARCA) {
+                throw new IOException("el archivo no es una foto de últimas posiciones");
+            }
+            byte version = entrada.readByte();
+            if (version != VERSION) {
+                throw new IOException("versión " + version + " de la foto no soportada");
+            }
+            int cantidad = entrada.readInt();
+            List<UltimaPosicion> posiciones = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                int idVehiculo = entrada.readInt();
+                long fechaHora = entrada.readLong();
+                double latitud = entrada.readDouble();
+                double longitud = entrada.readDouble();
+                String patente = entrada.readUTF();
+                posiciones.add(new UltimaPosicion(idVehiculo, patente.isEmpty() ? null : patente, fechaHora, latitud, longitud));
+            }
+            return posiciones;
+        }
+    }
+}
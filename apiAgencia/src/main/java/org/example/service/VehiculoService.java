@@ -1,40 +1,82 @@
 package org.example.service;
 
 import org.example.dtos.PosicionDto;
+import org.example.dtos.ResultadoPosicionDto;
 import org.example.dtos.externos.RestriccionesDto;
 import org.example.models.Posicion;
-import org.example.models.Prueba;
 import org.example.models.Vehiculo;
+import org.example.repositories.HistorialPosiciones;
 import org.example.repositories.PosicionRepository;
 import org.example.repositories.PruebaRepository;
 import org.example.repositories.VehiculoRepository;
+import org.example.service.geocerca.GeocercaCompilada;
+import org.example.service.geocerca.VeredictoGeocerca;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono; // Importamos Mono
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Service
 public class VehiculoService {
     private final ExternalApisService externalApisService;
+    private final RestriccionesService restriccionesService;
     private final VehiculoRepository vehiculoRepository;
     private final PruebaRepository pruebaRepository;
     private final PosicionRepository posicionRepository;
-    private final KafkaProducer kafkaProducer;
+    private final EscritorPosiciones escritorPosiciones;
+    private final RegistroPruebasActivas registroPruebasActivas;
+    // Todo lo que puede bloquear (JPA/JDBC, esperar lugar en la cola del escritor) corre acá, nunca en el hilo que entregó las restricciones.
+    private final Scheduler schedulerBaseDeDatos;
+    private final MetricasEtapas metricasEtapas;
+    private final AlertasVehiculos alertasVehiculos;
+    private final UltimasPosiciones ultimasPosiciones;
+    private final TransmisionPosiciones transmisionPosiciones;
+    // Copia de las posiciones para leer recorridos (no hace nada si el almacén columnar no está habilitado).
+    private final HistorialPosiciones historialPosiciones;
+    private final OdometroPruebas odometroPruebas;
+
+    @Value("${agencia.posiciones.lote.max-tamanio:1000}")
+    private int maxTamanioLote = 1000;
+
+    // Por vehículo, las posiciones encoladas en el escritor que todavía no pasaron por el historial y el odómetro.
+    private final Map<Integer, CompletableFuture<Void>> pendientesPorVehiculo = new ConcurrentHashMap<>();
+
+    @Value("${agencia.pruebas.finalizar.espera-posiciones-ms:5000}")
+    private long esperaPosicionesPendientesMs = 5000;
 
     @Autowired
-    public VehiculoService(ExternalApisService externalApisService, VehiculoRepository vehiculoRepository, PruebaRepository pruebaRepository, PosicionRepository posicionRepository, KafkaProducer kafkaProducer) {
+    public VehiculoService(ExternalApisService externalApisService, RestriccionesService restriccionesService, VehiculoRepository vehiculoRepository, PruebaRepository pruebaRepository, PosicionRepository posicionRepository, EscritorPosiciones escritorPosiciones, RegistroPruebasActivas registroPruebasActivas, @Qualifier("schedulerBaseDeDatos") Scheduler schedulerBaseDeDatos, MetricasEtapas metricasEtapas, AlertasVehiculos alertasVehiculos, UltimasPosiciones ultimasPosiciones, TransmisionPosiciones transmisionPosiciones, HistorialPosiciones historialPosiciones, OdometroPruebas odometroPruebas) {
         this.externalApisService = externalApisService;
+        this.restriccionesService = restriccionesService;
         this.vehiculoRepository = vehiculoRepository;
         this.pruebaRepository = pruebaRepository;
         this.posicionRepository = posicionRepository;
-        this.kafkaProducer = kafkaProducer;
+        this.escritorPosiciones = escritorPosiciones;
+        this.registroPruebasActivas = registroPruebasActivas;
+        this.schedulerBaseDeDatos = schedulerBaseDeDatos;
+        this.metricasEtapas = metricasEtapas;
+        this.alertasVehiculos = alertasVehiculos;
+        this.ultimasPosiciones = ultimasPosiciones;
+        this.transmisionPosiciones = transmisionPosiciones;
+        this.historialPosiciones = historialPosiciones;
+        this.odometroPruebas = odometroPruebas;
     }
 
-    // PARA EL CALCULO DE DISTANCIA
-    private static final double RADIO_TERRESTRE_METROS = 6371000; // Radio promedio de la Tierra en metros
-
-
     /**
      * Endpoint de prueba para obtener las restricciones actuales directamente
      * desde el servicio externo.
@@ -48,63 +90,235 @@ public class VehiculoService {
 
     // 1. Recibe un PosicionDto con los datos de entrada y devuelve un Mono<PosicionDto>. Esto significa: "Te prometo que en el futuro te daré un PosicionDto con el resultado del procesamiento".
     public Mono<PosicionDto> procesarPosicion(PosicionDto posicionDto){
+        return procesarPosicion(posicionDto, escritorPosiciones.getDurabilidadPorDefecto());
+    }
+
+    /**
+     * Igual que {@link #procesarPosicion(PosicionDto)} pero eligiendo la durabilidad: con ASINCRONA se responde
+     * apenas se conoce el veredicto de la geocerca (la posición vuelve sin id), con SINCRONA se espera al commit.
+     */
+    public Mono<PosicionDto> procesarPosicion(PosicionDto posicionDto, EscritorPosiciones.Durabilidad durabilidad){
+
+        // 2. Etapa "restricciones" (no bloqueante): se leen de la foto en memoria que mantiene RestriccionesService (se refresca en segundo plano),
+        // así que en el caso normal no hay ninguna llamada HTTP en este camino. Solo la primera posición tras arrancar espera al servicio externo,
+        // y en ese caso lo que sigue arrancaría en un hilo del event loop de WebClient: por eso las etapas bloqueantes cambian de scheduler.
+        Mono<RestriccionesSnapshot> restricciones = restriccionesService.obtenerSnapshot()
+                .switchIfEmpty(Mono.error(new IllegalStateException("No se pudieron obtener las restricciones desde el servicio externo."))); // Manejo de error si el Mono viene vacío.
 
-        // 2. Se llama al servicio externo de forma no-bloqueante. La ejecución no se detiene a esperar. En su lugar, se obtiene un Mono que contendrá las restricciones cuando lleguen.
-        return externalApisService.getRestricciones()
-                .switchIfEmpty(Mono.error(new IllegalStateException("No se pudieron obtener las restricciones desde el servicio externo."))) // Manejo de error si el Mono viene vacío.
-                .flatMap(restricciones -> {
-                    //    Este bloque solo se ejecuta cuando el objeto 'restricciones' está disponible.
+        return metricasEtapas.medir("restricciones", restricciones)
+                .flatMap(snapshot -> metricasEtapas.medir("persistencia", guardarPosicion(posicionDto, durabilidad)).flatMap(posicionGuardada -> {
+                    //    Este bloque solo se ejecuta cuando la foto de restricciones está disponible.
 
-                    // 3. Aquí se guarda la posición en la base de datos de forma reactiva.
-                    Posicion posicionGuardada = guardarPosicion(posicionDto);
+                    // 3. Etapa "persistencia": la posición ya se validó y se encoló en el escritor (ver guardarPosicion).
 
                     // 4. Se construye la respuesta a partir del PosicionDto original y el objeto guardado.
                     // Toma los datos de la posición recién guardada (como su nuevo ID) y enriquece el DTO para repuesta.
                     PosicionDto posicionRespuesta = construirPosicionRespuesta(posicionDto, posicionGuardada);
+                    ultimasPosiciones.actualizar(posicionGuardada);
 
 
-                    /* Se verifica el radio antes que las zonas restringidas ya que si se encuentra alejado no seria necesario
-                    verificar las zonas restringidas y verificar el radio es un calculo mas sencillo y eficiente que verificar
-                    todas las zonas restringidas que se deben reccorer con un loop.
+                    /* La geocerca compilada verifica el radio antes que las zonas restringidas ya que si se encuentra alejado
+                    no seria necesario verificar las zonas restringidas. Ambas verificaciones descartan o confirman la mayoria
+                    de los puntos con comparaciones baratas y solo calculan Haversine cerca del borde.
                         */
+                    long inicioGeocerca = System.nanoTime();
+                    VeredictoGeocerca veredicto = evaluarGeocerca(posicionRespuesta, snapshot);
+                    metricasEtapas.registrar("geocerca", System.nanoTime() - inicioGeocerca, false);
+                    posicionRespuesta.setMensaje(veredicto.getMensaje());
+                    transmisionPosiciones.publicar(posicionGuardada, veredicto);
+
+                    // Las alertas salen solo cuando el vehículo cambia de estado (ver AlertasVehiculos), no en cada posición.
+                    List<AlertaVehiculo> alertas = alertasVehiculos.registrar(posicionRespuesta, snapshot.getGeocerca(), veredicto);
+
+                    if (!veredicto.esIncidente()){
+                        // Si volvió de un incidente la alerta es una SALIDA, que no se envía a Kafka.
+                        alertasVehiculos.publicar(alertas).subscribe();
+                        // 4. DEVOLUCIÓN REACTIVA: Devolvemos el resultado final envuelto en un Mono.
+                        return Mono.just(posicionRespuesta);
+                    }
+
+                    // 5. Etapa "incidente": se marca la prueba en el scheduler de base de datos y se responde cuando terminó.
+                    // Las alertas se envían a Kafka desde ese mismo hilo; con SINCRONA la respuesta espera también la confirmación del broker.
+                    Mono<Void> marcarIncidente = Mono.<Void>fromRunnable(() -> marcarIncidenteEnPruebaActiva(posicionRespuesta.getVehiculo().getId()))
+                            .subscribeOn(schedulerBaseDeDatos);
+                    Mono<Void> notificar = alertasVehiculos.publicar(alertas);
+                    if (durabilidad == EscritorPosiciones.Durabilidad.SINCRONA) {
+                        return metricasEtapas.medir("incidente", marcarIncidente)
+                                .then(notificar)
+                                .thenReturn(posicionRespuesta);
+                    }
+                    return metricasEtapas.medir("incidente", marcarIncidente)
+                            .doOnSuccess(v -> notificar.subscribe())
+                            .thenReturn(posicionRespuesta);
+                }));
+    }
+
+    /**
+     * Procesa un lote de posiciones (de uno o varios vehículos) de una sola vez: valida cada vehículo una
+     * única vez, evalúa la geocerca de todas las posiciones contra la misma foto de restricciones e inserta
+     * todas las filas en una transacción con batches de JDBC.
+     *
+     * Una posición inválida no hace fallar el lote: se informa como RECHAZADA en su resultado.
+     * @return un resultado por posición, en el mismo orden en que llegaron.
+     */
+    public Mono<List<ResultadoPosicionDto>> procesarLotePosiciones(List<PosicionDto> posiciones) {
+        if (posiciones == null || posiciones.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("El lote de posiciones está vacío."));
+        }
+        if (posiciones.size() > maxTamanioLote) {
+            return Mono.error(new IllegalArgumentException("El lote supera el máximo de " + maxTamanioLote + " posiciones."));
+        }
+        return restriccionesService.obtenerSnapshot()
+                .switchIfEmpty(Mono.error(new IllegalStateException("No se pudieron obtener las restricciones desde el servicio externo.")))
+                .flatMap(snapshot -> metricasEtapas.medir("lote",
+                        Mono.fromCallable(() -> procesarLote(posiciones, snapshot.getGeocerca())).subscribeOn(schedulerBaseDeDatos)));
+    }
 
+    private List<ResultadoPosicionDto> procesarLote(List<PosicionDto> posiciones, GeocercaCompilada geocerca) {
+        // 1. Validamos cada vehículo del lote una sola vez contra el registro de pruebas en curso.
+        // Solo se consulta la base por los vehículos que no están en el registro.
+        Set<Integer> idsVehiculos = posiciones.stream()
+                .filter(VehiculoService::tieneDatosCompletos)
+                .map(p -> p.getVehiculo().getId())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Integer, PruebaActiva> enPrueba = registroPruebasActivas.buscarPorVehiculos(idsVehiculos);
+        Set<Integer> sinPrueba = idsVehiculos.stream().filter(id -> !enPrueba.containsKey(id)).collect(Collectors.toSet());
+        // Para rechazar con el mensaje correcto hay que saber cuáles de los vehículos sin prueba existen.
+        Set<Integer> existentesSinPrueba = sinPrueba.isEmpty() ? Set.of()
+                : vehiculoRepository.findAllById(sinPrueba).stream().map(Vehiculo::getId).collect(Collectors.toSet());
+
+        // 2. Evaluamos la geocerca de cada posición válida.
+        long ahora = System.currentTimeMillis();
+        // Las posiciones sin fecha del cliente toman la hora de llegada, un milisegundo más por cada una anterior del
+        // mismo vehículo en el lote: así conservan el orden en que llegaron (trayectorias, retención, odómetro).
+        Map<Integer, Integer> sinFechaPorVehiculo = new HashMap<>();
+        List<ResultadoPosicionDto> resultados = new ArrayList<>(posiciones.size());
+        List<Posicion> aGuardar = new ArrayList<>(posiciones.size());
+        List<VeredictoGeocerca> veredictos = new ArrayList<>(posiciones.size());
+        List<PosicionDto> aceptadas = new ArrayList<>(posiciones.size());
+        Set<Integer> conIncidente = new LinkedHashSet<>();
+        for (int i = 0; i < posiciones.size(); i++) {
+            PosicionDto dto = posiciones.get(i);
+            if (!tieneDatosCompletos(dto)) {
+                resultados.add(rechazada(i, dto, "La posición no indica el vehículo o sus coordenadas."));
+                continue;
+            }
+            PruebaActiva prueba = enPrueba.get(dto.getVehiculo().getId());
+            if (prueba == null) {
+                resultados.add(rechazada(i, dto, existentesSinPrueba.contains(dto.getVehiculo().getId())
+                        ? "El vehículo no esta siendo probado en este momento. Inicia una prueba para registrar la posicion."
+                        : "Vehículo no encontrado"));
+                continue;
+            }
+            Vehiculo vehiculo = prueba.referenciaVehiculo();
+
+            VeredictoGeocerca veredicto = geocerca.evaluar(dto.getCoordenadas().getLat(), dto.getCoordenadas().getLon());
+            long fechaHora = dto.getFechaHora() != null ? dto.getFechaHora()
+                    : ahora + sinFechaPorVehiculo.merge(vehiculo.getId(), 1, Integer::sum) - 1;
+            aGuardar.add(new Posicion(null, vehiculo, fechaHora, dto.getCoordenadas().getLat(), dto.getCoordenadas().getLon()));
+            veredictos.add(veredicto);
+            resultados.add(new ResultadoPosicionDto(i, vehiculo.getId(), vehiculo.getPatente(), estadoDe(veredicto), veredicto.getMensaje()));
+            dto.getVehiculo().setPatente(vehiculo.getPatente());
+            dto.getVehiculo().setIdModelo(vehiculo.getModelo().getId());
+            dto.setMensaje(veredicto.getMensaje());
+            aceptadas.add(dto);
+            if (veredicto.esIncidente()) {
+                conIncidente.add(vehiculo.getId());
+            }
+        }
 
-                    if (estaPosicionFueraRadioAdmitido(posicionRespuesta, restricciones)){
-                        posicionRespuesta.setMensaje("La posicion actual del vehiculo se encuentra por fuera del radio permitido por la agencia.");
+        // 3. Todas las filas en una sola transacción.
+        posicionRepository.insertarEnLote(aGuardar);
+        // El estado de alertas avanza recién con el lote guardado: si el insert falla y el cliente reintenta, los cambios
+        // de estado se vuelven a ver y sus alertas se publican. Las de un mismo vehículo, en el orden del lote.
+        List<AlertaVehiculo> alertas = new ArrayList<>();
+        for (int i = 0; i < aceptadas.size(); i++) {
+            alertas.addAll(alertasVehiculos.registrar(aceptadas.get(i), geocerca, veredictos.get(i)));
+        }
+        historialPosiciones.registrar(aGuardar);
+        odometroPruebas.registrar(aGuardar);
+        aGuardar.forEach(ultimasPosiciones::actualizar);
+        for (int i = 0; i < aGuardar.size(); i++) {
+            transmisionPosiciones.publicar(aGuardar.get(i), veredictos.get(i));
+        }
 
-                        marcarIncidenteEnPruebaActiva(posicionRespuesta.getVehiculo().getId());
+        // 4. Cada prueba se marca una sola vez aunque el vehículo tenga varias posiciones con incidente en el lote.
+        conIncidente.forEach(this::marcarIncidenteEnPruebaActiva);
 
-                        //KAFKA ASINCRONO,
-                        //permite que siga funcionando sin depedner de que reciba la notificacion el cliente
-                        // en especial agregue esto porque no esta el kafka cliente
-                        //Hacemos que el envío a Kafka no bloquee.
-                        Mono.fromRunnable(() -> kafkaProducer.enviarMensajeRadioExcedido(posicionRespuesta))
-                                .subscribeOn(Schedulers.boundedElastic()) // Ejecuta esto en otro hilo
-                                .subscribe(); // Inicia la operación "dispara y olvida"
-                        return Mono.just(posicionRespuesta); // Devolvemos la respuesta envuelta en un Mono
-                    }
+        // 5. Las alertas (solo los cambios de estado) se envían en orden desde este hilo y no se esperan las confirmaciones:
+        // el productor las junta en lotes y los errores se informan en AlertasVehiculos.
+        alertasVehiculos.publicar(alertas).subscribe();
+        return resultados;
+    }
 
-                    if (estaEnZonaRestringida(posicionRespuesta, restricciones)){
-                        posicionRespuesta.setMensaje("La posicion actual del vehiculo se encuentra dentro de un area restringida.");
-                        marcarIncidenteEnPruebaActiva(posicionRespuesta.getVehiculo().getId());
-                        Mono.fromRunnable(() -> kafkaProducer.enviarMensajeZonaPeligrosa(posicionRespuesta))
-                                .subscribeOn(Schedulers.boundedElastic())
-                                .subscribe();
-                        return Mono.just(posicionRespuesta);
-                    }
+    private static boolean tieneDatosCompletos(PosicionDto dto) {
+        return dto != null && dto.getVehiculo() != null && dto.getVehiculo().getId() != null && dto.getCoordenadas() != null;
+    }
 
-                    posicionRespuesta.setMensaje("La posicion actual del vehiculo fue registrada.");
+    private static ResultadoPosicionDto rechazada(int indice, PosicionDto dto, String motivo) {
+        Integer idVehiculo = dto != null && dto.getVehiculo() != null ? dto.getVehiculo().getId() : null;
+        return new ResultadoPosicionDto(indice, idVehiculo, null, ResultadoPosicionDto.Estado.RECHAZADA, motivo);
+    }
 
-                    // 4. DEVOLUCIÓN REACTIVA: Devolvemos el resultado final envuelto en un Mono.
-                    return Mono.just(posicionRespuesta);
-                });
+    private static ResultadoPosicionDto.Estado estadoDe(VeredictoGeocerca veredicto) {
+        return switch (veredicto) {
+            case DENTRO -> ResultadoPosicionDto.Estado.REGISTRADA;
+            case FUERA_DE_RADIO -> ResultadoPosicionDto.Estado.FUERA_DE_RADIO;
+            case EN_ZONA_RESTRINGIDA -> ResultadoPosicionDto.Estado.EN_ZONA_RESTRINGIDA;
+        };
     }
 
-    // 3. Este metod guarda la posición en la base de datos y devuelve el objeto guardado.
-    //Orquesta la validación y el guardado.
-    private Posicion guardarPosicion(PosicionDto posicionDto) {
-        Posicion nuevaPosicion = this.buildPosicionFromDto(posicionDto);
-        return posicionRepository.save(nuevaPosicion);
+    // 3. Este metod valida la posición y la encola en el escritor de posiciones, que la guarda junto con otras en un solo commit.
+    //Orquesta la validación y el guardado. La validación puede consultar la base y encolar puede esperar lugar en la cola,
+    //así que corre en el scheduler de base de datos. Con durabilidad SINCRONA el Mono emite recién después del commit (con el id asignado).
+    //El future del escritor se completa en su único hilo: lo que sigue (historial, odómetro y el resto de la cadena) vuelve al
+    //scheduler de base de datos para no demorar el commit del grupo siguiente.
+    private Mono<Posicion> guardarPosicion(PosicionDto posicionDto, EscritorPosiciones.Durabilidad durabilidad) {
+        return Mono.fromCallable(() -> {
+                    Posicion nuevaPosicion = this.buildPosicionFromDto(posicionDto);
+                    CompletableFuture<Posicion> escritura = escritorPosiciones.encolar(nuevaPosicion);
+                    // Al historial y al odómetro recién cuando la posición está en la base, con cualquier durabilidad.
+                    CompletableFuture<Void> registrada = escritura.thenAcceptAsync(guardada -> {
+                        historialPosiciones.registrar(List.of(guardada));
+                        odometroPruebas.registrar(List.of(guardada));
+                    }, schedulerBaseDeDatos::schedule);
+                    agregarPendiente(nuevaPosicion.getVehiculo().getId(), registrada);
+                    return durabilidad == EscritorPosiciones.Durabilidad.SINCRONA ? escritura : CompletableFuture.completedFuture(nuevaPosicion);
+                })
+                .subscribeOn(schedulerBaseDeDatos)
+                .flatMap(Mono::fromFuture)
+                .publishOn(schedulerBaseDeDatos);
+    }
+
+    /**
+     * Espera a que las posiciones del vehículo que ya se aceptaron (con durabilidad ASINCRONA pueden seguir en la cola
+     * del escritor) estén guardadas y sumadas al historial y al odómetro. Las que fallan no cuentan: no están en la base.
+     * @return false si pasó {@code espera-posiciones-ms} y todavía quedan pendientes.
+     */
+    public boolean esperarPosicionesPendientes(Integer idVehiculo) {
+        CompletableFuture<Void> pendientes = pendientesPorVehiculo.get(idVehiculo);
+        if (pendientes == null) {
+            return true;
+        }
+        try {
+            pendientes.get(esperaPosicionesPendientesMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // Alguna no se pudo guardar; las demás ya terminaron.
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    // Se encadena con las anteriores del vehículo: el historial y el odómetro corren en varios hilos y pueden terminar
+    // en otro orden. La entrada se quita cuando terminan todas.
+    private void agregarPendiente(Integer idVehiculo, CompletableFuture<Void> registrada) {
+        CompletableFuture<Void> pendientes = pendientesPorVehiculo.merge(idVehiculo, registrada,
+                (anteriores, nueva) -> CompletableFuture.allOf(anteriores, nueva));
+        pendientes.whenComplete((r, e) -> pendientesPorVehiculo.remove(idVehiculo, pendientes));
     }
 
     // Convierte el objeto de transferencia de datos (PosicionDto) en una entidad de base de datos (Posicion), realizando la validación del vehículo en el proceso.
@@ -114,15 +328,18 @@ public class VehiculoService {
         posicion.setVehiculo(vehiculo);
         posicion.setLatitud(posicionDto.getCoordenadas().getLat());
         posicion.setLongitud(posicionDto.getCoordenadas().getLon());
-        posicion.setFechaHora(System.currentTimeMillis());
+        posicion.setFechaHora(posicionDto.getFechaHora() != null ? posicionDto.getFechaHora() : System.currentTimeMillis());
         return posicion;
     }
-    //Una regla de negocio crucial. Usa los repositorios para asegurar que la posición que se está registrando pertenece a un vehículo real que está actualmente en una prueba de manejo.
+    //Una regla de negocio crucial. Asegura que la posición que se está registrando pertenece a un vehículo real que está actualmente en una prueba de manejo.
+    //Se resuelve con el registro en memoria de pruebas en curso; la base solo se consulta cuando el vehículo no está en el registro.
     private Vehiculo validarVehhiculoEnPrueba(Integer idVehiculo){
-        Vehiculo vehiculo = vehiculoRepository.findById(idVehiculo)
-                .orElseThrow(() -> new IllegalArgumentException("Vehículo no encontrado"));
-        if (pruebaRepository.existePruebaActiva(idVehiculo)) {
-            return vehiculo;
+        PruebaActiva prueba = registroPruebasActivas.buscarPorVehiculo(idVehiculo);
+        if (prueba != null) {
+            return prueba.referenciaVehiculo();
+        }
+        if (!vehiculoRepository.existsById(idVehiculo)) {
+            throw new IllegalArgumentException("Vehículo no encontrado");
         }
         throw new IllegalArgumentException("El vehículo no esta siendo probado en este momento. Inicia una prueba para registrar la posicion.");
     }
@@ -137,66 +354,23 @@ public class VehiculoService {
     }
 
     /**
-     * Verifica si la posición del vehículo está fuera del radio admitido por la agencia.
-     * Utiliza el nuevo metodo de cálculo de distancia basado en Haversine.
+     * Evalúa la posición contra la geocerca compilada de la foto de restricciones: primero el radio admitido
+     * por la agencia y después el índice de zonas peligrosas. El resultado es el mismo que comparar la distancia
+     * de Haversine contra cada radio.
      *
      * @param posicion La posición del vehículo a verificar.
-     * @param restricciones Las restricciones de la agencia que incluyen ubicación y radio máximo.
-     * @return true si la posición está fuera del radio admitido, false en caso contrario.
-     */
-    private boolean estaPosicionFueraRadioAdmitido(PosicionDto posicion, RestriccionesDto restricciones) {
-        double latAgencia = restricciones.getUbicacionAgencia().getLatitud();
-        double lonAgencia = restricciones.getUbicacionAgencia().getLongitud();
-        double latVehiculo = posicion.getCoordenadas().getLat();
-        double lonVehiculo = posicion.getCoordenadas().getLon();
-
-        double distanciaEnMetros = calcularDistanciaHaversine(latVehiculo, lonVehiculo, latAgencia, lonAgencia);
-
-        // Ahora la comparación es correcta: metros vs metros.
-        return distanciaEnMetros > restricciones.getRadioMaximoMetros();
-    }
-
-    private boolean estaEnZonaRestringida(PosicionDto posicion, RestriccionesDto restricciones) {
-        return restricciones.getZonasPeligrosas().stream().anyMatch(zona -> {
-            double latVehiculo = posicion.getCoordenadas().getLat();
-            double lonVehiculo = posicion.getCoordenadas().getLon();
-
-            double latCentroZona = zona.getCoordenadas().getLatitud();
-            double lonCentroZona = zona.getCoordenadas().getLongitud();
-
-            double distanciaAlCentroEnMetros = calcularDistanciaHaversine(latVehiculo, lonVehiculo, latCentroZona, lonCentroZona);
-
-            // La comparación vuelve a ser correcta: metros vs metros.
-            return distanciaAlCentroEnMetros <= zona.getRadioMetros();
-        });
-    }
-
-
-    /**
-     * Calcula la distancia en metros entre dos puntos geográficos usando la fórmula de Haversine.
+     * @param snapshot La foto de restricciones vigente.
+     * @return el veredicto con el mensaje para el vehículo.
      */
-    private double calcularDistanciaHaversine(double lat1, double lon1, double lat2, double lon2) {
-        //Calcula las Diferencias: Obtiene las diferencias de latitud y longitud entre los dos puntos.
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-
-        //Convierte Grados a Radianes: Las funciones trigonométricas en Java (sin, cos) trabajan con radianes, no con grados.
-        double lat1Rad = Math.toRadians(lat1);
-        double lat2Rad = Math.toRadians(lat2);
-
-        //Trigonometría Esférica:
-        double a = Math.pow(Math.sin(dLat / 2), 2) +  Math.pow(Math.sin(dLon / 2), 2) * Math.cos(lat1Rad) * Math.cos(lat2Rad);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        //Finalmente, multiplica ese ángulo (en radianes) por el radio de la Tierra. El resultado es la distancia real sobre la superficie en la misma unidad que el radio
-        return RADIO_TERRESTRE_METROS * c;
+    private VeredictoGeocerca evaluarGeocerca(PosicionDto posicion, RestriccionesSnapshot snapshot) {
+        return snapshot.getGeocerca().evaluar(posicion.getCoordenadas().getLat(), posicion.getCoordenadas().getLon());
     }
 
+    // La prueba se toma del registro en memoria y se actualiza en la base solo la primera vez que tiene un incidente.
     private void marcarIncidenteEnPruebaActiva(Integer idVehiculo) {
-        Prueba prueba = pruebaRepository.findPruebaActivaByVehiculoId(idVehiculo);
-        if (prueba != null && (prueba.getIncidente() == null || !prueba.getIncidente())) {
-            prueba.setIncidente(true);
-            pruebaRepository.save(prueba);
+        PruebaActiva prueba = registroPruebasActivas.buscarPorVehiculo(idVehiculo);
+        if (prueba != null) {
+            registroPruebasActivas.marcarIncidente(prueba);
         }
     }
 
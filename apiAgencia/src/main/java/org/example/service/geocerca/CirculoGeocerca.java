@@ -0,0 +1,121 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.ZonaPeligrosaDto;
+
+/**
+ * Un círculo de la geocerca (el radio de la agencia o una zona peligrosa) con sus constantes precalculadas.
+ *
+ * {@link #contiene} da exactamente la misma respuesta que comparar la distancia de Haversine contra el radio,
+ * pero casi nunca la calcula:
+ * <ul>
+ *     <li>Rechaza sin trigonometría si el punto cae fuera del rectángulo envolvente del círculo.</li>
+ *     <li>Acepta con un solo coseno si una cota superior de la distancia (ir por el paralelo y después por el
+ *     meridiano nunca es más corto que el arco máximo) ya queda dentro del radio.</li>
+ *     <li>Solo cerca del borde calcula Haversine exacto.</li>
+ * </ul>
+ * Ambas pruebas usan un margen para que los redondeos nunca contradigan al cálculo exacto.
+ */
+public final class CirculoGeocerca {
+
+    // Margen relativo y absoluto (en radianes, ~6 mm) de las pruebas rápidas.
+    private static final double MARGEN_RELATIVO = 1e-7;
+    private static final double MARGEN_ABSOLUTO_RAD = 1e-9;
+
+    private final double latitud;
+    private final double longitud;
+    private final double radioMetros;
+    private final ZonaPeligrosaDto zona;
+
+    private final double latitudRad;
+    private final double longitudRad;
+    private final double cosLatitud;
+    // Si la diferencia de latitud o de longitud supera estos valores, el punto está seguro afuera.
+    private final double medioAltoRad;
+    private final double medioAnchoRad;
+    // Si la cota superior de la distancia angular es menor que esto, el punto está seguro adentro.
+    private final double radioAngularSeguro;
+
+    public CirculoGeocerca(double latitud, double longitud, double radioMetros, ZonaPeligrosaDto zona) {
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.radioMetros = radioMetros;
+        this.zona = zona;
+        this.latitudRad = Math.toRadians(latitud);
+        this.longitudRad = Math.toRadians(longitud);
+        this.cosLatitud = Math.cos(latitudRad);
+
+        double radioAngular = radioMetros / GeoUtils.RADIO_TERRESTRE_METROS;
+        this.medioAltoRad = radioAngular * (1 + MARGEN_RELATIVO) + MARGEN_ABSOLUTO_RAD;
+        this.medioAnchoRad = calcularMedioAncho(radioAngular);
+        this.radioAngularSeguro = radioAngular * (1 - MARGEN_RELATIVO) - MARGEN_ABSOLUTO_RAD;
+    }
+
+    /**
+     * @return true si la distancia de Haversine entre el punto y el centro es menor o igual al radio.
+     */
+    public boolean contiene(PuntoGeocerca punto) {
+        double dLat = Math.abs(punto.getLatitudRad() - latitudRad);
+        if (dLat > medioAltoRad) {
+            return false;
+        }
+        double dLon = Math.abs(punto.getLongitudRad() - longitudRad);
+        if (dLon > Math.PI) {
+            dLon = 2 * Math.PI - dLon;
+        }
+        if (dLon > medioAnchoRad) {
+            return false;
+        }
+        double cotaSuperior = dLat + dLon * Math.min(cosLatitud, punto.getCosLatitud());
+        if (cotaSuperior < radioAngularSeguro) {
+            return true;
+        }
+        return distanciaMetros(punto) <= radioMetros;
+    }
+
+    /**
+     * Distancia exacta (Haversine) entre el punto y el centro del círculo.
+     */
+    public double distanciaMetros(PuntoGeocerca punto) {
+        return GeoUtils.distanciaHaversineMetros(punto.getLatitud(), punto.getLongitud(), latitud, longitud);
+    }
+
+    // Medio ancho en longitud del rectángulo envolvente: asin(sin(r/R) / cos(lat)), o todo el globo si el círculo toca un polo.
+    private double calcularMedioAncho(double radioAngular) {
+        if (radioAngular >= Math.PI / 2 - Math.abs(latitudRad)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double seno = Math.sin(radioAngular) / cosLatitud;
+        if (seno >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.asin(seno) * (1 + MARGEN_RELATIVO) + MARGEN_ABSOLUTO_RAD;
+    }
+
+    public double getLatitud() {
+        return latitud;
+    }
+
+    public double getLongitud() {
+        return longitud;
+    }
+
+    public double getRadioMetros() {
+        return radioMetros;
+    }
+
+    /**
+     * @return la zona peligrosa que representa este círculo, o null si es el radio de la agencia.
+     */
+    public ZonaPeligrosaDto getZona() {
+        return zona;
+    }
+
+    // Medio alto y medio ancho en grados, para ubicar el círculo en la grilla del índice.
+    double getMedioAltoGrados() {
+        return Math.toDegrees(medioAltoRad);
+    }
+
+    double getMedioAnchoGrados() {
+        return Double.isInfinite(medioAnchoRad) ? 180 : Math.min(180, Math.toDegrees(medioAnchoRad));
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.RestriccionesDto;
+import org.springframework.stereotype.Component;
+
+/**
+ * Punto de entrada a los cálculos de geocerca para el resto de los servicios: prepara las restricciones
+ * para evaluarlas rápido y expone las distancias de Haversine que usan los reportes.
+ */
+@Component
+public class EvaluadorGeocerca {
+
+    public GeocercaCompilada compilar(RestriccionesDto restricciones) {
+        return GeocercaCompilada.de(restricciones);
+    }
+
+    public double distanciaMetros(double lat1, double lon1, double lat2, double lon2) {
+        return GeoUtils.distanciaHaversineMetros(lat1, lon1, lat2, lon2);
+    }
+
+    public double distanciaKm(double lat1, double lon1, double lat2, double lon2) {
+        return GeoUtils.distanciaHaversineKm(lat1, lon1, lat2, lon2);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.service.geocerca;
+
+/**
+ * Cálculos geodésicos compartidos (ver readmeInteresantes/Formula Haversine (geodesicas).md).
+ */
+public final class GeoUtils {
+
+    public static final double RADIO_TERRESTRE_METROS = 6371000; // Radio promedio de la Tierra en metros
+    public static final double RADIO_TERRESTRE_KM = 6371.0;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Calcula la distancia en metros entre dos puntos geográficos usando la fórmula de Haversine.
+     */
+    public static double distanciaHaversineMetros(double lat1, double lon1, double lat2, double lon2) {
+        return RADIO_TERRESTRE_METROS * anguloCentral(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Igual que {@link #distanciaHaversineMetros} pero en kilómetros (la usan los reportes de kilometraje).
+     */
+    public static double distanciaHaversineKm(double lat1, double lon1, double lat2, double lon2) {
+        return RADIO_TERRESTRE_KM * anguloCentral(lat1, lon1, lat2, lon2);
+    }
+
+    // Ángulo (en radianes) que forman los dos puntos vistos desde el centro de la Tierra.
+    private static double anguloCentral(double lat1, double lon1, double lat2, double lon2) {
+        //Calcula las Diferencias: Obtiene las diferencias de latitud y longitud entre los dos puntos.
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+
+        //Convierte Grados a Radianes: Las funciones trigonométricas en Java (sin, cos) trabajan con radianes, no con grados.
+        double lat1Rad = Math.toRadians(lat1);
+        double lat2Rad = Math.toRadians(lat2);
+
+        //Trigonometría Esférica:
+        double a = Math.pow(Math.sin(dLat / 2), 2) +  Math.pow(Math.sin(dLon / 2), 2) * Math.cos(lat1Rad) * Math.cos(lat2Rad);
+
+        //Finalmente, ese ángulo multiplicado por el radio de la Tierra da la distancia real sobre la superficie en la misma unidad que el radio
+        return 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.dtos.externos.UbicacionDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+
+/**
+ * Las restricciones de la agencia ya preparadas para evaluar posiciones: el círculo del radio permitido
+ * y el índice de zonas peligrosas. Se arma una vez por foto de restricciones y es de solo lectura.
+ */
+public final class GeocercaCompilada {
+
+    private final CirculoGeocerca radioAgencia;
+    private final IndiceZonasPeligrosas zonas;
+
+    private GeocercaCompilada(CirculoGeocerca radioAgencia, IndiceZonasPeligrosas zonas) {
+        this.radioAgencia = radioAgencia;
+        this.zonas = zonas;
+    }
+
+    public static GeocercaCompilada de(RestriccionesDto restricciones) {
+        return de(restricciones, new IndiceZonasPeligrosas(restricciones.getZonasPeligrosas()));
+    }
+
+    /**
+     * Igual que {@link #de(RestriccionesDto)} pero reutilizando un índice de zonas ya armado.
+     */
+    public static GeocercaCompilada de(RestriccionesDto restricciones, IndiceZonasPeligrosas zonas) {
+        UbicacionDto ubicacion = restricciones.getUbicacionAgencia();
+        if (ubicacion == null || ubicacion.getLatitud() == null || ubicacion.getLongitud() == null
+                || restricciones.getRadioMaximoMetros() == null) {
+            throw new IllegalStateException("Las restricciones no incluyen la ubicación de la agencia o su radio máximo.");
+        }
+        CirculoGeocerca radio = new CirculoGeocerca(ubicacion.getLatitud(), ubicacion.getLongitud(),
+                restricciones.getRadioMaximoMetros(), null);
+        return new GeocercaCompilada(radio, zonas);
+    }
+
+    /**
+     * Se verifica el radio antes que las zonas restringidas: si el vehículo está fuera del radio no hace falta
+     * revisar las zonas.
+     */
+    public VeredictoGeocerca evaluar(double lat, double lon) {
+        PuntoGeocerca punto = new PuntoGeocerca(lat, lon);
+        if (estaFueraDelRadio(punto)) {
+            return VeredictoGeocerca.FUERA_DE_RADIO;
+        }
+        if (zonas.buscarZona(punto) != null) {
+            return VeredictoGeocerca.EN_ZONA_RESTRINGIDA;
+        }
+        return VeredictoGeocerca.DENTRO;
+    }
+
+    public boolean estaFueraDelRadio(PuntoGeocerca punto) {
+        return !radioAgencia.contiene(punto);
+    }
+
+    public ZonaPeligrosaDto buscarZona(PuntoGeocerca punto) {
+        return zonas.buscarZona(punto);
+    }
+
+    public CirculoGeocerca getRadioAgencia() {
+        return radioAgencia;
+    }
+
+    public IndiceZonasPeligrosas getZonas() {
+        return zonas;
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.ZonaPeligrosaDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice espacial de las zonas peligrosas: una grilla de celdas de latitud/longitud donde cada zona se
+ * registra en todas las celdas que toca su rectángulo envolvente.
+ *
+ * Para saber si una posición está dentro de alguna zona solo se revisan las zonas registradas en la celda
+ * de esa posición, en lugar de recorrer la lista completa, y cada zona se revisa con los filtros baratos de
+ * {@link CirculoGeocerca} antes de llegar a Haversine. Se arma una sola vez
+ * por cada foto de restricciones y después solo se lee, así que puede compartirse entre hilos.
+ */
+public final class IndiceZonasPeligrosas {
+
+    // Margen para que el rectángulo envolvente nunca quede más chico que el círculo por redondeos.
+    private static final double MARGEN_RELATIVO = 1.01;
+    private static final double CELDA_MINIMA_GRADOS = 0.01;
+    private static final double CELDA_MAXIMA_GRADOS = 1.0;
+    // Una zona que ocuparía más celdas que esto se guarda aparte y se revisa siempre.
+    private static final int MAX_CELDAS_POR_ZONA = 4096;
+
+    private static final CirculoGeocerca[] VACIO = new CirculoGeocerca[0];
+
+    private final double tamanioCeldaGrados;
+    private final int columnas;
+    private final Map<Long, CirculoGeocerca[]> celdas;
+    private final CirculoGeocerca[] zonasGrandes;
+    private final int cantidadZonas;
+
+    public IndiceZonasPeligrosas(List<ZonaPeligrosaDto> zonas) {
+        List<ZonaPeligrosaDto> validas = zonas == null ? List.of() : zonas.stream().filter(IndiceZonasPeligrosas::esValida).toList();
+        this.cantidadZonas = validas.size();
+        // Se usa una cantidad entera de columnas para que la grilla cierre justo en el antimeridiano (±180).
+        this.columnas = (int) Math.round(360.0 / elegirTamanioCelda(validas));
+        this.tamanioCeldaGrados = 360.0 / columnas;
+
+        Map<Long, List<CirculoGeocerca>> porCelda = new HashMap<>();
+        List<CirculoGeocerca> grandes = new ArrayList<>();
+        for (ZonaPeligrosaDto zona : validas) {
+            registrar(new CirculoGeocerca(zona.getCoordenadas().getLatitud(), zona.getCoordenadas().getLongitud(),
+                    zona.getRadioMetros(), zona), porCelda, grandes);
+        }
+
+        Map<Long, CirculoGeocerca[]> compactas = new HashMap<>(porCelda.size() * 2);
+        porCelda.forEach((celda, lista) -> compactas.put(celda, lista.toArray(VACIO)));
+        this.celdas = compactas;
+        this.zonasGrandes = grandes.toArray(VACIO);
+    }
+
+    /**
+     * @return true si la posición está a una distancia menor o igual al radio de alguna zona peligrosa.
+     */
+    public boolean contiene(double lat, double lon) {
+        return buscarZona(lat, lon) != null;
+    }
+
+    /**
+     * @return la primera zona que contiene la posición, o null si no está dentro de ninguna.
+     */
+    public ZonaPeligrosaDto buscarZona(double lat, double lon) {
+        return buscarZona(new PuntoGeocerca(lat, lon));
+    }
+
+    public ZonaPeligrosaDto buscarZona(PuntoGeocerca punto) {
+        CirculoGeocerca[] candidatas = celdas.getOrDefault(clave(fila(punto.getLatitud()), columna(punto.getLongitud())), VACIO);
+        for (CirculoGeocerca circulo : candidatas) {
+            if (circulo.contiene(punto)) {
+                return circulo.getZona();
+            }
+        }
+        for (CirculoGeocerca circulo : zonasGrandes) {
+            if (circulo.contiene(punto)) {
+                return circulo.getZona();
+            }
+        }
+        return null;
+    }
+
+    public int getCantidadZonas() {
+        return cantidadZonas;
+    }
+
+    public double getTamanioCeldaGrados() {
+        return tamanioCeldaGrados;
+    }
+
+    private void registrar(CirculoGeocerca circulo, Map<Long, List<CirculoGeocerca>> porCelda, List<CirculoGeocerca> grandes) {
+        double lat = circulo.getLatitud();
+        double lon = circulo.getLongitud();
+        double mediaAlturaGrados = circulo.getMedioAltoGrados() * MARGEN_RELATIVO;
+        double mediaAnchoGrados = Math.min(180, circulo.getMedioAnchoGrados() * MARGEN_RELATIVO);
+
+        int filaDesde = fila(lat - mediaAlturaGrados);
+        int filaHasta = fila(lat + mediaAlturaGrados);
+        // Si el ancho cubre todo el globo (zona sobre un polo) se recorren todas las columnas una sola vez.
+        int cantidadColumnas = mediaAnchoGrados >= 180 ? columnas
+                : Math.min(columnas, columnaSinNormalizar(lon + mediaAnchoGrados) - columnaSinNormalizar(lon - mediaAnchoGrados) + 1);
+        long celdasOcupadas = (long) (filaHasta - filaDesde + 1) * cantidadColumnas;
+        if (celdasOcupadas > MAX_CELDAS_POR_ZONA) {
+            grandes.add(circulo);
+            return;
+        }
+
+        int columnaDesde = mediaAnchoGrados >= 180 ? 0 : columnaSinNormalizar(lon - mediaAnchoGrados);
+        for (int f = filaDesde; f <= filaHasta; f++) {
+            for (int i = 0; i < cantidadColumnas; i++) {
+                int c = Math.floorMod(columnaDesde + i, columnas);
+                porCelda.computeIfAbsent(clave(f, c), k -> new ArrayList<>(2)).add(circulo);
+            }
+        }
+    }
+
+    // Alto del rectángulo envolvente: sobre un meridiano, un radio de r metros son r/R radianes de latitud.
+    private static double mediaAlturaGrados(double radioMetros) {
+        return Math.toDegrees(radioMetros / GeoUtils.RADIO_TERRESTRE_METROS) * MARGEN_RELATIVO;
+    }
+
+    // La celda se elige según el radio típico de las zonas: unas 4 celdas por zona es un buen equilibrio
+    // entre candidatas por consulta y memoria del índice.
+    private static double elegirTamanioCelda(List<ZonaPeligrosaDto> zonas) {
+        if (zonas.isEmpty()) {
+            return CELDA_MAXIMA_GRADOS;
+        }
+        double[] radios = zonas.stream().mapToDouble(z -> mediaAlturaGrados(z.getRadioMetros())).toArray();
+        Arrays.sort(radios);
+        double mediana = radios[radios.length / 2];
+        return Math.max(CELDA_MINIMA_GRADOS, Math.min(CELDA_MAXIMA_GRADOS, 2 * mediana));
+    }
+
+    private int fila(double lat) {
+        double acotada = Math.max(-90, Math.min(90, lat));
+        return (int) Math.floor((acotada + 90) / tamanioCeldaGrados);
+    }
+
+    private int columnaSinNormalizar(double lon) {
+        return (int) Math.floor((lon + 180) / tamanioCeldaGrados);
+    }
+
+    private int columna(double lon) {
+        return Math.floorMod(columnaSinNormalizar(lon), columnas);
+    }
+
+    private long clave(int fila, int columna) {
+        return (long) fila * columnas + columna;
+    }
+
+    private static boolean esValida(ZonaPeligrosaDto zona) {
+        return zona != null && zona.getRadioMetros() != null && zona.getCoordenadas() != null
+                && zona.getCoordenadas().getLatitud() != null && zona.getCoordenadas().getLongitud() != null;
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.service.geocerca;
+
+/**
+ * Una posición a evaluar contra la geocerca. Convierte a radianes una sola vez y calcula el coseno
+ * de la latitud solo si algún círculo lo llega a necesitar.
+ */
+public final class PuntoGeocerca {
+
+    private final double latitud;
+    private final double longitud;
+    private final double latitudRad;
+    private final double longitudRad;
+    private double cosLatitud = Double.NaN;
+
+    public PuntoGeocerca(double latitud, double longitud) {
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.latitudRad = Math.toRadians(latitud);
+        this.longitudRad = Math.toRadians(longitud);
+    }
+
+    public double getLatitud() {
+        return latitud;
+    }
+
+    public double getLongitud() {
+        return longitud;
+    }
+
+    double getLatitudRad() {
+        return latitudRad;
+    }
+
+    double getLongitudRad() {
+        return longitudRad;
+    }
+
+    double getCosLatitud() {
+        if (Double.isNaN(cosLatitud)) {
+            cosLatitud = Math.cos(latitudRad);
+        }
+        return cosLatitud;
+    }
+}
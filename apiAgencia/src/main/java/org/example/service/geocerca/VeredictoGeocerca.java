@@ -0,0 +1,24 @@
+package org.example.service.geocerca;
+
+/**
+ * Resultado de evaluar una posición contra las restricciones de la agencia, con el mensaje que ve el vehículo.
+ */
+public enum VeredictoGeocerca {
+    DENTRO("La posicion actual del vehiculo fue registrada."),
+    FUERA_DE_RADIO("La posicion actual del vehiculo se encuentra por fuera del radio permitido por la agencia."),
+    EN_ZONA_RESTRINGIDA("La posicion actual del vehiculo se encuentra dentro de un area restringida.");
+
+    private final String mensaje;
+
+    VeredictoGeocerca(String mensaje) {
+        this.mensaje = mensaje;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public boolean esIncidente() {
+        return this != DENTRO;
+    }
+}
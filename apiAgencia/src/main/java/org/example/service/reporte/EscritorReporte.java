@@ -0,0 +1,303 @@
+package org.example.service.reporte;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Escribe las filas de un reporte a medida que se leen, en el formato pedido, sin juntar el reporte en memoria: cada
+ * fila pasa por un buffer de 8 KB y sigue a la salida. Los errores de escritura (por ejemplo el cliente que cortó la
+ * descarga) salen como {@link UncheckedIOException} para poder escribir desde un {@code forEach}.
+ * <p>
+ * En texto se arma la tabla de siempre: los títulos, el encabezado con las columnas alineadas y, si no hubo filas, un
+ * mensaje en lugar de la tabla. CSV y NDJSON llevan solo las filas (CSV con una fila de encabezado), con las fechas en
+ * ISO-8601 y los valores sin formatear.
+ */
+public abstract class EscritorReporte {
+
+    /**
+     * Una columna del reporte: {@code clave} es el nombre en CSV y NDJSON, {@code titulo} y {@code ancho} los de la
+     * tabla de texto (ancho 0: sin alinear, solo para la última) y {@code patronFecha} cómo se muestra una fecha en texto
+     * (null: con su {@code toString()}).
+     */
+    public record Columna(String clave, String titulo, int ancho, String patronFecha) {
+
+        public static Columna de(String clave, String titulo, int ancho) {
+            return new Columna(clave, titulo, ancho, PATRON_FECHA_TEXTO);
+        }
+
+        public static Columna fecha(String clave, String titulo, int ancho, String patronFecha) {
+            return new Columna(clave, titulo, ancho, patronFecha);
+        }
+
+        // Para los reportes que siempre mostraron la fecha como la devuelve la base, sin formatear.
+        public static Columna fechaSinFormato(String clave, String titulo, int ancho) {
+            return new Columna(clave, titulo, ancho, null);
+        }
+    }
+
+    private static final String PATRON_FECHA_TEXTO = "yyyy-MM-dd HH:mm:ss";
+    private static final DateTimeFormatter FECHA_ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+    // El generador vuelca cada fila en el buffer del escritor, que decide cuándo enviarlo.
+    private static final JsonFactory JSON = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+
+    protected final List<Columna> columnas;
+    protected final Writer salida;
+    private long filas;
+
+    protected EscritorReporte(OutputStream salida, List<Columna> columnas) {
+        this.salida = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 8192);
+        this.columnas = columnas;
+    }
+
+    public static EscritorReporte para(FormatoReporte formato, OutputStream salida, List<Columna> columnas) {
+        return switch (formato) {
+            case TEXT -> new Texto(salida, columnas);
+            case CSV -> new Csv(salida, columnas);
+            case NDJSON -> new Ndjson(salida, columnas);
+        };
+    }
+
+    /**
+     * Líneas que solo van en la salida de texto antes de la tabla (títulos, datos del filtro). Se escriben enseguida.
+     */
+    public void texto(String texto) {
+    }
+
+    /**
+     * Título de la tabla de texto: se escribe junto con el encabezado, así que solo aparece si hay filas.
+     */
+    public void tituloTabla(String titulo) {
+    }
+
+    /**
+     * Escribe una fila con un valor por columna. Con la primera se escribe el encabezado y se envía lo escrito, para
+     * que el cliente reciba el principio del reporte sin esperar al resto.
+     */
+    public void fila(Object... valores) {
+        try {
+            if (filas++ == 0) {
+                encabezado();
+                escribirFila(valores);
+                salida.flush();
+            } else {
+                escribirFila(valores);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Termina el reporte y envía lo que quede en el buffer. No cierra la salida.
+     * @param mensajeSinFilas lo que se escribe en texto en lugar de la tabla si no hubo filas.
+     */
+    public void terminar(String mensajeSinFilas) {
+        try {
+            if (filas == 0) {
+                sinFilas(mensajeSinFilas);
+            }
+            salida.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getFilas() {
+        return filas;
+    }
+
+    protected abstract void encabezado() throws IOException;
+
+    protected abstract void escribirFila(Object[] valores) throws IOException;
+
+    protected abstract void sinFilas(String mensaje) throws IOException;
+
+    protected static String fechaIso(Date fecha) {
+        return FECHA_ISO.format(fecha.toInstant());
+    }
+
+    static final class Texto extends EscritorReporte {
+
+        private final String formatoFila;
+        private final DateTimeFormatter[] fechas;
+        private String tituloTabla;
+
+        Texto(OutputStream salida, List<Columna> columnas) {
+            super(salida, columnas);
+            StringBuilder formato = new StringBuilder();
+            fechas = new DateTimeFormatter[columnas.size()];
+            for (int i = 0; i < columnas.size(); i++) {
+                Columna columna = columnas.get(i);
+                formato.append(i == 0 ? "" : " | ").append(columna.ancho() > 0 ? "%-" + columna.ancho() + "s" : "%s");
+                fechas[i] = columna.patronFecha() == null ? null
+                        : DateTimeFormatter.ofPattern(columna.patronFecha()).withZone(ZoneId.systemDefault());
+            }
+            this.formatoFila = formato.append("\n").toString();
+        }
+
+        @Override
+        public void texto(String texto) {
+            try {
+                salida.write(texto);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void tituloTabla(String titulo) {
+            this.tituloTabla = titulo;
+        }
+
+        @Override
+        protected void encabezado() throws IOException {
+            if (tituloTabla != null) {
+                salida.write(tituloTabla);
+            }
+            salida.write(String.format(formatoFila, columnas.stream().map(Columna::titulo).toArray()));
+            // Como la tabla de siempre: la primera columna sin los espacios de alrededor y la última sin el de la derecha.
+            StringBuilder separador = new StringBuilder();
+            for (int i = 0; i < columnas.size(); i++) {
+                int ancho = columnas.get(i).ancho();
+                int guiones = ancho == 0 ? 34 : i == 0 ? ancho : ancho + (i == columnas.size() - 1 ? 1 : 2);
+                separador.append(i == 0 ? "" : "|").append("-".repeat(guiones));
+            }
+            salida.write(separador.append("\n").toString());
+        }
+
+        @Override
+        protected void escribirFila(Object[] valores) throws IOException {
+            Object[] textos = new Object[valores.length];
+            for (int i = 0; i < valores.length; i++) {
+                Object valor = valores[i];
+                if (valor == null) {
+                    textos[i] = "N/A";
+                } else if (valor instanceof Boolean b) {
+                    textos[i] = b ? "SI" : "NO";
+                } else if (valor instanceof Date fecha) {
+                    textos[i] = fechas[i] == null ? fecha.toString() : fechas[i].format(fecha.toInstant());
+                } else {
+                    textos[i] = valor;
+                }
+            }
+            salida.write(String.format(formatoFila, textos));
+        }
+
+        @Override
+        protected void sinFilas(String mensaje) throws IOException {
+            salida.write(mensaje);
+        }
+    }
+
+    static final class Csv extends EscritorReporte {
+
+        Csv(OutputStream salida, List<Columna> columnas) {
+            super(salida, columnas);
+        }
+
+        @Override
+        protected void encabezado() throws IOException {
+            for (int i = 0; i < columnas.size(); i++) {
+                if (i > 0) {
+                    salida.write(',');
+                }
+                campo(columnas.get(i).clave());
+            }
+            salida.write("\r\n");
+        }
+
+        @Override
+        protected void escribirFila(Object[] valores) throws IOException {
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    salida.write(',');
+                }
+                Object valor = valores[i];
+                if (valor instanceof Date fecha) {
+                    salida.write(fechaIso(fecha));
+                } else if (valor != null) {
+                    campo(valor.toString());
+                }
+            }
+            salida.write("\r\n");
+        }
+
+        // Un reporte vacío en CSV es solo el encabezado.
+        @Override
+        protected void sinFilas(String mensaje) throws IOException {
+            encabezado();
+        }
+
+        // RFC 4180: entre comillas si tiene comas, comillas o saltos de línea, con las comillas duplicadas.
+        private void campo(String valor) throws IOException {
+            if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+                salida.write(valor);
+                return;
+            }
+            salida.write('"');
+            salida.write(valor.replace("\"", "\"\""));
+            salida.write('"');
+        }
+    }
+
+    static final class Ndjson extends EscritorReporte {
+
+        private final JsonGenerator generador;
+
+        Ndjson(OutputStream salida, List<Columna> columnas) {
+            super(salida, columnas);
+            try {
+                this.generador = JSON.createGenerator(this.salida);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        protected void encabezado() {
+        }
+
+        @Override
+        protected void escribirFila(Object[] valores) throws IOException {
+            generador.writeStartObject();
+            for (int i = 0; i < valores.length; i++) {
+                generador.writeFieldName(columnas.get(i).clave());
+                Object valor = valores[i];
+                if (valor == null) {
+                    generador.writeNull();
+                } else if (valor instanceof Date fecha) {
+                    generador.writeString(fechaIso(fecha));
+                } else if (valor instanceof Boolean b) {
+                    generador.writeBoolean(b);
+                } else if (valor instanceof Integer || valor instanceof Long) {
+                    generador.writeNumber(((Number) valor).longValue());
+                } else if (valor instanceof Number numero) {
+                    generador.writeNumber(numero.doubleValue());
+                } else {
+                    generador.writeString(valor.toString());
+                }
+            }
+            generador.writeEndObject();
+            generador.writeRaw('\n');
+            generador.flush();
+        }
+
+        @Override
+        protected void sinFilas(String mensaje) {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.service.reporte;
+
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Formatos de salida de los reportes ({@code ?format=}): la tabla de texto de siempre, CSV con una fila de encabezado
+ * o NDJSON, un objeto JSON por línea.
+ */
+public enum FormatoReporte {
+
+    TEXT(new MediaType("text", "plain", StandardCharsets.UTF_8), "txt"),
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), "csv"),
+    NDJSON(MediaType.APPLICATION_NDJSON, "ndjson");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    FormatoReporte(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    // La de los archivos de los reportes en segundo plano (ver TrabajosReporte).
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @throws IllegalArgumentException si el formato no es text, csv ni ndjson.
+     */
+    public static FormatoReporte desde(String formato) {
+        try {
+            return valueOf(formato.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Formato de reporte desconocido: " + formato + " (text, csv o ndjson).");
+        }
+    }
+}
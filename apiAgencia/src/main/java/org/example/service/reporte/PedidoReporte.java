@@ -0,0 +1,73 @@
+package org.example.service.reporte;
+
+import org.example.dtos.PedidoReporteDto;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Un reporte pedido para generar en segundo plano (ver {@link org.example.service.TrabajosReporte}). Solo guarda los
+ * datos que usa su tipo, así dos pedidos del mismo reporte son iguales ({@code equals}) aunque el cliente haya mandado
+ * campos de más.
+ */
+public record PedidoReporte(Tipo tipo, Long legajo, String patente, LocalDate fechaInicio, LocalDate fechaFin,
+                            FormatoReporte formato) {
+
+    public enum Tipo {
+        INCIDENTES,
+        INCIDENTES_EMPLEADO,
+        PRUEBAS_VEHICULO,
+        KILOMETRAJE,
+        KILOMETRAJE_FLOTA
+    }
+
+    /**
+     * @throws IllegalArgumentException si el tipo o el formato no existen o falta un dato que el tipo necesita.
+     */
+    public static PedidoReporte desde(PedidoReporteDto dto) {
+        if (dto.getTipo() == null) {
+            throw new IllegalArgumentException("Falta el tipo de reporte (incidentes, incidentes_empleado, pruebas_vehiculo, kilometraje o kilometraje_flota).");
+        }
+        Tipo tipo;
+        try {
+            tipo = Tipo.valueOf(dto.getTipo().trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Tipo de reporte desconocido: " + dto.getTipo() + " (incidentes, incidentes_empleado, pruebas_vehiculo, kilometraje o kilometraje_flota).");
+        }
+        FormatoReporte formato = FormatoReporte.desde(dto.getFormat() != null ? dto.getFormat() : "text");
+        return switch (tipo) {
+            case INCIDENTES -> new PedidoReporte(tipo, null, null, null, null, formato);
+            case INCIDENTES_EMPLEADO -> {
+                if (dto.getLegajo() == null) {
+                    throw new IllegalArgumentException("El reporte de incidentes por empleado necesita el legajo.");
+                }
+                yield new PedidoReporte(tipo, dto.getLegajo(), null, null, null, formato);
+            }
+            case PRUEBAS_VEHICULO -> new PedidoReporte(tipo, null, patente(dto), null, null, formato);
+            case KILOMETRAJE -> {
+                validarPeriodo(dto);
+                yield new PedidoReporte(tipo, null, patente(dto), dto.getFechaInicio(), dto.getFechaFin(), formato);
+            }
+            case KILOMETRAJE_FLOTA -> {
+                validarPeriodo(dto);
+                yield new PedidoReporte(tipo, null, null, dto.getFechaInicio(), dto.getFechaFin(), formato);
+            }
+        };
+    }
+
+    private static void validarPeriodo(PedidoReporteDto dto) {
+        if (dto.getFechaInicio() == null || dto.getFechaFin() == null) {
+            throw new IllegalArgumentException("El reporte de kilometraje necesita fechaInicio y fechaFin.");
+        }
+        if (dto.getFechaInicio().isAfter(dto.getFechaFin())) {
+            throw new IllegalArgumentException("La fecha de inicio es posterior a la fecha de fin.");
+        }
+    }
+
+    private static String patente(PedidoReporteDto dto) {
+        if (dto.getPatente() == null || dto.getPatente().isBlank()) {
+            throw new IllegalArgumentException("El reporte de " + dto.getTipo().trim().toLowerCase(Locale.ROOT) + " necesita la patente.");
+        }
+        return dto.getPatente().trim();
+    }
+}
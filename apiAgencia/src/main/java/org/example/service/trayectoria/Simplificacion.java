@@ -0,0 +1,23 @@
+package org.example.service.trayectoria;
+
+/**
+ * Resultado de simplificar una {@link Trayectoria}: qué puntos se conservan y cuánto cambia la distancia recorrida.
+ *
+ * @param indices            posiciones de la trayectoria original que se conservan, en orden (siempre incluye la primera y la última).
+ * @param toleranciaMetros   tolerancia con la que se obtuvo (puede ser menor que la pedida si hubo que respetar una cota de error).
+ * @param distanciaOriginalKm  distancia recorrida por todos los puntos.
+ * @param distanciaSimplificadaKm distancia recorrida solo por los puntos conservados.
+ */
+public record Simplificacion(int[] indices, double toleranciaMetros, double distanciaOriginalKm, double distanciaSimplificadaKm) {
+
+    public int conservados() {
+        return indices.length;
+    }
+
+    /**
+     * Diferencia relativa entre las dos distancias (0 si la trayectoria no recorrió nada).
+     */
+    public double errorDistancia() {
+        return distanciaOriginalKm > 0 ? Math.abs(distanciaOriginalKm - distanciaSimplificadaKm) / distanciaOriginalKm : 0;
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.service.trayectoria;
+
+import org.example.service.geocerca.GeoUtils;
+
+import java.util.Arrays;
+
+/**
+ * Simplificación de trayectorias con Douglas–Peucker: se conserva un punto solo si se aleja más de la tolerancia
+ * del tramo que une a los que se conservan. Una prueba de una hora con una posición cada 5 segundos tiene 720
+ * puntos y la mayoría cae sobre tramos rectos, que no cambian ni el kilometraje ni el dibujo en un mapa.
+ *
+ * Hay dos medidas de distancia:
+ * <ul>
+ *   <li>ESPACIAL: distancia del punto al segmento (Douglas–Peucker clásico). Es la que más puntos descarta.</li>
+ *   <li>TEMPORAL: distancia del punto a donde estaría el vehículo en ese instante si recorriera el segmento a velocidad
+ *   constante (distancia euclídea sincronizada). Conserva además las paradas y los cambios de velocidad, así que la
+ *   trayectoria simplificada sigue sirviendo para saber dónde estaba el vehículo a cada hora.</li>
+ * </ul>
+ *
+ * Los puntos se proyectan una sola vez a metros sobre un plano tangente en el primer punto (equirectangular), que
+ * para el tamaño de una prueba de manejo tiene un error muy por debajo de cualquier tolerancia razonable. El recorrido
+ * usa una pila explícita, así que una trayectoria larga no agota la pila de llamadas.
+ */
+public final class SimplificadorTrayectoria {
+
+    public enum Medida {
+        ESPACIAL,
+        TEMPORAL
+    }
+
+    // Por debajo de esta tolerancia ya no se sigue achicando para cumplir una cota de error: se conservan todos los puntos.
+    static final double TOLERANCIA_MINIMA_METROS = 0.5;
+
+    private SimplificadorTrayectoria() {
+    }
+
+    /**
+     * @return los índices de los puntos que se conservan, en orden. Con menos de tres puntos o tolerancia no positiva se conservan todos.
+     */
+    public static int[] simplificar(Trayectoria trayectoria, double toleranciaMetros, Medida medida) {
+        int n = trayectoria.size();
+        if (n < 3 || toleranciaMetros <= 0) {
+            return todos(n);
+        }
+        double[] x = new double[n];
+        double[] y = new double[n];
+        proyectar(trayectoria, x, y);
+
+        boolean[] conservar = new boolean[n];
+        conservar[0] = true;
+        conservar[n - 1] = true;
+        double toleranciaCuadrada = toleranciaMetros * toleranciaMetros;
+
+        // Pares (desde, hasta) pendientes de revisar; cada división agrega a lo sumo dos.
+        int[] pila = new int[2 * n];
+        int tope = 0;
+        pila[tope++] = 0;
+        pila[tope++] = n - 1;
+        while (tope > 0) {
+            int hasta = pila[--tope];
+            int desde = pila[--tope];
+            int masLejano = -1;
+            double maxima = toleranciaCuadrada;
+            for (int i = desde + 1; i < hasta; i++) {
+                double d = medida == Medida.TEMPORAL
+                        ? distanciaSincronizadaCuadrada(trayectoria, x, y, i, desde, hasta)
+                        : distanciaSegmentoCuadrada(x, y, i, desde, hasta);
+                if (d > maxima) {
+                    maxima = d;
+                    masLejano = i;
+                }
+            }
+            if (masLejano >= 0) {
+                conservar[masLejano] = true;
+                pila[tope++] = desde;
+                pila[tope++] = masLejano;
+                pila[tope++] = masLejano;
+                pila[tope++] = hasta;
+            }
+        }
+        return indicesConservados(conservar);
+    }
+
+    /**
+     * Simplifica sin que la distancia recorrida cambie más que {@code maxErrorDistancia} (relativo, 0.01 = 1%).
+     * Si con la tolerancia pedida el error es mayor se la va reduciendo a la mitad; si ni con
+     * {@link #TOLERANCIA_MINIMA_METROS} se cumple, se conservan todos los puntos.
+     */
+    public static Simplificacion simplificarConCotaDeDistancia(Trayectoria trayectoria, double toleranciaMetros, Medida medida, double maxErrorDistancia) {
+        double original = trayectoria.distanciaKm();
+        for (double tolerancia = toleranciaMetros; tolerancia >= TOLERANCIA_MINIMA_METROS; tolerancia /= 2) {
+            int[] indices = simplificar(trayectoria, tolerancia, medida);
+            Simplificacion simplificacion = new Simplificacion(indices, tolerancia, original, trayectoria.distanciaKm(indices));
+            if (simplificacion.errorDistancia() <= maxErrorDistancia) {
+                return simplificacion;
+            }
+        }
+        return new Simplificacion(todos(trayectoria.size()), 0, original, original);
+    }
+
+    public static Simplificacion simplificacion(Trayectoria trayectoria, double toleranciaMetros, Medida medida) {
+        int[] indices = simplificar(trayectoria, toleranciaMetros, medida);
+        return new Simplificacion(indices, toleranciaMetros, trayectoria.distanciaKm(), trayectoria.distanciaKm(indices));
+    }
+
+    private static void proyectar(Trayectoria trayectoria, double[] x, double[] y) {
+        double lat0 = trayectoria.getLatitud(0);
+        double lon0 = trayectoria.getLongitud(0);
+        double metrosPorGradoLat = Math.toRadians(1) * GeoUtils.RADIO_TERRESTRE_METROS;
+        double metrosPorGradoLon = metrosPorGradoLat * Math.cos(Math.toRadians(lat0));
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (trayectoria.getLongitud(i) - lon0) * metrosPorGradoLon;
+            y[i] = (trayectoria.getLatitud(i) - lat0) * metrosPorGradoLat;
+        }
+    }
+
+    // Distancia (al cuadrado) del punto i al segmento desde-hasta; si los extremos coinciden, al punto.
+    private static double distanciaSegmentoCuadrada(double[] x, double[] y, int i, int desde, int hasta) {
+        double dx = x[hasta] - x[desde];
+        double dy = y[hasta] - y[desde];
+        double largoCuadrado = dx * dx + dy * dy;
+        double t = largoCuadrado == 0 ? 0 : ((x[i] - x[desde]) * dx + (y[i] - y[desde]) * dy) / largoCuadrado;
+        t = Math.max(0, Math.min(1, t));
+        double px = x[desde] + t * dx - x[i];
+        double py = y[desde] + t * dy - y[i];
+        return px * px + py * py;
+    }
+
+    // Distancia (al cuadrado) del punto i a donde estaría en su instante recorriendo el segmento a velocidad constante.
+    private static double distanciaSincronizadaCuadrada(Trayectoria trayectoria, double[] x, double[] y, int i, int desde, int hasta) {
+        long duracion = trayectoria.getTiempo(hasta) - trayectoria.getTiempo(desde);
+        double t = duracion == 0 ? 0 : (double) (trayectoria.getTiempo(i) - trayectoria.getTiempo(desde)) / duracion;
+        double px = x[desde] + t * (x[hasta] - x[desde]) - x[i];
+        double py = y[desde] + t * (y[hasta] - y[desde]) - y[i];
+        return px * px + py * py;
+    }
+
+    private static int[] indicesConservados(boolean[] conservar) {
+        int[] indices = new int[conservar.length];
+        int cantidad = 0;
+        for (int i = 0; i < conservar.length; i++) {
+            if (conservar[i]) {
+                indices[cantidad++] = i;
+            }
+        }
+        return Arrays.copyOf(indices, cantidad);
+    }
+
+    private static int[] todos(int n) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.service.trayectoria;
+
+import org.example.models.Posicion;
+import org.example.service.geocerca.GeoUtils;
+
+import java.util.List;
+
+/**
+ * Los puntos de un recorrido en arreglos paralelos (fecha, latitud, longitud), ordenados por fecha.
+ * Así el simplificador recorre miles de puntos sin desempaquetar un Double por campo de cada {@link Posicion}.
+ */
+public final class Trayectoria {
+
+    private final long[] tiempos;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public Trayectoria(long[] tiempos, double[] latitudes, double[] longitudes) {
+        if (tiempos.length != latitudes.length || tiempos.length != longitudes.length) {
+            throw new IllegalArgumentException("Los arreglos de la trayectoria tienen largos distintos.");
+        }
+        this.tiempos = tiempos;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    /**
+     * @param posiciones posiciones de un mismo vehículo, ordenadas por fecha.
+     */
+    public static Trayectoria de(List<Posicion> posiciones) {
+        int n = posiciones.size();
+        long[] tiempos = new long[n];
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            Posicion posicion = posiciones.get(i);
+            tiempos[i] = posicion.getFechaHora();
+            latitudes[i] = posicion.getLatitud();
+            longitudes[i] = posicion.getLongitud();
+        }
+        return new Trayectoria(tiempos, latitudes, longitudes);
+    }
+
+    public int size() {
+        return tiempos.length;
+    }
+
+    public long getTiempo(int i) {
+        return tiempos[i];
+    }
+
+    public double getLatitud(int i) {
+        return latitudes[i];
+    }
+
+    public double getLongitud(int i) {
+        return longitudes[i];
+    }
+
+    /**
+     * Distancia recorrida: Haversine entre cada par de puntos consecutivos, igual que el reporte de kilometraje.
+     */
+    public double distanciaKm() {
+        double total = 0;
+        for (int i = 1; i < tiempos.length; i++) {
+            total += GeoUtils.distanciaHaversineKm(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Distancia recorrida pasando solo por los puntos indicados (en orden creciente).
+     */
+    public double distanciaKm(int[] indices) {
+        double total = 0;
+        for (int k = 1; k < indices.length; k++) {
+            int a = indices[k - 1];
+            int b = indices[k];
+            total += GeoUtils.distanciaHaversineKm(latitudes[a], longitudes[a], latitudes[b], longitudes[b]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,50 @@
+-- Tablas de api-agencia que no venían en la base original. Se ejecuta en cada arranque (spring.sql.init), por eso todo es IF NOT EXISTS.
+
+-- Resumen de las pruebas finalizadas que pasaron por la retención de posiciones (ver ResumenPrueba y RetencionPosiciones).
+CREATE TABLE IF NOT EXISTS ResumenesPruebas (
+    ID_PRUEBA         INTEGER NOT NULL PRIMARY KEY,
+    ID_VEHICULO       INTEGER NOT NULL,
+    FECHA_HORA_INICIO TIMESTAMP NOT NULL,
+    FECHA_HORA_FIN    TIMESTAMP NOT NULL,
+    DISTANCIA_KM      REAL NOT NULL,
+    DURACION_SEGUNDOS INTEGER NOT NULL,
+    POSICIONES        INTEGER NOT NULL,
+    LATITUD_MIN       REAL,
+    LATITUD_MAX       REAL,
+    LONGITUD_MIN      REAL,
+    LONGITUD_MAX      REAL,
+    INCIDENTE         BOOLEAN DEFAULT 0 NOT NULL,
+    NIVEL             TEXT NOT NULL,
+    CONSTRAINT ResumenesPruebas_Pruebas_FK FOREIGN KEY (ID_PRUEBA) REFERENCES Pruebas(ID)
+);
+
+-- Los reportes, las trayectorias y la retención leen las posiciones de un vehículo entre dos fechas.
+CREATE INDEX IF NOT EXISTS Posiciones_VEHICULO_FECHA_IDX ON Posiciones (ID_VEHICULO, FECHA_HORA);
+
+-- Totales de cada vehículo por día (aaaammdd) para los reportes de la flota (ver ResumenDiarioVehiculo y ResumenesDiarios).
+CREATE TABLE IF NOT EXISTS ResumenesDiarios (
+    ID_VEHICULO         INTEGER NOT NULL,
+    DIA                 INTEGER NOT NULL,
+    PRUEBAS_INICIADAS   INTEGER DEFAULT 0 NOT NULL,
+    PRUEBAS_FINALIZADAS INTEGER DEFAULT 0 NOT NULL,
+    DURACION_SEGUNDOS   INTEGER DEFAULT 0 NOT NULL,
+    DISTANCIA_KM        REAL DEFAULT 0 NOT NULL,
+    INCIDENTES          INTEGER DEFAULT 0 NOT NULL,
+    EMPLEADOS           INTEGER DEFAULT 0 NOT NULL,
+    INTERESADOS         INTEGER DEFAULT 0 NOT NULL,
+    PRIMARY KEY (ID_VEHICULO, DIA)
+);
+
+-- Los reportes de la flota leen todos los vehículos de un rango de días.
+CREATE INDEX IF NOT EXISTS ResumenesDiarios_DIA_IDX ON ResumenesDiarios (DIA);
+
+-- Empleados (legajo) e interesados que participaron de pruebas de cada vehículo por día, para contarlos sin repetir.
+CREATE TABLE IF NOT EXISTS ResumenesDiariosPersonas (
+    ID_VEHICULO INTEGER NOT NULL,
+    DIA         INTEGER NOT NULL,
+    TIPO        TEXT NOT NULL,
+    ID_PERSONA  INTEGER NOT NULL,
+    PRIMARY KEY (ID_VEHICULO, DIA, TIPO, ID_PERSONA)
+);
+
+CREATE INDEX IF NOT EXISTS ResumenesDiariosPersonas_DIA_IDX ON ResumenesDiariosPersonas (DIA);
@@ -0,0 +1,113 @@
+package org.example.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Prueba de carga de POST /api/vehiculos/posicion/new contra una api-agencia ya levantada.
+ * Sirve para comparar el perfil normal (hilos de plataforma) con el perfil "virtual" (ver readmeInteresantes/benchmarks.md):
+ * N clientes concurrentes mandan posiciones durante un tiempo fijo y al final se informa el throughput y la latencia p50/p99.
+ *
+ * Argumentos (todos opcionales): url base, clientes concurrentes, duración en segundos, ids de vehículo separados por coma.
+ * Ejemplo: java -cp ... org.example.benchmark.CargaPosiciones http://localhost:8080 200 60 1,2,3
+ */
+public class CargaPosiciones {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clientes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int[] vehiculos = Arrays.stream((args.length > 3 ? args[3] : "1").split(",")).mapToInt(Integer::parseInt).toArray();
+
+        HttpClient cliente = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        URI destino = URI.create(url + "/api/vehiculos/posicion/new");
+        long finNanos = System.nanoTime() + Duration.ofSeconds(segundos).toNanos();
+
+        System.out.println("Carga contra " + destino + " con " + clientes + " clientes durante " + segundos + " s");
+        ExecutorService hilos = Executors.newFixedThreadPool(clientes);
+        List<Future<Resultado>> futuros = new ArrayList<>(clientes);
+        for (int i = 0; i < clientes; i++) {
+            futuros.add(hilos.submit(() -> cargar(cliente, destino, vehiculos, finNanos)));
+        }
+
+        Resultado total = new Resultado();
+        for (Future<Resultado> futuro : futuros) {
+            total.sumar(futuro.get());
+        }
+        hilos.shutdown();
+        total.imprimir(segundos);
+    }
+
+    // Cada cliente manda un pedido atrás del otro (modelo cerrado) y anota la latencia de cada uno.
+    private static Resultado cargar(HttpClient cliente, URI destino, int[] vehiculos, long finNanos) {
+        Resultado resultado = new Resultado();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < finNanos) {
+            int idVehiculo = vehiculos[random.nextInt(vehiculos.length)];
+            String cuerpo = String.format(Locale.ROOT, "{\"vehiculo\":{\"id\":%d},\"coordenadas\":{\"lat\":%.6f,\"lon\":%.6f}}",
+                    idVehiculo, -31.42 + random.nextDouble(-0.01, 0.01), -64.19 + random.nextDouble(-0.01, 0.01));
+            HttpRequest pedido = HttpRequest.newBuilder(destino)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(cuerpo))
+                    .build();
+            long inicio = System.nanoTime();
+            try {
+                HttpResponse<Void> respuesta = cliente.send(pedido, HttpResponse.BodyHandlers.discarding());
+                resultado.anotar(System.nanoTime() - inicio, respuesta.statusCode() >= 500);
+            } catch (Exception e) {
+                resultado.anotar(System.nanoTime() - inicio, true);
+            }
+        }
+        return resultado;
+    }
+
+    private static final class Resultado {
+        private long[] latencias = new long[1024];
+        private int cantidad;
+        private int errores;
+
+        void anotar(long nanos, boolean error) {
+            if (cantidad == latencias.length) {
+                latencias = Arrays.copyOf(latencias, cantidad * 2);
+            }
+            latencias[cantidad++] = nanos;
+            if (error) {
+                errores++;
+            }
+        }
+
+        void sumar(Resultado otro) {
+            for (int i = 0; i < otro.cantidad; i++) {
+                anotar(otro.latencias[i], false);
+            }
+            errores += otro.errores;
+        }
+
+        void imprimir(int segundos) {
+            long[] ordenadas = Arrays.copyOf(latencias, cantidad);
+            Arrays.sort(ordenadas);
+            System.out.printf(Locale.ROOT, "pedidos: %d, errores: %d, throughput: %.1f pedidos/s%n",
+                    cantidad, errores, cantidad / (double) segundos);
+            if (cantidad > 0) {
+                System.out.printf(Locale.ROOT, "latencia ms -> p50: %.2f, p99: %.2f, maximo: %.2f%n",
+                        percentil(ordenadas, 0.50), percentil(ordenadas, 0.99), ordenadas[cantidad - 1] / 1e6);
+            }
+        }
+
+        private static double percentil(long[] ordenadas, double p) {
+            return ordenadas[Math.min(ordenadas.length - 1, (int) Math.ceil(p * ordenadas.length) - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.benchmark;
+
+import org.example.service.geocerca.CirculoGeocerca;
+import org.example.service.geocerca.GeoUtils;
+import org.example.service.geocerca.PuntoGeocerca;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la verificación del radio de la agencia con Haversine directo (como lo hacía VehiculoService)
+ * contra {@link CirculoGeocerca}, que primero prueba el rectángulo envolvente y la cota equirectangular.
+ * Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeocercaBenchmark {
+
+    private static final int CANTIDAD_PUNTOS = 1024;
+    private static final double LAT_AGENCIA = -31.4;
+    private static final double LON_AGENCIA = -64.2;
+    private static final double RADIO_METROS = 5000;
+
+    // Qué tan dispersos están los puntos alrededor de la agencia, en grados (0.02 casi todos adentro, 0.5 casi todos afuera).
+    @Param({"0.02", "0.06", "0.5"})
+    public double dispersion;
+
+    private CirculoGeocerca circulo;
+    private double[] lats;
+    private double[] lons;
+    private int siguiente;
+
+    @Setup
+    public void setUp() {
+        circulo = new CirculoGeocerca(LAT_AGENCIA, LON_AGENCIA, RADIO_METROS, null);
+        Random random = new Random(7);
+        lats = new double[CANTIDAD_PUNTOS];
+        lons = new double[CANTIDAD_PUNTOS];
+        for (int i = 0; i < CANTIDAD_PUNTOS; i++) {
+            lats[i] = LAT_AGENCIA + random.nextGaussian() * dispersion;
+            lons[i] = LON_AGENCIA + random.nextGaussian() * dispersion;
+        }
+    }
+
+    @Benchmark
+    public boolean haversineDirecto() {
+        int i = siguiente++ & (CANTIDAD_PUNTOS - 1);
+        return GeoUtils.distanciaHaversineMetros(lats[i], lons[i], LAT_AGENCIA, LON_AGENCIA) <= RADIO_METROS;
+    }
+
+    @Benchmark
+    public boolean circuloConFiltros() {
+        int i = siguiente++ & (CANTIDAD_PUNTOS - 1);
+        return circulo.contiene(new PuntoGeocerca(lats[i], lons[i]));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GeocercaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.benchmark;
+
+import org.example.Main;
+import org.example.service.ReporteService;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.trayectoria.Trayectoria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kilometraje de toda la flota en un mes: el reporte de un vehículo ({@code GET /api/reportes/kilometraje/{patente}})
+ * llamado en un bucle con cada patente, como lo armaba el cliente, vs. {@code GET /api/reportes/kilometraje}
+ * ({@link org.example.service.KilometrajeFlota}, fork-join por vehículo y por prueba con 4 hilos y 4 lectores).
+ * <p>
+ * Levanta la api sin servidor web contra una base H2 en archivo, en un directorio temporal (el dialecto de SQLite de
+ * {@code hibernate-community-dialects} no siempre está a mano; H2 en archivo también lee de disco con su propio
+ * caché). Cada vehículo tiene 20 pruebas en el mes, cada una con un recorrido de 720 posiciones en la tabla Posiciones,
+ * y una de cada cuatro no tiene la distancia guardada, así que se calcula leyendo su recorrido. Mide el cálculo y la
+ * escritura del reporte, sin HTTP. Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KilometrajeFlotaBenchmark {
+
+    private static final int PRUEBAS_POR_VEHICULO = 20;
+    private static final Date DESDE = new Date(1_759_276_800_000L);
+    private static final Date HASTA = new Date(1_761_868_800_000L);
+
+    @Param({"10", "50", "200"})
+    public int vehiculos;
+
+    private Path directorio;
+    private ConfigurableApplicationContext contexto;
+    private ReporteService reporteService;
+    private List<String> patentes;
+
+    @Setup
+    public void setUp() throws IOException {
+        directorio = Files.createTempDirectory("kilometraje-flota");
+        // Como argumentos de línea de comandos: pisan application.properties (las propiedades por defecto no).
+        contexto = new SpringApplicationBuilder(Main.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:file:" + directorio.resolve("agencia"),
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.sql.init.mode=never",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        // Nada en segundo plano que toque las tablas mientras se mide.
+                        "--agencia.retencion.habilitada=false",
+                        "--agencia.odometro.completar.habilitado=false",
+                        "--agencia.restricciones.refresco-ms=3600000",
+                        "--agencia.posiciones.ultimas.archivo=",
+                        "--agencia.reportes.trabajos.directorio=" + directorio.resolve("trabajos"),
+                        "--agencia.reportes.kilometraje.paralelismo=4",
+                        "--agencia.reportes.kilometraje.lectores=4");
+        cargar(contexto.getBean(JdbcTemplate.class));
+        reporteService = contexto.getBean(ReporteService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        contexto.close();
+        FileSystemUtils.deleteRecursively(directorio);
+    }
+
+    @Benchmark
+    public long endpointPorPatenteEnBucle() throws IOException {
+        Contador salida = new Contador();
+        for (String patente : patentes) {
+            reporteService.reporteKilometraje(patente, DESDE, HASTA, FormatoReporte.NDJSON).writeTo(salida);
+        }
+        return salida.bytes;
+    }
+
+    @Benchmark
+    public long endpointFlota() throws IOException {
+        Contador salida = new Contador();
+        reporteService.reporteKilometrajeFlota(DESDE, HASTA, FormatoReporte.NDJSON).writeTo(salida);
+        return salida.bytes;
+    }
+
+    // Una prueba por hora desde el inicio del mes; una de cada cuatro sin distancia guardada. Todas tienen su recorrido.
+    private void cargar(JdbcTemplate jdbc) {
+        jdbc.update("INSERT INTO Marcas (ID, NOMBRE) VALUES (1, 'Marca')");
+        jdbc.update("INSERT INTO Modelos (ID, ID_MARCA, DESCRIPCION) VALUES (1, 1, 'Modelo')");
+        jdbc.update("INSERT INTO Empleados (LEGAJO, NOMBRE, APELLIDO, TELEFONO_CONTACTO) VALUES (1, 'Ana', 'Perez', 123)");
+        jdbc.update("INSERT INTO Interesados (ID, TIPO_DOCUMENTO, DOCUMENTO, NOMBRE, APELLIDO, RESTRINGIDO, NRO_LICENCIA, "
+                + "FECHA_VENCIMIENTO_LICENCIA) VALUES (1, 'DNI', '1', 'Juan', 'Gomez', FALSE, 1, TIMESTAMP '2030-01-01 00:00:00')");
+        // El índice que crea DDL.sql para la base SQLite; Hibernate no lo genera.
+        jdbc.execute("CREATE INDEX IF NOT EXISTS Posiciones_VEHICULO_FECHA_IDX ON Posiciones (ID_VEHICULO, FECHA_HORA)");
+
+        Trayectoria recorrido = TrayectoriaBenchmark.recorridoSintetico();
+        patentes = new ArrayList<>(vehiculos);
+        for (int idVehiculo = 1; idVehiculo <= vehiculos; idVehiculo++) {
+            String patente = String.format("AA%03dBB", idVehiculo);
+            patentes.add(patente);
+            jdbc.update("INSERT INTO Vehiculos (ID, PATENTE, ID_MODELO) VALUES (?, ?, 1)", idVehiculo, patente);
+            List<Object[]> pruebas = new ArrayList<>(PRUEBAS_POR_VEHICULO);
+            List<Object[]> posiciones = new ArrayList<>(PRUEBAS_POR_VEHICULO * recorrido.size());
+            for (int i = 0; i < PRUEBAS_POR_VEHICULO; i++) {
+                long inicio = DESDE.getTime() + i * 3_600_000L;
+                pruebas.add(new Object[]{idVehiculo * 1000 + i, idVehiculo, new Timestamp(inicio),
+                        new Timestamp(inicio + 3_600_000L), i % 4 == 0 ? null : 12.5});
+                for (int p = 0; p < recorrido.size(); p++) {
+                    posiciones.add(new Object[]{idVehiculo, inicio + recorrido.getTiempo(p) - recorrido.getTiempo(0),
+                            recorrido.getLatitud(p), recorrido.getLongitud(p)});
+                }
+            }
+            jdbc.batchUpdate("INSERT INTO Pruebas (ID, ID_VEHICULO, ID_INTERESADO, ID_EMPLEADO, FECHA_HORA_INICIO, "
+                    + "FECHA_HORA_FIN, DISTANCIA_KM, INCIDENTE) VALUES (?, ?, 1, 1, ?, ?, ?, FALSE)", pruebas);
+            jdbc.batchUpdate("INSERT INTO Posiciones (ID_VEHICULO, FECHA_HORA, LATITUD, LONGITUD) VALUES (?, ?, ?, ?)",
+                    posiciones);
+        }
+    }
+
+    private static final class Contador extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KilometrajeFlotaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.serializacion.PosicionBinaria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el JSON que usaban los tópicos de Kafka y la ingesta HTTP (el mismo ObjectMapper que usa el JsonSerializer
+ * de Spring Kafka) contra {@link PosicionBinaria}, serializando y deserializando una posición típica.
+ * Los bytes por mensaje de cada formato se imprimen al preparar el estado.
+ * Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PosicionBinariaBenchmark {
+
+    // Sin mensaje: lo que manda el vehículo. Con mensaje: una alerta como las que van a notificaciones.
+    @Param({"false", "true"})
+    public boolean conMensaje;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private PosicionDto posicion;
+    private byte[] json;
+    private byte[] binaria;
+
+    @Setup
+    public void setUp() throws IOException {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(-31.420083);
+        coordenadas.setLon(-64.188776);
+        posicion = new PosicionDto();
+        posicion.setVehiculo(new VehiculoDto(42, "AB123CD", 7L));
+        posicion.setCoordenadas(coordenadas);
+        if (conMensaje) {
+            posicion.setId(18734);
+            posicion.setMensaje("El vehiculo se encuentra en una zona restringida.");
+        }
+        json = objectMapper.writeValueAsBytes(posicion);
+        binaria = PosicionBinaria.codificar(posicion);
+        System.out.println();
+        System.out.println("Bytes por mensaje (conMensaje=" + conMensaje + "): JSON " + json.length + ", binario " + binaria.length);
+    }
+
+    @Benchmark
+    public byte[] jsonSerializar() throws IOException {
+        return objectMapper.writeValueAsBytes(posicion);
+    }
+
+    @Benchmark
+    public byte[] binariaSerializar() {
+        return PosicionBinaria.codificar(posicion);
+    }
+
+    @Benchmark
+    public PosicionDto jsonDeserializar() throws IOException {
+        return objectMapper.readValue(json, PosicionDto.class);
+    }
+
+    @Benchmark
+    public PosicionDto binariaDeserializar() {
+        return PosicionBinaria.decodificar(binaria);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PosicionBinariaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.benchmark;
+
+import org.example.service.trayectoria.Simplificacion;
+import org.example.service.trayectoria.SimplificadorTrayectoria;
+import org.example.service.trayectoria.Trayectoria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simplifica con {@link SimplificadorTrayectoria} una prueba de una hora (720 posiciones, una cada 5 segundos) con
+ * tramos rectos, giros, una parada y ruido de GPS, con las dos medidas y distintas tolerancias.
+ * La compresión (puntos conservados) y el error de kilometraje de cada combinación se imprimen al preparar el estado.
+ * Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrayectoriaBenchmark {
+
+    private static final int CANTIDAD_PUNTOS = 720;
+    private static final double LAT_AGENCIA = -31.4;
+    private static final double LON_AGENCIA = -64.2;
+    private static final double METROS_POR_GRADO_LAT = 111_195;
+
+    @Param({"5", "10", "25"})
+    public double toleranciaMetros;
+
+    private Trayectoria trayectoria;
+
+    @Setup
+    public void setUp() {
+        trayectoria = recorridoSintetico();
+        System.out.println();
+        for (SimplificadorTrayectoria.Medida medida : SimplificadorTrayectoria.Medida.values()) {
+            Simplificacion simplificacion = SimplificadorTrayectoria.simplificacion(trayectoria, toleranciaMetros, medida);
+            System.out.printf("%s, tolerancia %.0f m: %d de %d puntos (%.1fx), error de distancia %.3f%%%n",
+                    medida, toleranciaMetros, simplificacion.conservados(), CANTIDAD_PUNTOS,
+                    (double) CANTIDAD_PUNTOS / simplificacion.conservados(), simplificacion.errorDistancia() * 100);
+        }
+    }
+
+    @Benchmark
+    public int[] espacial() {
+        return SimplificadorTrayectoria.simplificar(trayectoria, toleranciaMetros, SimplificadorTrayectoria.Medida.ESPACIAL);
+    }
+
+    @Benchmark
+    public int[] temporal() {
+        return SimplificadorTrayectoria.simplificar(trayectoria, toleranciaMetros, SimplificadorTrayectoria.Medida.TEMPORAL);
+    }
+
+    // Tramos de 1 a 3 minutos a 30-60 km/h con giros entre ellos, una parada de 2 minutos y ruido de GPS de ~3 m.
+    static Trayectoria recorridoSintetico() {
+        Random random = new Random(11);
+        double metrosPorGradoLon = METROS_POR_GRADO_LAT * Math.cos(Math.toRadians(LAT_AGENCIA));
+        long[] tiempos = new long[CANTIDAD_PUNTOS];
+        double[] lats = new double[CANTIDAD_PUNTOS];
+        double[] lons = new double[CANTIDAD_PUNTOS];
+        double x = 0;
+        double y = 0;
+        double rumbo = 0;
+        double velocidad = 10;
+        int restanteTramo = 0;
+        for (int i = 0; i < CANTIDAD_PUNTOS; i++) {
+            if (restanteTramo-- == 0) {
+                rumbo += (random.nextBoolean() ? 1 : -1) * Math.toRadians(30 + random.nextInt(90));
+                velocidad = 8 + random.nextDouble() * 9;
+                restanteTramo = 12 + random.nextInt(25);
+            }
+            boolean detenido = i >= 300 && i < 324;
+            if (i > 0 && !detenido) {
+                x += Math.cos(rumbo) * velocidad * 5;
+                y += Math.sin(rumbo) * velocidad * 5;
+            }
+            tiempos[i] = 1_700_000_000_000L + i * 5000L;
+            lats[i] = LAT_AGENCIA + (y + random.nextGaussian() * 3) / METROS_POR_GRADO_LAT;
+            lons[i] = LON_AGENCIA + (x + random.nextGaussian() * 3) / metrosPorGradoLon;
+        }
+        return new Trayectoria(tiempos, lats, lons);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TrayectoriaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
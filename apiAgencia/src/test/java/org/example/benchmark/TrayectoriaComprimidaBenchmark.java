@@ -0,0 +1,94 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dtos.TrayectoriaDto;
+import org.example.serializacion.TrayectoriaComprimida;
+import org.example.service.trayectoria.Trayectoria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codifica y decodifica la prueba sintética de {@link TrayectoriaBenchmark} (720 posiciones) con
+ * {@link TrayectoriaComprimida} contra columnas crudas de long/double (24 bytes por punto, como los segmentos del
+ * almacén columnar). Los bytes por punto de cada formato, y del JSON de /trayectoria, se imprimen al preparar el estado.
+ * Para ver las asignaciones por operación correrlo con {@code -prof gc}.
+ * Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrayectoriaComprimidaBenchmark {
+
+    private Trayectoria trayectoria;
+    private byte[] comprimida;
+    private byte[] columnas;
+
+    @Setup
+    public void setUp() throws IOException {
+        trayectoria = TrayectoriaBenchmark.recorridoSintetico();
+        comprimida = TrayectoriaComprimida.codificar(trayectoria);
+        columnas = columnasCodificar();
+        List<TrayectoriaDto.Punto> puntos = new ArrayList<>(trayectoria.size());
+        for (int i = 0; i < trayectoria.size(); i++) {
+            puntos.add(new TrayectoriaDto.Punto(trayectoria.getTiempo(i), trayectoria.getLatitud(i), trayectoria.getLongitud(i)));
+        }
+        int json = new ObjectMapper().writeValueAsBytes(puntos).length;
+        double n = trayectoria.size();
+        System.out.println();
+        System.out.printf("Bytes por punto: JSON %.1f, columnas %.1f, comprimida %.2f%n", json / n, columnas.length / n, comprimida.length / n);
+    }
+
+    @Benchmark
+    public byte[] comprimidaCodificar() {
+        return TrayectoriaComprimida.codificar(trayectoria);
+    }
+
+    @Benchmark
+    public void comprimidaDecodificar(Blackhole blackhole) {
+        TrayectoriaComprimida.Decodificador decodificador = new TrayectoriaComprimida.Decodificador(comprimida);
+        while (decodificador.siguiente()) {
+            blackhole.consume(decodificador.getTiempo());
+            blackhole.consume(decodificador.getLatitud());
+            blackhole.consume(decodificador.getLongitud());
+        }
+    }
+
+    @Benchmark
+    public byte[] columnasCodificar() {
+        int n = trayectoria.size();
+        ByteBuffer buffer = ByteBuffer.allocate(24 * n);
+        for (int i = 0; i < n; i++) {
+            buffer.putLong(8 * i, trayectoria.getTiempo(i));
+            buffer.putDouble(8 * (n + i), trayectoria.getLatitud(i));
+            buffer.putDouble(8 * (2 * n + i), trayectoria.getLongitud(i));
+        }
+        return buffer.array();
+    }
+
+    @Benchmark
+    public void columnasDecodificar(Blackhole blackhole) {
+        ByteBuffer buffer = ByteBuffer.wrap(columnas);
+        int n = columnas.length / 24;
+        for (int i = 0; i < n; i++) {
+            blackhole.consume(buffer.getLong(8 * i));
+            blackhole.consume(buffer.getDouble(8 * (n + i)));
+            blackhole.consume(buffer.getDouble(8 * (2 * n + i)));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TrayectoriaComprimidaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
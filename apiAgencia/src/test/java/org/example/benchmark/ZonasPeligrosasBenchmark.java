@@ -0,0 +1,81 @@
+package org.example.benchmark;
+
+import org.example.dtos.externos.CoordenadasDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+import org.example.service.geocerca.GeoUtils;
+import org.example.service.geocerca.IndiceZonasPeligrosas;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el recorrido lineal de las zonas peligrosas (como lo hacía VehiculoService) contra el índice en grilla.
+ * Ver readmeInteresantes/benchmarks.md para correrlo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZonasPeligrosasBenchmark {
+
+    private static final int CANTIDAD_PUNTOS = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int cantidadZonas;
+
+    private List<ZonaPeligrosaDto> zonas;
+    private IndiceZonasPeligrosas indice;
+    private double[] lats;
+    private double[] lons;
+    private int siguiente;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        zonas = new ArrayList<>(cantidadZonas);
+        for (int i = 0; i < cantidadZonas; i++) {
+            CoordenadasDto coordenadas = new CoordenadasDto();
+            coordenadas.setLatitud(-31.4 + (random.nextDouble() - 0.5));
+            coordenadas.setLongitud(-64.2 + (random.nextDouble() - 0.5));
+            ZonaPeligrosaDto zona = new ZonaPeligrosaDto();
+            zona.setCoordenadas(coordenadas);
+            zona.setRadioMetros(100 + random.nextInt(400));
+            zonas.add(zona);
+        }
+        indice = new IndiceZonasPeligrosas(zonas);
+
+        lats = new double[CANTIDAD_PUNTOS];
+        lons = new double[CANTIDAD_PUNTOS];
+        for (int i = 0; i < CANTIDAD_PUNTOS; i++) {
+            lats[i] = -31.4 + (random.nextDouble() - 0.5);
+            lons[i] = -64.2 + (random.nextDouble() - 0.5);
+        }
+    }
+
+    @Benchmark
+    public boolean recorridoLineal() {
+        int i = siguiente++ & (CANTIDAD_PUNTOS - 1);
+        double lat = lats[i];
+        double lon = lons[i];
+        return zonas.stream().anyMatch(zona -> GeoUtils.distanciaHaversineMetros(lat, lon,
+                zona.getCoordenadas().getLatitud(), zona.getCoordenadas().getLongitud()) <= zona.getRadioMetros());
+    }
+
+    @Benchmark
+    public boolean indiceEnGrilla() {
+        int i = siguiente++ & (CANTIDAD_PUNTOS - 1);
+        return indice.contiene(lats[i], lons[i]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZonasPeligrosasBenchmark.class.getSimpleName()).build()).run();
+    }
+}
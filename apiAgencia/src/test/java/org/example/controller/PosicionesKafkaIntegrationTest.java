@@ -0,0 +1,116 @@
+package org.example.controller;
+
+import org.example.Main;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.dtos.externos.UbicacionDto;
+import org.example.models.Posicion;
+import org.example.models.Vehiculo;
+import org.example.repositories.PosicionRepository;
+import org.example.service.ExternalApisService;
+import org.example.service.RestriccionesService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ingesta por Kafka de punta a punta contra un broker embebido: POST /posiciones/publicar deja la posición en
+ * agencia-posiciones-topic y ConsumidorPosiciones la procesa y la guarda.
+ */
+@SpringBootTest(classes = Main.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "agencia.posiciones.kafka.habilitado=true",
+        "agencia.posiciones.kafka.particiones=3",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3)
+@DirtiesContext
+@Import(DataSetupService.class)
+class PosicionesKafkaIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private PosicionRepository posicionRepository;
+    @Autowired
+    private DataSetupService dataSetupService;
+    @Autowired
+    private RestriccionesService restriccionesService;
+    @MockBean
+    private ExternalApisService externalApiService;
+
+    @Test
+    void publicarPosicion_deberiaResponder202YGuardarlaAlConsumirla() throws InterruptedException {
+        Vehiculo vehiculoDePrueba = dataSetupService.setupDatabase();
+        RestriccionesDto restricciones = new RestriccionesDto();
+        restricciones.setRadioMaximoMetros(1000000.0);
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        restricciones.setUbicacionAgencia(ubicacion);
+        restricciones.setZonasPeligrosas(List.of());
+        when(externalApiService.getRestricciones()).thenReturn(Mono.just(restricciones));
+        restriccionesService.refrescar().block();
+
+        for (int i = 1; i <= 3; i++) {
+            webTestClient.post().uri("/api/vehiculos/posiciones/publicar")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(posicion(vehiculoDePrueba.getId(), 0.001 * i))
+                    .exchange()
+                    .expectStatus().isAccepted();
+        }
+        // Vehículo inexistente: se acepta en el tópico, pero el consumidor la rechaza y no se guarda.
+        webTestClient.post().uri("/api/vehiculos/posiciones/publicar")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(posicion(-1, 0.001))
+                .exchange()
+                .expectStatus().isAccepted();
+
+        long limite = System.currentTimeMillis() + 30000;
+        while (posicionRepository.count() < 3 && System.currentTimeMillis() < limite) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(500);
+
+        List<Posicion> guardadas = posicionRepository.findAll();
+        assertThat(guardadas).hasSize(3);
+        // Mismo vehículo, misma partición: se guardan en el orden en que se publicaron.
+        assertThat(guardadas.stream().map(Posicion::getLatitud).toList()).containsExactly(0.001, 0.002, 0.003);
+    }
+
+    @Test
+    void publicarPosicion_sinVehiculo_deberiaRetornar400() {
+        PosicionDto sinVehiculo = posicion(1, 0.001);
+        sinVehiculo.setVehiculo(null);
+
+        webTestClient.post().uri("/api/vehiculos/posiciones/publicar")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(sinVehiculo)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private static PosicionDto posicion(Integer idVehiculo, double lat) {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(lat);
+        coordenadas.setLon(0.0);
+        PosicionDto posicion = new PosicionDto();
+        posicion.setVehiculo(new VehiculoDto(idVehiculo, null, null));
+        posicion.setCoordenadas(coordenadas);
+        return posicion;
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dtos.MensajePosicionDto;
+import org.example.dtos.PosicionDto;
+import org.example.service.MetricasEtapas;
+import org.example.service.VehiculoService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PosicionesWebSocketHandlerTest {
+
+    @Mock
+    private VehiculoService vehiculoService;
+    @Mock
+    private WebSocketSession session;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Object> atributos = new HashMap<>();
+    private final List<JsonNode> confirmaciones = new CopyOnWriteArrayList<>();
+    private PosicionesWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        handler = new PosicionesWebSocketHandler(vehiculoService, new MetricasEtapas(), objectMapper);
+        ReflectionTestUtils.setField(handler, "maxEnCurso", 2);
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/api/vehiculos/posiciones/stream?idVehiculo=1"));
+        when(session.getAttributes()).thenReturn(atributos);
+        lenient().when(session.isOpen()).thenReturn(true);
+        lenient().doAnswer(invocacion -> {
+            TextMessage mensaje = invocacion.getArgument(0);
+            confirmaciones.add(objectMapper.readTree(mensaje.getPayload()));
+            return null;
+        }).when(session).sendMessage(any());
+        handler.afterConnectionEstablished(session);
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    }
+
+    @Test
+    void handleTextMessage_deberiaProcesarLasPosicionesDeLaConexionDeAUnaYEnOrden() throws Exception {
+        List<Sinks.One<PosicionDto>> enCurso = new ArrayList<>();
+        when(vehiculoService.procesarPosicion(any())).thenAnswer(invocacion -> {
+            Sinks.One<PosicionDto> resultado = Sinks.one();
+            enCurso.add(resultado);
+            return resultado.asMono().map(p -> invocacion.<PosicionDto>getArgument(0));
+        });
+
+        enviar(1);
+        enviar(2);
+
+        // La segunda no empieza hasta que termina la primera.
+        verify(vehiculoService, times(1)).procesarPosicion(any());
+        enCurso.get(0).tryEmitValue(new PosicionDto());
+        verify(vehiculoService, timeout(1000).times(2)).procesarPosicion(any());
+        enCurso.get(1).tryEmitValue(new PosicionDto());
+
+        esperarConfirmaciones(2);
+        assertEquals(1, confirmaciones.get(0).get("secuencia").asLong());
+        assertEquals(2, confirmaciones.get(1).get("secuencia").asLong());
+    }
+
+    @Test
+    void handleTextMessage_conLaColaLlena_deberiaResponderOcupadoSinEsperar() throws Exception {
+        when(vehiculoService.procesarPosicion(any())).thenReturn(Mono.never());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            for (long secuencia = 1; secuencia <= 10; secuencia++) {
+                enviar(secuencia);
+            }
+        });
+
+        assertFalse(confirmaciones.isEmpty());
+        for (JsonNode confirmacion : confirmaciones) {
+            assertEquals(PosicionesWebSocketHandler.OCUPADO, confirmacion.get("error").asText());
+        }
+        // La última siempre entra en la cola llena: se rechaza.
+        assertEquals(10, confirmaciones.get(confirmaciones.size() - 1).get("secuencia").asLong());
+        verify(session, never()).close(any());
+    }
+
+    private void enviar(long secuencia) throws Exception {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(0.001);
+        coordenadas.setLon(0.001);
+        PosicionDto posicion = new PosicionDto();
+        posicion.setCoordenadas(coordenadas);
+        handler.handleTextMessage(session, new TextMessage(objectMapper.writeValueAsString(new MensajePosicionDto(secuencia, posicion))));
+    }
+
+    private void esperarConfirmaciones(int cantidad) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (confirmaciones.size() < cantidad && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(cantidad, confirmaciones.size());
+    }
+}
@@ -133,9 +133,9 @@ public class PruebaControllerIntegrationTest {
         // Usamos las entidades creadas en el método @BeforeEach para crear dos pruebas.
         // La anotación @Transactional se encargará de limpiar esto después del test.
         Prueba prueba1 = new Prueba(null, vehiculoDePrueba, interesadoDePrueba, empleadoDePrueba, new Date(), null,
-                "Comentarios prueba 1", false);
+                "Comentarios prueba 1", false, null);
         Prueba prueba2 = new Prueba(null, vehiculoDePrueba, interesadoDePrueba, empleadoDePrueba, new Date(),
-                new Date(), "Comentarios prueba 2 finalizada", false);
+                new Date(), "Comentarios prueba 2 finalizada", false, null);
         pruebaRepository.save(prueba1);
         pruebaRepository.save(prueba2);
 
@@ -407,7 +407,7 @@ public class PruebaControllerIntegrationTest {
     void finalizarPrueba_cuandoPruebaExisteYEstaEnCurso_deberiaRetornar200OkConPruebaActualizada() throws Exception {
         // 1. Arrange: Creamos una prueba "en curso" en la BD.
         Prueba pruebaEnCurso = new Prueba(null, vehiculoDePrueba, interesadoDePrueba, empleadoDePrueba, new Date(),
-                null, null, null);
+                null, null, null, null);
         pruebaEnCurso = pruebaRepository.save(pruebaEnCurso);
         String comentario = "El cliente quedó muy satisfecho con el rendimiento.";
 
@@ -439,7 +439,7 @@ public class PruebaControllerIntegrationTest {
     void finalizarPrueba_cuandoPruebaYaEstaFinalizada_deberiaRetornar400BadRequest() throws Exception {
         // 1. Arrange: Creamos una prueba que YA tiene una fecha de fin.
         Prueba pruebaYaFinalizada = new Prueba(null, vehiculoDePrueba, interesadoDePrueba, empleadoDePrueba,
-                new Date(), new Date(), "Prueba finalizada previamente.", null);
+                new Date(), new Date(), "Prueba finalizada previamente.", null, null);
         pruebaYaFinalizada = pruebaRepository.save(pruebaYaFinalizada);
         String nuevoComentario = "Intentando finalizar de nuevo.";
 
@@ -1,20 +1,43 @@
 package org.example.controller;
 
+import org.example.dtos.ResumenFlotaDto;
+import org.example.dtos.TotalesFlotaDto;
+import org.example.dtos.TrabajoReporteDto;
 import org.example.service.ReporteService;
+import org.example.service.ResumenesDiarios;
+import org.example.service.TrabajosReporte;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.reporte.PedidoReporte;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import static org.mockito.ArgumentMatchers.anyLong;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
 
@@ -27,23 +50,65 @@ class ReporteControllerTest {
     @MockBean
     private ReporteService reporteService;
 
+    @MockBean
+    private ResumenesDiarios resumenesDiarios;
+
+    @MockBean
+    private TrabajosReporte trabajosReporte;
+
     @Test
     void getReportePruebasConIncidentes_deberiaRetornarReporteDesdeServicio() throws Exception {
         String reporteSimulado = "Reporte de todos los incidentes.";
-        when(reporteService.generarReporteIncidentes()).thenReturn(reporteSimulado);
+        when(reporteService.reporteIncidentes(FormatoReporte.TEXT)).thenReturn(reporte(reporteSimulado));
+
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/incidentes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andExpect(content().string(reporteSimulado));
+    }
 
-        mockMvc.perform(get("/api/reportes/incidentes"))
+    @Test
+    void getReportePruebasConIncidentes_enCsv_deberiaPedirElFormatoAlServicio() throws Exception {
+        String reporteSimulado = "id,patente\r\n100,AB123CD\r\n";
+        when(reporteService.reporteIncidentes(FormatoReporte.CSV)).thenReturn(reporte(reporteSimulado));
+
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/incidentes").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
                 .andExpect(content().string(reporteSimulado));
     }
 
+    @Test
+    void getReportePruebasConIncidentes_conFormatoDesconocido_deberiaRetornarBadRequest() throws Exception {
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/incidentes").param("format", "xml"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Formato de reporte desconocido: xml (text, csv o ndjson)."));
+        verifyNoInteractions(reporteService);
+    }
+
     @Test
     void getReporteIncidentesPorEmpleado_cuandoEmpleadoExiste_deberiaRetornarReporte() throws Exception {
         Long legajoExistente = 123L;
         String reporteSimulado = "Reporte para el empleado " + legajoExistente;
-        when(reporteService.generarReporteIncidentesPorEmpleado(legajoExistente)).thenReturn(reporteSimulado);
+        when(reporteService.reporteIncidentesPorEmpleado(legajoExistente, FormatoReporte.TEXT)).thenReturn(reporte(reporteSimulado));
 
-        mockMvc.perform(get("/api/reportes/incidentes/empleado/{legajo}", legajoExistente))
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/incidentes/empleado/{legajo}", legajoExistente))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isOk())
                 .andExpect(content().string(reporteSimulado));
     }
@@ -52,9 +117,14 @@ class ReporteControllerTest {
     void getReporteIncidentesPorEmpleado_cuandoEmpleadoNoExiste_deberiaRetornarNotFound() throws Exception {
         Long legajoInexistente = 999L;
         String mensajeError = "Empleado no encontrado";
-        when(reporteService.generarReporteIncidentesPorEmpleado(legajoInexistente)).thenReturn(mensajeError);
+        when(reporteService.reporteIncidentesPorEmpleado(legajoInexistente, FormatoReporte.TEXT))
+                .thenThrow(new IllegalArgumentException(mensajeError));
+
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/incidentes/empleado/{legajo}", legajoInexistente))
+                .andExpect(status().isNotFound())
+                .andReturn();
 
-        mockMvc.perform(get("/api/reportes/incidentes/empleado/{legajo}", legajoInexistente))
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isNotFound())
                 .andExpect(content().string(mensajeError));
     }
@@ -63,9 +133,13 @@ class ReporteControllerTest {
     void getReporteDePruebasPorVehiculo_cuandoVehiculoExiste_deberiaRetornarReporte() throws Exception {
         String patenteExistente = "ABC123";
         String reporteSimulado = "Reporte para el vehiculo " + patenteExistente;
-        when(reporteService.generarReportePruebasPorVehiculo(anyString())).thenReturn(reporteSimulado);
+        when(reporteService.reportePruebasPorVehiculo(anyString(), any(FormatoReporte.class))).thenReturn(reporte(reporteSimulado));
+
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/vehiculo/{patente}", patenteExistente))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(get("/api/reportes/vehiculo/{patente}", patenteExistente))
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isOk())
                 .andExpect(content().string(reporteSimulado));
     }
@@ -74,9 +148,14 @@ class ReporteControllerTest {
     void getReporteDePruebasPorVehiculo_cuandoVehiculoNoExiste_deberiaRetornarNotFound() throws Exception {
         String patenteInexistente = "XYZ987";
         String mensajeError = "Vehículo no encontrado";
-        when(reporteService.generarReportePruebasPorVehiculo(patenteInexistente)).thenReturn(mensajeError);
+        when(reporteService.reportePruebasPorVehiculo(patenteInexistente, FormatoReporte.TEXT))
+                .thenThrow(new IllegalArgumentException(mensajeError));
 
-        mockMvc.perform(get("/api/reportes/vehiculo/{patente}", patenteInexistente))
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/vehiculo/{patente}", patenteInexistente))
+                .andExpect(status().isNotFound())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isNotFound())
                 .andExpect(content().string(mensajeError));
     }
@@ -86,15 +165,180 @@ class ReporteControllerTest {
         String patente = "AA111AA";
         String fechaInicio = "2025-10-15";
         String fechaFin = "2025-10-15";
-        String reporteSimulado = "Reporte de KM para " + patente;
+        String reporteSimulado = "{\"patente\":\"" + patente + "\",\"kilometraje\":3.25}\n";
 
-        when(reporteService.generarReporteKilometraje(anyString(), any(Date.class), any(Date.class)))
-                .thenReturn(reporteSimulado);
+        when(reporteService.reporteKilometraje(anyString(), any(Date.class), any(Date.class), eq(FormatoReporte.NDJSON)))
+                .thenReturn(reporte(reporteSimulado));
 
-        mockMvc.perform(get("/api/reportes/kilometraje/{patente}", patente)
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/kilometraje/{patente}", patente)
                         .param("fechaInicio", fechaInicio)
-                        .param("fechaFin", fechaFin))
+                        .param("fechaFin", fechaFin)
+                        .param("format", "ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
                 .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
                 .andExpect(content().string(reporteSimulado));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void getResumenFlota_deberiaRetornarLosTotalesDeLosResumenes() throws Exception {
+        TotalesFlotaDto totales = new TotalesFlotaDto();
+        totales.setPruebasFinalizadas(4);
+        totales.setDistanciaKm(37.5);
+        ResumenFlotaDto resumen = new ResumenFlotaDto();
+        resumen.setFechaInicio(LocalDate.of(2025, 10, 1));
+        resumen.setFechaFin(LocalDate.of(2025, 10, 31));
+        resumen.setTotales(totales);
+        resumen.setVehiculos(List.of());
+        when(resumenesDiarios.resumenFlota(LocalDate.of(2025, 10, 1), LocalDate.of(2025, 10, 31))).thenReturn(resumen);
+
+        mockMvc.perform(get("/api/reportes/flota")
+                        .param("fechaInicio", "2025-10-01")
+                        .param("fechaFin", "2025-10-31"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fechaInicio").value("2025-10-01"))
+                .andExpect(jsonPath("$.totales.pruebasFinalizadas").value(4))
+                .andExpect(jsonPath("$.totales.distanciaKm").value(37.5));
+    }
+
+    @Test
+    void getResumenFlota_conPeriodoInvertido_deberiaRetornarBadRequest() throws Exception {
+        when(resumenesDiarios.resumenFlota(any(LocalDate.class), any(LocalDate.class)))
+                .thenThrow(new IllegalArgumentException("La fecha de inicio es posterior a la fecha de fin."));
+
+        mockMvc.perform(get("/api/reportes/flota")
+                        .param("fechaInicio", "2025-10-31")
+                        .param("fechaFin", "2025-10-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getReporteKilometrajeFlota_deberiaRetornarReporteDesdeServicio() throws Exception {
+        String reporteSimulado = "patente,pruebas,kilometraje\r\nAA111AA,1,3.25\r\nTOTAL,1,3.25\r\n";
+        when(reporteService.reporteKilometrajeFlota(any(Date.class), any(Date.class), eq(FormatoReporte.CSV)))
+                .thenReturn(reporte(reporteSimulado));
+
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/kilometraje")
+                        .param("fechaInicio", "2025-10-01")
+                        .param("fechaFin", "2025-10-31")
+                        .param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(reporteSimulado));
+    }
+
+    @Test
+    void getReporteKilometrajeFlota_conPeriodoInvertido_deberiaRetornarBadRequest() throws Exception {
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/kilometraje")
+                        .param("fechaInicio", "2025-10-31")
+                        .param("fechaFin", "2025-10-01"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("La fecha de inicio es posterior a la fecha de fin."));
+        verifyNoInteractions(reporteService);
+    }
+
+    @Test
+    void getReporteKilometraje_conPeriodoInvertido_deberiaRetornarBadRequest() throws Exception {
+        MvcResult resultado = mockMvc.perform(get("/api/reportes/kilometraje/AB123CD")
+                        .param("fechaInicio", "2025-10-31")
+                        .param("fechaFin", "2025-10-01"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("La fecha de inicio es posterior a la fecha de fin."));
+        verifyNoInteractions(reporteService);
+    }
+
+    @Test
+    void enviarTrabajo_deberiaEncolarElPedidoYRetornarAccepted() throws Exception {
+        PedidoReporte pedido = new PedidoReporte(PedidoReporte.Tipo.KILOMETRAJE, null, "AB123CD",
+                LocalDate.of(2025, 10, 1), LocalDate.of(2025, 10, 31), FormatoReporte.CSV);
+        when(trabajosReporte.enviar(pedido)).thenReturn(trabajo("t-1", "EN_COLA"));
+
+        mockMvc.perform(post("/api/reportes/jobs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tipo\":\"kilometraje\",\"patente\":\"AB123CD\",\"fechaInicio\":\"2025-10-01\"," +
+                                "\"fechaFin\":\"2025-10-31\",\"format\":\"csv\",\"legajo\":7}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/reportes/jobs/t-1"))
+                .andExpect(jsonPath("$.estado").value("EN_COLA"))
+                .andExpect(jsonPath("$.descarga").doesNotExist());
+    }
+
+    @Test
+    void enviarTrabajo_sinPatente_deberiaRetornarBadRequest() throws Exception {
+        mockMvc.perform(post("/api/reportes/jobs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tipo\":\"pruebas_vehiculo\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("El reporte de pruebas_vehiculo necesita la patente."));
+        verifyNoInteractions(trabajosReporte);
+    }
+
+    @Test
+    void enviarTrabajo_conLaColaLlena_deberiaRetornarServiceUnavailable() throws Exception {
+        when(trabajosReporte.enviar(any(PedidoReporte.class)))
+                .thenThrow(new IllegalStateException("Hay demasiados reportes en espera; intentar de nuevo en unos minutos."));
+
+        mockMvc.perform(post("/api/reportes/jobs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tipo\":\"incidentes\"}"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void getTrabajo_terminado_deberiaIncluirLaDescarga() throws Exception {
+        when(trabajosReporte.consultar("t-1")).thenReturn(Optional.of(trabajo("t-1", "TERMINADO")));
+        when(trabajosReporte.consultar("t-2")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/reportes/jobs/{id}", "t-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.descarga").value("/api/reportes/jobs/t-1/descarga"));
+        mockMvc.perform(get("/api/reportes/jobs/{id}", "t-2"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void descargarTrabajo_deberiaServirElArchivoOConflictSiNoTermino() throws Exception {
+        Path archivo = Files.createTempFile("t-1", ".csv");
+        Files.writeString(archivo, "id,patente\r\n");
+        when(trabajosReporte.archivo("t-1")).thenReturn(new TrabajosReporte.Archivo(archivo, FormatoReporte.CSV));
+        when(trabajosReporte.archivo("t-2")).thenThrow(new IllegalStateException("El reporte t-2 no está terminado (EN_CURSO)."));
+
+        try {
+            mockMvc.perform(get("/api/reportes/jobs/{id}/descarga", "t-1"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                    .andExpect(header().string("Content-Disposition", startsWith("attachment")))
+                    .andExpect(content().string("id,patente\r\n"));
+            mockMvc.perform(get("/api/reportes/jobs/{id}/descarga", "t-2"))
+                    .andExpect(status().isConflict());
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    private static TrabajoReporteDto trabajo(String id, String estado) {
+        TrabajoReporteDto trabajo = new TrabajoReporteDto();
+        trabajo.setId(id);
+        trabajo.setEstado(estado);
+        return trabajo;
+    }
+
+    private static StreamingResponseBody reporte(String contenido) {
+        return salida -> salida.write(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,6 +1,9 @@
 package org.example.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.Main;
+import org.example.dtos.MensajePosicionDto;
 import org.example.dtos.PosicionDto;
 import org.example.dtos.VehiculoDto;
 import org.example.dtos.externos.CoordenadasDto;
@@ -9,10 +12,14 @@ import org.example.dtos.externos.UbicacionDto;
 import org.example.dtos.externos.ZonaPeligrosaDto;
 import org.example.models.*;
 import org.example.repositories.*;
+import org.example.serializacion.PosicionBinaria;
+import org.example.serializacion.PosicionBinariaHttpMessageConverter;
 import org.example.service.ExternalApisService;
+import org.example.service.RestriccionesService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
@@ -21,10 +28,19 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
 import reactor.core.publisher.Mono;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
@@ -45,6 +61,15 @@ class VehiculoControllerIntegrationTest {
     @MockBean
     private ExternalApisService externalApiService;
 
+    // Las posiciones leen las restricciones de la foto en memoria, así que después de configurar el mock
+    // forzamos un refresco para que cada test trabaje con sus propias restricciones.
+    @Autowired
+    private RestriccionesService restriccionesService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @LocalServerPort
+    private int puerto;
+
     @Test
     void procesarPosicion_conDatosValidos_deberiaGuardarPosicionYRetornar200Ok() {
         // --- 1. Arrange (Preparar) ---
@@ -65,6 +90,7 @@ class VehiculoControllerIntegrationTest {
         // Le decimos al mock que cuando se llame a `getRestricciones`, devuelva nuestro objeto.
         // Es más directo y fiable que simular una respuesta HTTP.
         when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
 
         // d) Preparamos la petición de entrada.
         PosicionDto posicionEntrada = crearPosicionDto(vehiculoDePrueba.getId(), 0.001, 0.001);
@@ -76,10 +102,43 @@ class VehiculoControllerIntegrationTest {
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody()
-                .jsonPath("$.mensaje").isEqualTo("La posicion actual del vehiculo fue registrada.");
+                .jsonPath("$.mensaje").isEqualTo("La posicion actual del vehiculo fue registrada.")
+                // El perfil de test usa durabilidad SINCRONA: la respuesta llega después del commit, con el id.
+                .jsonPath("$.id").isNotEmpty();
 
         // Verificamos que se guardó en la BD.
         assertThat(posicionRepository.count()).isEqualTo(1);
+
+        // Y que quedó como la última posición conocida del vehículo, que se responde desde memoria.
+        webTestClient.get().uri("/api/vehiculos/{id}/ultima-posicion", vehiculoDePrueba.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.patente").isEqualTo(vehiculoDePrueba.getPatente())
+                .jsonPath("$.latitud").isEqualTo(0.001);
+        webTestClient.get().uri("/api/vehiculos/posiciones/actuales")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[?(@.idVehiculo == " + vehiculoDePrueba.getId() + ")].longitud").isEqualTo(0.001);
+        webTestClient.get().uri("/api/vehiculos/{id}/ultima-posicion", -1)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void findUltimasDeVehiculosEnPrueba_deberiaElegirLaDeFechaMasRecienteYNoLaUltimaEnLlegar() {
+        Vehiculo vehiculo = dataSetupService.setupDatabase();
+        posicionRepository.save(new Posicion(null, vehiculo, 3000L, -31.1, -64.0));
+        // Con la misma fecha gana la de mayor id; una atrasada que llega después no.
+        posicionRepository.save(new Posicion(null, vehiculo, 3000L, -31.2, -64.0));
+        posicionRepository.save(new Posicion(null, vehiculo, 1000L, -31.3, -64.0));
+
+        List<Posicion> ultimas = posicionRepository.findUltimasDeVehiculosEnPrueba();
+
+        assertThat(ultimas).hasSize(1);
+        assertThat(ultimas.get(0).getFechaHora()).isEqualTo(3000L);
+        assertThat(ultimas.get(0).getLatitud()).isEqualTo(-31.2);
     }
 
     @Test
@@ -99,6 +158,7 @@ class VehiculoControllerIntegrationTest {
         // Le decimos al mock que cuando se llame a `getRestricciones`, devuelva nuestro objeto.
         // Es más directo y fiable que simular una respuesta HTTP.
         when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
 
 
         PosicionDto posicionEntrada = crearPosicionDto(vehiculoDePrueba.getId(), 10, 10); // Posición lejana
@@ -141,6 +201,7 @@ class VehiculoControllerIntegrationTest {
 
         // 3. ¡EL CAMBIO CLAVE! En lugar de MockWebServer, le decimos al mock del servicio qué devolver.
         when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
 
         // 4. Preparamos la petición con una posición que está EXACTAMENTE en el centro de la zona restringida.
         PosicionDto posicionEntrada = crearPosicionDto(vehiculoDePrueba.getId(), 0.1, 0.1);
@@ -155,6 +216,162 @@ class VehiculoControllerIntegrationTest {
                 .jsonPath("$.mensaje").isEqualTo("La posicion actual del vehiculo se encuentra dentro de un area restringida.");
     }
 
+    @Test
+    void procesarLotePosiciones_conPosicionesMixtas_deberiaRetornarUnResultadoPorPosicion() {
+        Vehiculo vehiculoDePrueba = dataSetupService.setupDatabase();
+
+        RestriccionesDto restriccionesMock = new RestriccionesDto();
+        restriccionesMock.setRadioMaximoMetros(1000000.0); // 1000 km de radio
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        restriccionesMock.setUbicacionAgencia(ubicacion);
+        ZonaPeligrosaDto zona = new ZonaPeligrosaDto();
+        CoordenadasDto coordenadasZona = new CoordenadasDto();
+        coordenadasZona.setLatitud(0.1);
+        coordenadasZona.setLongitud(0.1);
+        zona.setCoordenadas(coordenadasZona);
+        zona.setRadioMetros(1000);
+        restriccionesMock.setZonasPeligrosas(List.of(zona));
+        when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
+
+        List<PosicionDto> lote = List.of(
+                crearPosicionDto(vehiculoDePrueba.getId(), 0.001, 0.001), // registrada
+                crearPosicionDto(vehiculoDePrueba.getId(), 10, 10),       // fuera del radio
+                crearPosicionDto(vehiculoDePrueba.getId(), 0.1, 0.1),     // en la zona
+                crearPosicionDto(-1, 0.001, 0.001)                        // vehículo inexistente
+        );
+
+        webTestClient.post().uri("/api/vehiculos/posiciones/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(lote)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(4)
+                .jsonPath("$[0].estado").isEqualTo("REGISTRADA")
+                .jsonPath("$[0].patente").isEqualTo(vehiculoDePrueba.getPatente())
+                .jsonPath("$[1].estado").isEqualTo("FUERA_DE_RADIO")
+                .jsonPath("$[2].estado").isEqualTo("EN_ZONA_RESTRINGIDA")
+                .jsonPath("$[3].estado").isEqualTo("RECHAZADA")
+                .jsonPath("$[3].mensaje").isEqualTo("Vehículo no encontrado");
+
+        // Solo las tres posiciones del vehículo en prueba se guardan.
+        assertThat(posicionRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void procesarLotePosiciones_conLoteVacio_deberiaRetornar400() {
+        webTestClient.post().uri("/api/vehiculos/posiciones/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of())
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void procesarPosicion_enFormatoBinario_deberiaResponderEnBinarioSiSeLoPide() {
+        Vehiculo vehiculoDePrueba = dataSetupService.setupDatabase();
+        RestriccionesDto restriccionesMock = new RestriccionesDto();
+        restriccionesMock.setRadioMaximoMetros(1000000.0);
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        restriccionesMock.setUbicacionAgencia(ubicacion);
+        restriccionesMock.setZonasPeligrosas(List.of());
+        when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
+
+        byte[] respuesta = webTestClient.post().uri("/api/vehiculos/posicion/new")
+                .contentType(PosicionBinariaHttpMessageConverter.MEDIA_TYPE)
+                .accept(PosicionBinariaHttpMessageConverter.MEDIA_TYPE)
+                .bodyValue(PosicionBinaria.codificar(crearPosicionDto(vehiculoDePrueba.getId(), 0.001, 0.001)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(PosicionBinariaHttpMessageConverter.MEDIA_TYPE)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        PosicionDto procesada = PosicionBinaria.decodificar(respuesta);
+        assertThat(procesada.getMensaje()).isEqualTo("La posicion actual del vehiculo fue registrada.");
+        assertThat(procesada.getVehiculo().getPatente()).isEqualTo(vehiculoDePrueba.getPatente());
+
+        // Un lote en binario son las posiciones una detrás de otra; la respuesta sigue siendo JSON.
+        byte[] primera = PosicionBinaria.codificar(crearPosicionDto(vehiculoDePrueba.getId(), 0.002, 0.002));
+        byte[] segunda = PosicionBinaria.codificar(crearPosicionDto(vehiculoDePrueba.getId(), 10, 10));
+        byte[] lote = new byte[primera.length + segunda.length];
+        System.arraycopy(primera, 0, lote, 0, primera.length);
+        System.arraycopy(segunda, 0, lote, primera.length, segunda.length);
+        webTestClient.post().uri("/api/vehiculos/posiciones/batch")
+                .contentType(PosicionBinariaHttpMessageConverter.MEDIA_TYPE)
+                .bodyValue(lote)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].estado").isEqualTo("FUERA_DE_RADIO");
+
+        assertThat(posicionRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void procesarPosicion_conBinarioInvalido_deberiaRetornar400() {
+        webTestClient.post().uri("/api/vehiculos/posicion/new")
+                .contentType(PosicionBinariaHttpMessageConverter.MEDIA_TYPE)
+                .bodyValue(new byte[]{PosicionBinaria.MARCA, PosicionBinaria.VERSION, 0x02, 0x00})
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void streamPosiciones_deberiaConfirmarCadaPosicionConElMismoVeredictoQuePost() throws Exception {
+        Vehiculo vehiculoDePrueba = dataSetupService.setupDatabase();
+        RestriccionesDto restriccionesMock = new RestriccionesDto();
+        restriccionesMock.setRadioMaximoMetros(1000000.0);
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        restriccionesMock.setUbicacionAgencia(ubicacion);
+        restriccionesMock.setZonasPeligrosas(List.of());
+        when(externalApiService.getRestricciones()).thenReturn(Mono.just(restriccionesMock));
+        restriccionesService.refrescar().block();
+
+        // La conexión queda atada al vehículo: las posiciones no necesitan indicarlo.
+        BlockingQueue<String> confirmaciones = new LinkedBlockingQueue<>();
+        WebSocketSession sesion = new StandardWebSocketClient().execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                confirmaciones.add(message.getPayload());
+            }
+        }, "ws://localhost:" + puerto + "/api/vehiculos/posiciones/stream?idVehiculo=" + vehiculoDePrueba.getId()).get(5, TimeUnit.SECONDS);
+
+        for (long secuencia = 1; secuencia <= 3; secuencia++) {
+            sesion.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                    new MensajePosicionDto(secuencia, crearPosicionDto(null, 0.001, 0.001)))));
+        }
+        sesion.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                new MensajePosicionDto(4L, crearPosicionDto(vehiculoDePrueba.getId() + 1, 0.001, 0.001)))));
+        sesion.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                new MensajePosicionDto(5L, crearPosicionDto(null, 10, 10)))));
+
+        Map<Long, JsonNode> porSecuencia = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            String confirmacion = confirmaciones.poll(10, TimeUnit.SECONDS);
+            assertThat(confirmacion).as("confirmación %d", i + 1).isNotNull();
+            JsonNode json = objectMapper.readTree(confirmacion);
+            porSecuencia.put(json.get("secuencia").asLong(), json);
+        }
+        sesion.close();
+
+        for (long secuencia = 1; secuencia <= 3; secuencia++) {
+            assertThat(porSecuencia.get(secuencia).at("/posicion/mensaje").asText()).isEqualTo("La posicion actual del vehiculo fue registrada.");
+            assertThat(porSecuencia.get(secuencia).at("/posicion/vehiculo/patente").asText()).isEqualTo(vehiculoDePrueba.getPatente());
+        }
+        assertThat(porSecuencia.get(4L).get("error").asText()).contains("no puede enviar posiciones de otro vehículo");
+        assertThat(porSecuencia.get(5L).at("/posicion/mensaje").asText())
+                .isEqualTo("La posicion actual del vehiculo se encuentra por fuera del radio permitido por la agencia.");
+        assertThat(posicionRepository.count()).isEqualTo(4);
+    }
 
     private PosicionDto crearPosicionDto(Integer vehiculoId, double lat, double lon) {
         PosicionDto dto = new PosicionDto();
@@ -203,7 +420,7 @@ class DataSetupService {
         String documentoUnico = "DOC" + System.currentTimeMillis();
         Interesado i = interesadoRepository.save(new Interesado(null, "DNI", documentoUnico, "Pepe", "Prueba", false, 54321, new Date(System.currentTimeMillis() + 10000000), null));
 
-        pruebaRepository.save(new Prueba(null, v, i, e, new Date(), null, "Prueba en curso para el test", null));
+        pruebaRepository.save(new Prueba(null, v, i, e, new Date(), null, "Prueba en curso para el test", null, null));
 
         return v;
     }
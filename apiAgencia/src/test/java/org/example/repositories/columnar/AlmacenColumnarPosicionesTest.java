@@ -0,0 +1,203 @@
+package org.example.repositories.columnar;
+
+import org.example.models.Posicion;
+import org.example.models.Vehiculo;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.VehiculoRepository;
+import org.example.service.trayectoria.Trayectoria;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlmacenColumnarPosicionesTest {
+
+    private static final long DIA = TimeUnit.DAYS.toMillis(1);
+
+    @TempDir
+    Path directorio;
+    @Mock
+    private PosicionRepository posicionRepository;
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+
+    private AlmacenColumnarPosiciones almacen;
+    // Comienzo del día siguiente al que se abrió el almacén: todo lo que se registre desde ahí está en los segmentos.
+    private long manana;
+
+    @BeforeEach
+    void setUp() {
+        almacen = abrir();
+        manana = (Math.floorDiv(almacen.getInicioMillis(), DIA) + 1) * DIA;
+    }
+
+    @AfterEach
+    void tearDown() {
+        almacen.cerrar();
+    }
+
+    @Test
+    void buscarTrayectoria_deberiaDevolverSoloElRangoPedidoEnOrden() {
+        almacen.registrar(recorrido(7, manana, 100));
+        almacen.registrar(recorrido(8, manana, 100));
+
+        Trayectoria trayectoria = almacen.buscarTrayectoria(7, manana + 10 * 5000, manana + 19 * 5000);
+
+        assertEquals(10, trayectoria.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(manana + (10 + i) * 5000L, trayectoria.getTiempo(i));
+            assertEquals(latitud(7, 10 + i), trayectoria.getLatitud(i));
+        }
+        assertEquals(0, almacen.buscarTrayectoria(9, manana, manana + DIA).size());
+        verifyNoInteractions(posicionRepository);
+    }
+
+    @Test
+    void registrar_deberiaCrearUnSegmentoPorDiaYAlLlenarse() {
+        // 3 días con 40 posiciones cada uno y segmentos de 32: dos segmentos por día.
+        for (int dia = 0; dia < 3; dia++) {
+            almacen.registrar(recorrido(7, manana + dia * DIA, 40));
+        }
+
+        assertEquals(6, almacen.cantidadSegmentos(7));
+        Trayectoria segundoDia = almacen.buscarTrayectoria(7, manana + DIA, manana + 2 * DIA - 1);
+        assertEquals(40, segundoDia.size());
+        assertEquals(manana + DIA, segundoDia.getTiempo(0));
+    }
+
+    @Test
+    void reabrir_deberiaConservarLoEscritoYSeguirEnElMismoSegmento() {
+        almacen.registrar(recorrido(7, manana, 10));
+        almacen.cerrar();
+
+        almacen = abrir();
+        almacen.registrar(recorrido(7, manana + 10 * 5000, 10));
+
+        Trayectoria trayectoria = almacen.buscarTrayectoria(7, manana, manana + DIA);
+        assertEquals(20, trayectoria.size());
+        assertEquals(manana + 19 * 5000L, trayectoria.getTiempo(19));
+    }
+
+    @Test
+    void buscarTrayectoria_conUnaPosicionAtrasada_deberiaDevolverlaEnOrden() {
+        List<Posicion> posiciones = recorrido(7, manana, 10);
+        Posicion atrasada = posiciones.remove(4);
+        posiciones.add(atrasada);
+        almacen.registrar(posiciones);
+
+        Trayectoria trayectoria = almacen.buscarTrayectoria(7, manana, manana + DIA);
+
+        assertEquals(10, trayectoria.size());
+        for (int i = 1; i < trayectoria.size(); i++) {
+            assertTrue(trayectoria.getTiempo(i - 1) < trayectoria.getTiempo(i));
+        }
+    }
+
+    @Test
+    void buscarTrayectoria_anteriorAlAlmacen_deberiaLeerEsaParteDeLaBase() {
+        long inicio = almacen.getInicioMillis();
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(7);
+        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(7, inicio - 60_000, inicio - 1))
+                .thenReturn(List.of(new Posicion(1, vehiculo, inicio - 30_000, -31.4, -64.2)));
+        almacen.registrar(recorrido(7, manana, 3));
+
+        Trayectoria trayectoria = almacen.buscarTrayectoria(7, inicio - 60_000, manana + DIA);
+
+        assertEquals(4, trayectoria.size());
+        assertEquals(inicio - 30_000, trayectoria.getTiempo(0));
+    }
+
+    @Test
+    void cargar_deberiaRecuperarDeLaBaseLoQueNoLlegoALosSegmentos() {
+        List<Posicion> delVehiculo7 = recorrido(7, manana, 10);
+        almacen.registrar(delVehiculo7.subList(0, 6));
+        almacen.cerrar();
+        // Las últimas 4 del vehículo 7 y las del 8 se guardaron en la tabla, pero un corte las dejó fuera del almacén.
+        when(vehiculoRepository.findAllIds()).thenReturn(List.of(7, 8, 9));
+        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(7, manana + 5 * 5000 + 1, Long.MAX_VALUE))
+                .thenReturn(delVehiculo7.subList(6, 10));
+        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(eq(8), anyLong(), eq(Long.MAX_VALUE)))
+                .thenReturn(recorrido(8, manana, 3));
+
+        almacen = abrir();
+
+        assertEquals(7, almacen.getPosicionesRecuperadas());
+        Trayectoria trayectoria = almacen.buscarTrayectoria(7, manana, manana + DIA);
+        assertEquals(10, trayectoria.size());
+        assertEquals(manana + 9 * 5000L, trayectoria.getTiempo(9));
+        assertEquals(3, almacen.buscarTrayectoria(8, manana, manana + DIA).size());
+        // El vehículo sin segmentos se lee desde el inicio del almacén.
+        verify(posicionRepository).findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(9, almacen.getInicioMillis(), Long.MAX_VALUE);
+    }
+
+    @Test
+    void registrar_siNoSePuedeEscribir_deberiaContarlaYSeguirConLasDemas() throws Exception {
+        // Un archivo donde iría la carpeta del vehículo 7: no se pueden crear sus segmentos.
+        Files.writeString(directorio.resolve("v7"), "");
+        List<Posicion> posiciones = recorrido(7, manana, 3);
+        posiciones.addAll(recorrido(8, manana, 3));
+
+        assertDoesNotThrow(() -> almacen.registrar(posiciones));
+
+        assertEquals(3, almacen.getPosicionesPerdidas());
+        assertEquals(0, almacen.cantidadSegmentos(7));
+        assertEquals(3, almacen.buscarTrayectoria(8, manana, manana + DIA).size());
+    }
+
+    @Test
+    void podar_deberiaBorrarSoloLosSegmentosFueraDeLaRetencion() {
+        ReflectionTestUtils.setField(almacen, "diasRetencion", 30);
+        long haceUnAnio = manana - 365 * DIA;
+        almacen.registrar(recorrido(7, haceUnAnio, 10));
+        almacen.registrar(recorrido(7, manana, 10));
+        assertEquals(2, almacen.cantidadSegmentos(7));
+
+        assertEquals(1, almacen.podar());
+
+        assertEquals(1, almacen.cantidadSegmentos(7));
+        assertTrue(Files.notExists(directorio.resolve("v7").resolve(Math.floorDiv(haceUnAnio, DIA) + "-0.seg")));
+        assertEquals(10, almacen.buscarTrayectoria(7, manana, manana + DIA).size());
+        // Al reabrir no vuelve a aparecer.
+        almacen.cerrar();
+        almacen = abrir();
+        assertEquals(1, almacen.cantidadSegmentos(7));
+    }
+
+    private AlmacenColumnarPosiciones abrir() {
+        AlmacenColumnarPosiciones nuevo = new AlmacenColumnarPosiciones(posicionRepository, vehiculoRepository, directorio.toString(), 32);
+        nuevo.cargar();
+        return nuevo;
+    }
+
+    // Una posición cada 5 segundos desde "desde".
+    private static List<Posicion> recorrido(int idVehiculo, long desde, int cantidad) {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        List<Posicion> posiciones = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            long tiempo = desde + i * 5000L;
+            posiciones.add(new Posicion(null, vehiculo, tiempo, latitud(idVehiculo, (int) ((tiempo - desde) / 5000)), -64.2 + i * 0.0005));
+        }
+        return posiciones;
+    }
+
+    private static double latitud(int idVehiculo, int i) {
+        return -31.4 - idVehiculo * 0.01 - i * 0.0001;
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.serializacion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PosicionBinariaTest {
+
+    @Test
+    void codificar_conTodosLosCampos_deberiaRecuperarLaMismaPosicion() {
+        PosicionDto posicion = posicion(7, "AB123CD", 3L, -31.4201, -64.1888);
+        posicion.setId(1234);
+        posicion.setMensaje("El vehículo salió del radio permitido de la agencia.");
+        posicion.setFechaHora(1_760_000_000_123L);
+
+        byte[] datos = PosicionBinaria.codificar(posicion);
+
+        assertEquals(posicion, PosicionBinaria.decodificar(datos));
+        assertEquals(PosicionBinaria.MARCA, datos[0]);
+        assertEquals(PosicionBinaria.VERSION, datos[1]);
+    }
+
+    @Test
+    void codificar_conCamposNulos_noDeberiaOcuparLugarPorEllos() throws Exception {
+        PosicionDto posicion = posicion(7, null, null, 1.5, 2.5);
+
+        byte[] datos = PosicionBinaria.codificar(posicion);
+
+        // marca, versión, banderas, id del vehículo y coordenadas
+        assertEquals(3 + 4 + 16, datos.length);
+        assertEquals(posicion, PosicionBinaria.decodificar(datos));
+        assertTrue(datos.length * 2 < new ObjectMapper().writeValueAsBytes(posicion).length);
+    }
+
+    @Test
+    void codificar_sinFechaHora_deberiaEscribirLaVersion1() {
+        PosicionDto posicion = posicion(7, "AB123CD", 3L, -31.4201, -64.1888);
+
+        byte[] datos = PosicionBinaria.codificar(posicion);
+
+        assertEquals(PosicionBinaria.VERSION_SIN_FECHA_HORA, datos[1]);
+        assertEquals(0, datos[2] & PosicionBinaria.FECHA_HORA);
+        assertEquals(posicion, PosicionBinaria.decodificar(datos));
+    }
+
+    @Test
+    void decodificar_conLaVersion1ArmadaAMano_deberiaLeerlaSinFechaHora() {
+        byte[] patente = "AB123CD".getBytes(StandardCharsets.UTF_8);
+        // Como la escribían api-agencia y los clientes antes de la versión 2.
+        ByteBuffer buffer = ByteBuffer.allocate(3 + 4 + 2 + patente.length + 16);
+        buffer.put(PosicionBinaria.MARCA).put((byte) 1).put((byte) 0x2E)
+                .putInt(7)
+                .putShort((short) patente.length).put(patente)
+                .putDouble(-31.42).putDouble(-64.18);
+
+        PosicionDto posicion = PosicionBinaria.decodificar(buffer.array());
+
+        assertEquals(posicion(7, "AB123CD", null, -31.42, -64.18), posicion);
+        assertNull(posicion.getFechaHora());
+    }
+
+    @Test
+    void decodificar_conVariasSeguidas_deberiaLeerlasDeAUna() {
+        PosicionDto primera = posicion(1, "AAA111", 1L, 0.1, 0.2);
+        PosicionDto segunda = posicion(2, "BBB222", 2L, 0.3, 0.4);
+        byte[] a = PosicionBinaria.codificar(primera);
+        byte[] b = PosicionBinaria.codificar(segunda);
+        ByteBuffer buffer = ByteBuffer.allocate(a.length + b.length).put(a).put(b).flip();
+
+        assertEquals(primera, PosicionBinaria.decodificar(buffer));
+        assertEquals(segunda, PosicionBinaria.decodificar(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void decodificar_conDatosInvalidos_deberiaFallarConIllegalArgument() {
+        byte[] datos = PosicionBinaria.codificar(posicion(1, "AAA111", 1L, 0.1, 0.2));
+
+        assertThrows(IllegalArgumentException.class, () -> PosicionBinaria.decodificar(Arrays.copyOf(datos, datos.length - 3)));
+        byte[] otraVersion = datos.clone();
+        otraVersion[1] = 3;
+        assertThrows(IllegalArgumentException.class, () -> PosicionBinaria.decodificar(otraVersion));
+        // La fecha y hora no existe en la versión 1.
+        byte[] version1ConFechaHora = Arrays.copyOf(datos, datos.length + 8);
+        version1ConFechaHora[2] |= (byte) PosicionBinaria.FECHA_HORA;
+        assertThrows(IllegalArgumentException.class, () -> PosicionBinaria.decodificar(version1ConFechaHora));
+        assertThrows(IllegalArgumentException.class, () -> PosicionBinaria.decodificar("{}".getBytes()));
+    }
+
+    @Test
+    void deserializer_deberiaLeerTantoBinarioComoElJsonAnterior() throws Exception {
+        PosicionDto posicion = posicion(5, "CCC333", 4L, -31.0, -64.0);
+        posicion.setFechaHora(1_760_000_000_000L);
+        PosicionBinariaDeserializer deserializer = new PosicionBinariaDeserializer();
+
+        assertEquals(posicion, deserializer.deserialize("t", new PosicionBinariaSerializer().serialize("t", posicion)));
+        assertEquals(posicion, deserializer.deserialize("t", new ObjectMapper().writeValueAsBytes(posicion)));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", "no es una posición".getBytes()));
+        assertNull(deserializer.deserialize("t", null));
+    }
+
+    private static PosicionDto posicion(Integer idVehiculo, String patente, Long idModelo, double lat, double lon) {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(lat);
+        coordenadas.setLon(lon);
+        PosicionDto posicion = new PosicionDto();
+        posicion.setVehiculo(new VehiculoDto(idVehiculo, patente, idModelo));
+        posicion.setCoordenadas(coordenadas);
+        return posicion;
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.serializacion;
+
+import org.example.service.trayectoria.Trayectoria;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrayectoriaComprimidaTest {
+
+    private static final long INICIO = 1_700_000_000_000L;
+
+    @Test
+    void codificar_recorridoConRuido_deberiaRecuperarFechasExactasYCoordenadasAlCentimetro() {
+        Trayectoria original = recorrido(720, 3, 200);
+
+        byte[] datos = TrayectoriaComprimida.codificar(original);
+        Trayectoria decodificada = TrayectoriaComprimida.decodificar(datos);
+
+        assertEquals(TrayectoriaComprimida.MARCA, datos[0]);
+        assertEquals(TrayectoriaComprimida.VERSION, datos[1]);
+        assertEquals(original.size(), decodificada.size());
+        for (int i = 0; i < original.size(); i++) {
+            assertEquals(original.getTiempo(i), decodificada.getTiempo(i));
+            assertEquals(original.getLatitud(i), decodificada.getLatitud(i), 5.1e-8);
+            assertEquals(original.getLongitud(i), decodificada.getLongitud(i), 5.1e-8);
+        }
+        // Contra 24 bytes por punto en columnas de long/double.
+        assertTrue(datos.length < original.size() * 6, "Ocupó " + datos.length + " bytes");
+    }
+
+    @Test
+    void codificar_recorridoRegular_deberiaOcuparMenosDeDosBytesPorPunto() {
+        byte[] datos = TrayectoriaComprimida.codificar(recorrido(720, 0, 0));
+
+        assertTrue(datos.length < 720 * 2, "Ocupó " + datos.length + " bytes");
+    }
+
+    @Test
+    void codificar_conSaltosGrandesYValoresExtremos_deberiaUsarLaCubetaDe64Bits() {
+        long[] tiempos = {Long.MIN_VALUE, 0, Long.MAX_VALUE, INICIO, INICIO - 3};
+        double[] latitudes = {90, -90, 0, 1e-7, -45.1234567};
+        double[] longitudes = {180, -180, 0.5, -179.9999999, 3};
+
+        Trayectoria decodificada = TrayectoriaComprimida.decodificar(
+                TrayectoriaComprimida.codificar(new Trayectoria(tiempos, latitudes, longitudes)));
+
+        for (int i = 0; i < tiempos.length; i++) {
+            assertEquals(tiempos[i], decodificada.getTiempo(i));
+            assertEquals(latitudes[i], decodificada.getLatitud(i), 5.1e-8);
+            assertEquals(longitudes[i], decodificada.getLongitud(i), 5.1e-8);
+        }
+    }
+
+    @Test
+    void decodificador_deberiaRecorrerPuntoAPuntoSoloLosIndicesPedidos() {
+        Trayectoria original = recorrido(10, 0, 0);
+
+        TrayectoriaComprimida.Decodificador decodificador =
+                new TrayectoriaComprimida.Decodificador(TrayectoriaComprimida.codificar(original, new int[]{0, 4, 9}));
+
+        assertEquals(3, decodificador.getCantidad());
+        assertTrue(decodificador.siguiente());
+        assertEquals(original.getTiempo(0), decodificador.getTiempo());
+        assertTrue(decodificador.siguiente());
+        assertEquals(original.getTiempo(4), decodificador.getTiempo());
+        assertTrue(decodificador.siguiente());
+        assertEquals(original.getTiempo(9), decodificador.getTiempo());
+        assertEquals(original.getLongitud(9), decodificador.getLongitud(), 5.1e-8);
+        assertFalse(decodificador.siguiente());
+    }
+
+    @Test
+    void codificar_sinPuntos_deberiaTenerSoloElEncabezado() {
+        byte[] datos = TrayectoriaComprimida.codificar(new Trayectoria(new long[0], new double[0], new double[0]));
+
+        assertEquals(6, datos.length);
+        assertEquals(0, TrayectoriaComprimida.decodificar(datos).size());
+    }
+
+    @Test
+    void codificador_conCoordenadasFueraDeRango_deberiaFallar() {
+        TrayectoriaComprimida.Codificador codificador = new TrayectoriaComprimida.Codificador(1);
+
+        assertThrows(IllegalArgumentException.class, () -> codificador.agregar(INICIO, 91, 0));
+        assertThrows(IllegalArgumentException.class, () -> codificador.agregar(INICIO, 0, Double.NaN));
+    }
+
+    @Test
+    void decodificar_conDatosInvalidos_deberiaFallarConIllegalArgument() {
+        byte[] datos = TrayectoriaComprimida.codificar(recorrido(50, 3, 200));
+
+        assertThrows(IllegalArgumentException.class, () -> TrayectoriaComprimida.decodificar(Arrays.copyOf(datos, datos.length / 2)));
+        byte[] otraVersion = datos.clone();
+        otraVersion[1] = 2;
+        assertThrows(IllegalArgumentException.class, () -> TrayectoriaComprimida.decodificar(otraVersion));
+        assertThrows(IllegalArgumentException.class, () -> TrayectoriaComprimida.decodificar(new byte[]{PosicionBinaria.MARCA, 1, 0, 0, 0, 0}));
+    }
+
+    // Hacia el noreste a ~40 km/h, una posición cada 5 segundos más una demora de hasta demoraMs, con ruido de GPS.
+    private static Trayectoria recorrido(int n, double ruidoMetros, int demoraMs) {
+        Random random = new Random(3);
+        long[] tiempos = new long[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        long tiempo = INICIO;
+        for (int i = 0; i < n; i++) {
+            tiempos[i] = tiempo;
+            lats[i] = -31.4 + (i * 40 + random.nextGaussian() * ruidoMetros) / 111_195;
+            lons[i] = -64.2 + (i * 40 + random.nextGaussian() * ruidoMetros) / 94_900;
+            tiempo += 5000 + (demoraMs > 0 ? random.nextInt(demoraMs) : 0);
+        }
+        return new Trayectoria(tiempos, lats, lons);
+    }
+}
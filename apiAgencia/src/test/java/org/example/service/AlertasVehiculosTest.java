@@ -0,0 +1,209 @@
+package org.example.service;
+
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.dtos.externos.CoordenadasDto;
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.dtos.externos.UbicacionDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+import org.example.service.geocerca.GeocercaCompilada;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.service.geocerca.VeredictoGeocerca.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlertasVehiculosTest {
+
+    // Agencia en (0, 0) con 1000 m de radio y una zona de 100 m de radio a unos 556 m al norte.
+    private static final double LAT_FUERA = 0.0100;      // ~1112 m de la agencia
+    private static final double LAT_BORDE = 0.0089;      // ~990 m: adentro, pero a menos de 50 m del borde
+    private static final double LAT_ADENTRO = 0.0080;    // ~890 m
+    private static final double LAT_ZONA = 0.0050;       // centro de la zona
+    private static final double LAT_BORDE_ZONA = 0.0062; // ~133 m del centro: fuera de la zona, a menos de 50 m de su borde
+
+    @Mock
+    private KafkaProducer kafkaProducer;
+
+    private AlertasVehiculos alertas;
+    private GeocercaCompilada geocerca;
+
+    @BeforeEach
+    void setUp() {
+        alertas = new AlertasVehiculos(kafkaProducer);
+        geocerca = GeocercaCompilada.de(restricciones());
+    }
+
+    @Test
+    void registrar_conVehiculoQueSigueFueraDelRadio_deberiaAlertarUnaSolaVez() {
+        List<AlertaVehiculo> generadas = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            generadas.addAll(registrar(1, LAT_FUERA, i * 5000L));
+        }
+
+        assertEquals(1, generadas.size());
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, generadas.get(0).getTipo());
+        assertEquals(FUERA_DE_RADIO, generadas.get(0).getEstado());
+        assertEquals(119, alertas.getEstado().getAlertasSuprimidas());
+        assertEquals(1, alertas.getEstado().getVehiculosEnIncidente());
+    }
+
+    @Test
+    void registrar_conVehiculoSobreElBorde_noDeberiaAlertarEnCadaCruce() {
+        List<AlertaVehiculo> generadas = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            generadas.addAll(registrar(1, i % 2 == 0 ? LAT_FUERA : LAT_BORDE, i));
+        }
+        assertEquals(1, generadas.size());
+
+        List<AlertaVehiculo> alVolver = registrar(1, LAT_ADENTRO, 100);
+        assertEquals(1, alVolver.size());
+        assertEquals(AlertaVehiculo.Tipo.SALIDA, alVolver.get(0).getTipo());
+        assertEquals(FUERA_DE_RADIO, alVolver.get(0).getEstado());
+        assertEquals(19, alVolver.get(0).getRepeticiones());
+    }
+
+    @Test
+    void registrar_conHisteresisEnLaZona_deberiaSeguirEnLaZonaCercaDelBorde() {
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, registrar(1, LAT_ZONA, 0).get(0).getTipo());
+        assertTrue(registrar(1, LAT_BORDE_ZONA, 1).isEmpty());
+        assertTrue(registrar(1, LAT_ZONA, 2).isEmpty());
+
+        List<AlertaVehiculo> alSalirDelRadio = registrar(1, LAT_FUERA, 3);
+        assertEquals(2, alSalirDelRadio.size());
+        assertEquals(AlertaVehiculo.Tipo.SALIDA, alSalirDelRadio.get(0).getTipo());
+        assertEquals(EN_ZONA_RESTRINGIDA, alSalirDelRadio.get(0).getEstado());
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, alSalirDelRadio.get(1).getTipo());
+        assertEquals(FUERA_DE_RADIO, alSalirDelRadio.get(1).getEstado());
+    }
+
+    @Test
+    void registrar_conConfirmaciones_deberiaEsperarQueElEstadoSeRepita() {
+        ReflectionTestUtils.setField(alertas, "confirmaciones", 2);
+
+        assertTrue(registrar(1, LAT_FUERA, 0).isEmpty());
+        assertTrue(registrar(1, 0.0, 1).isEmpty());
+        assertTrue(registrar(1, LAT_FUERA, 2).isEmpty());
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, registrar(1, LAT_FUERA, 3).get(0).getTipo());
+    }
+
+    @Test
+    void registrar_conVariosVehiculos_deberiaLlevarElEstadoDeCadaUno() {
+        assertEquals(1, registrar(1, LAT_FUERA, 0).size());
+        assertEquals(1, registrar(2, LAT_FUERA, 0).size());
+        assertTrue(registrar(1, LAT_FUERA, 1).isEmpty());
+        assertTrue(registrar(3, 0.0, 1).isEmpty());
+
+        assertEquals(3, alertas.getEstado().getVehiculosSeguidos());
+        assertEquals(2, alertas.getEstado().getVehiculosEnIncidente());
+    }
+
+    @Test
+    void latidos_deberiaResumirLasRepeticionesUnaVezPorPeriodo() {
+        registrar(1, LAT_FUERA, 0);
+        for (int i = 1; i <= 11; i++) {
+            registrar(1, LAT_FUERA, i * 5000L);
+        }
+
+        assertTrue(alertas.latidos(30000).isEmpty(), "Todavía no pasó el período del latido");
+        List<AlertaVehiculo> latidos = alertas.latidos(60000);
+        assertEquals(1, latidos.size());
+        assertEquals(AlertaVehiculo.Tipo.LATIDO, latidos.get(0).getTipo());
+        assertEquals(11, latidos.get(0).getRepeticiones());
+        assertTrue(latidos.get(0).getPosicion().getMensaje().contains("11 posiciones"));
+        // La hora de la última posición, no la del latido.
+        assertEquals(55000L, latidos.get(0).getPosicion().getFechaHora());
+
+        assertTrue(alertas.latidos(130000).isEmpty(), "Sin posiciones nuevas no hay latido");
+    }
+
+    @Test
+    void latidos_conVehiculoInactivo_deberiaOlvidarlo() {
+        registrar(1, LAT_FUERA, 0);
+
+        alertas.latidos(600001);
+
+        assertEquals(0, alertas.getEstado().getVehiculosSeguidos());
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, registrar(1, LAT_FUERA, 600002).get(0).getTipo());
+    }
+
+    @Test
+    void olvidar_alEmpezarOtraPrueba_deberiaVolverAAlertarLaEntrada() {
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, registrar(1, LAT_FUERA, 0).get(0).getTipo());
+
+        // La prueba termina fuera del radio y a los pocos segundos empieza otra con el mismo vehículo.
+        alertas.olvidar(1);
+
+        List<AlertaVehiculo> generadas = registrar(1, LAT_FUERA, 5000);
+        assertEquals(1, generadas.size());
+        assertEquals(AlertaVehiculo.Tipo.ENTRADA, generadas.get(0).getTipo());
+    }
+
+    @Test
+    void revisar_noDeberiaEsperarLaConfirmacionDelBroker() {
+        ReflectionTestUtils.setField(alertas, "latidoMs", 0L);
+        registrar(1, LAT_FUERA, System.currentTimeMillis());
+        registrar(1, LAT_FUERA, System.currentTimeMillis());
+        when(kafkaProducer.enviarMensajeRadioExcedido(any())).thenReturn(Mono.never());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> alertas.revisar());
+
+        verify(kafkaProducer).enviarMensajeRadioExcedido(any());
+    }
+
+    @Test
+    void publicar_deberiaEnviarEntradasYLatidosPeroNoSalidas() {
+        when(kafkaProducer.enviarMensajeRadioExcedido(any())).thenReturn(Mono.empty());
+        when(kafkaProducer.enviarMensajeZonaPeligrosa(any())).thenReturn(Mono.error(new RuntimeException("broker caido")));
+
+        List<AlertaVehiculo> generadas = new ArrayList<>(registrar(1, LAT_ZONA, 0));
+        generadas.addAll(registrar(1, LAT_FUERA, 1));
+        alertas.publicar(generadas).block();
+
+        verify(kafkaProducer, times(1)).enviarMensajeZonaPeligrosa(any());
+        verify(kafkaProducer, times(1)).enviarMensajeRadioExcedido(any());
+        assertEquals(1, alertas.getEstado().getEnviosFallidos());
+        assertEquals(1, alertas.getEstado().getSalidas());
+    }
+
+    private List<AlertaVehiculo> registrar(int idVehiculo, double lat, long ahoraMillis) {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(lat);
+        coordenadas.setLon(0);
+        PosicionDto posicion = new PosicionDto();
+        posicion.setVehiculo(new VehiculoDto(idVehiculo, "AAA" + idVehiculo, 1L));
+        posicion.setCoordenadas(coordenadas);
+        posicion.setFechaHora(ahoraMillis);
+        return alertas.registrar(posicion, geocerca, geocerca.evaluar(lat, 0), ahoraMillis);
+    }
+
+    private static RestriccionesDto restricciones() {
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        CoordenadasDto centroZona = new CoordenadasDto();
+        centroZona.setLatitud(LAT_ZONA);
+        centroZona.setLongitud(0.0);
+        ZonaPeligrosaDto zona = new ZonaPeligrosaDto();
+        zona.setIdZona("Z1");
+        zona.setCoordenadas(centroZona);
+        zona.setRadioMetros(100);
+        RestriccionesDto restricciones = new RestriccionesDto();
+        restricciones.setUbicacionAgencia(ubicacion);
+        restricciones.setRadioMaximoMetros(1000.0);
+        restricciones.setZonasPeligrosas(List.of(zona));
+        return restricciones;
+    }
+}
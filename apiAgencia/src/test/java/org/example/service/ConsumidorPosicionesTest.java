@@ -0,0 +1,78 @@
+package org.example.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.example.dtos.PosicionDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.Acknowledgment;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConsumidorPosicionesTest {
+
+    @Mock
+    private VehiculoService vehiculoService;
+    @Mock
+    private Acknowledgment confirmacion;
+
+    private ConsumidorPosiciones consumidor;
+
+    @BeforeEach
+    void setUp() {
+        consumidor = new ConsumidorPosiciones(vehiculoService, new MetricasEtapas());
+    }
+
+    @Test
+    void consumir_deberiaUsarElTimestampDelRegistroComoFechaDeLaPosicion() {
+        when(vehiculoService.procesarLotePosiciones(anyList())).thenReturn(Mono.just(List.of()));
+        PosicionDto conFecha = new PosicionDto();
+        conFecha.setFechaHora(1_700_000_000_000L);
+
+        consumidor.consumir(List.of(registro(0, 1_700_000_500_000L, new PosicionDto()),
+                registro(1, 1_700_000_900_000L, conFecha)), confirmacion);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PosicionDto>> lote = ArgumentCaptor.forClass(List.class);
+        verify(vehiculoService).procesarLotePosiciones(lote.capture());
+        assertEquals(1_700_000_500_000L, lote.getValue().get(0).getFechaHora());
+        // La que ya traía fecha la conserva.
+        assertEquals(1_700_000_000_000L, lote.getValue().get(1).getFechaHora());
+        verify(confirmacion).acknowledge();
+    }
+
+    @Test
+    void consumir_siElLoteFalla_noDeberiaConfirmarElOffset() {
+        when(vehiculoService.procesarLotePosiciones(anyList())).thenReturn(Mono.error(new IllegalStateException("sin base")));
+
+        assertThrows(IllegalStateException.class,
+                () -> consumidor.consumir(List.of(registro(0, 1_700_000_000_000L, new PosicionDto())), confirmacion));
+
+        verify(confirmacion, never()).acknowledge();
+    }
+
+    @Test
+    void consumir_soloMensajesInvalidos_deberiaConfirmarSinProcesar() {
+        consumidor.consumir(List.of(registro(0, 1_700_000_000_000L, null)), confirmacion);
+
+        verifyNoInteractions(vehiculoService);
+        verify(confirmacion).acknowledge();
+    }
+
+    private static ConsumerRecord<String, PosicionDto> registro(long offset, long timestamp, PosicionDto posicion) {
+        return new ConsumerRecord<>(KafkaProducer.TOPICO_POSICIONES, 0, offset, timestamp, TimestampType.CREATE_TIME,
+                -1, -1, "1", posicion, new RecordHeaders(), Optional.empty());
+    }
+}
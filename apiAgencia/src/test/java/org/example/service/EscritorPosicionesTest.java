@@ -0,0 +1,214 @@
+package org.example.service;
+
+import org.example.dtos.EstadoEscrituraPosicionesDto;
+import org.example.models.Posicion;
+import org.example.models.Vehiculo;
+import org.example.repositories.PosicionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EscritorPosicionesTest {
+
+    @Mock
+    private PosicionRepository posicionRepository;
+
+    private EscritorPosiciones escritor;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final List<Integer> tamaniosDeGrupo = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        escritor = new EscritorPosiciones(posicionRepository, 100);
+        ReflectionTestUtils.setField(escritor, "maxGrupo", 50);
+        ReflectionTestUtils.setField(escritor, "esperaMs", 20L);
+        ReflectionTestUtils.setField(escritor, "reintentoEsperaMs", 1L);
+        // El repositorio simulado asigna ids como lo haría la base.
+        lenient().doAnswer(invocacion -> {
+            List<Posicion> grupo = invocacion.getArgument(0);
+            synchronized (tamaniosDeGrupo) {
+                tamaniosDeGrupo.add(grupo.size());
+            }
+            grupo.forEach(p -> p.setId(ids.incrementAndGet()));
+            return null;
+        }).when(posicionRepository).insertarEnGrupo(anyList());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        escritor.detener();
+    }
+
+    @Test
+    void encolar_variasPosicionesSeguidas_deberiaEscribirlasEnPocosGrupos() throws Exception {
+        escritor.iniciar();
+        List<CompletableFuture<Posicion>> futuros = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futuros.add(escritor.encolar(posicion()));
+        }
+
+        for (CompletableFuture<Posicion> futuro : futuros) {
+            assertNotNull(futuro.get(5, TimeUnit.SECONDS).getId());
+        }
+        EstadoEscrituraPosicionesDto estado = escritor.getEstado();
+        assertEquals(40, estado.getEscritas());
+        assertTrue(estado.getGrupos() < 40, "Se esperaban menos commits que posiciones, hubo " + estado.getGrupos());
+        assertEquals(0, estado.getProfundidadCola());
+    }
+
+    @Test
+    void encolar_noDeberiaSuperarElTamanioMaximoDeGrupo() throws Exception {
+        // Llenamos la cola antes de arrancar el hilo escritor para que tenga más de un grupo disponible.
+        List<CompletableFuture<Posicion>> futuros = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futuros.add(escritor.encolar(posicion()));
+        }
+        escritor.iniciar();
+        CompletableFuture.allOf(futuros.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertTrue(tamaniosDeGrupo.stream().allMatch(t -> t <= 50), "Grupos: " + tamaniosDeGrupo);
+        assertEquals(100, tamaniosDeGrupo.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void detener_conPosicionesEnCola_deberiaEscribirlasTodasAntesDeTerminar() throws Exception {
+        List<CompletableFuture<Posicion>> futuros = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            futuros.add(escritor.encolar(posicion()));
+        }
+        escritor.iniciar();
+        escritor.detener();
+
+        futuros.forEach(f -> assertTrue(f.isDone()));
+        assertEquals(30, escritor.getEstado().getEscritas());
+        assertThrows(IllegalStateException.class, () -> escritor.encolar(posicion()));
+    }
+
+    @Test
+    void encolar_mientrasElEscritorSeApaga_deberiaRechazarEnLugarDeDejarElFuturoPendiente() throws Exception {
+        escritor.iniciar();
+        escritor.detener();
+        // Simula un encolar que pasó el chequeo de "aceptando" justo antes de que se apagara el escritor.
+        ReflectionTestUtils.setField(escritor, "aceptando", true);
+
+        assertThrows(IllegalStateException.class, () -> escritor.encolar(posicion()));
+        assertEquals(0, escritor.getEstado().getProfundidadCola());
+    }
+
+    @Test
+    void detener_sinHiloEscritor_deberiaCompletarConErrorLasPosicionesQueQuedan() throws Exception {
+        CompletableFuture<Posicion> futuro = escritor.encolar(posicion());
+
+        escritor.detener();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> futuro.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertEquals(1, escritor.getEstado().getFallidas());
+    }
+
+    @Test
+    void encolar_conColaLlena_deberiaLanzarIllegalStateException() {
+        ReflectionTestUtils.setField(escritor, "timeoutEncolarMs", 10L);
+        // Sin iniciar el hilo escritor nadie vacía la cola.
+        for (int i = 0; i < 100; i++) {
+            escritor.encolar(posicion());
+        }
+
+        assertThrows(IllegalStateException.class, () -> escritor.encolar(posicion()));
+        assertEquals(1, escritor.getEstado().getRechazadas());
+    }
+
+    @Test
+    void encolar_siFallaLaEscritura_deberiaCompletarElFuturoConError() throws Exception {
+        CountDownLatch escrito = new CountDownLatch(1);
+        doAnswer(invocacion -> {
+            escrito.countDown();
+            throw new IllegalStateException("base no disponible");
+        }).when(posicionRepository).insertarEnGrupo(anyList());
+        escritor.iniciar();
+
+        CompletableFuture<Posicion> futuro = escritor.encolar(posicion());
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> futuro.get(5, TimeUnit.SECONDS));
+        assertEquals("base no disponible", error.getCause().getMessage());
+        assertTrue(escrito.await(1, TimeUnit.SECONDS));
+        assertEquals(1, escritor.getEstado().getFallidas());
+    }
+
+    @Test
+    void encolar_siElCommitFallaUnaVez_deberiaReintentarElGrupo() throws Exception {
+        doThrow(new IllegalStateException("[SQLITE_BUSY] The database file is locked"))
+                .doAnswer(invocacion -> {
+                    List<Posicion> grupo = invocacion.getArgument(0);
+                    grupo.forEach(p -> p.setId(ids.incrementAndGet()));
+                    return null;
+                })
+                .when(posicionRepository).insertarEnGrupo(anyList());
+        List<CompletableFuture<Posicion>> futuros = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futuros.add(escritor.encolar(posicion()));
+        }
+        escritor.iniciar();
+
+        for (CompletableFuture<Posicion> futuro : futuros) {
+            assertNotNull(futuro.get(5, TimeUnit.SECONDS).getId());
+        }
+        EstadoEscrituraPosicionesDto estado = escritor.getEstado();
+        assertEquals(10, estado.getEscritas());
+        assertEquals(0, estado.getFallidas());
+        assertEquals(1, estado.getGruposReintentados());
+        verify(posicionRepository, times(2)).insertarEnGrupo(anyList());
+    }
+
+    @Test
+    void encolar_conUnaFilaInvalidaEnElGrupo_deberiaFallarSoloEsaPosicion() throws Exception {
+        doAnswer(invocacion -> {
+            List<Posicion> grupo = invocacion.getArgument(0);
+            if (grupo.stream().anyMatch(p -> p.getLatitud().isNaN())) {
+                throw new IllegalArgumentException("LATITUD invalida");
+            }
+            grupo.forEach(p -> p.setId(ids.incrementAndGet()));
+            return null;
+        }).when(posicionRepository).insertarEnGrupo(anyList());
+        List<CompletableFuture<Posicion>> futuros = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futuros.add(escritor.encolar(posicion()));
+        }
+        Posicion invalida = posicion();
+        invalida.setLatitud(Double.NaN);
+        CompletableFuture<Posicion> futuroInvalida = escritor.encolar(invalida);
+        escritor.iniciar();
+
+        for (CompletableFuture<Posicion> futuro : futuros) {
+            assertNotNull(futuro.get(5, TimeUnit.SECONDS).getId());
+        }
+        ExecutionException error = assertThrows(ExecutionException.class, () -> futuroInvalida.get(5, TimeUnit.SECONDS));
+        assertEquals("LATITUD invalida", error.getCause().getMessage());
+        EstadoEscrituraPosicionesDto estado = escritor.getEstado();
+        assertEquals(5, estado.getEscritas());
+        assertEquals(1, estado.getFallidas());
+    }
+
+    private static Posicion posicion() {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(1);
+        return new Posicion(null, vehiculo, System.currentTimeMillis(), -31.4, -64.2);
+    }
+}
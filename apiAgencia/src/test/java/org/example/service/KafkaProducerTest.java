@@ -0,0 +1,206 @@
+package org.example.service;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.example.dtos.EstadoEtapaDto;
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.serializacion.PosicionBinariaDeserializer;
+import org.example.serializacion.PosicionBinariaSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Envía alertas contra un broker de Kafka embebido con la misma configuración de productor que application.properties.
+ */
+@EmbeddedKafka(partitions = 3, topics = {KafkaProducer.TOPICO_RADIO_EXCEDIDO, KafkaProducer.TOPICO_ZONA_PELIGROSA})
+class KafkaProducerTest {
+
+    private final List<DefaultKafkaProducerFactory<String, PosicionDto>> fabricas = new ArrayList<>();
+
+    private EmbeddedKafkaBroker broker;
+    private MetricasEtapas metricasEtapas;
+    private KafkaProducer kafkaProducer;
+
+    @BeforeEach
+    void setUp(EmbeddedKafkaBroker broker) {
+        this.broker = broker;
+        metricasEtapas = new MetricasEtapas();
+        kafkaProducer = new KafkaProducer(template(Map.of()), metricasEtapas, 2, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        kafkaProducer.detener();
+        fabricas.forEach(DefaultKafkaProducerFactory::destroy);
+    }
+
+    @Test
+    void enviar_conVariosVehiculos_deberiaUsarElIdComoClaveYRespetarElOrdenDeCadaUno() throws Exception {
+        List<Mono<SendResult<String, PosicionDto>>> envios = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            envios.add(kafkaProducer.enviarMensajeRadioExcedido(posicion(1 + i % 3, i)));
+        }
+        Mono.when(envios).block(Duration.ofSeconds(30));
+
+        Map<String, Integer> particionPorVehiculo = new HashMap<>();
+        Map<String, Double> ultimaPorVehiculo = new HashMap<>();
+        try (Consumer<String, PosicionDto> consumidor = consumidor()) {
+            broker.consumeFromAnEmbeddedTopic(consumidor, KafkaProducer.TOPICO_RADIO_EXCEDIDO);
+            List<ConsumerRecord<String, PosicionDto>> registros = new ArrayList<>();
+            while (registros.size() < 30) {
+                KafkaTestUtils.getRecords(consumidor, Duration.ofSeconds(10)).forEach(registros::add);
+            }
+            // Dentro de una partición los registros llegan en orden de offset.
+            registros.sort((a, b) -> a.partition() != b.partition() ? Integer.compare(a.partition(), b.partition())
+                    : Long.compare(a.offset(), b.offset()));
+            for (ConsumerRecord<String, PosicionDto> registro : registros) {
+                assertEquals(String.valueOf(registro.value().getVehiculo().getId()), registro.key());
+                assertEquals(registro.partition(), particionPorVehiculo.computeIfAbsent(registro.key(), k -> registro.partition()),
+                        "Todas las alertas de un vehículo deberían caer en la misma partición");
+                double secuencia = registro.value().getCoordenadas().getLat();
+                assertTrue(secuencia > ultimaPorVehiculo.getOrDefault(registro.key(), -1.0), "Alertas del vehículo " + registro.key() + " desordenadas");
+                ultimaPorVehiculo.put(registro.key(), secuencia);
+            }
+        }
+        assertEquals(3, particionPorVehiculo.size());
+    }
+
+    @Test
+    void enviar_deberiaTerminarConLaConfirmacionDelBrokerYContarlo() {
+        SendResult<String, PosicionDto> resultado = kafkaProducer.enviarMensajeZonaPeligrosa(posicion(7, 1)).block(Duration.ofSeconds(30));
+
+        assertNotNull(resultado);
+        assertEquals(KafkaProducer.TOPICO_ZONA_PELIGROSA, resultado.getRecordMetadata().topic());
+        assertTrue(resultado.getRecordMetadata().offset() >= 0);
+        EstadoEtapaDto estado = etapa("kafka " + KafkaProducer.TOPICO_ZONA_PELIGROSA);
+        assertEquals(1, estado.getCantidad());
+        assertEquals(0, estado.getErrores());
+    }
+
+    @Test
+    void enviar_conErrorDelProductor_deberiaPropagarloEnElMonoYContarlo() {
+        KafkaProducer conLimiteChico = new KafkaProducer(template(Map.of(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, 10)), metricasEtapas, 2, 100);
+
+        Exception error = assertThrows(Exception.class,
+                () -> conLimiteChico.enviarMensajeRadioExcedido(posicion(1, 1)).block(Duration.ofSeconds(30)));
+
+        assertInstanceOf(RecordTooLargeException.class, error.getCause());
+        assertEquals(1, etapa("kafka " + KafkaProducer.TOPICO_RADIO_EXCEDIDO).getErrores());
+        conLimiteChico.detener();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void enviar_deberiaLlamarASendEnUnHiloDelProductorYRechazarConLaColaLlena() throws Exception {
+        KafkaTemplate<String, PosicionDto> template = mock(KafkaTemplate.class);
+        CountDownLatch liberar = new CountDownLatch(1);
+        List<String> hilos = new CopyOnWriteArrayList<>();
+        // Como send() esperando la metadata del tópico: bloquea hasta que se libera.
+        when(template.send(anyString(), any(), any())).thenAnswer(invocacion -> {
+            hilos.add(Thread.currentThread().getName());
+            liberar.await(5, TimeUnit.SECONDS);
+            return CompletableFuture.completedFuture(null);
+        });
+        KafkaProducer conUnHilo = new KafkaProducer(template, metricasEtapas, 1, 1);
+        try {
+            Mono<SendResult<String, PosicionDto>> primero = conUnHilo.enviarMensajeRadioExcedido(posicion(1, 1));
+            long inicio = System.nanoTime();
+            primero.subscribe();
+            // Quien se suscribe no espera a send().
+            assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(1));
+            conUnHilo.enviarMensajeRadioExcedido(posicion(1, 2)).subscribe();
+
+            assertThrows(RejectedExecutionException.class,
+                    () -> conUnHilo.enviarMensajeRadioExcedido(posicion(1, 3)).block(Duration.ofSeconds(5)));
+
+            liberar.countDown();
+            verify(template, timeout(5000).times(2)).send(anyString(), any(), any());
+            assertEquals(List.of("kafka-envio-0", "kafka-envio-0"), hilos);
+        } finally {
+            liberar.countDown();
+            conUnHilo.detener();
+        }
+    }
+
+    @Test
+    void enviar_sinSuscribirse_noDeberiaEnviarNada() {
+        kafkaProducer.enviarMensajeRadioExcedido(posicion(1, 1));
+
+        assertTrue(metricasEtapas.getEstado().isEmpty());
+    }
+
+    private KafkaTemplate<String, PosicionDto> template(Map<String, Object> extra) {
+        Map<String, Object> propiedades = new HashMap<>();
+        propiedades.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        propiedades.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        propiedades.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, PosicionBinariaSerializer.class);
+        propiedades.put(ProducerConfig.ACKS_CONFIG, "all");
+        propiedades.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
+        propiedades.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        propiedades.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        propiedades.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        propiedades.putAll(extra);
+        DefaultKafkaProducerFactory<String, PosicionDto> fabrica = new DefaultKafkaProducerFactory<>(propiedades);
+        fabricas.add(fabrica);
+        return new KafkaTemplate<>(fabrica);
+    }
+
+    private Consumer<String, PosicionDto> consumidor() {
+        Map<String, Object> propiedades = KafkaTestUtils.consumerProps("test-alertas", "false", broker);
+        propiedades.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return new DefaultKafkaConsumerFactory<>(propiedades, new StringDeserializer(), new PosicionBinariaDeserializer()).createConsumer();
+    }
+
+    // La métrica se registra en el hilo de envío justo después de entregar el resultado: se espera a que aparezca.
+    private EstadoEtapaDto etapa(String nombre) {
+        long limite = System.currentTimeMillis() + 5000;
+        while (true) {
+            var estado = metricasEtapas.getEstado().stream().filter(e -> e.getEtapa().equals(nombre)).findFirst();
+            if (estado.isPresent() || System.currentTimeMillis() > limite) {
+                return estado.orElseThrow();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static PosicionDto posicion(int idVehiculo, double secuencia) {
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(secuencia);
+        coordenadas.setLon(0);
+        PosicionDto posicion = new PosicionDto();
+        posicion.setVehiculo(new VehiculoDto(idVehiculo, "AAA" + idVehiculo, 1L));
+        posicion.setCoordenadas(coordenadas);
+        return posicion;
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.service;
+
+import jakarta.persistence.EntityManager;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.VehiculoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KilometrajeFlotaTest {
+
+    private static final Date DESDE = new Date(1_700_000_000_000L);
+    private static final Date HASTA = new Date(1_702_000_000_000L);
+
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private OdometroPruebas odometroPruebas;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private KilometrajeFlota kilometrajeFlota;
+
+    @AfterEach
+    void tearDown() {
+        kilometrajeFlota.detener();
+    }
+
+    @Test
+    void calcular_deberiaSumarPorVehiculoOrdenarYTotalizar() {
+        kilometrajeFlota = new KilometrajeFlota(vehiculoRepository, pruebaRepository, odometroPruebas, entityManager, transactionManager, 4, 2);
+        Vehiculo corto = vehiculo(1, "AAA111");
+        Vehiculo largo = vehiculo(2, "BBB222");
+        Vehiculo quieto = vehiculo(3, "CCC333");
+        Prueba sinDistancia = prueba(22, largo, null);
+        when(vehiculoRepository.findAll()).thenReturn(List.of(corto, largo, quieto));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(1, DESDE, HASTA)).thenAnswer(i -> Stream.of(prueba(11, corto, 3.0)));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(2, DESDE, HASTA))
+                .thenAnswer(i -> Stream.of(prueba(21, largo, 5.5), sinDistancia));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(3, DESDE, HASTA)).thenAnswer(i -> Stream.empty());
+        when(odometroPruebas.distanciaDe(sinDistancia)).thenReturn(4.5);
+
+        KilometrajeFlota.Resultado resultado = kilometrajeFlota.calcular(DESDE, HASTA);
+
+        assertEquals(List.of(
+                new KilometrajeFlota.Fila("BBB222", 2, 10.0),
+                new KilometrajeFlota.Fila("AAA111", 1, 3.0),
+                new KilometrajeFlota.Fila("CCC333", 0, 0.0)), resultado.vehiculos());
+        assertEquals(3, resultado.pruebas());
+        assertEquals(13.0, resultado.kilometraje(), 1e-9);
+        // Solo la prueba sin distancia guardada se calcula.
+        verify(odometroPruebas, times(1)).distanciaDe(any());
+        verify(entityManager, times(3)).detach(any(Prueba.class));
+    }
+
+    @Test
+    void calcular_noDeberiaLeerDeLaBaseConMasLectoresQueElLimite() {
+        kilometrajeFlota = new KilometrajeFlota(vehiculoRepository, pruebaRepository, odometroPruebas, entityManager, transactionManager, 8, 2);
+        List<Vehiculo> vehiculos = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            vehiculos.add(vehiculo(i, "P" + i));
+        }
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        when(vehiculoRepository.findAll()).thenReturn(vehiculos);
+        when(pruebaRepository.streamFinalizadasDeVehiculo(anyInt(), eq(DESDE), eq(HASTA))).thenAnswer(invocacion -> {
+            Vehiculo vehiculo = vehiculos.get((Integer) invocacion.getArgument(0) - 1);
+            medir(enCurso, maximo);
+            return Stream.of(prueba(1, vehiculo, null), prueba(2, vehiculo, null));
+        });
+        when(odometroPruebas.distanciaDe(any())).thenAnswer(invocacion -> {
+            medir(enCurso, maximo);
+            return 1.0;
+        });
+
+        KilometrajeFlota.Resultado resultado = kilometrajeFlota.calcular(DESDE, HASTA);
+
+        assertEquals(40, resultado.pruebas());
+        assertEquals(40.0, resultado.kilometraje(), 1e-9);
+        assertTrue(maximo.get() <= 2, "lecturas simultáneas: " + maximo.get());
+    }
+
+    // Simula una lectura que tarda y registra cuántas hubo a la vez.
+    private static void medir(AtomicInteger enCurso, AtomicInteger maximo) throws InterruptedException {
+        maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+        Thread.sleep(5);
+        enCurso.decrementAndGet();
+    }
+
+    private static Vehiculo vehiculo(int id, String patente) {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(id);
+        vehiculo.setPatente(patente);
+        return vehiculo;
+    }
+
+    private static Prueba prueba(int id, Vehiculo vehiculo, Double distanciaKm) {
+        Prueba prueba = new Prueba(vehiculo, null, null, DESDE);
+        prueba.setId(id);
+        prueba.setFechaHoraFin(HASTA);
+        prueba.setDistanciaKm(distanciaKm);
+        return prueba;
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.service;
+
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.HistorialPosiciones;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
+import org.example.service.trayectoria.Trayectoria;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OdometroPruebasTest {
+
+    private static final long INICIO = 1_700_000_000_000L;
+
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private HistorialPosiciones historialPosiciones;
+    @Mock
+    private ResumenPruebaRepository resumenPruebaRepository;
+
+    private RegistroPruebasActivas registro;
+    private OdometroPruebas odometro;
+    private Vehiculo vehiculo;
+
+    @BeforeEach
+    void setUp() {
+        registro = new RegistroPruebasActivas(pruebaRepository);
+        odometro = new OdometroPruebas(registro, pruebaRepository, historialPosiciones, resumenPruebaRepository);
+        ReflectionTestUtils.setField(odometro, "pausaMs", 0L);
+        vehiculo = new Vehiculo();
+        vehiculo.setId(3);
+    }
+
+    @Test
+    void distanciaAlFinalizar_pruebaNueva_deberiaUsarElOdometroSinLeerPosiciones() {
+        Prueba prueba = prueba(1, null);
+        registro.registrarNueva(prueba);
+        List<Posicion> recta = recta(20);
+
+        odometro.registrar(recta.subList(0, 10));
+        odometro.registrar(recta.subList(10, 20));
+
+        double esperada = Trayectoria.de(recta).distanciaKm();
+        assertEquals(esperada, odometro.distanciaAlFinalizar(prueba, new Date(INICIO + 100_000)), 1e-9);
+        assertEquals(1, odometro.getEstado().getFinalizadasConOdometro());
+        verifyNoInteractions(historialPosiciones);
+    }
+
+    @Test
+    void distanciaAlFinalizar_pruebaCargadaYaEmpezada_deberiaRecalcularConElRecorrido() {
+        // Cargada al arrancar: no vio las posiciones de antes, así que su odómetro no alcanza.
+        Prueba prueba = prueba(1, 0.4);
+        registro.registrar(prueba);
+        odometro.registrar(recta(20).subList(10, 20));
+        when(historialPosiciones.buscarTrayectoria(3, INICIO, INICIO + 100_000)).thenReturn(Trayectoria.de(recta(20)));
+
+        double distancia = odometro.distanciaAlFinalizar(prueba, new Date(INICIO + 100_000));
+
+        assertEquals(Trayectoria.de(recta(20)).distanciaKm(), distancia, 1e-9);
+        assertEquals(1, odometro.getEstado().getFinalizadasRecalculadas());
+    }
+
+    @Test
+    void distanciaAlFinalizar_conPosicionesFueraDeOrden_deberiaRecalcular() {
+        Prueba prueba = prueba(1, null);
+        registro.registrarNueva(prueba);
+        List<Posicion> desordenadas = new ArrayList<>(recta(5));
+        desordenadas.add(1, desordenadas.remove(3));
+        odometro.registrar(desordenadas);
+        when(historialPosiciones.buscarTrayectoria(anyInt(), anyLong(), anyLong())).thenReturn(Trayectoria.de(recta(5)));
+
+        assertEquals(Trayectoria.de(recta(5)).distanciaKm(), odometro.distanciaAlFinalizar(prueba, new Date(INICIO + 100_000)), 1e-9);
+    }
+
+    @Test
+    void guardar_deberiaEscribirSoloLasPruebasQueAvanzaron() {
+        registro.registrarNueva(prueba(1, null));
+        odometro.registrar(recta(4));
+
+        assertEquals(1, odometro.guardar());
+        assertEquals(0, odometro.guardar());
+
+        verify(pruebaRepository, times(1)).actualizarDistanciaEnCurso(eq(1), anyDouble());
+    }
+
+    @Test
+    void guardar_siFalla_deberiaReintentarEnLaProximaEjecucion() {
+        registro.registrarNueva(prueba(1, null));
+        odometro.registrar(recta(4));
+        when(pruebaRepository.actualizarDistanciaEnCurso(eq(1), anyDouble()))
+                .thenThrow(new RuntimeException("database is locked"))
+                .thenReturn(1);
+
+        assertEquals(0, odometro.guardar());
+        assertEquals(1, odometro.guardar());
+        assertEquals(1, odometro.getEstado().getErrores());
+    }
+
+    @Test
+    void completarFinalizadas_deberiaUsarElResumenSiLaPruebaLoTieneYSiNoElRecorrido() {
+        ReflectionTestUtils.setField(odometro, "tamanioLote", 2);
+        Prueba resumida = prueba(1, null);
+        resumida.setFechaHoraFin(new Date(INICIO + 100_000));
+        Prueba completa = prueba(2, null);
+        completa.setFechaHoraFin(new Date(INICIO + 100_000));
+        Prueba siguiente = prueba(5, null);
+        siguiente.setFechaHoraFin(new Date(INICIO + 100_000));
+        ResumenPrueba resumen = new ResumenPrueba();
+        resumen.setIdPrueba(1);
+        resumen.setDistanciaKm(12.5);
+        when(pruebaRepository.findFinalizadasSinDistancia(eq(0), any(Pageable.class))).thenReturn(List.of(resumida, completa));
+        when(pruebaRepository.findFinalizadasSinDistancia(eq(2), any(Pageable.class))).thenReturn(List.of(siguiente));
+        when(resumenPruebaRepository.findAllById(List.of(1, 2))).thenReturn(List.of(resumen));
+        when(resumenPruebaRepository.findAllById(List.of(5))).thenReturn(List.of());
+        when(historialPosiciones.buscarTrayectoria(3, INICIO, INICIO + 100_000)).thenReturn(Trayectoria.de(recta(20)));
+        List<List<Prueba>> avisos = new ArrayList<>();
+        odometro.alCompletar(avisos::add);
+
+        assertEquals(3, odometro.completarFinalizadas());
+
+        verify(pruebaRepository).actualizarDistancia(1, 12.5);
+        verify(pruebaRepository).actualizarDistancia(2, Trayectoria.de(recta(20)).distanciaKm());
+        verify(pruebaRepository).actualizarDistancia(5, Trayectoria.de(recta(20)).distanciaKm());
+        verify(pruebaRepository, times(2)).findFinalizadasSinDistancia(anyInt(), any(Pageable.class));
+        // Un aviso por lote, con la distancia ya puesta.
+        assertEquals(List.of(List.of(resumida, completa), List.of(siguiente)), avisos);
+        assertEquals(12.5, resumida.getDistanciaKm());
+    }
+
+    private Prueba prueba(int id, Double distanciaKm) {
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date(INICIO));
+        prueba.setId(id);
+        prueba.setDistanciaKm(distanciaKm);
+        return prueba;
+    }
+
+    // Una posición cada 5 segundos, 50 m más al este que la anterior.
+    private List<Posicion> recta(int cantidad) {
+        List<Posicion> posiciones = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            posiciones.add(new Posicion(i + 1, vehiculo, INICIO + i * 5000L, -31.4, -64.2 + i * 0.000527));
+        }
+        return posiciones;
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.service;
+
+import org.example.models.Modelo;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PruebaRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegistroPruebasActivasTest {
+
+    @Mock
+    private PruebaRepository pruebaRepository;
+
+    @InjectMocks
+    private RegistroPruebasActivas registro;
+
+    @Test
+    void buscarPorVehiculo_conPruebaCargada_noDeberiaConsultarLaBase() {
+        when(pruebaRepository.findByFechaHoraFinIsNull()).thenReturn(List.of(prueba(1, 10, "AB123CD")));
+        registro.cargar();
+
+        PruebaActiva activa = registro.buscarPorVehiculo(10);
+
+        assertNotNull(activa);
+        assertEquals(1, activa.getIdPrueba());
+        assertEquals("AB123CD", activa.referenciaVehiculo().getPatente());
+        assertEquals(7L, activa.referenciaVehiculo().getModelo().getId());
+        verify(pruebaRepository, never()).findPruebaActivaByVehiculoId(any());
+    }
+
+    @Test
+    void buscarPorVehiculo_siNoEstaEnMemoria_deberiaBuscarloEnLaBaseYRecordarlo() {
+        when(pruebaRepository.findPruebaActivaByVehiculoId(10)).thenReturn(prueba(1, 10, "AB123CD"));
+
+        assertNotNull(registro.buscarPorVehiculo(10));
+        assertNotNull(registro.buscarPorVehiculo(10));
+
+        verify(pruebaRepository, times(1)).findPruebaActivaByVehiculoId(10);
+        assertEquals(1, registro.getEstado().getConsultasResueltasEnBase());
+        assertEquals(1, registro.getEstado().getConsultasResueltasEnMemoria());
+    }
+
+    @Test
+    void quitar_deberiaSacarLaPruebaDelRegistro() {
+        Prueba prueba = prueba(1, 10, "AB123CD");
+        registro.registrar(prueba);
+
+        registro.quitar(prueba);
+
+        assertNull(registro.buscarPorVehiculo(10));
+    }
+
+    @Test
+    void quitar_conOtraPruebaDelMismoVehiculo_noDeberiaSacarLa() {
+        registro.registrar(prueba(2, 10, "AB123CD"));
+
+        registro.quitar(prueba(1, 10, "AB123CD"));
+
+        assertEquals(2, registro.buscarPorVehiculo(10).getIdPrueba());
+    }
+
+    @Test
+    void buscarPorVehiculos_deberiaConsultarLaBaseSoloPorLosQueFaltan() {
+        registro.registrar(prueba(1, 10, "AAA"));
+        when(pruebaRepository.findByFechaHoraFinIsNullAndVehiculo_IdIn(Set.of(20, 30))).thenReturn(List.of(prueba(2, 20, "BBB")));
+
+        Map<Integer, PruebaActiva> encontradas = registro.buscarPorVehiculos(List.of(10, 20, 30));
+
+        assertEquals(Set.of(10, 20), encontradas.keySet());
+    }
+
+    @Test
+    void buscarPorVehiculo_sinPruebaEnLaBase_deberiaRecordarloSinVolverAConsultar() {
+        assertNull(registro.buscarPorVehiculo(10));
+        assertNull(registro.buscarPorVehiculo(10));
+        assertTrue(registro.buscarPorVehiculos(List.of(10)).isEmpty());
+
+        verify(pruebaRepository, times(1)).findPruebaActivaByVehiculoId(10);
+        verify(pruebaRepository, never()).findByFechaHoraFinIsNullAndVehiculo_IdIn(any());
+        assertEquals(2, registro.getEstado().getConsultasResueltasSinPrueba());
+    }
+
+    @Test
+    void buscarPorVehiculo_sinPruebaRecordado_deberiaVerLaPruebaNuevaApenasSeRegistra() {
+        assertNull(registro.buscarPorVehiculo(10));
+
+        registro.registrarNueva(prueba(1, 10, "AAA"));
+
+        assertEquals(1, registro.buscarPorVehiculo(10).getIdPrueba());
+    }
+
+    @Test
+    void buscarPorVehiculo_sinPruebaVencido_deberiaVolverAConsultarLaBase() {
+        ReflectionTestUtils.setField(registro, "sinPruebaTtlMs", 0L);
+
+        assertNull(registro.buscarPorVehiculo(10));
+        assertNull(registro.buscarPorVehiculo(10));
+
+        verify(pruebaRepository, times(2)).findPruebaActivaByVehiculoId(10);
+    }
+
+    @Test
+    void reconciliar_deberiaCorregirLasDiferenciasConLaBase() {
+        registro.registrar(prueba(1, 10, "AAA")); // finalizada por fuera del servicio
+        registro.registrar(prueba(2, 20, "BBB")); // sigue en curso
+        when(pruebaRepository.findByFechaHoraFinIsNull()).thenReturn(List.of(
+                prueba(2, 20, "BBB"),
+                prueba(3, 30, "CCC") // creada por fuera del servicio
+        ));
+
+        int diferencias = registro.reconciliar();
+
+        assertEquals(2, diferencias);
+        assertEquals(2, registro.getEstado().getPruebasActivas());
+        assertEquals(3, registro.buscarPorVehiculo(30).getIdPrueba());
+        assertEquals(0, registro.reconciliar());
+    }
+
+    @Test
+    void marcarIncidente_deberiaDevolverTrueSoloLaPrimeraVez() {
+        PruebaActiva activa = registro.registrar(prueba(1, 10, "AAA"));
+
+        assertTrue(activa.marcarIncidente());
+        assertFalse(activa.marcarIncidente());
+    }
+
+    @Test
+    void marcarIncidente_conVariosPings_deberiaActualizarLaBaseUnaSolaVez() {
+        PruebaActiva activa = registro.registrar(prueba(1, 10, "AAA"));
+
+        assertTrue(registro.marcarIncidente(activa));
+        assertFalse(registro.marcarIncidente(activa));
+        assertFalse(registro.marcarIncidente(activa));
+
+        verify(pruebaRepository, times(1)).marcarIncidente(1);
+        verify(pruebaRepository, never()).findById(any());
+        verify(pruebaRepository, never()).save(any());
+        assertEquals(1, registro.getEstado().getIncidentesGuardados());
+        assertEquals(2, registro.getEstado().getIncidentesYaMarcados());
+    }
+
+    @Test
+    void marcarIncidente_siFallaLaBase_deberiaReintentarEnElProximoPing() {
+        PruebaActiva activa = registro.registrar(prueba(1, 10, "AAA"));
+        when(pruebaRepository.marcarIncidente(1)).thenThrow(new RuntimeException("base no disponible")).thenReturn(1);
+
+        assertThrows(RuntimeException.class, () -> registro.marcarIncidente(activa));
+        assertFalse(activa.isIncidente());
+        assertTrue(registro.marcarIncidente(activa));
+
+        verify(pruebaRepository, times(2)).marcarIncidente(1);
+    }
+
+    @Test
+    void cargar_conPruebaYaMarcadaEnLaBase_noDeberiaVolverAActualizarla() {
+        Prueba conIncidente = prueba(1, 10, "AAA");
+        conIncidente.setIncidente(true);
+        when(pruebaRepository.findByFechaHoraFinIsNull()).thenReturn(List.of(conIncidente));
+        registro.cargar();
+
+        assertFalse(registro.marcarIncidente(registro.buscarPorVehiculo(10)));
+        verify(pruebaRepository, never()).marcarIncidente(any());
+    }
+
+    @Test
+    void reconciliar_conIncidenteMarcadoEnLaBase_deberiaCopiarloAMemoria() {
+        PruebaActiva activa = registro.registrar(prueba(1, 10, "AAA"));
+        Prueba enBase = prueba(1, 10, "AAA");
+        enBase.setIncidente(true);
+        when(pruebaRepository.findByFechaHoraFinIsNull()).thenReturn(List.of(enBase));
+
+        assertEquals(1, registro.reconciliar());
+        assertTrue(activa.isIncidente());
+        assertFalse(registro.marcarIncidente(activa));
+        verify(pruebaRepository, never()).marcarIncidente(any());
+    }
+
+    private static Prueba prueba(int idPrueba, int idVehiculo, String patente) {
+        Modelo modelo = new Modelo();
+        modelo.setId(7L);
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setPatente(patente);
+        vehiculo.setModelo(modelo);
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date());
+        prueba.setId(idPrueba);
+        return prueba;
+    }
+}
@@ -1,27 +1,40 @@
 package org.example.service;
 
-import org.example.dtos.EmpleadoDto;
-import org.example.dtos.PruebaDto;
+import jakarta.persistence.EntityManager;
 import org.example.models.*;
 import org.example.repositories.EmpleadoRepository;
-import org.example.repositories.PosicionRepository;
+import org.example.repositories.HistorialPosiciones;
 import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
 import org.example.repositories.VehiculoRepository;
+import org.example.service.geocerca.EvaluadorGeocerca;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.trayectoria.Trayectoria;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,15 +42,24 @@ class ReporteServiceTest {
 
     // --- Mocks de Repositorios y Servicios ---
     @Mock
-    private PruebaService pruebaService;
-    @Mock
     private EmpleadoRepository empleadoRepository;
     @Mock
     private VehiculoRepository vehiculoRepository;
     @Mock
     private PruebaRepository pruebaRepository;
     @Mock
-    private PosicionRepository posicionRepository;
+    private HistorialPosiciones historialPosiciones;
+    @Mock
+    private ResumenPruebaRepository resumenPruebaRepository;
+    // Real: el cálculo de distancias es parte de lo que se prueba.
+    @Spy
+    private EvaluadorGeocerca evaluadorGeocerca;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private KilometrajeFlota kilometrajeFlota;
 
     // --- Clase bajo prueba ---
     @InjectMocks
@@ -45,7 +67,6 @@ class ReporteServiceTest {
 
     // --- Datos de prueba ---
     private Empleado empleadoDePrueba;
-    private PruebaDto pruebaConIncidenteDto;
     private Vehiculo vehiculoDePrueba;
     private Prueba pruebaDePrueba1;
     private Prueba pruebaDePrueba2;
@@ -60,11 +81,6 @@ class ReporteServiceTest {
         empleadoDePrueba = new Empleado("Juan", "Perez", 12345);
         empleadoDePrueba.setLegajo(1L);
 
-        pruebaConIncidenteDto = new PruebaDto();
-        pruebaConIncidenteDto.setId(100);
-        pruebaConIncidenteDto.setIncidente(true);
-        pruebaConIncidenteDto.setEmpleado(new EmpleadoDto(1L, "Juan", "Perez", 12345));
-
         // --- Datos para Vehículo y Pruebas asociadas ---
         Marca marca = new Marca();
         marca.setNombre("Ford");
@@ -110,98 +126,213 @@ class ReporteServiceTest {
     }
 
     @Test
-    void generarReporteIncidentes_cuandoNoHayIncidentes_deberiaRetornarMensaje() {
-        when(pruebaService.getPruebasConIncidentes()).thenReturn(Collections.emptyList());
-        String reporte = reporteService.generarReporteIncidentes();
+    void reporteIncidentes_cuandoNoHayIncidentes_deberiaRetornarMensaje() throws IOException {
+        when(pruebaRepository.findIncidentesDesde(eq(0), any())).thenReturn(List.of());
+        String reporte = escribir(reporteService.reporteIncidentes(FormatoReporte.TEXT));
         assertEquals("No hay pruebas con incidentes registradas.", reporte);
     }
 
     @Test
-    void generarReporteIncidentes_cuandoHayIncidentes_deberiaRetornarTabla() {
-        when(pruebaService.getPruebasConIncidentes()).thenReturn(List.of(pruebaConIncidenteDto));
-        String reporte = reporteService.generarReporteIncidentes();
+    void reporteIncidentes_cuandoHayIncidentes_deberiaRetornarTabla() throws IOException {
+        when(pruebaRepository.findIncidentesDesde(eq(0), any())).thenReturn(List.of(pruebaDePrueba1));
+        String reporte = escribir(reporteService.reporteIncidentes(FormatoReporte.TEXT));
         assertTrue(reporte.contains("Reporte de Pruebas con Incidentes"));
         assertTrue(reporte.contains("Juan Perez"));
-        assertTrue(reporte.contains("100"));
+        assertTrue(reporte.contains("AB123CD"));
+        // La tabla de siempre: separador y fechas como las devuelve la base.
+        assertTrue(reporte.contains("\n-----|------------|----------------------|----------------------|----------------------|----------------------|-----------\n"), reporte);
+        assertTrue(reporte.contains(" | " + pruebaDePrueba1.getFechaHoraInicio().toString()), reporte);
+        // Cada prueba escrita se suelta del contexto de persistencia.
+        verify(entityManager).detach(pruebaDePrueba1);
     }
 
     @Test
-    void generarReporteIncidentesPorEmpleado_cuandoEmpleadoNoExiste_deberiaRetornarMensajeError() {
+    void reporteIncidentes_deberiaLeerDeAPaginasPorId() throws IOException {
+        ReflectionTestUtils.setField(reporteService, "tamanioPagina", 1);
+        when(pruebaRepository.findIncidentesDesde(eq(0), any())).thenReturn(List.of(pruebaDePrueba1));
+        when(pruebaRepository.findIncidentesDesde(eq(1), any())).thenReturn(List.of(pruebaDePrueba2));
+        when(pruebaRepository.findIncidentesDesde(eq(2), any())).thenReturn(List.of());
+
+        String[] lineas = escribir(reporteService.reporteIncidentes(FormatoReporte.NDJSON)).split("\n");
+
+        assertEquals(2, lineas.length);
+        // Una transacción corta por página, incluida la última vacía.
+        verify(transactionManager, times(3)).getTransaction(any());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void reporteIncidentes_enCsv_deberiaEscribirEncabezadoYUnaFilaPorPrueba() throws IOException {
+        pruebaDePrueba1.setEmpleado(new Empleado("Juan, \"el Rápido\"", "Perez", 12345));
+        when(pruebaRepository.findIncidentesDesde(eq(0), any())).thenReturn(List.of(pruebaDePrueba1));
+
+        String[] lineas = escribir(reporteService.reporteIncidentes(FormatoReporte.CSV)).split("\r\n");
+
+        assertEquals(2, lineas.length);
+        assertEquals("id,patente,empleado,interesado,fechaHoraInicio,fechaHoraFin,incidente", lineas[0]);
+        assertTrue(lineas[1].startsWith("1,AB123CD,\"Juan, \"\"el Rápido\"\" Perez\",,"), lineas[1]);
+        assertTrue(lineas[1].endsWith(",,true"), lineas[1]);
+    }
+
+    @Test
+    void reporteIncidentes_enNdjson_deberiaEscribirUnObjetoPorLinea() throws IOException {
+        when(pruebaRepository.findIncidentesDesde(eq(0), any())).thenReturn(List.of(pruebaDePrueba1, pruebaDePrueba2));
+
+        String[] lineas = escribir(reporteService.reporteIncidentes(FormatoReporte.NDJSON)).split("\n");
+
+        assertEquals(2, lineas.length);
+        assertTrue(lineas[0].startsWith("{\"id\":1,\"patente\":\"AB123CD\",\"empleado\":\"Juan Perez\",\"interesado\":null,"), lineas[0]);
+        assertTrue(lineas[1].contains("\"empleado\":null"), lineas[1]);
+        assertTrue(lineas[1].endsWith("\"incidente\":false}"), lineas[1]);
+    }
+
+    @Test
+    void reporteIncidentesPorEmpleado_cuandoEmpleadoNoExiste_deberiaLanzarExcepcionSinLeerPruebas() {
         Long legajoInexistente = 999L;
         when(empleadoRepository.findById(legajoInexistente)).thenReturn(Optional.empty());
-        String reporte = reporteService.generarReporteIncidentesPorEmpleado(legajoInexistente);
-        assertEquals("Empleado con legajo 999 no encontrado.", reporte);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reporteService.reporteIncidentesPorEmpleado(legajoInexistente, FormatoReporte.TEXT));
+        assertEquals("Empleado con legajo 999 no encontrado.", e.getMessage());
+        verify(pruebaRepository, never()).findIncidentesDeEmpleadoDesde(anyLong(), anyInt(), any());
     }
 
     @Test
-    void generarReporteIncidentesPorEmpleado_cuandoEmpleadoNoTieneIncidentes_deberiaRetornarMensaje() {
+    void reporteIncidentesPorEmpleado_cuandoEmpleadoNoTieneIncidentes_deberiaRetornarMensaje() throws IOException {
         when(empleadoRepository.findById(1L)).thenReturn(Optional.of(empleadoDePrueba));
-        when(pruebaService.getIncidentesPorEmpleado(1L)).thenReturn(Collections.emptyList());
-        String reporte = reporteService.generarReporteIncidentesPorEmpleado(1L);
+        when(pruebaRepository.findIncidentesDeEmpleadoDesde(eq(1L), eq(0), any())).thenReturn(List.of());
+        String reporte = escribir(reporteService.reporteIncidentesPorEmpleado(1L, FormatoReporte.TEXT));
         assertTrue(reporte.contains("El empleado no tiene incidentes registrados."));
     }
 
     @Test
-    void generarReporteIncidentesPorEmpleado_cuandoEmpleadoTieneIncidentes_deberiaRetornarReporteCompleto() {
+    void reporteIncidentesPorEmpleado_cuandoEmpleadoTieneIncidentes_deberiaRetornarReporteCompleto() throws IOException {
         when(empleadoRepository.findById(1L)).thenReturn(Optional.of(empleadoDePrueba));
-        when(pruebaService.getIncidentesPorEmpleado(1L)).thenReturn(List.of(pruebaConIncidenteDto));
-        String reporte = reporteService.generarReporteIncidentesPorEmpleado(1L);
+        when(pruebaRepository.findIncidentesDeEmpleadoDesde(eq(1L), eq(0), any())).thenReturn(List.of(pruebaDePrueba1));
+        String reporte = escribir(reporteService.reporteIncidentesPorEmpleado(1L, FormatoReporte.TEXT));
         assertTrue(reporte.contains("Reporte de Incidentes para el Empleado"));
-        assertTrue(reporte.contains("100"));
+        assertTrue(reporte.contains("1     | AB123CD"));
     }
 
     @Test
-    void generarReporteKilometraje_cuandoVehiculoNoExiste_deberiaRetornarMensajeError() {
+    void reporteKilometraje_cuandoVehiculoNoExiste_deberiaLanzarExcepcion() {
         when(vehiculoRepository.findByPatente("PATENTE_INEXISTENTE")).thenReturn(Optional.empty());
-        String reporte = reporteService.generarReporteKilometraje("PATENTE_INEXISTENTE", new Date(), new Date());
-        assertEquals("Vehículo con patente PATENTE_INEXISTENTE no encontrado.", reporte);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reporteService.reporteKilometraje("PATENTE_INEXISTENTE", new Date(), new Date(), FormatoReporte.TEXT));
+        assertEquals("Vehículo con patente PATENTE_INEXISTENTE no encontrado.", e.getMessage());
     }
 
     @Test
-    void generarReporteKilometraje_cuandoNoHayPruebasFinalizadas_deberiaRetornarMensaje() {
+    void reporteKilometraje_cuandoNoHayPruebasFinalizadas_deberiaRetornarMensaje() throws IOException {
         when(vehiculoRepository.findByPatente(anyString())).thenReturn(Optional.of(vehiculoDePruebaKm));
-        when(pruebaRepository.findAllByVehiculo_Id(anyInt())).thenReturn(Collections.emptyList());
-        String reporte = reporteService.generarReporteKilometraje("AA111AA", new Date(), new Date());
+        when(pruebaRepository.streamFinalizadasDeVehiculo(anyInt(), any(Date.class), any(Date.class))).thenReturn(Stream.empty());
+        String reporte = escribir(reporteService.reporteKilometraje("AA111AA", new Date(), new Date(), FormatoReporte.TEXT));
         assertEquals("El vehículo no tiene pruebas finalizadas en el período especificado.", reporte);
     }
 
     @Test
-    void generarReporteKilometraje_cuandoHayPruebasYPosiciones_deberiaCalcularDistanciaCorrectamente() {
+    void reporteKilometraje_cuandoHayPruebasYPosiciones_deberiaCalcularDistanciaCorrectamente() throws IOException {
         when(vehiculoRepository.findByPatente("AA111AA")).thenReturn(Optional.of(vehiculoDePruebaKm));
-        when(pruebaRepository.findAllByVehiculo_Id(10)).thenReturn(List.of(pruebaDePruebaKm));
-        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(
+        when(pruebaRepository.streamFinalizadasDeVehiculo(eq(10), any(Date.class), any(Date.class))).thenReturn(Stream.of(pruebaDePruebaKm));
+        when(resumenPruebaRepository.findById(100)).thenReturn(Optional.empty());
+        when(historialPosiciones.buscarTrayectoria(
                 10, pruebaDePruebaKm.getFechaHoraInicio().getTime(), pruebaDePruebaKm.getFechaHoraFin().getTime()))
-                .thenReturn(posicionesDePrueba);
+                .thenReturn(Trayectoria.de(posicionesDePrueba));
 
-        String reporte = reporteService.generarReporteKilometraje("AA111AA", new Date(1760564300000L), new Date(1760566300000L));
+        String reporte = escribir(reporteService.reporteKilometraje("AA111AA", new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.TEXT));
         assertTrue(reporte.contains("Kilometraje total recorrido: 1,45 km"));
     }
 
+    @Test
+    void reporteKilometraje_cuandoLaPruebaTieneResumen_deberiaUsarLaDistanciaDelResumen() throws IOException {
+        // Prueba que pasó por la retención: en Posiciones ya no quedan puntos, solo su resumen.
+        ResumenPrueba resumen = new ResumenPrueba();
+        resumen.setIdPrueba(100);
+        resumen.setDistanciaKm(12.5);
+        resumen.setNivel(ResumenPrueba.Nivel.RESUMIDA);
+        when(vehiculoRepository.findByPatente("AA111AA")).thenReturn(Optional.of(vehiculoDePruebaKm));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(eq(10), any(Date.class), any(Date.class))).thenReturn(Stream.of(pruebaDePruebaKm));
+        when(resumenPruebaRepository.findById(100)).thenReturn(Optional.of(resumen));
+
+        String reporte = escribir(reporteService.reporteKilometraje("AA111AA", new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.TEXT));
+
+        assertTrue(reporte.contains("Kilometraje total recorrido: 12,50 km"));
+        verify(historialPosiciones, never()).buscarTrayectoria(anyInt(), anyLong(), anyLong());
+    }
+
+    @Test
+    void reporteKilometraje_cuandoLaPruebaTieneDistanciaGuardada_deberiaSumarlaSinLeerPosiciones() throws IOException {
+        pruebaDePruebaKm.setDistanciaKm(3.25);
+        when(vehiculoRepository.findByPatente("AA111AA")).thenReturn(Optional.of(vehiculoDePruebaKm));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(eq(10), any(Date.class), any(Date.class))).thenReturn(Stream.of(pruebaDePruebaKm));
+
+        String reporte = escribir(reporteService.reporteKilometraje("AA111AA", new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.TEXT));
+
+        assertTrue(reporte.contains("Kilometraje total recorrido: 3,25 km"));
+        verify(historialPosiciones, never()).buscarTrayectoria(anyInt(), anyLong(), anyLong());
+        verify(resumenPruebaRepository, never()).findById(any());
+    }
+
+    @Test
+    void reporteKilometraje_enNdjson_deberiaEscribirUnaFilaConElTotal() throws IOException {
+        pruebaDePruebaKm.setDistanciaKm(3.25);
+        when(vehiculoRepository.findByPatente("AA111AA")).thenReturn(Optional.of(vehiculoDePruebaKm));
+        when(pruebaRepository.streamFinalizadasDeVehiculo(eq(10), any(Date.class), any(Date.class))).thenReturn(Stream.of(pruebaDePruebaKm));
+
+        String reporte = escribir(reporteService.reporteKilometraje("AA111AA", new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.NDJSON));
+
+        assertTrue(reporte.startsWith("{\"patente\":\"AA111AA\","), reporte);
+        assertTrue(reporte.endsWith("\"pruebas\":1,\"kilometraje\":3.25}\n"), reporte);
+    }
+
+    @Test
+    void reporteKilometrajeFlota_enTexto_deberiaListarLosVehiculosYElTotal() throws IOException {
+        when(kilometrajeFlota.calcular(any(Date.class), any(Date.class))).thenReturn(new KilometrajeFlota.Resultado(
+                List.of(new KilometrajeFlota.Fila("BB222BB", 2, 10.5), new KilometrajeFlota.Fila("AA111AA", 1, 3.25)), 3, 13.75));
+
+        String reporte = escribir(reporteService.reporteKilometrajeFlota(new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.TEXT));
+
+        assertTrue(reporte.startsWith("Reporte de Kilometraje de la Flota\n"), reporte);
+        assertTrue(reporte.contains("Patente    | Pruebas  | Kilometraje\n"), reporte);
+        assertTrue(reporte.contains("BB222BB    | 2        | 10,50\n"), reporte);
+        assertTrue(reporte.endsWith("TOTAL      | 3        | 13,75\n"), reporte);
+    }
+
+    @Test
+    void reporteKilometrajeFlota_enCsv_deberiaEscribirLosValoresSinRedondear() throws IOException {
+        when(kilometrajeFlota.calcular(any(Date.class), any(Date.class))).thenReturn(new KilometrajeFlota.Resultado(
+                List.of(new KilometrajeFlota.Fila("AA111AA", 1, 3.125)), 1, 3.125));
+
+        String reporte = escribir(reporteService.reporteKilometrajeFlota(new Date(1760564300000L), new Date(1760566300000L), FormatoReporte.CSV));
+
+        assertEquals("patente,pruebas,kilometraje\r\nAA111AA,1,3.125\r\nTOTAL,1,3.125\r\n", reporte);
+    }
+
     // =================================================================
-    // === NUEVOS TESTS PARA generarReportePruebasPorVehiculo ===
+    // === NUEVOS TESTS PARA reportePruebasPorVehiculo ===
     // =================================================================
 
     @Test
-    void generarReportePruebasPorVehiculo_cuandoVehiculoNoExiste_deberiaRetornarMensajeError() {
+    void reportePruebasPorVehiculo_cuandoVehiculoNoExiste_deberiaLanzarExcepcion() {
         // Arrange
         String patenteInexistente = "XX999XX";
         when(vehiculoRepository.findByPatente(patenteInexistente)).thenReturn(Optional.empty());
 
         // Act
-        String reporte = reporteService.generarReportePruebasPorVehiculo(patenteInexistente);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reporteService.reportePruebasPorVehiculo(patenteInexistente, FormatoReporte.TEXT));
 
         // Assert
-        assertEquals("Vehículo con patente " + patenteInexistente + " no encontrado.", reporte);
+        assertEquals("Vehículo con patente " + patenteInexistente + " no encontrado.", e.getMessage());
     }
 
     @Test
-    void generarReportePruebasPorVehiculo_cuandoVehiculoNoTienePruebas_deberiaRetornarMensaje() {
+    void reportePruebasPorVehiculo_cuandoVehiculoNoTienePruebas_deberiaRetornarMensaje() throws IOException {
         // Arrange
         when(vehiculoRepository.findByPatente(vehiculoDePrueba.getPatente())).thenReturn(Optional.of(vehiculoDePrueba));
-        when(pruebaRepository.findAllByVehiculo_Id(vehiculoDePrueba.getId())).thenReturn(Collections.emptyList());
+        when(pruebaRepository.findPruebasDeVehiculoDesde(eq(vehiculoDePrueba.getId()), eq(0), any())).thenReturn(List.of());
 
         // Act
-        String reporte = reporteService.generarReportePruebasPorVehiculo(vehiculoDePrueba.getPatente());
+        String reporte = escribir(reporteService.reportePruebasPorVehiculo(vehiculoDePrueba.getPatente(), FormatoReporte.TEXT));
 
         // Assert
         assertTrue(reporte.contains("Reporte de Pruebas para el Vehículo: " + vehiculoDePrueba.getPatente()));
@@ -210,13 +341,13 @@ class ReporteServiceTest {
     }
 
     @Test
-    void generarReportePruebasPorVehiculo_cuandoVehiculoTienePruebas_deberiaRetornarTablaCompleta() {
+    void reportePruebasPorVehiculo_cuandoVehiculoTienePruebas_deberiaRetornarTablaCompleta() throws IOException {
         // Arrange
         when(vehiculoRepository.findByPatente(vehiculoDePrueba.getPatente())).thenReturn(Optional.of(vehiculoDePrueba));
-        when(pruebaRepository.findAllByVehiculo_Id(vehiculoDePrueba.getId())).thenReturn(List.of(pruebaDePrueba1, pruebaDePrueba2));
+        when(pruebaRepository.findPruebasDeVehiculoDesde(eq(vehiculoDePrueba.getId()), eq(0), any())).thenReturn(List.of(pruebaDePrueba1, pruebaDePrueba2));
 
         // Act
-        String reporte = reporteService.generarReportePruebasPorVehiculo(vehiculoDePrueba.getPatente());
+        String reporte = escribir(reporteService.reportePruebasPorVehiculo(vehiculoDePrueba.getPatente(), FormatoReporte.TEXT));
 
         // Assert
         // 1. Verificar la cabecera del reporte
@@ -232,4 +363,11 @@ class ReporteServiceTest {
         String fechaPrueba2 = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(pruebaDePrueba2.getFechaHoraInicio());
         assertTrue(reporte.contains("2     | N/A                  | " + fechaPrueba2 + "     | NO"));
     }
-}
\ No newline at end of file
+
+    // El controlador pasa el OutputStream de la respuesta; acá se junta en memoria para revisarlo.
+    private static String escribir(StreamingResponseBody reporte) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        reporte.writeTo(salida);
+        return salida.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.service;
+
+import org.example.dtos.EstadoRestriccionesDto;
+import org.example.dtos.externos.RestriccionesDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RestriccionesServiceTest {
+
+    @Mock
+    private ExternalApisService externalApisService;
+
+    @InjectMocks
+    private RestriccionesService restriccionesService;
+
+    private RestriccionesDto restricciones;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(restriccionesService, "maxAntiguedadMs", 60000L);
+        ReflectionTestUtils.setField(restriccionesService, "timeoutMs", 1000L);
+        restricciones = new RestriccionesDto();
+        restricciones.setRadioMaximoMetros(1000.0);
+    }
+
+    @Test
+    void obtenerRestricciones_sinFoto_deberiaPedirlasAlServicioExterno() {
+        when(externalApisService.getRestricciones()).thenReturn(Mono.just(restricciones));
+
+        RestriccionesDto resultado = restriccionesService.obtenerRestricciones().block();
+
+        assertNotNull(resultado);
+        assertEquals(1000.0, resultado.getRadioMaximoMetros());
+        verify(externalApisService, times(1)).getRestricciones();
+    }
+
+    @Test
+    void obtenerRestricciones_conFotoVigente_noDeberiaLlamarAlServicioExterno() {
+        when(externalApisService.getRestricciones()).thenReturn(Mono.just(restricciones));
+        restriccionesService.refrescar().block();
+
+        restriccionesService.obtenerRestricciones().block();
+        restriccionesService.obtenerRestricciones().block();
+
+        verify(externalApisService, times(1)).getRestricciones();
+    }
+
+    @Test
+    void obtenerRestricciones_conFotoVencida_deberiaDevolverLaAnteriorYRefrescar() {
+        when(externalApisService.getRestricciones()).thenReturn(Mono.just(restricciones));
+        restriccionesService.refrescar().block();
+        ReflectionTestUtils.setField(restriccionesService, "maxAntiguedadMs", -1L);
+
+        // El servicio externo deja de responder: se tiene que seguir sirviendo la foto anterior.
+        when(externalApisService.getRestricciones()).thenReturn(Mono.never());
+
+        RestriccionesDto resultado = restriccionesService.obtenerRestricciones().block();
+
+        assertNotNull(resultado);
+        assertEquals(1000.0, resultado.getRadioMaximoMetros());
+        verify(externalApisService, times(2)).getRestricciones();
+    }
+
+    @Test
+    void refrescar_cuandoFalla_deberiaConservarLaFotoYContarElFallo() {
+        when(externalApisService.getRestricciones()).thenReturn(Mono.just(restricciones));
+        restriccionesService.refrescar().block();
+
+        when(externalApisService.getRestricciones()).thenReturn(Mono.error(new RuntimeException("Error 500")));
+        RestriccionesSnapshot resultado = restriccionesService.refrescar().block();
+
+        assertNotNull(resultado);
+        assertEquals(1000.0, resultado.getRestricciones().getRadioMaximoMetros());
+        EstadoRestriccionesDto estado = restriccionesService.getEstado();
+        assertTrue(estado.isDisponible());
+        assertEquals(1, estado.getRefrescosExitosos());
+        assertEquals(1, estado.getRefrescosFallidos());
+        assertEquals(1, estado.getFallosConsecutivos());
+        assertTrue(estado.getUltimoError().contains("Error 500"));
+    }
+
+    @Test
+    void obtenerRestricciones_sinFotoYConFallo_deberiaLanzarIllegalStateException() {
+        when(externalApisService.getRestricciones()).thenReturn(Mono.error(new RuntimeException("Error 500")));
+
+        assertThrows(IllegalStateException.class, () -> restriccionesService.obtenerRestricciones().block());
+        assertFalse(restriccionesService.getEstado().isDisponible());
+    }
+}
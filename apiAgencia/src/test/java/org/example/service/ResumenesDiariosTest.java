@@ -0,0 +1,283 @@
+package org.example.service;
+
+import org.example.dtos.ResumenFlotaDto;
+import org.example.dtos.TotalesFlotaDto;
+import org.example.models.Empleado;
+import org.example.models.Interesado;
+import org.example.models.PersonaResumenDiario;
+import org.example.models.Prueba;
+import org.example.models.ResumenDiarioVehiculo;
+import org.example.models.Vehiculo;
+import org.example.repositories.PersonaResumenDiarioRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenDiarioVehiculoRepository;
+import org.example.repositories.VehiculoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumenesDiariosTest {
+
+    private static final LocalDate DIA = LocalDate.of(2025, 10, 15);
+    private static final int DIA_AAAAMMDD = 20251015;
+
+    @Mock
+    private ResumenDiarioVehiculoRepository resumenRepository;
+    @Mock
+    private PersonaResumenDiarioRepository personaRepository;
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+    @Mock
+    private OdometroPruebas odometroPruebas;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ResumenesDiarios resumenesDiarios;
+    private Vehiculo vehiculo;
+
+    @BeforeEach
+    void setUp() {
+        resumenesDiarios = new ResumenesDiarios(resumenRepository, personaRepository, pruebaRepository,
+                vehiculoRepository, odometroPruebas, transactionManager);
+        vehiculo = new Vehiculo();
+        vehiculo.setId(3);
+        vehiculo.setPatente("AA111AA");
+    }
+
+    @Test
+    void registrarInicio_enUnDiaNuevo_deberiaCrearElResumenConSusPersonas() {
+        when(resumenRepository.findById(new ResumenDiarioVehiculo.Clave(3, DIA_AAAAMMDD))).thenReturn(Optional.empty());
+        when(personaRepository.existsById(any())).thenReturn(false);
+
+        resumenesDiarios.registrarInicio(prueba(1, 10L, 20L, hora(9), null));
+
+        ResumenDiarioVehiculo guardado = resumenGuardado();
+        assertEquals(1, guardado.getPruebasIniciadas());
+        assertEquals(1, guardado.getEmpleados());
+        assertEquals(1, guardado.getInteresados());
+        verify(personaRepository).save(new PersonaResumenDiario(3, DIA_AAAAMMDD, PersonaResumenDiario.Tipo.EMPLEADO, 10L));
+        verify(personaRepository).save(new PersonaResumenDiario(3, DIA_AAAAMMDD, PersonaResumenDiario.Tipo.INTERESADO, 20L));
+    }
+
+    @Test
+    void registrarInicio_conUnEmpleadoQueYaProboElVehiculoEseDia_noDeberiaContarloDosVeces() {
+        ResumenDiarioVehiculo existente = new ResumenDiarioVehiculo(3, DIA_AAAAMMDD);
+        existente.setPruebasIniciadas(1);
+        existente.setEmpleados(1);
+        existente.setInteresados(1);
+        when(resumenRepository.findById(new ResumenDiarioVehiculo.Clave(3, DIA_AAAAMMDD))).thenReturn(Optional.of(existente));
+        when(personaRepository.existsById(new PersonaResumenDiario.Clave(3, DIA_AAAAMMDD, PersonaResumenDiario.Tipo.EMPLEADO, 10L))).thenReturn(true);
+        when(personaRepository.existsById(new PersonaResumenDiario.Clave(3, DIA_AAAAMMDD, PersonaResumenDiario.Tipo.INTERESADO, 21L))).thenReturn(false);
+
+        resumenesDiarios.registrarInicio(prueba(2, 10L, 21L, hora(11), null));
+
+        ResumenDiarioVehiculo guardado = resumenGuardado();
+        assertEquals(2, guardado.getPruebasIniciadas());
+        assertEquals(1, guardado.getEmpleados());
+        assertEquals(2, guardado.getInteresados());
+    }
+
+    @Test
+    void registrarFin_deberiaSumarDuracionDistanciaEIncidenteAlDiaEnQueTermino() {
+        when(resumenRepository.findById(new ResumenDiarioVehiculo.Clave(3, DIA_AAAAMMDD))).thenReturn(Optional.empty());
+        Prueba prueba = prueba(1, 10L, 20L, hora(9), hora(10));
+        prueba.setDistanciaKm(12.5);
+        prueba.setIncidente(true);
+
+        resumenesDiarios.registrarFin(prueba);
+
+        ResumenDiarioVehiculo guardado = resumenGuardado();
+        assertEquals(0, guardado.getPruebasIniciadas());
+        assertEquals(1, guardado.getPruebasFinalizadas());
+        assertEquals(3600, guardado.getDuracionSegundos());
+        assertEquals(12.5, guardado.getDistanciaKm(), 1e-9);
+        assertEquals(1, guardado.getIncidentes());
+    }
+
+    @Test
+    void registrarInicio_siFallaLaBase_noDeberiaPropagarElError() {
+        when(resumenRepository.findById(any())).thenThrow(new RuntimeException("database is locked"));
+
+        assertDoesNotThrow(() -> resumenesDiarios.registrarInicio(prueba(1, 10L, 20L, hora(9), null)));
+
+        assertEquals(1, resumenesDiarios.getErrores());
+        verify(resumenRepository, never()).save(any());
+    }
+
+    @Test
+    void reconstruir_deberiaReemplazarElDiaConLasPruebasQueEmpezaronYTerminaron() {
+        Prueba primera = prueba(1, 10L, 20L, hora(9), hora(10));
+        Prueba segunda = prueba(2, 10L, 21L, hora(11), hora(12));
+        when(pruebaRepository.findByFechaHoraInicioBetween(any(Date.class), any(Date.class))).thenReturn(List.of(primera, segunda));
+        when(pruebaRepository.findByFechaHoraFinBetween(any(Date.class), any(Date.class))).thenReturn(List.of(primera, segunda));
+        when(odometroPruebas.distanciaDe(primera)).thenReturn(4.0);
+        when(odometroPruebas.distanciaDe(segunda)).thenReturn(6.0);
+
+        assertEquals(1, resumenesDiarios.reconstruir(DIA, DIA));
+
+        verify(resumenRepository).eliminarDia(DIA_AAAAMMDD);
+        verify(personaRepository).eliminarDia(DIA_AAAAMMDD);
+        ArgumentCaptor<Collection<ResumenDiarioVehiculo>> resumenes = ArgumentCaptor.forClass(Collection.class);
+        verify(resumenRepository).saveAll(resumenes.capture());
+        ResumenDiarioVehiculo resumen = resumenes.getValue().iterator().next();
+        assertEquals(2, resumen.getPruebasIniciadas());
+        assertEquals(2, resumen.getPruebasFinalizadas());
+        assertEquals(7200, resumen.getDuracionSegundos());
+        assertEquals(10.0, resumen.getDistanciaKm(), 1e-9);
+        assertEquals(1, resumen.getEmpleados());
+        assertEquals(2, resumen.getInteresados());
+        ArgumentCaptor<Collection<PersonaResumenDiario>> personas = ArgumentCaptor.forClass(Collection.class);
+        verify(personaRepository).saveAll(personas.capture());
+        assertEquals(3, personas.getValue().size());
+    }
+
+    @Test
+    void reconstruir_siUnaPruebaTerminaMientrasLeeElDia_deberiaLeerloDeNuevoSinBloquearLaIngesta() throws Exception {
+        Prueba primera = prueba(1, 10L, 20L, hora(9), hora(10));
+        Prueba segunda = prueba(2, 10L, 21L, hora(11), hora(12));
+        segunda.setDistanciaKm(6.0);
+        when(pruebaRepository.findByFechaHoraInicioBetween(any(Date.class), any(Date.class))).thenReturn(List.of(primera, segunda));
+        when(odometroPruebas.distanciaDe(any())).thenReturn(4.0);
+        when(pruebaRepository.findByFechaHoraFinBetween(any(Date.class), any(Date.class)))
+                .thenAnswer(invocacion -> {
+                    // La segunda termina mientras se lee el día: registrarFin no espera a la reconstrucción.
+                    Thread fin = new Thread(() -> resumenesDiarios.registrarFin(segunda));
+                    fin.start();
+                    fin.join(5000);
+                    assertFalse(fin.isAlive());
+                    return List.of(primera);
+                })
+                .thenReturn(List.of(primera, segunda));
+
+        assertEquals(1, resumenesDiarios.reconstruir(DIA, DIA));
+
+        verify(pruebaRepository, times(2)).findByFechaHoraFinBetween(any(Date.class), any(Date.class));
+        verify(resumenRepository, times(1)).eliminarDia(DIA_AAAAMMDD);
+        ArgumentCaptor<Collection<ResumenDiarioVehiculo>> resumenes = ArgumentCaptor.forClass(Collection.class);
+        verify(resumenRepository).saveAll(resumenes.capture());
+        assertEquals(2, resumenes.getValue().iterator().next().getPruebasFinalizadas());
+    }
+
+    @Test
+    void distanciaCompletadaDespuesDeFinalizar_deberiaVolverACalcularElDiaDeFinUnaVez() {
+        Prueba primera = prueba(1, 10L, 20L, hora(9), hora(10));
+        Prueba segunda = prueba(2, 10L, 21L, hora(11), hora(12));
+        primera.setDistanciaKm(4.0);
+        segunda.setDistanciaKm(6.0);
+        when(pruebaRepository.findByFechaHoraInicioBetween(any(Date.class), any(Date.class))).thenReturn(List.of(primera, segunda));
+        when(pruebaRepository.findByFechaHoraFinBetween(any(Date.class), any(Date.class))).thenReturn(List.of(primera, segunda));
+        when(odometroPruebas.distanciaDe(any())).thenAnswer(invocacion -> invocacion.<Prueba>getArgument(0).getDistanciaKm());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<List<Prueba>>> oyente = ArgumentCaptor.forClass(Consumer.class);
+        verify(odometroPruebas).alCompletar(oyente.capture());
+
+        // registrarFin las sumó con 0 km: la espera de sus últimas posiciones había vencido.
+        oyente.getValue().accept(List.of(primera, segunda));
+
+        verify(resumenRepository, times(1)).eliminarDia(DIA_AAAAMMDD);
+        ArgumentCaptor<Collection<ResumenDiarioVehiculo>> resumenes = ArgumentCaptor.forClass(Collection.class);
+        verify(resumenRepository).saveAll(resumenes.capture());
+        assertEquals(10.0, resumenes.getValue().iterator().next().getDistanciaKm(), 1e-9);
+    }
+
+    @Test
+    void reconstruir_conPeriodoInvertido_deberiaLanzarExcepcion() {
+        assertThrows(IllegalArgumentException.class, () -> resumenesDiarios.reconstruir(DIA, DIA.minusDays(1)));
+        verifyNoInteractions(resumenRepository, pruebaRepository);
+    }
+
+    @Test
+    void resumenFlota_deberiaSumarLosVehiculosYContarLasPersonasUnaVezEnElPeriodo() {
+        Vehiculo otro = new Vehiculo();
+        otro.setId(5);
+        otro.setPatente("BB222BB");
+        when(resumenRepository.totalesPorVehiculo(20251001, 20251031)).thenReturn(List.of(
+                new Object[]{3, 4L, 3L, 5400L, 30.0, 1L},
+                new Object[]{5, 2L, 2L, 1800L, 7.5, 0L}));
+        when(personaRepository.distintasPorVehiculo(20251001, 20251031)).thenReturn(List.of(
+                new Object[]{3, PersonaResumenDiario.Tipo.EMPLEADO, 2L},
+                new Object[]{3, PersonaResumenDiario.Tipo.INTERESADO, 4L},
+                new Object[]{5, PersonaResumenDiario.Tipo.EMPLEADO, 1L},
+                new Object[]{5, PersonaResumenDiario.Tipo.INTERESADO, 2L}));
+        // El mismo empleado probó los dos vehículos: en la flota cuenta una vez.
+        when(personaRepository.distintasEnPeriodo(20251001, 20251031)).thenReturn(List.of(
+                new Object[]{PersonaResumenDiario.Tipo.EMPLEADO, 2L},
+                new Object[]{PersonaResumenDiario.Tipo.INTERESADO, 6L}));
+        when(vehiculoRepository.findAllById(any())).thenReturn(List.of(vehiculo, otro));
+
+        ResumenFlotaDto resumen = resumenesDiarios.resumenFlota(LocalDate.of(2025, 10, 1), LocalDate.of(2025, 10, 31));
+
+        TotalesFlotaDto totales = resumen.getTotales();
+        assertEquals(6, totales.getPruebasIniciadas());
+        assertEquals(5, totales.getPruebasFinalizadas());
+        assertEquals(7200, totales.getDuracionSegundos());
+        assertEquals(37.5, totales.getDistanciaKm(), 1e-9);
+        assertEquals(1, totales.getIncidentes());
+        assertEquals(2, totales.getEmpleados());
+        assertEquals(6, totales.getInteresados());
+        assertEquals(2, resumen.getVehiculos().size());
+        assertEquals("AA111AA", resumen.getVehiculos().get(0).getPatente());
+        assertEquals(4, resumen.getVehiculos().get(0).getInteresados());
+        assertEquals("BB222BB", resumen.getVehiculos().get(1).getPatente());
+    }
+
+    @Test
+    void resumenPorDia_deberiaDevolverLosDiasOrdenados() {
+        List<Object[]> filas = new ArrayList<>();
+        filas.add(new Object[]{20251002, 1L, 1L, 600L, 2.0, 0L});
+        filas.add(new Object[]{20251001, 3L, 2L, 1200L, 5.0, 1L});
+        when(resumenRepository.totalesPorDia(20251001, 20251031)).thenReturn(filas);
+        List<Object[]> personas = new ArrayList<>();
+        personas.add(new Object[]{20251001, PersonaResumenDiario.Tipo.EMPLEADO, 2L});
+        when(personaRepository.distintasPorDia(20251001, 20251031)).thenReturn(personas);
+
+        List<TotalesFlotaDto> dias = resumenesDiarios.resumenPorDia(LocalDate.of(2025, 10, 1), LocalDate.of(2025, 10, 31));
+
+        assertEquals(List.of(LocalDate.of(2025, 10, 1), LocalDate.of(2025, 10, 2)), dias.stream().map(TotalesFlotaDto::getDia).toList());
+        assertEquals(2, dias.get(0).getEmpleados());
+        assertEquals(5.0, dias.get(0).getDistanciaKm(), 1e-9);
+    }
+
+    private ResumenDiarioVehiculo resumenGuardado() {
+        ArgumentCaptor<ResumenDiarioVehiculo> captor = ArgumentCaptor.forClass(ResumenDiarioVehiculo.class);
+        verify(resumenRepository).save(captor.capture());
+        return captor.getValue();
+    }
+
+    private Prueba prueba(int id, Long legajo, Long idInteresado, Date inicio, Date fin) {
+        Empleado empleado = new Empleado();
+        empleado.setLegajo(legajo);
+        Interesado interesado = new Interesado();
+        interesado.setId(idInteresado);
+        Prueba prueba = new Prueba(vehiculo, interesado, empleado, inicio);
+        prueba.setId(id);
+        prueba.setFechaHoraFin(fin);
+        return prueba;
+    }
+
+    private static Date hora(int hora) {
+        return Date.from(LocalDateTime.of(DIA, LocalTime.of(hora, 0)).atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.service;
+
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.ResumenPrueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RetencionPosicionesTest {
+
+    // Múltiplo de un minuto, para que los intervalos del submuestreo empiecen con la prueba.
+    private static final long INICIO_POSICIONES = 1_699_999_980_000L;
+
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private PosicionRepository posicionRepository;
+    @Mock
+    private ResumenPruebaRepository resumenPruebaRepository;
+
+    private RetencionPosiciones retencion;
+    private Vehiculo vehiculo;
+
+    @BeforeEach
+    void setUp() {
+        retencion = new RetencionPosiciones(pruebaRepository, posicionRepository, resumenPruebaRepository);
+        ReflectionTestUtils.setField(retencion, "tamanioLote", 50);
+        ReflectionTestUtils.setField(retencion, "pausaMs", 0L);
+        vehiculo = new Vehiculo();
+        vehiculo.setId(4);
+    }
+
+    @Test
+    void descartadasPorSubmuestreo_deberiaDejarUnaPorMinutoYLaUltima() {
+        // 10 minutos con una posición cada 5 segundos.
+        List<Posicion> posiciones = posiciones(120);
+
+        List<Integer> descartadas = RetencionPosiciones.descartadasPorSubmuestreo(posiciones, 60_000);
+
+        assertEquals(120 - 11, descartadas.size());
+        for (int minuto = 0; minuto < 10; minuto++) {
+            assertFalse(descartadas.contains(minuto * 12 + 1), "Se conserva la primera del minuto " + minuto);
+        }
+        assertFalse(descartadas.contains(120), "Se conserva la última");
+
+        List<Posicion> conservadas = posiciones.stream().filter(p -> !descartadas.contains(p.getId())).toList();
+        assertTrue(RetencionPosiciones.descartadasPorSubmuestreo(conservadas, 60_000).isEmpty(), "Aplicarlo de nuevo no descarta nada");
+    }
+
+    @Test
+    void ejecutar_pruebaDeHaceDosMeses_deberiaResumirYSubmuestrearEnLotes() {
+        Prueba prueba = prueba(60);
+        when(pruebaRepository.findPendientesDeRetencion(any(), any(), eq(ResumenPrueba.Nivel.SUBMUESTREADA), eq(ResumenPrueba.Nivel.RESUMIDA)))
+                .thenReturn(List.of(prueba));
+        when(resumenPruebaRepository.findById(7)).thenReturn(Optional.empty());
+        when(resumenPruebaRepository.save(any())).thenAnswer(invocacion -> invocacion.getArgument(0));
+        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(anyInt(), anyLong(), anyLong()))
+                .thenReturn(posiciones(120));
+        when(posicionRepository.eliminarEnLote(anyList())).thenAnswer(invocacion -> invocacion.<List<Integer>>getArgument(0).size());
+
+        assertEquals(1, retencion.ejecutar());
+
+        ArgumentCaptor<ResumenPrueba> resumen = ArgumentCaptor.forClass(ResumenPrueba.class);
+        verify(resumenPruebaRepository).save(resumen.capture());
+        assertEquals(120, resumen.getValue().getPosiciones());
+        assertTrue(resumen.getValue().getDistanciaKm() > 0);
+        assertTrue(resumen.getValue().getIncidente());
+        // 109 descartadas en lotes de 50: tres transacciones cortas.
+        verify(posicionRepository, times(3)).eliminarEnLote(anyList());
+        verify(resumenPruebaRepository).actualizarNivel(7, ResumenPrueba.Nivel.SUBMUESTREADA);
+        assertEquals(109, retencion.getEstado().getPosicionesBorradas());
+    }
+
+    @Test
+    void ejecutar_pruebaDeHaceMasDeUnAnio_deberiaBorrarTodasSinLeerlas() {
+        Prueba prueba = prueba(400);
+        ResumenPrueba resumen = new ResumenPrueba();
+        resumen.setIdPrueba(7);
+        resumen.setNivel(ResumenPrueba.Nivel.SUBMUESTREADA);
+        when(pruebaRepository.findPendientesDeRetencion(any(), any(), any(), any())).thenReturn(List.of(prueba));
+        when(resumenPruebaRepository.findById(7)).thenReturn(Optional.of(resumen));
+        when(posicionRepository.eliminarDeVehiculoEntre(eq(4), anyLong(), anyLong(), eq(50))).thenReturn(50, 50, 3);
+
+        retencion.ejecutar();
+
+        verify(posicionRepository, times(3)).eliminarDeVehiculoEntre(eq(4), anyLong(), anyLong(), eq(50));
+        verify(posicionRepository, never()).findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(anyInt(), anyLong(), anyLong());
+        verify(resumenPruebaRepository, never()).save(any());
+        verify(resumenPruebaRepository).actualizarNivel(7, ResumenPrueba.Nivel.RESUMIDA);
+        assertEquals(103, retencion.getEstado().getPosicionesBorradas());
+    }
+
+    private Prueba prueba(int diasDesdeElFin) {
+        long fin = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(diasDesdeElFin);
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date(fin - TimeUnit.MINUTES.toMillis(10)));
+        prueba.setId(7);
+        prueba.setFechaHoraFin(new Date(fin));
+        prueba.setIncidente(true);
+        return prueba;
+    }
+
+    // Una posición cada 5 segundos, 50 m más al este que la anterior; ids desde 1.
+    private List<Posicion> posiciones(int cantidad) {
+        List<Posicion> posiciones = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            posiciones.add(new Posicion(i + 1, vehiculo, INICIO_POSICIONES + i * 5000L, -31.4, -64.2 + i * 0.000527));
+        }
+        return posiciones;
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.service;
+
+import org.example.dtos.TrabajoReporteDto;
+import org.example.service.reporte.FormatoReporte;
+import org.example.service.reporte.PedidoReporte;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TrabajosReporteTest {
+
+    @Mock
+    private ReporteService reporteService;
+
+    @TempDir
+    Path directorio;
+
+    private TrabajosReporte trabajos;
+    private final CountDownLatch liberar = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        liberar.countDown();
+        trabajos.detener();
+    }
+
+    @Test
+    void enviar_deberiaEscribirElReporteEnUnArchivo() throws Exception {
+        iniciar(2, 10);
+        when(reporteService.reporteIncidentes(FormatoReporte.CSV)).thenReturn(reporte("id,patente\r\n1,AB123CD\r\n"));
+
+        TrabajoReporteDto trabajo = trabajos.enviar(pedido(PedidoReporte.Tipo.INCIDENTES, null, FormatoReporte.CSV));
+        TrabajoReporteDto terminado = esperar(trabajo.getId(), "TERMINADO");
+
+        TrabajosReporte.Archivo archivo = trabajos.archivo(trabajo.getId());
+        assertEquals("id,patente\r\n1,AB123CD\r\n", Files.readString(archivo.ruta()));
+        assertEquals(FormatoReporte.CSV, archivo.formato());
+        assertTrue(archivo.ruta().getFileName().toString().endsWith(".csv"));
+        assertEquals(23, terminado.getBytesEscritos());
+        assertNotNull(terminado.getVenceEn());
+    }
+
+    @Test
+    void enviar_pedidoIgualAUnoEnCurso_deberiaDevolverElMismoTrabajo() throws Exception {
+        iniciar(2, 10);
+        when(reporteService.reportePruebasPorVehiculo("AB123CD", FormatoReporte.TEXT)).thenReturn(reporteQueEspera());
+
+        TrabajoReporteDto primero = trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "AB123CD", FormatoReporte.TEXT));
+        TrabajoReporteDto repetido = trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "AB123CD", FormatoReporte.TEXT));
+
+        assertEquals(primero.getId(), repetido.getId());
+        assertEquals(1, trabajos.getEnviados());
+        assertEquals(1, trabajos.getRepetidos());
+
+        liberar.countDown();
+        esperar(primero.getId(), "TERMINADO");
+        // Terminado ya no se comparte: el mismo pedido genera el reporte de nuevo.
+        TrabajoReporteDto nuevo = trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "AB123CD", FormatoReporte.TEXT));
+        assertNotEquals(primero.getId(), nuevo.getId());
+    }
+
+    @Test
+    void enviar_conLosHilosYLaColaOcupados_deberiaRechazar() {
+        iniciar(1, 1);
+        when(reporteService.reportePruebasPorVehiculo(any(), any())).thenReturn(reporteQueEspera());
+
+        trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "AAA111", FormatoReporte.TEXT));
+        TrabajoReporteDto enCola = trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "BBB222", FormatoReporte.TEXT));
+
+        assertEquals("EN_COLA", enCola.getEstado());
+        assertThrows(IllegalStateException.class,
+                () -> trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "CCC333", FormatoReporte.TEXT)));
+        assertEquals(1, trabajos.getRechazados());
+    }
+
+    @Test
+    void enviar_vehiculoInexistente_deberiaFallarSinEncolar() {
+        iniciar(2, 10);
+        when(reporteService.reportePruebasPorVehiculo("ZZZ999", FormatoReporte.TEXT))
+                .thenThrow(new IllegalArgumentException("Vehículo con patente ZZZ999 no encontrado."));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> trabajos.enviar(pedido(PedidoReporte.Tipo.PRUEBAS_VEHICULO, "ZZZ999", FormatoReporte.TEXT)));
+        assertEquals(0, trabajos.getEnviados());
+    }
+
+    @Test
+    void generar_siElReporteFalla_deberiaQuedarFallidoSinArchivo() throws Exception {
+        iniciar(2, 10);
+        when(reporteService.reporteIncidentes(FormatoReporte.NDJSON)).thenReturn(salida -> {
+            salida.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            throw new IllegalStateException("database is locked");
+        });
+
+        TrabajoReporteDto trabajo = trabajos.enviar(pedido(PedidoReporte.Tipo.INCIDENTES, null, FormatoReporte.NDJSON));
+        TrabajoReporteDto fallido = esperar(trabajo.getId(), "FALLIDO");
+
+        assertEquals("database is locked", fallido.getError());
+        assertThrows(IllegalStateException.class, () -> trabajos.archivo(trabajo.getId()));
+        try (var archivos = Files.list(directorio)) {
+            assertEquals(0, archivos.count());
+        }
+    }
+
+    @Test
+    void limpiar_deberiaBorrarLosTrabajosVencidosConSuArchivo() throws Exception {
+        iniciar(2, 10);
+        ReflectionTestUtils.setField(trabajos, "ttlMs", 0L);
+        when(reporteService.reporteIncidentes(FormatoReporte.TEXT)).thenReturn(reporte("Reporte"));
+        TrabajoReporteDto trabajo = trabajos.enviar(pedido(PedidoReporte.Tipo.INCIDENTES, null, FormatoReporte.TEXT));
+        esperar(trabajo.getId(), "TERMINADO");
+        Path archivo = trabajos.archivo(trabajo.getId()).ruta();
+
+        assertEquals(1, trabajos.limpiar());
+
+        assertTrue(trabajos.consultar(trabajo.getId()).isEmpty());
+        assertFalse(Files.exists(archivo));
+        assertThrows(IllegalArgumentException.class, () -> trabajos.archivo(trabajo.getId()));
+    }
+
+    @Test
+    void iniciar_deberiaBorrarSoloLosArchivosDeLaEjecucionAnterior() throws IOException {
+        Files.writeString(directorio.resolve("0b7e1c52-4f3a-4d8e-9a61-2c5f0e9d3b17.csv"), "id\r\n");
+        Files.writeString(directorio.resolve("5d2a9f80-1e6b-4c37-8f04-b9a3d7e6c215.ndjson"), "{}\n");
+        Files.writeString(directorio.resolve("5d2a9f80-1e6b-4c37-8f04-b9a3d7e6c215.parcial"), "id\r\n1");
+        // Ajenos a los reportes: el directorio puede ser compartido.
+        Files.writeString(directorio.resolve("viejo.csv"), "id\r\n");
+        Files.writeString(directorio.resolve("0b7e1c52-4f3a-4d8e-9a61-2c5f0e9d3b17.pdf"), "%PDF");
+        Files.createDirectory(directorio.resolve("0b7e1c52-4f3a-4d8e-9a61-2c5f0e9d3b18.txt"));
+
+        iniciar(1, 1);
+
+        try (var archivos = Files.list(directorio)) {
+            assertEquals(Set.of("viejo.csv", "0b7e1c52-4f3a-4d8e-9a61-2c5f0e9d3b17.pdf", "0b7e1c52-4f3a-4d8e-9a61-2c5f0e9d3b18.txt"),
+                    archivos.map(archivo -> archivo.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    private void iniciar(int hilos, int cola) {
+        trabajos = new TrabajosReporte(reporteService, directorio.toString(), hilos, cola);
+        try {
+            trabajos.iniciar();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private TrabajoReporteDto esperar(String id, String estado) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < limite) {
+            TrabajoReporteDto trabajo = trabajos.consultar(id).orElseThrow();
+            if (estado.equals(trabajo.getEstado())) {
+                return trabajo;
+            }
+            Thread.sleep(10);
+        }
+        fail("El trabajo " + id + " no llegó a " + estado);
+        return null;
+    }
+
+    private static PedidoReporte pedido(PedidoReporte.Tipo tipo, String patente, FormatoReporte formato) {
+        return new PedidoReporte(tipo, null, patente, null, null, formato);
+    }
+
+    private static StreamingResponseBody reporte(String contenido) {
+        return salida -> salida.write(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private StreamingResponseBody reporteQueEspera() {
+        return salida -> {
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            salida.write("Reporte".getBytes(StandardCharsets.UTF_8));
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.service;
+
+import org.example.dtos.EventoPosicionDto;
+import org.example.models.Modelo;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PruebaRepository;
+import org.example.service.geocerca.VeredictoGeocerca;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransmisionPosicionesTest {
+
+    @Mock
+    private PruebaRepository pruebaRepository;
+
+    private TransmisionPosiciones transmision;
+
+    @BeforeEach
+    void setUp() {
+        RegistroPruebasActivas registro = new RegistroPruebasActivas(pruebaRepository);
+        registro.registrar(prueba(101, 1));
+        registro.registrar(prueba(102, 2));
+        transmision = new TransmisionPosiciones(registro);
+        ReflectionTestUtils.setField(transmision, "capacidadBuffer", 2);
+        ReflectionTestUtils.setField(transmision, "latidoMs", 3_600_000L);
+    }
+
+    @Test
+    void publicar_sinSuscriptores_noDeberiaArmarEventos() {
+        transmision.publicar(posicion(3, -31.0), VeredictoGeocerca.DENTRO);
+
+        verifyNoInteractions(pruebaRepository);
+    }
+
+    @Test
+    void suscribir_deberiaAplicarLosFiltros() {
+        Cliente cliente = new Cliente(Long.MAX_VALUE);
+        transmision.suscribir(null, 102, VeredictoGeocerca.FUERA_DE_RADIO, TransmisionPosiciones.Politica.DESCARTAR).subscribe(cliente);
+
+        transmision.publicar(posicion(1, -31.0), VeredictoGeocerca.FUERA_DE_RADIO);
+        transmision.publicar(posicion(2, -32.0), VeredictoGeocerca.DENTRO);
+        transmision.publicar(posicion(2, -33.0), VeredictoGeocerca.FUERA_DE_RADIO);
+
+        assertEquals(List.of(-33.0), cliente.latitudes());
+        ServerSentEvent<EventoPosicionDto> evento = cliente.recibidos.get(0);
+        assertEquals("FUERA_DE_RADIO", evento.event());
+        assertEquals(102, evento.data().getIdPrueba());
+        assertEquals("AAA2", evento.data().getPatente());
+        cliente.dispose();
+    }
+
+    @Test
+    void clienteLento_conDescartar_deberiaRecibirSoloLasMasNuevas() {
+        Cliente cliente = new Cliente(0);
+        transmision.suscribir(null, null, null, TransmisionPosiciones.Politica.DESCARTAR).subscribe(cliente);
+
+        for (int i = 1; i <= 5; i++) {
+            transmision.publicar(posicion(1, -30.0 - i), VeredictoGeocerca.DENTRO);
+        }
+        cliente.request(Long.MAX_VALUE);
+
+        // La primera ya estaba en camino; del resto el buffer de 2 se queda con las más nuevas.
+        assertEquals(List.of(-31.0, -34.0, -35.0), cliente.latitudes());
+        assertEquals(2, transmision.getDescartadas());
+        cliente.dispose();
+    }
+
+    @Test
+    void clienteLento_conResumir_deberiaRecibirLaUltimaDeCadaVehiculo() {
+        Cliente cliente = new Cliente(0);
+        transmision.suscribir(null, null, null, TransmisionPosiciones.Politica.RESUMIR).subscribe(cliente);
+
+        for (int i = 1; i <= 5; i++) {
+            transmision.publicar(posicion(1, -30.0 - i), VeredictoGeocerca.DENTRO);
+        }
+        transmision.publicar(posicion(2, -41.0), VeredictoGeocerca.DENTRO);
+        cliente.request(Long.MAX_VALUE);
+
+        List<Double> latitudes = cliente.latitudes();
+        assertTrue(latitudes.contains(-35.0), "Tiene que llegar la última posición del vehículo 1");
+        assertTrue(latitudes.contains(-41.0));
+        assertFalse(latitudes.contains(-33.0) || latitudes.contains(-34.0), "Las posiciones pendientes se resumen en la última");
+        assertEquals(0, transmision.getDescartadas());
+        cliente.dispose();
+    }
+
+    private static Posicion posicion(int idVehiculo, double lat) {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setPatente("AAA" + idVehiculo);
+        return new Posicion(null, vehiculo, System.currentTimeMillis(), lat, -64.0);
+    }
+
+    private static Prueba prueba(int idPrueba, int idVehiculo) {
+        Modelo modelo = new Modelo();
+        modelo.setId(1L);
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setPatente("AAA" + idVehiculo);
+        vehiculo.setModelo(modelo);
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date());
+        prueba.setId(idPrueba);
+        return prueba;
+    }
+
+    // Un tablero que pide eventos a mano, para simular uno lento.
+    private static class Cliente extends BaseSubscriber<ServerSentEvent<EventoPosicionDto>> {
+        private final long pedidoInicial;
+        private final List<ServerSentEvent<EventoPosicionDto>> recibidos = new CopyOnWriteArrayList<>();
+
+        Cliente(long pedidoInicial) {
+            this.pedidoInicial = pedidoInicial;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (pedidoInicial > 0) {
+                subscription.request(pedidoInicial);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(ServerSentEvent<EventoPosicionDto> evento) {
+            if (evento.data() != null) {
+                recibidos.add(evento);
+            }
+        }
+
+        List<Double> latitudes() {
+            return recibidos.stream().map(e -> e.data().getLatitud()).toList();
+        }
+    }
+}
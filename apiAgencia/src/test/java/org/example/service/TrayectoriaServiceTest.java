@@ -0,0 +1,128 @@
+package org.example.service;
+
+import org.example.dtos.TrayectoriaDto;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.HistorialPosiciones;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.serializacion.TrayectoriaComprimida;
+import org.example.service.trayectoria.Trayectoria;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TrayectoriaServiceTest {
+
+    private static final long INICIO = 1_700_000_000_000L;
+
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private PosicionRepository posicionRepository;
+    @Mock
+    private HistorialPosiciones historialPosiciones;
+
+    private TrayectoriaService trayectoriaService;
+    private Vehiculo vehiculo;
+
+    @BeforeEach
+    void setUp() {
+        trayectoriaService = new TrayectoriaService(pruebaRepository, posicionRepository, historialPosiciones);
+        vehiculo = new Vehiculo();
+        vehiculo.setId(3);
+    }
+
+    @Test
+    void compactar_pruebaFinalizada_deberiaBorrarLosPuntosDelTramoRecto() {
+        Prueba prueba = prueba(new Date(INICIO + 100_000));
+        when(pruebaRepository.findById(1)).thenReturn(Optional.of(prueba));
+        // 20 posiciones en línea recta a velocidad constante: solo aportan la primera y la última.
+        when(posicionRepository.findAllByVehiculo_IdAndFechaHoraBetweenOrderByFechaHoraAsc(eq(3), eq(INICIO), eq(INICIO + 100_000)))
+                .thenReturn(recta(20));
+        when(posicionRepository.eliminarEnLote(anyList())).thenAnswer(invocacion -> invocacion.<List<Integer>>getArgument(0).size());
+
+        TrayectoriaDto trayectoria = trayectoriaService.compactar(1);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Integer>> borradas = ArgumentCaptor.forClass(List.class);
+        verify(posicionRepository).eliminarEnLote(borradas.capture());
+        assertEquals(18, borradas.getValue().size());
+        assertFalse(borradas.getValue().contains(1));
+        assertFalse(borradas.getValue().contains(20));
+        assertEquals(20, trayectoria.getPuntosOriginales());
+        assertEquals(2, trayectoria.getPuntos().size());
+        assertEquals(trayectoria.getDistanciaOriginalKm(), trayectoria.getDistanciaKm(), trayectoria.getDistanciaOriginalKm() * 0.01);
+    }
+
+    @Test
+    void compactar_pruebaEnCurso_deberiaFallarSinBorrar() {
+        when(pruebaRepository.findById(1)).thenReturn(Optional.of(prueba(null)));
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> trayectoriaService.compactar(1));
+
+        assertTrue(error.getMessage().contains("en curso"));
+        verify(posicionRepository, never()).eliminarEnLote(anyList());
+    }
+
+    @Test
+    void obtener_conToleranciaCero_deberiaDevolverTodosLosPuntosSinTocarLaBase() {
+        when(pruebaRepository.findById(1)).thenReturn(Optional.of(prueba(new Date(INICIO + 100_000))));
+        when(historialPosiciones.buscarTrayectoria(eq(3), eq(INICIO), eq(INICIO + 100_000))).thenReturn(Trayectoria.de(recta(20)));
+
+        TrayectoriaDto trayectoria = trayectoriaService.obtener(1, 0.0, null);
+
+        assertEquals(20, trayectoria.getPuntos().size());
+        verify(posicionRepository, never()).eliminarEnLote(anyList());
+    }
+
+    @Test
+    void obtenerComprimida_deberiaCodificarLosMismosPuntosQueObtener() {
+        when(pruebaRepository.findById(1)).thenReturn(Optional.of(prueba(new Date(INICIO + 100_000))));
+        when(historialPosiciones.buscarTrayectoria(eq(3), eq(INICIO), eq(INICIO + 100_000))).thenReturn(Trayectoria.de(recta(20)));
+
+        Trayectoria recorrido = TrayectoriaComprimida.decodificar(trayectoriaService.obtenerComprimida(1, 5.0, null));
+        TrayectoriaDto trayectoria = trayectoriaService.obtener(1, 5.0, null);
+
+        assertEquals(trayectoria.getPuntos().size(), recorrido.size());
+        assertEquals(INICIO, recorrido.getTiempo(0));
+        assertEquals(INICIO + 19 * 5000L, recorrido.getTiempo(recorrido.size() - 1));
+    }
+
+    @Test
+    void obtener_pruebaInexistente_deberiaFallar() {
+        when(pruebaRepository.findById(9)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> trayectoriaService.obtener(9, null, null));
+    }
+
+    private Prueba prueba(Date fin) {
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date(INICIO));
+        prueba.setId(1);
+        prueba.setFechaHoraFin(fin);
+        return prueba;
+    }
+
+    // Una posición cada 5 segundos, 50 m más al este que la anterior.
+    private List<Posicion> recta(int cantidad) {
+        List<Posicion> posiciones = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            posiciones.add(new Posicion(i + 1, vehiculo, INICIO + i * 5000L, -31.4, -64.2 + i * 0.000527));
+        }
+        return posiciones;
+    }
+}
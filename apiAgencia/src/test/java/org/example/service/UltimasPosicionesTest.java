@@ -0,0 +1,135 @@
+package org.example.service;
+
+import org.example.models.Modelo;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UltimasPosicionesTest {
+
+    @Mock
+    private PosicionRepository posicionRepository;
+    @Mock
+    private PruebaRepository pruebaRepository;
+
+    private RegistroPruebasActivas registro;
+    private UltimasPosiciones ultimas;
+
+    @BeforeEach
+    void setUp() {
+        registro = new RegistroPruebasActivas(pruebaRepository);
+        ultimas = new UltimasPosiciones(posicionRepository, registro);
+    }
+
+    @Test
+    void actualizar_conPosicionMasVieja_noDeberiaPisarLaUltima() {
+        ultimas.actualizar(posicion(1, 2000, -31.0));
+        ultimas.actualizar(posicion(1, 1000, -32.0));
+        ultimas.actualizar(posicion(1, 2000, -33.0));
+
+        UltimaPosicion ultima = ultimas.buscar(1);
+        assertEquals(2000, ultima.fechaHora());
+        assertEquals(-33.0, ultima.latitud(), "Con la misma fecha gana la última que llega");
+        assertEquals("AAA1", ultima.patente());
+        assertNull(ultimas.buscar(2));
+    }
+
+    @Test
+    void deVehiculosEnPrueba_deberiaDevolverSoloLosQueTienenPruebaEnCurso() {
+        registro.registrar(prueba(1));
+        registro.registrar(prueba(3));
+        ultimas.actualizar(posicion(1, 1000, -31.0));
+        ultimas.actualizar(posicion(2, 1000, -31.0));
+
+        List<UltimaPosicion> actuales = ultimas.deVehiculosEnPrueba();
+
+        assertEquals(1, actuales.size());
+        assertEquals(1, actuales.get(0).idVehiculo());
+    }
+
+    @Test
+    void foto_deberiaRecuperarTodasLasPosicionesAlReiniciar(@TempDir Path directorio) {
+        Path archivo = directorio.resolve("ultimas.bin");
+        ReflectionTestUtils.setField(ultimas, "archivo", archivo.toString());
+        ultimas.actualizar(posicion(1, 1000, -31.5));
+        ultimas.actualizar(posicion(2, 2000, -32.5));
+        ultimas.guardarFoto();
+        assertTrue(Files.exists(archivo));
+
+        UltimasPosiciones reiniciada = new UltimasPosiciones(posicionRepository, registro);
+        ReflectionTestUtils.setField(reiniciada, "archivo", archivo.toString());
+        reiniciada.cargar();
+
+        assertEquals(ultimas.buscar(1), reiniciada.buscar(1));
+        assertEquals(ultimas.buscar(2), reiniciada.buscar(2));
+    }
+
+    @Test
+    void cargar_conFoto_deberiaCompletarlaConLoMasNuevoDeLaBase(@TempDir Path directorio) {
+        Path archivo = directorio.resolve("ultimas.bin");
+        ReflectionTestUtils.setField(ultimas, "archivo", archivo.toString());
+        ultimas.actualizar(posicion(1, 1000, -31.5));
+        ultimas.actualizar(posicion(2, 2000, -32.5));
+        ultimas.guardarFoto();
+        // Guardadas después de la foto (la 1) o antes que lo que ya tenía (la 2), y la 3 que la foto no conocía.
+        when(posicionRepository.findUltimasDeVehiculosEnPrueba())
+                .thenReturn(List.of(posicion(1, 1500, -31.6), posicion(2, 1900, -32.4), posicion(3, 500, -33.0)));
+
+        UltimasPosiciones reiniciada = new UltimasPosiciones(posicionRepository, registro);
+        ReflectionTestUtils.setField(reiniciada, "archivo", archivo.toString());
+        reiniciada.cargar();
+
+        assertEquals(1500, reiniciada.buscar(1).fechaHora());
+        assertEquals(-31.6, reiniciada.buscar(1).latitud());
+        assertEquals(ultimas.buscar(2), reiniciada.buscar(2));
+        assertEquals(500, reiniciada.buscar(3).fechaHora());
+    }
+
+    @Test
+    void cargar_sinFoto_deberiaTomarLasUltimasDeLaBase(@TempDir Path directorio) throws Exception {
+        Path archivo = directorio.resolve("ultimas.bin");
+        Files.write(archivo, new byte[]{1, 2, 3});
+        ReflectionTestUtils.setField(ultimas, "archivo", archivo.toString());
+        when(posicionRepository.findUltimasDeVehiculosEnPrueba()).thenReturn(List.of(posicion(4, 5000, -30.0)));
+
+        ultimas.cargar();
+
+        assertEquals(5000, ultimas.buscar(4).fechaHora());
+    }
+
+    private static Posicion posicion(int idVehiculo, long fechaHora, double lat) {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setPatente("AAA" + idVehiculo);
+        return new Posicion(null, vehiculo, fechaHora, lat, -64.0);
+    }
+
+    private static Prueba prueba(int idVehiculo) {
+        Modelo modelo = new Modelo();
+        modelo.setId(1L);
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(idVehiculo);
+        vehiculo.setModelo(modelo);
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date());
+        prueba.setId(100 + idVehiculo);
+        return prueba;
+    }
+}
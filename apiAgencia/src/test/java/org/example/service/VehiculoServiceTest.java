@@ -0,0 +1,291 @@
+package org.example.service;
+
+import org.example.dtos.PosicionDto;
+import org.example.dtos.VehiculoDto;
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.dtos.externos.UbicacionDto;
+import org.example.models.Modelo;
+import org.example.models.Posicion;
+import org.example.models.Prueba;
+import org.example.models.Vehiculo;
+import org.example.repositories.HistorialPosicionesJpa;
+import org.example.repositories.PosicionRepository;
+import org.example.repositories.PruebaRepository;
+import org.example.repositories.ResumenPruebaRepository;
+import org.example.repositories.VehiculoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Verifica que el trabajo bloqueante de procesarPosicion nunca corra en un hilo no bloqueante de Reactor
+ * (event loop de Netty, scheduler parallel), aunque las restricciones lleguen en uno de esos hilos.
+ */
+@ExtendWith(MockitoExtension.class)
+class VehiculoServiceTest {
+
+    @Mock
+    private ExternalApisService externalApisService;
+    @Mock
+    private RestriccionesService restriccionesService;
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+    @Mock
+    private PruebaRepository pruebaRepository;
+    @Mock
+    private PosicionRepository posicionRepository;
+    @Mock
+    private KafkaProducer kafkaProducer;
+    @Mock
+    private EscritorPosiciones escritorPosiciones;
+    @Mock
+    private ResumenPruebaRepository resumenPruebaRepository;
+
+    private Scheduler schedulerBaseDeDatos;
+    private VehiculoService vehiculoService;
+    // Llamadas bloqueantes que se hicieron desde un hilo no bloqueante.
+    private final List<String> llamadasEnHiloNoBloqueante = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        schedulerBaseDeDatos = Schedulers.newBoundedElastic(2, 100, "test-db");
+        RegistroPruebasActivas registro = new RegistroPruebasActivas(pruebaRepository);
+        vehiculoService = new VehiculoService(externalApisService, restriccionesService, vehiculoRepository, pruebaRepository,
+                posicionRepository, escritorPosiciones, registro, schedulerBaseDeDatos, new MetricasEtapas(), new AlertasVehiculos(kafkaProducer),
+                new UltimasPosiciones(posicionRepository, registro), new TransmisionPosiciones(registro),
+                new HistorialPosicionesJpa(posicionRepository),
+                new OdometroPruebas(registro, pruebaRepository, new HistorialPosicionesJpa(posicionRepository), resumenPruebaRepository));
+
+        // Las restricciones llegan en un hilo del scheduler parallel de Reactor, igual que una respuesta de WebClient
+        // llega en el event loop: todo lo que venga después sin cambiar de scheduler correría en ese hilo.
+        RestriccionesSnapshot snapshot = new RestriccionesSnapshot(restricciones(), System.currentTimeMillis());
+        when(restriccionesService.obtenerSnapshot()).thenReturn(Mono.just(snapshot).delayElement(Duration.ofMillis(1)));
+
+        lenient().when(pruebaRepository.findPruebaActivaByVehiculoId(anyInt())).thenAnswer(bloqueante("findPruebaActivaByVehiculoId", prueba()));
+        lenient().when(pruebaRepository.marcarIncidente(anyInt())).thenAnswer(bloqueante("marcarIncidente", 1));
+        lenient().when(vehiculoRepository.existsById(anyInt())).thenAnswer(bloqueante("existsById", true));
+        // send() de Kafka puede bloquear esperando la metadata del tópico.
+        lenient().when(kafkaProducer.enviarMensajeRadioExcedido(any())).thenAnswer(bloqueante("enviarMensajeRadioExcedido", Mono.empty()));
+        lenient().when(kafkaProducer.enviarMensajeZonaPeligrosa(any())).thenAnswer(bloqueante("enviarMensajeZonaPeligrosa", Mono.empty()));
+        lenient().when(escritorPosiciones.encolar(any())).thenAnswer(invocacion -> {
+            registrarSiNoBloqueante("encolar");
+            Posicion posicion = invocacion.getArgument(0);
+            posicion.setId(99);
+            return CompletableFuture.completedFuture(posicion);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedulerBaseDeDatos.dispose();
+    }
+
+    @Test
+    void procesarPosicion_conRestriccionesEnHiloNoBloqueante_noDeberiaBloquearEseHilo() {
+        PosicionDto resultado = vehiculoService.procesarPosicion(posicion(0.001, 0.001), EscritorPosiciones.Durabilidad.SINCRONA).block();
+
+        assertEquals("La posicion actual del vehiculo fue registrada.", resultado.getMensaje());
+        assertEquals(99, resultado.getId());
+        verify(pruebaRepository).findPruebaActivaByVehiculoId(1);
+        assertTrue(llamadasEnHiloNoBloqueante.isEmpty(), "Llamadas bloqueantes en hilos no bloqueantes: " + llamadasEnHiloNoBloqueante);
+    }
+
+    @Test
+    void procesarPosicion_sincrona_noDeberiaSeguirEnElHiloDelEscritor() {
+        // Como el escritor real: el future se completa en su único hilo después del commit.
+        doAnswer(invocacion -> {
+            Posicion posicion = invocacion.getArgument(0);
+            CompletableFuture<Posicion> commit = new CompletableFuture<>();
+            Thread escritor = new Thread(() -> {
+                posicion.setId(99);
+                commit.complete(posicion);
+            }, "escritor-posiciones");
+            escritor.start();
+            return commit;
+        }).when(escritorPosiciones).encolar(any());
+
+        String hilo = vehiculoService.procesarPosicion(posicion(0.001, 0.001), EscritorPosiciones.Durabilidad.SINCRONA)
+                .map(respuesta -> Thread.currentThread().getName())
+                .block();
+
+        assertTrue(hilo.startsWith("test-db"), "La respuesta se armó en " + hilo);
+    }
+
+    @Test
+    void esperarPosicionesPendientes_asincrona_deberiaEsperarElCommitDelEscritor() {
+        ReflectionTestUtils.setField(vehiculoService, "esperaPosicionesPendientesMs", 50L);
+        CompletableFuture<Posicion> commit = new CompletableFuture<>();
+        doReturn(commit).when(escritorPosiciones).encolar(any());
+
+        vehiculoService.procesarPosicion(posicion(0.001, 0.001), EscritorPosiciones.Durabilidad.ASINCRONA).block();
+
+        // Todavía en la cola del escritor.
+        assertFalse(vehiculoService.esperarPosicionesPendientes(1));
+        Posicion guardada = new Posicion(99, prueba().getVehiculo(), System.currentTimeMillis(), 0.001, 0.001);
+        commit.complete(guardada);
+        assertTrue(vehiculoService.esperarPosicionesPendientes(1));
+        // Otro vehículo no espera nada.
+        assertTrue(vehiculoService.esperarPosicionesPendientes(2));
+    }
+
+    @Test
+    void procesarPosicion_asincronaConFalloDelCommit_deberiaGuardarLaPosicionYaConfirmada() throws Exception {
+        // El escritor real, con la base ocupada en el primer commit: la durabilidad por defecto responde antes del commit.
+        EscritorPosiciones escritorReal = new EscritorPosiciones(posicionRepository, 100);
+        ReflectionTestUtils.setField(escritorReal, "reintentoEsperaMs", 1L);
+        doThrow(new IllegalStateException("[SQLITE_BUSY] The database file is locked"))
+                .doNothing()
+                .when(posicionRepository).insertarEnGrupo(anyList());
+        RegistroPruebasActivas registro = new RegistroPruebasActivas(pruebaRepository);
+        VehiculoService servicio = new VehiculoService(externalApisService, restriccionesService, vehiculoRepository, pruebaRepository,
+                posicionRepository, escritorReal, registro, schedulerBaseDeDatos, new MetricasEtapas(), new AlertasVehiculos(kafkaProducer),
+                new UltimasPosiciones(posicionRepository, registro), new TransmisionPosiciones(registro),
+                new HistorialPosicionesJpa(posicionRepository),
+                new OdometroPruebas(registro, pruebaRepository, new HistorialPosicionesJpa(posicionRepository), resumenPruebaRepository));
+        escritorReal.iniciar();
+        try {
+            PosicionDto resultado = servicio.procesarPosicion(posicion(0.001, 0.001), EscritorPosiciones.Durabilidad.ASINCRONA).block();
+
+            assertEquals("La posicion actual del vehiculo fue registrada.", resultado.getMensaje());
+            assertTrue(servicio.esperarPosicionesPendientes(1));
+            verify(posicionRepository, times(2)).insertarEnGrupo(anyList());
+            assertEquals(1, escritorReal.getEstado().getEscritas());
+            assertEquals(0, escritorReal.getEstado().getFallidas());
+        } finally {
+            escritorReal.detener();
+        }
+    }
+
+    @Test
+    void procesarPosicion_conIncidente_deberiaMarcarLaPruebaFueraDelHiloNoBloqueante() {
+        PosicionDto resultado = vehiculoService.procesarPosicion(posicion(10, 10), EscritorPosiciones.Durabilidad.ASINCRONA).block();
+
+        assertEquals("La posicion actual del vehiculo se encuentra por fuera del radio permitido por la agencia.", resultado.getMensaje());
+        verify(pruebaRepository).marcarIncidente(5);
+        verify(kafkaProducer, timeout(1000)).enviarMensajeRadioExcedido(any());
+        assertTrue(llamadasEnHiloNoBloqueante.isEmpty(), "Llamadas bloqueantes en hilos no bloqueantes: " + llamadasEnHiloNoBloqueante);
+    }
+
+    @Test
+    void procesarPosicion_sincronaConFalloDeKafka_deberiaResponderIgualDespuesDeIntentarElEnvio() {
+        when(kafkaProducer.enviarMensajeRadioExcedido(any())).thenAnswer(bloqueante("enviarMensajeRadioExcedido", Mono.error(new RuntimeException("broker caido"))));
+
+        PosicionDto resultado = vehiculoService.procesarPosicion(posicion(10, 10), EscritorPosiciones.Durabilidad.SINCRONA).block();
+
+        assertEquals("La posicion actual del vehiculo se encuentra por fuera del radio permitido por la agencia.", resultado.getMensaje());
+        verify(kafkaProducer).enviarMensajeRadioExcedido(any());
+        assertTrue(llamadasEnHiloNoBloqueante.isEmpty(), "Llamadas bloqueantes en hilos no bloqueantes: " + llamadasEnHiloNoBloqueante);
+    }
+
+    @Test
+    void procesarPosicion_conVehiculoSinPrueba_deberiaRechazarSinBloquearElHilo() {
+        when(pruebaRepository.findPruebaActivaByVehiculoId(anyInt())).thenAnswer(bloqueante("findPruebaActivaByVehiculoId", null));
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> vehiculoService.procesarPosicion(posicion(0.001, 0.001), EscritorPosiciones.Durabilidad.ASINCRONA).block());
+
+        assertEquals("El vehículo no esta siendo probado en este momento. Inicia una prueba para registrar la posicion.", error.getMessage());
+        assertTrue(llamadasEnHiloNoBloqueante.isEmpty(), "Llamadas bloqueantes en hilos no bloqueantes: " + llamadasEnHiloNoBloqueante);
+    }
+
+    @Test
+    void procesarLotePosiciones_dosPosicionesDelMismoVehiculo_deberianGuardarseConFechasCrecientesEnElOrdenDelLote() {
+        when(pruebaRepository.findByFechaHoraFinIsNullAndVehiculo_IdIn(anyCollection())).thenReturn(List.of(prueba()));
+        PosicionDto conFecha = posicion(0.003, 0.003);
+        conFecha.setFechaHora(1_700_000_000_000L);
+
+        vehiculoService.procesarLotePosiciones(List.of(posicion(0.001, 0.001), posicion(0.002, 0.002), conFecha)).block();
+
+        ArgumentCaptor<List<Posicion>> guardadas = ArgumentCaptor.forClass(List.class);
+        verify(posicionRepository).insertarEnLote(guardadas.capture());
+        List<Posicion> posiciones = guardadas.getValue();
+        assertEquals(3, posiciones.size());
+        assertEquals(0.001, posiciones.get(0).getLatitud());
+        assertTrue(posiciones.get(0).getFechaHora() < posiciones.get(1).getFechaHora(),
+                "Las posiciones sin fecha deben conservar el orden del lote: " + posiciones);
+        // La fecha que manda el cliente se respeta.
+        assertEquals(1_700_000_000_000L, posiciones.get(2).getFechaHora());
+    }
+
+    @Test
+    void procesarLotePosiciones_siElInsertFalla_elReintentoDeberiaPublicarLaAlerta() {
+        when(pruebaRepository.findByFechaHoraFinIsNullAndVehiculo_IdIn(anyCollection())).thenReturn(List.of(prueba()));
+        when(posicionRepository.insertarEnLote(anyList()))
+                .thenThrow(new IllegalStateException("[SQLITE_BUSY] The database file is locked"))
+                .thenReturn(1);
+
+        assertThrows(IllegalStateException.class,
+                () -> vehiculoService.procesarLotePosiciones(List.of(posicion(10, 10))).block());
+        verify(kafkaProducer, never()).enviarMensajeRadioExcedido(any());
+
+        // El cliente reintenta el mismo lote: el vehículo sigue sin haber cambiado de estado, así que la ENTRADA sale ahora.
+        vehiculoService.procesarLotePosiciones(List.of(posicion(10, 10))).block();
+
+        verify(kafkaProducer, timeout(1000)).enviarMensajeRadioExcedido(any());
+    }
+
+    private <T> Answer<T> bloqueante(String nombre, T resultado) {
+        return invocacion -> {
+            registrarSiNoBloqueante(nombre);
+            return resultado;
+        };
+    }
+
+    private void registrarSiNoBloqueante(String nombre) {
+        if (Schedulers.isInNonBlockingThread()) {
+            llamadasEnHiloNoBloqueante.add(nombre + " en " + Thread.currentThread().getName());
+        }
+    }
+
+    private static RestriccionesDto restricciones() {
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(0.0);
+        ubicacion.setLongitud(0.0);
+        RestriccionesDto restricciones = new RestriccionesDto();
+        restricciones.setUbicacionAgencia(ubicacion);
+        restricciones.setRadioMaximoMetros(1000000.0);
+        restricciones.setZonasPeligrosas(List.of());
+        return restricciones;
+    }
+
+    private static Prueba prueba() {
+        Modelo modelo = new Modelo();
+        modelo.setId(3L);
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setId(1);
+        vehiculo.setPatente("AB123CD");
+        vehiculo.setModelo(modelo);
+        Prueba prueba = new Prueba(vehiculo, null, null, new Date());
+        prueba.setId(5);
+        return prueba;
+    }
+
+    private static PosicionDto posicion(double lat, double lon) {
+        PosicionDto dto = new PosicionDto();
+        PosicionDto.Coordenadas coordenadas = new PosicionDto.Coordenadas();
+        coordenadas.setLat(lat);
+        coordenadas.setLon(lon);
+        dto.setCoordenadas(coordenadas);
+        dto.setVehiculo(new VehiculoDto(1, null, null));
+        return dto;
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.RestriccionesDto;
+import org.example.dtos.externos.UbicacionDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.example.service.geocerca.IndiceZonasPeligrosasTest.zona;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeocercaCompiladaTest {
+
+    @Test
+    void contiene_cercaDelBorde_deberiaCoincidirConHaversine() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            double lat = (random.nextDouble() - 0.5) * 170;
+            double lon = (random.nextDouble() - 0.5) * 360;
+            double radio = 1 + random.nextDouble() * 50_000;
+            CirculoGeocerca circulo = new CirculoGeocerca(lat, lon, radio, null);
+            for (int j = 0; j < 500; j++) {
+                // Puntos a una distancia de entre 0,9 y 1,1 radios, en cualquier dirección.
+                double[] punto = desplazar(lat, lon, radio * (0.9 + random.nextDouble() * 0.2), random.nextDouble() * 2 * Math.PI);
+                boolean esperado = GeoUtils.distanciaHaversineMetros(punto[0], punto[1], lat, lon) <= radio;
+                assertEquals(esperado, circulo.contiene(new PuntoGeocerca(punto[0], punto[1])),
+                        "Diferencia en " + punto[0] + ", " + punto[1] + " para el circulo " + lat + ", " + lon + " r=" + radio);
+            }
+        }
+    }
+
+    @Test
+    void contiene_sobreElBordeExacto_deberiaCoincidirConHaversine() {
+        CirculoGeocerca circulo = new CirculoGeocerca(-31.4, -64.2, 1000, null);
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            double lat = -31.4 + (random.nextDouble() - 0.5) * 0.03;
+            double lon = -64.2 + (random.nextDouble() - 0.5) * 0.03;
+            // Radio igual a la distancia: el punto tiene que quedar adentro, como con "<=".
+            double radio = GeoUtils.distanciaHaversineMetros(lat, lon, -31.4, -64.2);
+            CirculoGeocerca justo = new CirculoGeocerca(-31.4, -64.2, radio, null);
+            PuntoGeocerca punto = new PuntoGeocerca(lat, lon);
+            assertTrue(justo.contiene(punto), "El borde debe contar como adentro: " + lat + ", " + lon);
+            assertEquals(radio <= 1000, circulo.contiene(punto));
+        }
+    }
+
+    @Test
+    void evaluar_deberiaCoincidirConElCalculoOriginal() {
+        Random random = new Random(5);
+        List<ZonaPeligrosaDto> zonas = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            zonas.add(zona(-31.4 + random.nextGaussian() * 0.05, -64.2 + random.nextGaussian() * 0.05, 50 + random.nextInt(500)));
+        }
+        RestriccionesDto restricciones = restricciones(-31.4, -64.2, 8000, zonas);
+        GeocercaCompilada geocerca = new EvaluadorGeocerca().compilar(restricciones);
+
+        for (int i = 0; i < 20000; i++) {
+            double lat = -31.4 + random.nextGaussian() * 0.06;
+            double lon = -64.2 + random.nextGaussian() * 0.06;
+            assertEquals(veredictoOriginal(restricciones, lat, lon), geocerca.evaluar(lat, lon), "Diferencia en " + lat + ", " + lon);
+        }
+    }
+
+    @Test
+    void de_sinUbicacionDeAgencia_deberiaLanzarIllegalStateException() {
+        RestriccionesDto restricciones = new RestriccionesDto();
+        restricciones.setRadioMaximoMetros(1000.0);
+        assertThrows(IllegalStateException.class, () -> GeocercaCompilada.de(restricciones));
+    }
+
+    // Como lo calculaba VehiculoService antes de la geocerca compilada: Haversine contra el radio y contra cada zona.
+    private static VeredictoGeocerca veredictoOriginal(RestriccionesDto restricciones, double lat, double lon) {
+        double distancia = GeoUtils.distanciaHaversineMetros(lat, lon,
+                restricciones.getUbicacionAgencia().getLatitud(), restricciones.getUbicacionAgencia().getLongitud());
+        if (distancia > restricciones.getRadioMaximoMetros()) {
+            return VeredictoGeocerca.FUERA_DE_RADIO;
+        }
+        boolean enZona = restricciones.getZonasPeligrosas().stream().anyMatch(z -> GeoUtils.distanciaHaversineMetros(lat, lon,
+                z.getCoordenadas().getLatitud(), z.getCoordenadas().getLongitud()) <= z.getRadioMetros());
+        return enZona ? VeredictoGeocerca.EN_ZONA_RESTRINGIDA : VeredictoGeocerca.DENTRO;
+    }
+
+    private static RestriccionesDto restricciones(double lat, double lon, double radio, List<ZonaPeligrosaDto> zonas) {
+        UbicacionDto ubicacion = new UbicacionDto();
+        ubicacion.setLatitud(lat);
+        ubicacion.setLongitud(lon);
+        RestriccionesDto restricciones = new RestriccionesDto();
+        restricciones.setUbicacionAgencia(ubicacion);
+        restricciones.setRadioMaximoMetros(radio);
+        restricciones.setZonasPeligrosas(zonas);
+        return restricciones;
+    }
+
+    // Punto a "distancia" metros del origen en la dirección "rumbo" (fórmula del destino sobre la esfera).
+    private static double[] desplazar(double lat, double lon, double distancia, double rumbo) {
+        double d = distancia / GeoUtils.RADIO_TERRESTRE_METROS;
+        double lat1 = Math.toRadians(lat);
+        double lon1 = Math.toRadians(lon);
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(d) + Math.cos(lat1) * Math.sin(d) * Math.cos(rumbo));
+        double lon2 = lon1 + Math.atan2(Math.sin(rumbo) * Math.sin(d) * Math.cos(lat1), Math.cos(d) - Math.sin(lat1) * Math.sin(lat2));
+        double lonGrados = Math.toDegrees(lon2);
+        lonGrados = ((lonGrados + 540) % 360) - 180;
+        return new double[]{Math.toDegrees(lat2), lonGrados};
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.service.geocerca;
+
+import org.example.dtos.externos.CoordenadasDto;
+import org.example.dtos.externos.ZonaPeligrosaDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceZonasPeligrosasTest {
+
+    @Test
+    void contiene_deberiaCoincidirConElRecorridoLinealDeTodasLasZonas() {
+        Random random = new Random(42);
+        List<ZonaPeligrosaDto> zonas = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            zonas.add(zona(-31.4 + random.nextGaussian() * 0.3, -64.2 + random.nextGaussian() * 0.3, 50 + random.nextInt(2000)));
+        }
+        IndiceZonasPeligrosas indice = new IndiceZonasPeligrosas(zonas);
+
+        for (int i = 0; i < 20000; i++) {
+            double lat = -31.4 + random.nextGaussian() * 0.35;
+            double lon = -64.2 + random.nextGaussian() * 0.35;
+            assertEquals(escaneoLineal(zonas, lat, lon), indice.contiene(lat, lon), "Diferencia en " + lat + ", " + lon);
+        }
+    }
+
+    @Test
+    void contiene_conZonaSobreElAntimeridiano_deberiaEncontrarlaDeAmbosLados() {
+        IndiceZonasPeligrosas indice = new IndiceZonasPeligrosas(List.of(zona(10.0, 179.999, 5000)));
+
+        assertTrue(indice.contiene(10.0, 179.99));
+        assertTrue(indice.contiene(10.0, -179.99));
+        assertFalse(indice.contiene(10.0, -179.5));
+    }
+
+    @Test
+    void contiene_conZonaGrandeYZonasChicas_deberiaEncontrarAmbas() {
+        List<ZonaPeligrosaDto> zonas = List.of(
+                zona(0.0, 0.0, 100),
+                zona(0.5, 0.5, 100),
+                zona(45.0, 45.0, 2_000_000) // ocupa demasiadas celdas: queda en la lista aparte
+        );
+        IndiceZonasPeligrosas indice = new IndiceZonasPeligrosas(zonas);
+
+        assertTrue(indice.contiene(0.0, 0.0005));
+        assertTrue(indice.contiene(45.0, 60.0));
+        assertFalse(indice.contiene(-10.0, -10.0));
+        assertEquals(3, indice.getCantidadZonas());
+    }
+
+    @Test
+    void contiene_sinZonas_deberiaRetornarFalse() {
+        assertFalse(new IndiceZonasPeligrosas(List.of()).contiene(0, 0));
+        assertFalse(new IndiceZonasPeligrosas(null).contiene(0, 0));
+    }
+
+    private static boolean escaneoLineal(List<ZonaPeligrosaDto> zonas, double lat, double lon) {
+        return zonas.stream().anyMatch(z -> GeoUtils.distanciaHaversineMetros(lat, lon,
+                z.getCoordenadas().getLatitud(), z.getCoordenadas().getLongitud()) <= z.getRadioMetros());
+    }
+
+    static ZonaPeligrosaDto zona(double lat, double lon, int radioMetros) {
+        CoordenadasDto coordenadas = new CoordenadasDto();
+        coordenadas.setLatitud(lat);
+        coordenadas.setLongitud(lon);
+        ZonaPeligrosaDto zona = new ZonaPeligrosaDto();
+        zona.setCoordenadas(coordenadas);
+        zona.setRadioMetros(radioMetros);
+        return zona;
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.service.trayectoria;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimplificadorTrayectoriaTest {
+
+    private static final double LAT = -31.4;
+    private static final double LON = -64.2;
+    // Metros por grado cerca de la agencia, para armar recorridos en metros.
+    private static final double METROS_POR_GRADO_LAT = 111_195;
+    private static final double METROS_POR_GRADO_LON = METROS_POR_GRADO_LAT * Math.cos(Math.toRadians(LAT));
+
+    @Test
+    void simplificar_tramoRecto_deberiaConservarSoloLosExtremos() {
+        Trayectoria recta = recorrido(100, i -> new double[]{i * 50, i * 20});
+
+        assertArrayEquals(new int[]{0, 99}, SimplificadorTrayectoria.simplificar(recta, 5, SimplificadorTrayectoria.Medida.ESPACIAL));
+        assertArrayEquals(new int[]{0, 99}, SimplificadorTrayectoria.simplificar(recta, 5, SimplificadorTrayectoria.Medida.TEMPORAL));
+    }
+
+    @Test
+    void simplificar_conUnaEsquina_deberiaConservarLaEsquina() {
+        // 50 puntos hacia el este y 50 hacia el norte.
+        Trayectoria ele = recorrido(100, i -> i < 50 ? new double[]{i * 50, 0} : new double[]{49 * 50, (i - 49) * 50});
+
+        assertArrayEquals(new int[]{0, 49, 99}, SimplificadorTrayectoria.simplificar(ele, 5, SimplificadorTrayectoria.Medida.ESPACIAL));
+    }
+
+    @Test
+    void simplificar_ningunPuntoDescartadoSeAlejaMasQueLaTolerancia() {
+        Random random = new Random(5);
+        double[] x = new double[720];
+        double[] y = new double[720];
+        for (int i = 1; i < x.length; i++) {
+            x[i] = x[i - 1] + 40 + random.nextGaussian() * 15;
+            y[i] = y[i - 1] + random.nextGaussian() * 15;
+        }
+        Trayectoria ruidosa = recorrido(x.length, i -> new double[]{x[i], y[i]});
+        double tolerancia = 10;
+
+        int[] indices = SimplificadorTrayectoria.simplificar(ruidosa, tolerancia, SimplificadorTrayectoria.Medida.ESPACIAL);
+
+        assertTrue(indices.length < x.length);
+        for (int k = 1; k < indices.length; k++) {
+            int a = indices[k - 1];
+            int b = indices[k];
+            for (int i = a + 1; i < b; i++) {
+                assertTrue(distanciaAlSegmento(x[i], y[i], x[a], y[a], x[b], y[b]) <= tolerancia + 0.05,
+                        "El punto " + i + " quedó a más de " + tolerancia + " m del tramo " + a + "-" + b);
+            }
+        }
+    }
+
+    @Test
+    void simplificar_temporal_deberiaConservarUnaParadaSobreUnTramoRecto() {
+        // Recto hacia el este, detenido a mitad de camino entre las posiciones 50 y 110.
+        Trayectoria conParada = recorrido(160, i -> new double[]{(i < 50 ? i : i < 110 ? 50 : i - 60) * 50, 0});
+
+        int[] espacial = SimplificadorTrayectoria.simplificar(conParada, 5, SimplificadorTrayectoria.Medida.ESPACIAL);
+        int[] temporal = SimplificadorTrayectoria.simplificar(conParada, 5, SimplificadorTrayectoria.Medida.TEMPORAL);
+
+        assertEquals(2, espacial.length, "En el espacio la parada no se ve");
+        assertTrue(contiene(temporal, 50) && contiene(temporal, 110), "El comienzo y el fin de la parada se conservan");
+    }
+
+    @Test
+    void simplificarConCotaDeDistancia_deberiaRespetarElErrorMaximo() {
+        // Zigzag de 8 m: con 10 m de tolerancia Douglas-Peucker lo aplana y el kilometraje baja mucho.
+        Trayectoria zigzag = recorrido(300, i -> new double[]{i * 10, (i % 2) * 8});
+
+        Simplificacion sinCota = SimplificadorTrayectoria.simplificacion(zigzag, 10, SimplificadorTrayectoria.Medida.ESPACIAL);
+        Simplificacion conCota = SimplificadorTrayectoria.simplificarConCotaDeDistancia(zigzag, 10, SimplificadorTrayectoria.Medida.ESPACIAL, 0.01);
+
+        assertTrue(sinCota.errorDistancia() > 0.01);
+        assertTrue(conCota.errorDistancia() <= 0.01);
+        assertTrue(conCota.toleranciaMetros() < 10);
+        assertEquals(zigzag.distanciaKm(), conCota.distanciaOriginalKm(), 1e-12);
+    }
+
+    @Test
+    void simplificar_conPocosPuntosOToleranciaCero_deberiaConservarTodos() {
+        Trayectoria dos = recorrido(2, i -> new double[]{i * 100, 0});
+        Trayectoria recta = recorrido(10, i -> new double[]{i * 100, 0});
+
+        assertArrayEquals(new int[]{0, 1}, SimplificadorTrayectoria.simplificar(dos, 10, SimplificadorTrayectoria.Medida.ESPACIAL));
+        assertEquals(10, SimplificadorTrayectoria.simplificar(recta, 0, SimplificadorTrayectoria.Medida.ESPACIAL).length);
+    }
+
+    // Un punto cada 5 segundos; la función da x (este) e y (norte) en metros desde la agencia.
+    private static Trayectoria recorrido(int n, IntFunction<double[]> metros) {
+        long[] tiempos = new long[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] xy = metros.apply(i);
+            tiempos[i] = 1_700_000_000_000L + i * 5000L;
+            lats[i] = LAT + xy[1] / METROS_POR_GRADO_LAT;
+            lons[i] = LON + xy[0] / METROS_POR_GRADO_LON;
+        }
+        return new Trayectoria(tiempos, lats, lons);
+    }
+
+    private static double distanciaAlSegmento(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double largo = dx * dx + dy * dy;
+        double t = largo == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / largo));
+        return Math.hypot(ax + t * dx - px, ay + t * dy - py);
+    }
+
+    private static boolean contiene(int[] indices, int indice) {
+        for (int i : indices) {
+            if (i == indice) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
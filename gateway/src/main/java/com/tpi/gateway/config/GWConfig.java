@@ -3,6 +3,7 @@ package com.tpi.gateway.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.cloud.gateway.support.RouteMetadataUtils;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
@@ -21,6 +22,12 @@ public class GWConfig {
                                         @Value("${agencia-api-gw.microservicio-agencia}") String uriAgencia) {
 
         return builder.routes()
+                // Posiciones en vivo (SSE): la respuesta no termina nunca, así que va sin límite de tiempo de respuesta.
+                .route(p -> p
+                        .order(-1)
+                        .path("/api/vehiculos/posiciones/en-vivo")
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri(uriAgencia))
                 .route(p -> p
                         // La regla se activa si la ruta coincide con CUALQUIERA de estos patrones.
                         .path("/api/pruebas/**", "/api/vehiculos/**", "/api/crud/vehiculos/**",
@@ -36,6 +43,12 @@ public class GWConfig {
                                         @Value("${notificaciones-api-gw.microservicio-agencia}") String uriAgencia) {
 
         return builder.routes()
+                // Alertas en vivo (SSE), también sin límite de tiempo de respuesta.
+                .route(p -> p
+                        .order(-1)
+                        .path("/api/notificaciones/en-vivo")
+                        .metadata(RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR, -1)
+                        .uri(uriAgencia))
                 .route(p -> p
                         // La regla se activa si la ruta coincide con CUALQUIERA de estos patrones.
                         .path("/api/notificaciones/**")
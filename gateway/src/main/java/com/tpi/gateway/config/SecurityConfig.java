@@ -35,6 +35,9 @@ public class SecurityConfig {
                         .pathMatchers(HttpMethod.OPTIONS, "/**").permitAll()
 
                         // --- Tus reglas de negocio ---
+                        // Compactar una trayectoria borra posiciones: solo ADMIN (tiene que ir antes de /api/pruebas/**)
+                        .pathMatchers(HttpMethod.POST, "/api/pruebas/*/trayectoria/compactar").hasRole("ADMIN")
+
                         // EMPLEADO
                         .pathMatchers("/api/pruebas").hasAnyRole("ADMIN", "EMPLEADO")
                         .pathMatchers("/api/pruebas/**").hasAnyRole("ADMIN", "EMPLEADO")
@@ -45,9 +48,18 @@ public class SecurityConfig {
                         .pathMatchers("/api/crud/vehiculos/**").hasAnyRole("ADMIN", "EMPLEADO")
                         .pathMatchers("/api/crud/modelos/**").hasAnyRole("ADMIN", "EMPLEADO")
                         .pathMatchers("/api/interesados/**").hasAnyRole("ADMIN", "EMPLEADO")
+                        .pathMatchers(HttpMethod.GET, "/api/vehiculos/*/ultima-posicion").hasAnyRole("ADMIN", "EMPLEADO")
+                        .pathMatchers(HttpMethod.GET, "/api/vehiculos/posiciones/actuales").hasAnyRole("ADMIN", "EMPLEADO")
+                        // Transmisiones en vivo (SSE) para los tableros
+                        .pathMatchers(HttpMethod.GET, "/api/vehiculos/posiciones/en-vivo").hasAnyRole("ADMIN", "EMPLEADO")
+                        .pathMatchers(HttpMethod.GET, "/api/notificaciones/en-vivo").hasAnyRole("ADMIN", "EMPLEADO")
 
                         // VEHICULO
                         .pathMatchers(HttpMethod.POST, "/api/vehiculos/posicion/new").hasAnyRole("ADMIN", "VEHICULO")
+                        .pathMatchers(HttpMethod.POST, "/api/vehiculos/posiciones/batch").hasAnyRole("ADMIN", "VEHICULO")
+                        .pathMatchers(HttpMethod.POST, "/api/vehiculos/posiciones/publicar").hasAnyRole("ADMIN", "VEHICULO")
+                        // Canal WebSocket: el token se valida una sola vez, al abrir la conexión (el gateway la reenvía como ws://)
+                        .pathMatchers(HttpMethod.GET, "/api/vehiculos/posiciones/stream").hasAnyRole("ADMIN", "VEHICULO")
                         .pathMatchers(HttpMethod.GET, "/api/vehiculos/restricciones-actuales").hasAnyRole("ADMIN", "VEHICULO")
 
                         // ADMIN
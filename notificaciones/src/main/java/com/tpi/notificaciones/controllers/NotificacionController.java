@@ -1,21 +1,29 @@
 package com.tpi.notificaciones.controllers;
 
+import com.tpi.notificaciones.dtos.EventoNotificacionDto;
 import com.tpi.notificaciones.dtos.NotificacionPromocionDto;
 import com.tpi.notificaciones.dtos.NotificacionRadioExcedidoDto;
 import com.tpi.notificaciones.dtos.PosicionDto;
 import com.tpi.notificaciones.service.NotificacionService;
+import com.tpi.notificaciones.service.TransmisionNotificaciones;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/notificaciones")
 public class NotificacionController {
 
     private final NotificacionService notificacionService;
+    private final TransmisionNotificaciones transmisionNotificaciones;
 
     @Autowired
-    public NotificacionController(NotificacionService service) {this.notificacionService = service;}
+    public NotificacionController(NotificacionService service, TransmisionNotificaciones transmisionNotificaciones) {
+        this.notificacionService = service;
+        this.transmisionNotificaciones = transmisionNotificaciones;
+    }
 
     // Guardar notificacion de promocion
     @PostMapping("/promocion/new")
@@ -41,4 +49,13 @@ public class NotificacionController {
     public ResponseEntity<?> getAllZonasPeligrosas() {
         return ResponseEntity.ok(notificacionService.getAllZonasPeligrosas());
     }
+
+    //Alertas de radio excedido y zona peligrosa a medida que se guardan (Server-Sent Events), filtradas por vehiculo y tipo.
+    //Con politica=RESUMIR un cliente lento recibe solo la ultima de cada vehiculo y tipo; con DESCARTAR (por defecto) pierde las mas viejas.
+    @GetMapping(value = "/en-vivo", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getNotificacionesEnVivo(@RequestParam(required = false) Integer idVehiculo,
+                                              @RequestParam(required = false) EventoNotificacionDto.Tipo tipo,
+                                              @RequestParam(required = false) TransmisionNotificaciones.Politica politica) {
+        return transmisionNotificaciones.suscribir(idVehiculo, tipo, politica != null ? politica : TransmisionNotificaciones.Politica.DESCARTAR);
+    }
 }
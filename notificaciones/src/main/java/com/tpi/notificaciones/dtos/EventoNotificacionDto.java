@@ -0,0 +1,40 @@
+package com.tpi.notificaciones.dtos;
+
+import com.tpi.notificaciones.models.NotificacionRadioExcedidoEntity;
+import com.tpi.notificaciones.models.NotificacionZonaPeligrosaEntity;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Una alerta recién guardada, tal como se envía por GET /api/notificaciones/en-vivo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoNotificacionDto {
+    private Integer id;
+    private Tipo tipo;
+    private Integer idVehiculo;
+    private LocalDateTime fechaNotificacion;
+    private double latitud;
+    private double longitud;
+    private String mensaje;
+
+    public enum Tipo {
+        RADIO_EXCEDIDO,
+        ZONA_PELIGROSA
+    }
+
+    public EventoNotificacionDto(NotificacionRadioExcedidoEntity notificacion) {
+        this(notificacion.getId(), Tipo.RADIO_EXCEDIDO, notificacion.getIdVehiculo(), notificacion.getFechaNotificacion(),
+                notificacion.getLatActual(), notificacion.getLonActual(), notificacion.getMensaje());
+    }
+
+    public EventoNotificacionDto(NotificacionZonaPeligrosaEntity notificacion) {
+        this(notificacion.getId(), Tipo.ZONA_PELIGROSA, notificacion.getIdVehiculo(), notificacion.getFechaNotificacion(),
+                notificacion.getLatActual(), notificacion.getLonActual(), notificacion.getMensaje());
+    }
+}
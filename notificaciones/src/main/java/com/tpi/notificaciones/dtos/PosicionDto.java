@@ -13,6 +13,8 @@ public class PosicionDto {
     private VehiculoDto vehiculo;
     private Coordenadas coordenadas;
     private String mensaje;
+    // Cuándo tomó la posición el vehículo (epoch en milisegundos), si api-agencia la mandó.
+    private Long fechaHora;
 
     @JsonCreator
     public PosicionDto(
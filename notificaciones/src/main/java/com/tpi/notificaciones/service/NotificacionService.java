@@ -1,5 +1,6 @@
 package com.tpi.notificaciones.service;
 
+import com.tpi.notificaciones.dtos.EventoNotificacionDto;
 import com.tpi.notificaciones.dtos.NotificacionPromocionDto;
 import com.tpi.notificaciones.dtos.NotificacionRadioExcedidoDto;
 import com.tpi.notificaciones.dtos.NotificacionZonaPeligrosaDto;
@@ -24,17 +25,20 @@ public class NotificacionService {
     private final NotificacionRadioExcedidoRepository radioExcedidoRepository;
     private final NotificacionZonaPeligrosaRepository zonaPeligrosaRepository;
     private final TwilioSmsService smsService;
+    private final TransmisionNotificaciones transmisionNotificaciones;
 
     @Autowired
     public NotificacionService(
             NotificacionPromocionRepository promocionRepository,
             NotificacionRadioExcedidoRepository radioExcedidoRepository,
             NotificacionZonaPeligrosaRepository zonaPeligrosaRepository,
-            TwilioSmsService smsService) {
+            TwilioSmsService smsService,
+            TransmisionNotificaciones transmisionNotificaciones) {
         this.promocionRepository = promocionRepository;
         this.radioExcedidoRepository = radioExcedidoRepository;
         this.zonaPeligrosaRepository = zonaPeligrosaRepository;
         this.smsService = smsService;
+        this.transmisionNotificaciones = transmisionNotificaciones;
     }
 
     // Crear notificación de promoción
@@ -53,6 +57,8 @@ public class NotificacionService {
                 posicion.getCoordenadas().getLat() + " LAT, "
                 + posicion.getCoordenadas().getLon() + " LON.");
         radioExcedidoRepository.save(nuevoRadioExcedido);
+        // Ya guardada (con su id) se envía a los tableros suscriptos.
+        transmisionNotificaciones.publicar(new EventoNotificacionDto(nuevoRadioExcedido));
     }
 
     // Crear notificación de zona peligrosa
@@ -63,6 +69,7 @@ public class NotificacionService {
                 posicion.getCoordenadas().getLat() + " LAT, "
                 + posicion.getCoordenadas().getLon() + " LON.");
         zonaPeligrosaRepository.save(nuevaZonaPeligrosa);
+        transmisionNotificaciones.publicar(new EventoNotificacionDto(nuevaZonaPeligrosa));
     }
 
     // Métodos para obtener todas las notificaciones de cada tipo
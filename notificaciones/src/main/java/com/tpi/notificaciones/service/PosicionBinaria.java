@@ -0,0 +1,95 @@
+package com.tpi.notificaciones.service;
+
+import com.tpi.notificaciones.dtos.PosicionDto;
+import com.tpi.notificaciones.dtos.VehiculoDto;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lectura del formato binario con el que api-agencia publica las posiciones en Kafka (versiones 1 y 2, big endian;
+ * la 2 agrega {@code fechaHora} al final).
+ * El layout lo define org.example.serializacion.PosicionBinaria en api-agencia y está descripto en
+ * apiAgencia/readmeInteresantes/formatoBinarioPosiciones.md: si cambia allá, hay que cambiarlo acá.
+ */
+public final class PosicionBinaria {
+
+    public static final byte MARCA = (byte) 0xA7;
+    public static final byte VERSION = 2;
+    static final byte VERSION_SIN_FECHA_HORA = 1;
+
+    static final int ID = 1;
+    static final int VEHICULO = 1 << 1;
+    static final int VEHICULO_ID = 1 << 2;
+    static final int PATENTE = 1 << 3;
+    static final int ID_MODELO = 1 << 4;
+    static final int COORDENADAS = 1 << 5;
+    static final int MENSAJE = 1 << 6;
+    static final int FECHA_HORA = 1 << 7;
+    private static final int BANDERAS_VERSION_1 = FECHA_HORA - 1;
+    private static final int BANDERAS_VERSION_2 = BANDERAS_VERSION_1 | FECHA_HORA;
+
+    private PosicionBinaria() {
+    }
+
+    public static boolean esBinaria(byte[] datos) {
+        return datos != null && datos.length > 0 && datos[0] == MARCA;
+    }
+
+    public static PosicionDto decodificar(byte[] datos) {
+        ByteBuffer buffer = ByteBuffer.wrap(datos);
+        try {
+            if (buffer.get() != MARCA) {
+                throw new IllegalArgumentException("Los datos no son una posición en formato binario.");
+            }
+            byte version = buffer.get();
+            if (version != VERSION && version != VERSION_SIN_FECHA_HORA) {
+                throw new IllegalArgumentException("Versión " + version + " del formato binario no soportada.");
+            }
+            int banderas = buffer.get() & 0xFF;
+            if ((banderas & ~(version == VERSION ? BANDERAS_VERSION_2 : BANDERAS_VERSION_1)) != 0) {
+                throw new IllegalArgumentException("Banderas desconocidas en la posición: " + Integer.toBinaryString(banderas));
+            }
+
+            PosicionDto posicion = new PosicionDto();
+            if ((banderas & ID) != 0) {
+                posicion.setId(buffer.getInt());
+            }
+            if ((banderas & VEHICULO) != 0) {
+                VehiculoDto vehiculo = new VehiculoDto();
+                if ((banderas & VEHICULO_ID) != 0) {
+                    vehiculo.setId(buffer.getInt());
+                }
+                if ((banderas & PATENTE) != 0) {
+                    vehiculo.setPatente(texto(buffer));
+                }
+                if ((banderas & ID_MODELO) != 0) {
+                    vehiculo.setIdModelo(Math.toIntExact(buffer.getLong()));
+                }
+                posicion.setVehiculo(vehiculo);
+            }
+            if ((banderas & COORDENADAS) != 0) {
+                posicion.setCoordenadas(new PosicionDto.Coordenadas(buffer.getDouble(), buffer.getDouble()));
+            }
+            if ((banderas & MENSAJE) != 0) {
+                posicion.setMensaje(texto(buffer));
+            }
+            if ((banderas & FECHA_HORA) != 0) {
+                posicion.setFechaHora(buffer.getLong());
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Sobran " + buffer.remaining() + " bytes después de la posición.");
+            }
+            return posicion;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("La posición en formato binario está incompleta.", e);
+        }
+    }
+
+    private static String texto(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,14 +1,20 @@
 package com.tpi.notificaciones.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tpi.notificaciones.dtos.PosicionDto;
+import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 
 import java.util.Map;
 
+/**
+ * Lee las posiciones de los tópicos de alertas. api-agencia las publica en {@link PosicionBinaria}; los mensajes
+ * sin la marca del formato binario se leen como JSON (los que quedaron en los tópicos de antes del cambio).
+ */
 public class PosicionDtoDeserializer implements Deserializer<PosicionDto> {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
 
     @Override
     public void configure(Map<String, ?> configs, boolean isKey) {
@@ -17,10 +23,16 @@ public class PosicionDtoDeserializer implements Deserializer<PosicionDto> {
 
     @Override
     public PosicionDto deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
         try {
+            if (PosicionBinaria.esBinaria(data)) {
+                return PosicionBinaria.decodificar(data);
+            }
             return objectMapper.readValue(data, PosicionDto.class);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to deserialize data", e);
+            throw new SerializationException("Mensaje de " + topic + " que no es una posición: " + e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,213 @@
+package com.tpi.notificaciones.service;
+
+import com.tpi.notificaciones.dtos.EventoNotificacionDto;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transmisión en vivo (Server-Sent Events) de las alertas a medida que se guardan, para que los tableros no tengan
+ * que consultar /api/notificaciones/seguridad/** periódicamente. NotificacionService publica cada alerta después
+ * de guardarla y cada suscriptor recibe solo las que pasan su filtro de vehículo y tipo.
+ *
+ * Publicar no escribe en ninguna conexión: deja el evento en el buffer acotado del suscriptor y el envío corre en un
+ * pool propio de {@code hilos} hilos, de a un suscriptor por tarea. Un envío a un cliente lento bloquea su hilo, así
+ * que no se usa el executor de tareas de Spring: los clientes lentos no frenan al resto de las tareas de la aplicación.
+ * Si un cliente lento llena su buffer se aplica su {@link Politica}. Las alertas no traen la prueba, así que acá no se puede filtrar por prueba (sí en api-agencia).
+ */
+@Service
+public class TransmisionNotificaciones {
+
+    public enum Politica {
+        // Se descartan las alertas más viejas del buffer.
+        DESCARTAR,
+        // Se guarda solo la última alerta pendiente de cada vehículo y tipo.
+        RESUMIR
+    }
+
+    // Sin límite de tiempo: la conexión dura lo que quiera el cliente y los latidos detectan a los que se fueron.
+    private static final long SIN_TIMEOUT = -1L;
+    private static final Object LATIDO = new Object();
+
+    private final Executor executor;
+    private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+    private final AtomicLong descartadas = new AtomicLong();
+
+    @Value("${notificaciones.en-vivo.buffer:256}")
+    private int capacidadBuffer = 256;
+
+    @Autowired
+    public TransmisionNotificaciones(@Value("${notificaciones.en-vivo.hilos:4}") int hilos,
+                                     @Value("${notificaciones.en-vivo.cola:1000}") int cola) {
+        this(ejecutorDeEnvios(hilos, cola));
+    }
+
+    TransmisionNotificaciones(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Cada suscriptor tiene a lo sumo una tarea en cola o en curso, así que la cola acota los suscriptores esperando hilo.
+    private static ThreadPoolExecutor ejecutorDeEnvios(int hilos, int cola) {
+        AtomicInteger numero = new AtomicInteger();
+        return new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cola), tarea -> {
+            Thread hilo = new Thread(tarea, "sse-envio-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (executor instanceof ExecutorService ejecutor) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Abre una suscripción. Los filtros nulos no filtran.
+     */
+    public SseEmitter suscribir(Integer idVehiculo, EventoNotificacionDto.Tipo tipo, Politica politica) {
+        SseEmitter emitter = new SseEmitter(SIN_TIMEOUT);
+        agregar(emitter, idVehiculo, tipo, politica);
+        return emitter;
+    }
+
+    Suscriptor agregar(SseEmitter emitter, Integer idVehiculo, EventoNotificacionDto.Tipo tipo, Politica politica) {
+        Suscriptor suscriptor = new Suscriptor(emitter, idVehiculo, tipo, politica);
+        emitter.onCompletion(() -> suscriptores.remove(suscriptor));
+        emitter.onTimeout(() -> suscriptores.remove(suscriptor));
+        emitter.onError(e -> suscriptores.remove(suscriptor));
+        suscriptores.add(suscriptor);
+        return suscriptor;
+    }
+
+    public void publicar(EventoNotificacionDto evento) {
+        for (Suscriptor suscriptor : suscriptores) {
+            if (suscriptor.acepta(evento)) {
+                suscriptor.encolar(suscriptor.politica == Politica.RESUMIR ? evento.getTipo() + ":" + evento.getIdVehiculo() : new Object(), evento);
+            }
+        }
+    }
+
+    // Comentario SSE periódico para que los proxies no corten la conexión y fallen los envíos a clientes que se fueron.
+    @Scheduled(fixedDelayString = "${notificaciones.en-vivo.latido-ms:15000}")
+    public void enviarLatidos() {
+        for (Suscriptor suscriptor : suscriptores) {
+            suscriptor.encolar(LATIDO, LATIDO);
+        }
+    }
+
+    public int getSuscriptores() {
+        return suscriptores.size();
+    }
+
+    /**
+     * @return alertas que no llegaron a algún suscriptor porque su buffer estaba lleno.
+     */
+    public long getDescartadas() {
+        return descartadas.get();
+    }
+
+    final class Suscriptor implements Runnable {
+        private final SseEmitter emitter;
+        private final Integer idVehiculo;
+        private final EventoNotificacionDto.Tipo tipo;
+        private final Politica politica;
+        // Eventos por enviar en orden de llegada; con la misma clave el nuevo reemplaza al pendiente sin cambiar de lugar.
+        private final LinkedHashMap<Object, Object> pendientes = new LinkedHashMap<>();
+        // Hay una tarea enviando los pendientes de este suscriptor (nunca más de una, para no desordenarlos).
+        private final AtomicBoolean enviando = new AtomicBoolean();
+
+        private Suscriptor(SseEmitter emitter, Integer idVehiculo, EventoNotificacionDto.Tipo tipo, Politica politica) {
+            this.emitter = emitter;
+            this.idVehiculo = idVehiculo;
+            this.tipo = tipo;
+            this.politica = politica;
+        }
+
+        private boolean acepta(EventoNotificacionDto evento) {
+            return (idVehiculo == null || idVehiculo.equals(evento.getIdVehiculo())) && (tipo == null || tipo == evento.getTipo());
+        }
+
+        private void encolar(Object clave, Object evento) {
+            synchronized (pendientes) {
+                if (pendientes.put(clave, evento) == null && pendientes.size() > capacidadBuffer) {
+                    Iterator<Object> masViejo = pendientes.keySet().iterator();
+                    masViejo.next();
+                    masViejo.remove();
+                    descartadas.incrementAndGet();
+                }
+            }
+            if (enviando.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Cola de envíos llena: lo pendiente queda en el buffer y lo programa el próximo evento o latido.
+                    enviando.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Object evento;
+                synchronized (pendientes) {
+                    Iterator<Object> siguiente = pendientes.values().iterator();
+                    if (!siguiente.hasNext()) {
+                        // Dentro del lock: un encolar posterior ve enviando en false y programa otra tarea.
+                        enviando.set(false);
+                        return;
+                    }
+                    evento = siguiente.next();
+                    siguiente.remove();
+                }
+                try {
+                    enviar(evento);
+                } catch (IOException | IllegalStateException e) {
+                    // El cliente se fue: no se le programan más envíos.
+                    suscriptores.remove(this);
+                    return;
+                }
+            }
+        }
+
+        private void enviar(Object evento) throws IOException {
+            if (evento == LATIDO) {
+                emitter.send(SseEmitter.event().comment("latido"));
+                return;
+            }
+            EventoNotificacionDto alerta = (EventoNotificacionDto) evento;
+            SseEmitter.SseEventBuilder sse = SseEmitter.event().name(alerta.getTipo().name()).data(alerta, MediaType.APPLICATION_JSON);
+            if (alerta.getId() != null) {
+                sse.id(alerta.getId().toString());
+            }
+            emitter.send(sse);
+        }
+
+        int pendientes() {
+            synchronized (pendientes) {
+                return pendientes.size();
+            }
+        }
+    }
+}
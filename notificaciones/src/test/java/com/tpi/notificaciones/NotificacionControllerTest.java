@@ -8,6 +8,7 @@ import com.tpi.notificaciones.models.NotificacionPromocionEntity;
 import com.tpi.notificaciones.models.NotificacionRadioExcedidoEntity;
 import com.tpi.notificaciones.models.NotificacionZonaPeligrosaEntity;
 import com.tpi.notificaciones.service.NotificacionService;
+import com.tpi.notificaciones.service.TransmisionNotificaciones;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +32,9 @@ public class NotificacionControllerTest {
     @MockBean
     private NotificacionService notificacionService;
 
+    @MockBean
+    private TransmisionNotificaciones transmisionNotificaciones;
+
     @Autowired
     private ObjectMapper objectMapper;
 
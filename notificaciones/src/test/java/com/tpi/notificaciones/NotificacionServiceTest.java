@@ -34,6 +34,9 @@ public class NotificacionServiceTest {
     @Mock
     private TwilioSmsService smsService;
 
+    @Mock
+    private TransmisionNotificaciones transmisionNotificaciones;
+
     @InjectMocks
     private NotificacionService notificacionService;
 
@@ -107,6 +110,8 @@ public class NotificacionServiceTest {
         assertEquals(posicionDto.getCoordenadas().getLon(), entidadGuardada.getLonActual());
         assertEquals(posicionDto.getVehiculo().getId(), entidadGuardada.getIdVehiculo());
         assertEquals(posicionDto.getMensaje(), entidadGuardada.getMensaje());
+        verify(transmisionNotificaciones).publicar(argThat(evento -> evento.getTipo() == EventoNotificacionDto.Tipo.RADIO_EXCEDIDO
+                && evento.getIdVehiculo().equals(posicionDto.getVehiculo().getId())));
 
         verify(smsService).sendSmsToMultipleRecipients(captorSms.capture());
         String mensajeSms = captorSms.getValue();
@@ -0,0 +1,82 @@
+package com.tpi.notificaciones.service;
+
+import com.tpi.notificaciones.dtos.PosicionDto;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PosicionDtoDeserializerTest {
+
+    private final PosicionDtoDeserializer deserializer = new PosicionDtoDeserializer();
+
+    @Test
+    void deserialize_conFormatoBinarioDeApiAgencia_deberiaLeerTodosLosCampos() {
+        byte[] patente = "AB123CD".getBytes(StandardCharsets.UTF_8);
+        byte[] mensaje = "El vehículo salió del radio.".getBytes(StandardCharsets.UTF_8);
+        // Armado a mano según readmeInteresantes/formatoBinarioPosiciones.md, como lo escribe api-agencia sin fechaHora.
+        ByteBuffer buffer = ByteBuffer.allocate(3 + 4 + 4 + 2 + patente.length + 8 + 16 + 2 + mensaje.length);
+        buffer.put(PosicionBinaria.MARCA).put(PosicionBinaria.VERSION_SIN_FECHA_HORA).put((byte) 0x7F)
+                .putInt(99)
+                .putInt(7)
+                .putShort((short) patente.length).put(patente)
+                .putLong(3L)
+                .putDouble(-31.42).putDouble(-64.18)
+                .putShort((short) mensaje.length).put(mensaje);
+
+        PosicionDto posicion = deserializer.deserialize("agencia-radio-excedido-topic", buffer.array());
+
+        assertEquals(99, posicion.getId());
+        assertEquals(7, posicion.getVehiculo().getId());
+        assertEquals("AB123CD", posicion.getVehiculo().getPatente());
+        assertEquals(3, posicion.getVehiculo().getIdModelo());
+        assertEquals(-31.42, posicion.getCoordenadas().getLat());
+        assertEquals(-64.18, posicion.getCoordenadas().getLon());
+        assertEquals("El vehículo salió del radio.", posicion.getMensaje());
+        assertNull(posicion.getFechaHora());
+    }
+
+    @Test
+    void deserialize_conLaVersion2_deberiaLeerLaFechaHora() {
+        // Vehículo 7 con sus coordenadas y la fecha y hora al final.
+        ByteBuffer buffer = ByteBuffer.allocate(3 + 4 + 16 + 8);
+        buffer.put(PosicionBinaria.MARCA).put(PosicionBinaria.VERSION).put((byte) 0xA6)
+                .putInt(7)
+                .putDouble(-31.42).putDouble(-64.18)
+                .putLong(1_760_000_000_123L);
+
+        PosicionDto posicion = deserializer.deserialize("agencia-radio-excedido-topic", buffer.array());
+
+        assertEquals(7, posicion.getVehiculo().getId());
+        assertEquals(-64.18, posicion.getCoordenadas().getLon());
+        assertEquals(1_760_000_000_123L, posicion.getFechaHora());
+    }
+
+    @Test
+    void deserialize_conElJsonAnterior_deberiaSeguirLeyendolo() {
+        String json = "{\"id\":null,\"vehiculo\":{\"id\":7,\"patente\":\"AB123CD\",\"idModelo\":3},"
+                + "\"coordenadas\":{\"lat\":-31.42,\"lon\":-64.18},\"mensaje\":\"zona\"}";
+
+        PosicionDto posicion = deserializer.deserialize("agencia-zona-peligrosa-topic", json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(7, posicion.getVehiculo().getId());
+        assertEquals(-31.42, posicion.getCoordenadas().getLat());
+        assertEquals("zona", posicion.getMensaje());
+    }
+
+    @Test
+    void deserialize_conDatosInvalidos_deberiaLanzarSerializationException() {
+        byte[] incompleta = {PosicionBinaria.MARCA, PosicionBinaria.VERSION, 0x06, 0x00};
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", incompleta));
+        // La versión 1 no tiene fechaHora.
+        byte[] version1ConFechaHora = ByteBuffer.allocate(3 + 4 + 8).put(PosicionBinaria.MARCA)
+                .put(PosicionBinaria.VERSION_SIN_FECHA_HORA).put((byte) 0x86).putInt(7).putLong(1L).array();
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", version1ConFechaHora));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", "no es json".getBytes(StandardCharsets.UTF_8)));
+        assertNull(deserializer.deserialize("t", null));
+    }
+}
@@ -0,0 +1,106 @@
+package com.tpi.notificaciones.service;
+
+import com.tpi.notificaciones.dtos.EventoNotificacionDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransmisionNotificacionesTest {
+
+    // Las tareas de envío quedan acá sin ejecutarse, como si el cliente no leyera.
+    private final List<Runnable> tareas = new ArrayList<>();
+    private TransmisionNotificaciones transmision;
+
+    @BeforeEach
+    void setUp() {
+        transmision = new TransmisionNotificaciones(tareas::add);
+        ReflectionTestUtils.setField(transmision, "capacidadBuffer", 2);
+    }
+
+    @Test
+    void publicar_deberiaEncolarSoloLasAlertasQuePasanElFiltro() {
+        TransmisionNotificaciones.Suscriptor suscriptor = transmision.agregar(new SseEmitter(), 1,
+                EventoNotificacionDto.Tipo.ZONA_PELIGROSA, TransmisionNotificaciones.Politica.DESCARTAR);
+
+        transmision.publicar(alerta(1, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+        transmision.publicar(alerta(2, EventoNotificacionDto.Tipo.ZONA_PELIGROSA, 2));
+        transmision.publicar(alerta(3, EventoNotificacionDto.Tipo.ZONA_PELIGROSA, 1));
+
+        assertEquals(1, suscriptor.pendientes());
+        assertEquals(1, tareas.size(), "Una sola tarea de envío por suscriptor");
+    }
+
+    @Test
+    void clienteLento_conDescartar_deberiaQuedarseConLasMasNuevas() {
+        TransmisionNotificaciones.Suscriptor suscriptor = transmision.agregar(new SseEmitter(), null, null,
+                TransmisionNotificaciones.Politica.DESCARTAR);
+
+        for (int i = 1; i <= 5; i++) {
+            transmision.publicar(alerta(i, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+        }
+
+        assertEquals(2, suscriptor.pendientes());
+        assertEquals(3, transmision.getDescartadas());
+    }
+
+    @Test
+    void clienteLento_conResumir_deberiaGuardarLaUltimaPorVehiculoYTipo() {
+        TransmisionNotificaciones.Suscriptor suscriptor = transmision.agregar(new SseEmitter(), null, null,
+                TransmisionNotificaciones.Politica.RESUMIR);
+
+        transmision.publicar(alerta(1, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+        transmision.publicar(alerta(2, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+        transmision.publicar(alerta(3, EventoNotificacionDto.Tipo.ZONA_PELIGROSA, 1));
+
+        assertEquals(2, suscriptor.pendientes());
+        assertEquals(0, transmision.getDescartadas());
+    }
+
+    @Test
+    void envio_deberiaVaciarLosPendientesYPermitirOtraTarea() {
+        TransmisionNotificaciones.Suscriptor suscriptor = transmision.agregar(new SseEmitter(), null, null,
+                TransmisionNotificaciones.Politica.DESCARTAR);
+        transmision.publicar(alerta(1, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+
+        tareas.remove(0).run();
+        assertEquals(0, suscriptor.pendientes());
+
+        transmision.enviarLatidos();
+        assertEquals(1, tareas.size(), "Terminado el envío, el próximo evento programa otra tarea");
+    }
+
+    @Test
+    void colaDeEnviosLlena_deberiaReprogramarElEnvioConElProximoEvento() {
+        AtomicBoolean llena = new AtomicBoolean(true);
+        transmision = new TransmisionNotificaciones(tarea -> {
+            if (llena.get()) {
+                throw new RejectedExecutionException("cola llena");
+            }
+            tareas.add(tarea);
+        });
+        TransmisionNotificaciones.Suscriptor suscriptor = transmision.agregar(new SseEmitter(), null, null,
+                TransmisionNotificaciones.Politica.DESCARTAR);
+
+        transmision.publicar(alerta(1, EventoNotificacionDto.Tipo.RADIO_EXCEDIDO, 1));
+        assertEquals(1, suscriptor.pendientes());
+
+        llena.set(false);
+        transmision.enviarLatidos();
+        assertEquals(1, tareas.size());
+        tareas.remove(0).run();
+        assertEquals(0, suscriptor.pendientes());
+    }
+
+    private static EventoNotificacionDto alerta(int id, EventoNotificacionDto.Tipo tipo, int idVehiculo) {
+        return new EventoNotificacionDto(id, tipo, idVehiculo, LocalDateTime.now(), -31.4, -64.2, "Alerta " + id);
+    }
+}